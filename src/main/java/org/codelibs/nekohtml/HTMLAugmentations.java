@@ -16,8 +16,10 @@
 
 package org.codelibs.nekohtml;
 
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.xerces.xni.Augmentations;
 
@@ -43,7 +45,7 @@ public class HTMLAugmentations implements Augmentations {
     //
 
     /** Augmentation items. */
-    protected final Hashtable<String, Object> fItems = new Hashtable<>();
+    protected final Map<String, Object> fItems = new HashMap<>();
 
     //
     // Public methods
@@ -133,7 +135,7 @@ public class HTMLAugmentations implements Augmentations {
      */
     @Override
     public Enumeration<String> keys() {
-        return fItems.keys();
+        return Collections.enumeration(fItems.keySet());
     } // keys():Enumeration
 
 } // class HTMLAugmentations
@@ -18,16 +18,22 @@ package org.codelibs.nekohtml;
 
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
-import java.util.Vector;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.xerces.util.DefaultErrorHandler;
 import org.apache.xerces.util.ParserConfigurationSettings;
 import org.apache.xerces.xni.XMLDTDContentModelHandler;
 import org.apache.xerces.xni.XMLDTDHandler;
 import org.apache.xerces.xni.XMLDocumentHandler;
+import org.apache.xerces.xni.XMLLocator;
 import org.apache.xerces.xni.XNIException;
 import org.apache.xerces.xni.parser.XMLConfigurationException;
 import org.apache.xerces.xni.parser.XMLDocumentFilter;
@@ -52,6 +58,7 @@ import org.codelibs.nekohtml.xercesbridge.XercesBridge;
  * <li>http://cyberneko.org/html/features/report-errors
  * <li>http://cyberneko.org/html/features/report-errors/simple
  * <li>http://cyberneko.org/html/features/balance-tags
+ * <li>http://cyberneko.org/html/features/pipelined
  * <li><i>and</i>
  * <li>the features supported by the scanner and tag balancer components.
  * </ul>
@@ -62,10 +69,20 @@ import org.codelibs.nekohtml.xercesbridge.XercesBridge;
  * <li>http://cyberneko.org/html/properties/names/attrs
  * <li>http://cyberneko.org/html/properties/filters
  * <li>http://cyberneko.org/html/properties/error-reporter
+ * <li>http://cyberneko.org/html/properties/statistics
+ * <li>http://cyberneko.org/html/properties/pipeline/buffer-size
+ * <li>http://cyberneko.org/html/properties/pipeline/wait-strategy
  * <li><i>and</i>
  * <li>the properties supported by the scanner and tag balancer.
  * </ul>
  * <p>
+ * With the pipelined feature, a complete parse scans the document on a
+ * helper thread while the tag balancer, the filters and the document
+ * handler run on the parsing thread. Pushing or evaluating an input
+ * source is then rejected, since the scanner is ahead of the handlers.
+ * When all the helper threads are busy, the document is scanned on the
+ * parsing thread as without the feature.
+ * <p>
  * For complete usage information, refer to the documentation.
  *
  * @see HTMLScanner
@@ -99,6 +116,9 @@ public class HTMLConfiguration extends ParserConfigurationSettings implements XM
     /** Balance tags. */
     protected static final String BALANCE_TAGS = "http://cyberneko.org/html/features/balance-tags";
 
+    /** Scan on a helper thread while the rest of the pipeline runs on the parsing thread. */
+    public static final String PIPELINED = "http://cyberneko.org/html/features/pipelined";
+
     // properties
 
     /** Modify HTML element names: { "upper", "lower", "default" }. */
@@ -113,6 +133,24 @@ public class HTMLConfiguration extends ParserConfigurationSettings implements XM
     /** Error reporter. */
     protected static final String ERROR_REPORTER = "http://cyberneko.org/html/properties/error-reporter";
 
+    /** Parse statistics: an {@link HTMLParseStatistics} instance or null. */
+    public static final String STATISTICS = "http://cyberneko.org/html/properties/statistics";
+
+    /** Pipeline profiler: an {@link HTMLPipelineProfiler} instance or null. */
+    public static final String PROFILER = "http://cyberneko.org/html/properties/profiler";
+
+    /** Slow parse recorder: an {@link HTMLSlowParseRecorder} instance or null. */
+    public static final String SLOW_PARSE_RECORDER = "http://cyberneko.org/html/properties/slow-parse-recorder";
+
+    /** Error buffer: an {@link HTMLErrorBuffer} instance or null. */
+    public static final String ERROR_BUFFER = "http://cyberneko.org/html/properties/error-buffer";
+
+    /** Number of events buffered between the threads of a pipelined parse. */
+    public static final String PIPELINE_BUFFER_SIZE = "http://cyberneko.org/html/properties/pipeline/buffer-size";
+
+    /** How the threads of a pipelined parse wait for each other: { "spin", "yield", "park" }. */
+    public static final String PIPELINE_WAIT_STRATEGY = "http://cyberneko.org/html/properties/pipeline/wait-strategy";
+
     // other
 
     /** Error domain. */
@@ -154,10 +192,52 @@ public class HTMLConfiguration extends ParserConfigurationSettings implements XM
      */
     protected boolean fCloseStream;
 
+    /** Parse statistics of the current document, or null. */
+    protected HTMLParseStatistics fStatistics;
+
+    /** Statistics collected for the parser metrics, or null. */
+    private HTMLParseStatistics fMetricsStatistics;
+
+    /** True if the settings changed since the last reset. */
+    private boolean fDirty = true;
+
+    /** Snapshot of the settings, or null if a setting changed since it was built. */
+    private HTMLSettings fHTMLSettings;
+
+    /** Number of components reset only when the settings change. */
+    private final int fBuiltinComponents;
+
+    /** Last source of the pipeline, whose handler is the document handler. */
+    private XMLDocumentSource fLastSource;
+
+    /** Profiler of the pipeline, or null. */
+    private HTMLPipelineProfiler fProfiler;
+
+    /** Slow parse recorder, or null. */
+    private HTMLSlowParseRecorder fSlowParseRecorder;
+
+    /** True if the parser metrics were registered at the last reset. */
+    private boolean fMetricsRegistered;
+
+    /** Buffer of the errors of the current document, or null. */
+    protected HTMLErrorBuffer fErrorBuffer;
+
+    /** Captured input of the current document, or null. */
+    private HTMLSlowParseRecorder.Capture fCapture;
+
+    /** Flight recorder event of the current document, or null. */
+    private Object fParseEvent;
+
+    /** Ring between the scanner and the rest of the pipeline if pipelined, or null. */
+    private HTMLEventRing fEventRing;
+
+    /** True until the current document is first parsed. */
+    private boolean fDocumentStart;
+
     // components
 
     /** Components. */
-    protected final Vector<HTMLComponent> fHTMLComponents = new Vector<>(2);
+    protected final List<HTMLComponent> fHTMLComponents = new ArrayList<>(4);
 
     // pipeline
 
@@ -193,7 +273,8 @@ public class HTMLConfiguration extends ParserConfigurationSettings implements XM
 
         // recognized features
         final String VALIDATION = "http://xml.org/sax/features/validation";
-        final String[] recognizedFeatures = { AUGMENTATIONS, NAMESPACES, VALIDATION, REPORT_ERRORS, SIMPLE_ERROR_FORMAT, BALANCE_TAGS, };
+        final String[] recognizedFeatures =
+                { AUGMENTATIONS, NAMESPACES, VALIDATION, REPORT_ERRORS, SIMPLE_ERROR_FORMAT, BALANCE_TAGS, PIPELINED, };
         addRecognizedFeatures(recognizedFeatures);
         setFeature(AUGMENTATIONS, false);
         setFeature(NAMESPACES, true);
@@ -201,17 +282,24 @@ public class HTMLConfiguration extends ParserConfigurationSettings implements XM
         setFeature(REPORT_ERRORS, false);
         setFeature(SIMPLE_ERROR_FORMAT, false);
         setFeature(BALANCE_TAGS, true);
+        setFeature(PIPELINED, false);
 
         //
         // properties
         //
 
         // recognized properties
-        final String[] recognizedProperties = { NAMES_ELEMS, NAMES_ATTRS, FILTERS, ERROR_REPORTER, };
+        final String[] recognizedProperties =
+                { NAMES_ELEMS, NAMES_ATTRS, FILTERS, ERROR_REPORTER, PROFILER, SLOW_PARSE_RECORDER, ERROR_BUFFER, PIPELINE_BUFFER_SIZE,
+                        PIPELINE_WAIT_STRATEGY, };
         addRecognizedProperties(recognizedProperties);
         setProperty(NAMES_ELEMS, "upper");
         setProperty(NAMES_ATTRS, "lower");
         setProperty(ERROR_REPORTER, fErrorReporter);
+        setProperty(PIPELINE_BUFFER_SIZE, 1024);
+        setProperty(PIPELINE_WAIT_STRATEGY, "park");
+
+        fBuiltinComponents = fHTMLComponents.size();
 
     } // <init>()
 
@@ -237,9 +325,12 @@ public class HTMLConfiguration extends ParserConfigurationSettings implements XM
      * Otherwise, events may appear out of sequence.
      *
      * @param inputSource The new input source to start scanning.
+     * @exception IllegalStateException Thrown while a pipelined parse
+     *                                  scans on a helper thread.
      * @see #evaluateInputSource(XMLInputSource)
      */
     public void pushInputSource(final XMLInputSource inputSource) {
+        checkNotPipelined();
         fDocumentScanner.pushInputSource(inputSource);
     } // pushInputSource(XMLInputSource)
 
@@ -248,9 +339,12 @@ public class HTMLConfiguration extends ParserConfigurationSettings implements XM
      * the output written by an embedded script).
      *
      * @param inputSource The new input source to start scanning.
+     * @exception IllegalStateException Thrown while a pipelined parse
+     *                                  scans on a helper thread.
      * @see #pushInputSource(XMLInputSource)
      */
     public void evaluateInputSource(final XMLInputSource inputSource) {
+        checkNotPipelined();
         fDocumentScanner.evaluateInputSource(inputSource);
     } // evaluateInputSource(XMLInputSource)
 
@@ -261,9 +355,11 @@ public class HTMLConfiguration extends ParserConfigurationSettings implements XM
     @Override
     public void setFeature(final String featureId, final boolean state) {
         super.setFeature(featureId, state);
+        fDirty = true;
+        fHTMLSettings = null;
         final int size = fHTMLComponents.size();
         for (int i = 0; i < size; i++) {
-            final HTMLComponent component = fHTMLComponents.elementAt(i);
+            final HTMLComponent component = fHTMLComponents.get(i);
             component.setFeature(featureId, state);
         }
     } // setFeature(String,boolean)
@@ -272,6 +368,8 @@ public class HTMLConfiguration extends ParserConfigurationSettings implements XM
     @Override
     public void setProperty(final String propertyId, final Object value) {
         super.setProperty(propertyId, value);
+        fDirty = true;
+        fHTMLSettings = null;
 
         if (propertyId.equals(FILTERS)) {
             final XMLDocumentFilter[] filters = (XMLDocumentFilter[]) getProperty(FILTERS);
@@ -286,7 +384,7 @@ public class HTMLConfiguration extends ParserConfigurationSettings implements XM
 
         final int size = fHTMLComponents.size();
         for (int i = 0; i < size; i++) {
-            final HTMLComponent component = fHTMLComponents.elementAt(i);
+            final HTMLComponent component = fHTMLComponents.get(i);
             component.setProperty(propertyId, value);
         }
     } // setProperty(String,Object)
@@ -298,6 +396,12 @@ public class HTMLConfiguration extends ParserConfigurationSettings implements XM
         if (handler instanceof HTMLTagBalancingListener) {
             fTagBalancer.setTagBalancingListener((HTMLTagBalancingListener) handler);
         }
+        if (fDirty || fLastSource == null || fProfiler != null) {
+            fDirty = true;
+        } else {
+            // only the end of the pipeline changes
+            fLastSource.setDocumentHandler(handler);
+        }
     } // setDocumentHandler(XMLDocumentHandler)
 
     /** Returns the document handler. */
@@ -396,9 +500,23 @@ public class HTMLConfiguration extends ParserConfigurationSettings implements XM
      */
     @Override
     public void setInputSource(final XMLInputSource inputSource) throws IOException {
-        reset();
+        if (fDirty || fMetricsRegistered != HTMLParserMetrics.isRegistered()) {
+            reset();
+        } else {
+            resetFilters();
+        }
+        if (fStatistics != null) {
+            fStatistics.reset();
+        }
+        if (fErrorBuffer != null) {
+            fErrorBuffer.clear();
+            fErrorBuffer.setReporter(fErrorReporter);
+        }
         fCloseStream = inputSource.getByteStream() == null && inputSource.getCharacterStream() == null;
-        fDocumentScanner.setInputSource(inputSource);
+        fParseEvent = HTMLFlightRecorder.beginParse();
+        fCapture = fSlowParseRecorder != null ? fSlowParseRecorder.capture(inputSource) : null;
+        fDocumentScanner.setInputSource(fCapture != null ? fCapture.getInputSource() : inputSource);
+        fDocumentStart = true;
     } // setInputSource(XMLInputSource)
 
     /**
@@ -419,15 +537,41 @@ public class HTMLConfiguration extends ParserConfigurationSettings implements XM
      */
     @Override
     public boolean parse(final boolean complete) throws IOException {
+        final long start = fStatistics != null ? System.nanoTime() : 0;
+        boolean ended = true;
+        boolean failed = true;
         try {
-            final boolean more = fDocumentScanner.scanDocument(complete);
+            final boolean more;
+            if (fEventRing != null && complete && fDocumentStart) {
+                fDocumentStart = false;
+                fEventRing.run(fDocumentScanner, fErrorReporter);
+                more = false;
+            } else {
+                fDocumentStart = false;
+                more = fDocumentScanner.scanDocument(complete);
+            }
             if (!more) {
+                endParseEvent();
                 cleanup();
             }
+            ended = !more;
+            failed = false;
             return more;
         } catch (final XNIException | IOException e) {
+            endParseEvent();
             cleanup();
             throw e;
+        } finally {
+            if (fStatistics != null) {
+                fStatistics.fParseTime += System.nanoTime() - start;
+                if (ended && HTMLParserMetrics.isRegistered()) {
+                    HTMLParserMetrics.getInstance().documentParsed(fStatistics, failed);
+                }
+            }
+            if (ended && fCapture != null) {
+                fCapture.end(this);
+                fCapture = null;
+            }
         }
     } // parse(boolean):boolean
 
@@ -441,15 +585,102 @@ public class HTMLConfiguration extends ParserConfigurationSettings implements XM
         fDocumentScanner.cleanup(fCloseStream);
     } // cleanup()
 
+    /**
+     * Asks the parser to end the current document before the next token.
+     * Nothing more is read from the input; the tag balancer, if enabled,
+     * closes the open elements and the document handler receives
+     * <code>endDocument</code> as usual, after which the parser releases
+     * its resources as for a complete parse. This may be called from a
+     * document handler or filter, or from another thread.
+     */
+    public void stopParsing() {
+        final HTMLEventRing ring = fEventRing;
+        if (ring != null) {
+            ring.stop();
+        }
+        fDocumentScanner.stopScanning();
+    } // stopParsing()
+
+    /**
+     * Returns the limit exceeded by the current or last document, e.g.
+     * {@link HTMLScanner#MAX_CHARACTERS}, or null if it is within its
+     * limits. When a document is truncated at a limit, this tells it apart
+     * from a complete document even if errors are not reported.
+     */
+    public String getLimitExceeded() {
+        return fDocumentScanner.getLimitExceeded();
+    } // getLimitExceeded():String
+
     //
     // Protected methods
     //
 
+    /** Returns the snapshot of the settings, building it if a setting changed. */
+    HTMLSettings getHTMLSettings() {
+        if (fHTMLSettings == null) {
+            fHTMLSettings = new HTMLSettings(this);
+        }
+        return fHTMLSettings;
+    } // getHTMLSettings():HTMLSettings
+
+    /**
+     * Returns the features and the properties with a simple value, keyed
+     * by "feature <i>id</i>" or "property <i>id</i>".
+     */
+    Map<String, String> getSettings() {
+        final Map<String, String> settings = new TreeMap<>();
+        for (final Object id : fRecognizedFeatures) {
+            final Object value = fFeatures.get(id);
+            if (value != null) {
+                settings.put("feature " + id, value.toString());
+            }
+        }
+        for (final Object id : fRecognizedProperties) {
+            final Object value = fProperties.get(id);
+            if ((value instanceof String || value instanceof Number || value instanceof Boolean) && isToken(value.toString())) {
+                settings.put("property " + id, value.toString());
+            }
+        }
+        return settings;
+    } // getSettings():Map<String,String>
+
+    /** Returns the identifiers of the recognized features. */
+    Set<String> getRecognizedFeatureIds() {
+        final Set<String> ids = new HashSet<>();
+        for (final Object id : fRecognizedFeatures) {
+            ids.add((String) id);
+        }
+        return ids;
+    } // getRecognizedFeatureIds():Set<String>
+
+    /** Returns the identifiers of the recognized properties. */
+    Set<String> getRecognizedPropertyIds() {
+        final Set<String> ids = new HashSet<>();
+        for (final Object id : fRecognizedProperties) {
+            ids.add((String) id);
+        }
+        return ids;
+    } // getRecognizedPropertyIds():Set<String>
+
+    /** Returns true if the string is a non empty token of a settings line. */
+    private static boolean isToken(final String value) {
+        return !value.isEmpty() && value.chars().noneMatch(Character::isWhitespace);
+    } // isToken(String):boolean
+
+    /** Ends the flight recorder event of the current document, if any. */
+    private void endParseEvent() {
+        if (fParseEvent != null) {
+            HTMLFlightRecorder.endParse(fParseEvent, fDocumentScanner.getExpandedSystemId(), fDocumentScanner.getEncoding(),
+                    fDocumentScanner.getCharacterOffset());
+            fParseEvent = null;
+        }
+    } // endParseEvent()
+
     /** Adds a component. */
     protected void addComponent(final HTMLComponent component) {
 
         // add component to list
-        fHTMLComponents.addElement(component);
+        fHTMLComponents.add(component);
 
         // add recognized features and set default states
         final String[] features = component.getRecognizedFeatures();
@@ -475,40 +706,111 @@ public class HTMLConfiguration extends ParserConfigurationSettings implements XM
 
     } // addComponent(HTMLComponent)
 
-    /** Resets the parser configuration. */
+    /**
+     * Resets the parser configuration. This is called before a document
+     * when the settings changed since the last reset; otherwise only the
+     * filters added with the filters property are reset.
+     */
     protected void reset() {
 
         // reset components
         final int size = fHTMLComponents.size();
         for (int i = 0; i < size; i++) {
-            final HTMLComponent component = fHTMLComponents.elementAt(i);
+            final HTMLComponent component = fHTMLComponents.get(i);
             component.reset(this);
         }
 
         // configure pipeline
+        final HTMLPipelineProfiler profiler = (HTMLPipelineProfiler) getProperty(PROFILER);
+        int stage = 0;
         XMLDocumentSource lastSource = fDocumentScanner;
         if (getFeature(NAMESPACES)) {
-            lastSource.setDocumentHandler(fNamespaceBinder);
+            lastSource.setDocumentHandler(profile(profiler, stage++, fNamespaceBinder));
             fNamespaceBinder.setDocumentSource(fTagBalancer);
             lastSource = fNamespaceBinder;
         }
         if (getFeature(BALANCE_TAGS)) {
-            lastSource.setDocumentHandler(fTagBalancer);
+            lastSource.setDocumentHandler(profile(profiler, stage++, fTagBalancer));
             fTagBalancer.setDocumentSource(fDocumentScanner);
             lastSource = fTagBalancer;
         }
+        fErrorBuffer = (HTMLErrorBuffer) getProperty(ERROR_BUFFER);
+        fStatistics = (HTMLParseStatistics) getProperty(STATISTICS);
+        if (fStatistics != null) {
+            final XMLDocumentFilter timer = new HTMLParseStatistics.HandlerTimer(fStatistics);
+            timer.setDocumentSource(lastSource);
+            lastSource.setDocumentHandler(timer);
+            lastSource = timer;
+        } else if (HTMLParserMetrics.isRegistered()) {
+            // collect the statistics needed by the metrics
+            if (fMetricsStatistics == null) {
+                fMetricsStatistics = new HTMLParseStatistics();
+            }
+            fStatistics = fMetricsStatistics;
+            fDocumentScanner.setProperty(STATISTICS, fStatistics);
+            fTagBalancer.setProperty(STATISTICS, fStatistics);
+        }
         final XMLDocumentFilter[] filters = (XMLDocumentFilter[]) getProperty(FILTERS);
         if (filters != null) {
             for (final XMLDocumentFilter filter : filters) {
                 XercesBridge.getInstance().XMLDocumentFilter_setDocumentSource(filter, lastSource);
-                lastSource.setDocumentHandler(filter);
+                lastSource.setDocumentHandler(profile(profiler, stage++, filter));
                 lastSource = filter;
             }
         }
-        lastSource.setDocumentHandler(fDocumentHandler);
+        if (fDocumentHandler != null) {
+            lastSource.setDocumentHandler(profile(profiler, stage++, fDocumentHandler));
+        } else {
+            lastSource.setDocumentHandler(null);
+        }
+        if (profiler != null) {
+            profiler.truncate(stage);
+        }
+        fLastSource = lastSource;
+        fProfiler = profiler;
+        fSlowParseRecorder = (HTMLSlowParseRecorder) getProperty(SLOW_PARSE_RECORDER);
+        if (getFeature(PIPELINED)) {
+            final int bufferSize = (int) Math.min(HTMLScanner.getLimitValue(getProperty(PIPELINE_BUFFER_SIZE)), 1 << 20);
+            final short waitStrategy = HTMLEventRing.getWaitStrategyValue(String.valueOf(getProperty(PIPELINE_WAIT_STRATEGY)));
+            if (fEventRing == null || fEventRing.getCapacity() < bufferSize || fEventRing.getWaitStrategy() != waitStrategy) {
+                fEventRing = new HTMLEventRing(bufferSize, waitStrategy);
+            }
+        } else {
+            fEventRing = null;
+        }
+        fMetricsRegistered = HTMLParserMetrics.isRegistered();
+        fDirty = false;
 
     } // reset()
 
+    /** Resets the components added after the built-in ones, i.e. the filters. */
+    protected void resetFilters() {
+        final int size = fHTMLComponents.size();
+        for (int i = fBuiltinComponents; i < size; i++) {
+            final HTMLComponent component = fHTMLComponents.get(i);
+            component.reset(this);
+        }
+    } // resetFilters()
+
+    /** Throws an exception while the scanner runs on a helper thread. */
+    private void checkNotPipelined() {
+        final HTMLEventRing ring = fEventRing;
+        if (ring != null && ring.isRunning()) {
+            throw new IllegalStateException("input sources cannot be pushed or evaluated during a pipelined parse");
+        }
+    } // checkNotPipelined()
+
+    /** Returns the locator of the errors: the ring while pipelined, since the scanner is ahead. */
+    private XMLLocator getLocator() {
+        final HTMLEventRing ring = fEventRing;
+        return ring != null && ring.isRunning() ? ring : fDocumentScanner;
+    } // getLocator():XMLLocator
+
+    /** Returns the handler of a pipeline stage, decorated if profiling. */
+    private static XMLDocumentHandler profile(final HTMLPipelineProfiler profiler, final int stage, final XMLDocumentHandler handler) {
+        return profiler != null ? profiler.decorate(stage, handler) : handler;
+    } // profile(HTMLPipelineProfiler,int,XMLDocumentHandler):XMLDocumentHandler
+
     //
     // Interfaces
     //
@@ -572,7 +874,12 @@ public class HTMLConfiguration extends ParserConfigurationSettings implements XM
         /** Reports a warning. */
         @Override
         public void reportWarning(final String key, final Object[] args) {
-            if (fErrorHandler != null) {
+            if (fStatistics != null) {
+                fStatistics.addError(key);
+            }
+            if (fErrorBuffer != null) {
+                bufferError(key, args, true);
+            } else if (fErrorHandler != null) {
                 fErrorHandler.warning(ERROR_DOMAIN, key, createException(key, args));
             }
         } // reportWarning(String,Object[])
@@ -580,7 +887,12 @@ public class HTMLConfiguration extends ParserConfigurationSettings implements XM
         /** Reports an error. */
         @Override
         public void reportError(final String key, final Object[] args) {
-            if (fErrorHandler != null) {
+            if (fStatistics != null) {
+                fStatistics.addError(key);
+            }
+            if (fErrorBuffer != null) {
+                bufferError(key, args, false);
+            } else if (fErrorHandler != null) {
                 fErrorHandler.error(ERROR_DOMAIN, key, createException(key, args));
             }
         } // reportError(String,Object[])
@@ -589,10 +901,16 @@ public class HTMLConfiguration extends ParserConfigurationSettings implements XM
         // Protected methods
         //
 
+        /** Records an error in the error buffer, without formatting it. */
+        protected void bufferError(final String key, final Object[] args, final boolean warning) {
+            final XMLLocator locator = getLocator();
+            fErrorBuffer.add(key, args, warning, locator.getLineNumber(), locator.getColumnNumber(), locator.getCharacterOffset());
+        } // bufferError(String,Object[],boolean)
+
         /** Creates parse exception. */
         protected XMLParseException createException(final String key, final Object[] args) {
             final String message = formatMessage(key, args);
-            return new XMLParseException(fDocumentScanner, message);
+            return new XMLParseException(getLocator(), message);
         } // createException(String,Object[]):XMLParseException
 
         /** Format simple message. */
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.apache.xerces.xni.XMLDocumentHandler;
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/**
+ * A thread-safe service for parsing many small documents with XNI
+ * handlers. Configured {@link HTMLConfiguration} instances are kept in a
+ * pool and reused. Since the settings of a pooled configuration never
+ * change, the configuration only resets the per-document state of its
+ * components between documents and keeps its pipeline, instead of
+ * reading every feature and property again.
+ * <p>
+ * Features and properties are checked when set on the pool; unrecognized
+ * ones are reported with an <code>XMLConfigurationException</code>.
+ * Filters are given with {@link #setFilters} so that each configuration
+ * has its own.
+ * <p>
+ * A borrowed configuration must be released to the pool and its settings
+ * must not be changed while it is borrowed.
+ */
+public class HTMLConfigurationPool {
+
+    //
+    // Constants
+    //
+
+    /** Default maximum number of idle configurations. */
+    public static final int DEFAULT_MAX_IDLE = 16;
+
+    //
+    // Data
+    //
+
+    /** Idle configurations and settings. */
+    protected final HTMLObjectPool<PooledConfiguration> fPool;
+
+    //
+    // Constructors
+    //
+
+    /** Default constructor. */
+    public HTMLConfigurationPool() {
+        this(DEFAULT_MAX_IDLE);
+    } // <init>()
+
+    /** Constructs a pool keeping at most the given number of idle configurations. */
+    public HTMLConfigurationPool(final int maxIdle) {
+        fPool = new HTMLObjectPool<>(maxIdle, config -> config.fGeneration, new String[0], new String[0]);
+    } // <init>(int)
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Sets a feature on all the configurations of the pool. Idle
+     * configurations are discarded and configurations in use are not
+     * returned to the pool.
+     */
+    public void setFeature(final String featureId, final boolean state) {
+        fPool.setFeature(featureId, state);
+    } // setFeature(String,boolean)
+
+    /**
+     * Sets a property on all the configurations of the pool. Idle
+     * configurations are discarded and configurations in use are not
+     * returned to the pool.
+     */
+    public void setProperty(final String propertyId, final Object value) {
+        fPool.setProperty(propertyId, value);
+    } // setProperty(String,Object)
+
+    /**
+     * Sets the factory of the filters of the configurations, which must
+     * return new filter instances on each call. Filters cannot be set with
+     * the filters property since the configurations parse concurrently.
+     */
+    public void setFilters(final Supplier<XMLDocumentFilter[]> filters) {
+        fPool.setFilters(filters);
+    } // setFilters(Supplier<XMLDocumentFilter[]>)
+
+    /** Parses a document, sending its events to the given handler. */
+    public void parse(final XMLInputSource source, final XMLDocumentHandler handler) throws IOException {
+        final HTMLConfiguration config = borrow();
+        try {
+            config.setDocumentHandler(handler);
+            config.parse(source);
+        } finally {
+            release(config);
+        }
+    } // parse(XMLInputSource,XMLDocumentHandler)
+
+    /**
+     * Returns an idle configuration or a new one, e.g. to parse a document
+     * incrementally. It must be given back with {@link #release}.
+     */
+    public HTMLConfiguration borrow() {
+        final PooledConfiguration config = fPool.poll();
+        return config != null ? config : createConfiguration();
+    } // borrow():HTMLConfiguration
+
+    /** Returns a configuration obtained with {@link #borrow} to the pool. */
+    public void release(final HTMLConfiguration configuration) {
+        final PooledConfiguration config = (PooledConfiguration) configuration;
+        config.setDocumentHandler(null);
+        fPool.offer(config);
+    } // release(HTMLConfiguration)
+
+    /** Returns the number of idle configurations. */
+    public int getIdleCount() {
+        return fPool.getIdleCount();
+    } // getIdleCount():int
+
+    //
+    // Protected methods
+    //
+
+    /**
+     * Creates a configuration with the current settings and new filters.
+     * The properties and filters are set first, so that the features of
+     * the filters are recognized.
+     */
+    protected PooledConfiguration createConfiguration() {
+        synchronized (fPool) {
+            final PooledConfiguration config = new PooledConfiguration(fPool.getGeneration());
+            for (final Map.Entry<String, Object> entry : fPool.getProperties().entrySet()) {
+                config.setProperty(entry.getKey(), entry.getValue());
+            }
+            final XMLDocumentFilter[] filters = fPool.newFilters();
+            if (filters != null) {
+                config.setProperty(HTMLConfiguration.FILTERS, filters);
+            }
+            for (final Map.Entry<String, Boolean> entry : fPool.getFeatures().entrySet()) {
+                config.setFeature(entry.getKey(), entry.getValue());
+            }
+            return config;
+        }
+    } // createConfiguration():PooledConfiguration
+
+    //
+    // Classes
+    //
+
+    /** A configuration tagged with the settings generation it was built for. */
+    protected static class PooledConfiguration extends HTMLConfiguration {
+
+        //
+        // Data
+        //
+
+        /** Settings generation. */
+        protected final int fGeneration;
+
+        //
+        // Constructors
+        //
+
+        /** Constructs a configuration for the given settings generation. */
+        protected PooledConfiguration(final int generation) {
+            fGeneration = generation;
+        } // <init>(int)
+
+    } // class PooledConfiguration
+
+} // class HTMLConfigurationPool
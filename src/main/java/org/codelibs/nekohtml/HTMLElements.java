@@ -16,6 +16,8 @@
 
 package org.codelibs.nekohtml;
 
+import org.apache.xerces.xni.Augmentations;
+
 /**
  * Collection of HTML element information.
  *
@@ -183,6 +185,15 @@ public class HTMLElements {
     public static final short XMP = XML + 1;
     public static final short UNKNOWN = XMP + 1;
 
+    // augmentations
+
+    /**
+     * Augmentation item key under which the resolved element information
+     * is passed along with start, empty and end element events when the
+     * "http://cyberneko.org/html/features/augmentations" feature is set.
+     */
+    public static final String ELEMENT_AUGMENTATION = "http://cyberneko.org/html/augmentations/element";
+
     // information
 
     /** Element information organized by first letter. */
@@ -578,6 +589,24 @@ public class HTMLElements {
         return element;
     } // getElement(String):Element
 
+    /**
+     * Returns the element information passed along with an element event
+     * or, if the event carries none, the element information for the
+     * specified element name.
+     *
+     * @param augs The augmentations of the element event, may be null.
+     * @param ename The element name.
+     */
+    public static final Element getElement(final Augmentations augs, final String ename) {
+        if (augs != null) {
+            final Object item = augs.getItem(ELEMENT_AUGMENTATION);
+            if (item instanceof Element) {
+                return (Element) item;
+            }
+        }
+        return getElement(ename);
+    } // getElement(Augmentations,String):Element
+
     /**
      * Returns the element information for the specified element name.
      *
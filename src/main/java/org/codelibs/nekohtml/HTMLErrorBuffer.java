@@ -0,0 +1,243 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.util.Arrays;
+
+/**
+ * Collects the errors and warnings of a document without formatting
+ * them. To use it, set the
+ * <code>http://cyberneko.org/html/features/report-errors</code> feature
+ * and an instance as the {@link HTMLConfiguration#ERROR_BUFFER} property.
+ * <p>
+ * The error reporter of the configuration then records the code,
+ * severity, location and arguments of each error in parallel arrays
+ * instead of formatting a message and calling the error handler. The
+ * messages are only formatted by {@link #getMessage}. The buffer is
+ * cleared when the next document starts.
+ * <p>
+ * The error keys of the components are "HTML" followed by a number, the
+ * code; other keys are kept as they are.
+ */
+public class HTMLErrorBuffer {
+
+    //
+    // Data
+    //
+
+    /** The maximum number of errors kept. */
+    private final int fCapacity;
+
+    /** Number of errors. */
+    private int fSize;
+
+    /** Number of errors dropped because the buffer was full. */
+    private int fDropped;
+
+    /** Error codes, or -1 for other keys. */
+    private int[] fCodes = new int[16];
+
+    /** True for warnings. */
+    private boolean[] fWarnings = new boolean[16];
+
+    /** Line numbers. */
+    private int[] fLines = new int[16];
+
+    /** Column numbers. */
+    private int[] fColumns = new int[16];
+
+    /** Character offsets. */
+    private int[] fOffsets = new int[16];
+
+    /** Arguments. */
+    private Object[][] fArgs = new Object[16][];
+
+    /** Keys that are not "HTML" followed by a code, or null. */
+    private String[] fOtherKeys;
+
+    /** The reporter formatting the messages. */
+    private HTMLErrorReporter fReporter;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs an unbounded error buffer. */
+    public HTMLErrorBuffer() {
+        this(Integer.MAX_VALUE);
+    } // <init>()
+
+    /**
+     * Constructs an error buffer keeping up to the given number of errors
+     * of a document.
+     *
+     * @param capacity The maximum number of errors kept.
+     */
+    public HTMLErrorBuffer(final int capacity) {
+        fCapacity = capacity;
+    } // <init>(int)
+
+    //
+    // Public methods
+    //
+
+    /** Returns the number of errors and warnings. */
+    public int size() {
+        return fSize;
+    } // size():int
+
+    /** Returns the number of errors and warnings dropped because the buffer was full. */
+    public int getDropped() {
+        return fDropped;
+    } // getDropped():int
+
+    /** Returns the code of an error, e.g. 2004 for HTML2004, or -1 for other keys. */
+    public int getCode(final int index) {
+        checkIndex(index);
+        return fCodes[index];
+    } // getCode(int):int
+
+    /** Returns the key of an error. */
+    public String getKey(final int index) {
+        checkIndex(index);
+        return fCodes[index] != -1 ? "HTML" + fCodes[index] : fOtherKeys[index];
+    } // getKey(int):String
+
+    /** Returns true if the error is a warning. */
+    public boolean isWarning(final int index) {
+        checkIndex(index);
+        return fWarnings[index];
+    } // isWarning(int):boolean
+
+    /** Returns the line number of an error. */
+    public int getLineNumber(final int index) {
+        checkIndex(index);
+        return fLines[index];
+    } // getLineNumber(int):int
+
+    /** Returns the column number of an error. */
+    public int getColumnNumber(final int index) {
+        checkIndex(index);
+        return fColumns[index];
+    } // getColumnNumber(int):int
+
+    /** Returns the character offset of an error. */
+    public int getCharacterOffset(final int index) {
+        checkIndex(index);
+        return fOffsets[index];
+    } // getCharacterOffset(int):int
+
+    /** Returns the arguments of an error, or null. */
+    public Object[] getArguments(final int index) {
+        checkIndex(index);
+        return fArgs[index];
+    } // getArguments(int):Object[]
+
+    /** Formats the message of an error. */
+    public String getMessage(final int index) {
+        checkIndex(index);
+        return fReporter.formatMessage(getKey(index), fArgs[index]);
+    } // getMessage(int):String
+
+    /** Clears the buffer. */
+    public void clear() {
+        Arrays.fill(fArgs, 0, fSize, null);
+        if (fOtherKeys != null) {
+            Arrays.fill(fOtherKeys, 0, fSize, null);
+        }
+        fSize = 0;
+        fDropped = 0;
+    } // clear()
+
+    //
+    // Package methods
+    //
+
+    /** Sets the reporter formatting the messages. */
+    void setReporter(final HTMLErrorReporter reporter) {
+        fReporter = reporter;
+    } // setReporter(HTMLErrorReporter)
+
+    /** Records an error. */
+    void add(final String key, final Object[] args, final boolean warning, final int line, final int column, final int offset) {
+        if (fSize == fCapacity) {
+            fDropped++;
+            return;
+        }
+        if (fSize == fCodes.length) {
+            grow();
+        }
+        final int code = parseCode(key);
+        if (code == -1) {
+            if (fOtherKeys == null) {
+                fOtherKeys = new String[fCodes.length];
+            }
+            fOtherKeys[fSize] = key;
+        }
+        fCodes[fSize] = code;
+        fWarnings[fSize] = warning;
+        fLines[fSize] = line;
+        fColumns[fSize] = column;
+        fOffsets[fSize] = offset;
+        fArgs[fSize] = args;
+        fSize++;
+    } // add(String,Object[],boolean,int,int,int)
+
+    //
+    // Private methods
+    //
+
+    /** Returns the code of a key, or -1 if it is not "HTML" followed by digits. */
+    private static int parseCode(final String key) {
+        final int length = key.length();
+        if (length < 5 || length > 12 || !key.startsWith("HTML")) {
+            return -1;
+        }
+        int code = 0;
+        for (int i = 4; i < length; i++) {
+            final char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            code = code * 10 + c - '0';
+        }
+        // leading zeros would not survive the round trip
+        return key.charAt(4) == '0' && length > 5 ? -1 : code;
+    } // parseCode(String):int
+
+    /** Grows the arrays. */
+    private void grow() {
+        final int length = fCodes.length * 2;
+        fCodes = Arrays.copyOf(fCodes, length);
+        fWarnings = Arrays.copyOf(fWarnings, length);
+        fLines = Arrays.copyOf(fLines, length);
+        fColumns = Arrays.copyOf(fColumns, length);
+        fOffsets = Arrays.copyOf(fOffsets, length);
+        fArgs = Arrays.copyOf(fArgs, length);
+        if (fOtherKeys != null) {
+            fOtherKeys = Arrays.copyOf(fOtherKeys, length);
+        }
+    } // grow()
+
+    /** Checks an index. */
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= fSize) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + fSize);
+        }
+    } // checkIndex(int)
+
+} // class HTMLErrorBuffer
@@ -0,0 +1,467 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.apache.xerces.util.XMLAttributesImpl;
+import org.apache.xerces.util.XMLResourceIdentifierImpl;
+import org.apache.xerces.util.XMLStringBuffer;
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLDocumentHandler;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XMLString;
+import org.codelibs.nekohtml.xercesbridge.XercesBridge;
+
+/**
+ * A recorded document event. The names, attributes, text and
+ * augmentations of the event are copies, so an event stays valid after
+ * the handler call it was recorded from; the locator and the namespace
+ * context of a start document event are kept as they are.
+ * <p>
+ * Events are meant to be reused: recording an event overwrites the
+ * previous one, and the attributes, text and augmentations keep their
+ * storage. The location and the element information of the scanner are
+ * copied into fields of the event rather than into a new map.
+ */
+public class HTMLEvent {
+
+    //
+    // Constants
+    //
+
+    /** Event type: start document. */
+    public static final int START_DOCUMENT = 0;
+
+    /** Event type: XML declaration. */
+    public static final int XML_DECL = 1;
+
+    /** Event type: doctype declaration. */
+    public static final int DOCTYPE_DECL = 2;
+
+    /** Event type: comment. */
+    public static final int COMMENT = 3;
+
+    /** Event type: processing instruction. */
+    public static final int PROCESSING_INSTRUCTION = 4;
+
+    /** Event type: start element. */
+    public static final int START_ELEMENT = 5;
+
+    /** Event type: empty element. */
+    public static final int EMPTY_ELEMENT = 6;
+
+    /** Event type: characters. */
+    public static final int CHARACTERS = 7;
+
+    /** Event type: ignorable whitespace. */
+    public static final int IGNORABLE_WHITESPACE = 8;
+
+    /** Event type: start general entity. */
+    public static final int START_GENERAL_ENTITY = 9;
+
+    /** Event type: text declaration. */
+    public static final int TEXT_DECL = 10;
+
+    /** Event type: end general entity. */
+    public static final int END_GENERAL_ENTITY = 11;
+
+    /** Event type: start CDATA section. */
+    public static final int START_CDATA = 12;
+
+    /** Event type: end CDATA section. */
+    public static final int END_CDATA = 13;
+
+    /** Event type: end element. */
+    public static final int END_ELEMENT = 14;
+
+    /** Event type: end document. */
+    public static final int END_DOCUMENT = 15;
+
+    /** Event type: error reported by a component. */
+    public static final int ERROR = 16;
+
+    /** Event type: warning reported by a component. */
+    public static final int WARNING = 17;
+
+    //
+    // Data
+    //
+
+    /** The event type. */
+    int fType;
+
+    /** The element name. */
+    final QName fElement = new QName();
+
+    /** The attributes. */
+    final XMLAttributesImpl fAttributes = new XMLAttributesImpl();
+
+    /** The text. */
+    final XMLStringBuffer fText = new XMLStringBuffer();
+
+    /** The string values. */
+    final String[] fValues = new String[3];
+
+    /** The resource identifier of an entity, or null. */
+    XMLResourceIdentifier fIdentifier;
+
+    /** The arguments of an error, or null. */
+    Object[] fArguments;
+
+    /** The locator of a start document event, or null. */
+    XMLLocator fLocator;
+
+    /** The namespace context of a start document event, or null. */
+    NamespaceContext fNamespaceContext;
+
+    /** The augmentations, or null. */
+    Augmentations fAugmentations;
+
+    /** Temporary name. */
+    private final QName fQName = new QName();
+
+    /** The storage of the augmentations. */
+    private final EventAugmentations fItems = new EventAugmentations();
+
+    //
+    // Public methods
+    //
+
+    /** Returns the event type. */
+    public int getType() {
+        return fType;
+    } // getType():int
+
+    /** Returns the element name of a start, empty or end element event. */
+    public QName getElement() {
+        return fElement;
+    } // getElement():QName
+
+    /** Returns the attributes of a start or empty element event. */
+    public XMLAttributes getAttributes() {
+        return fAttributes;
+    } // getAttributes():XMLAttributes
+
+    /** Returns the text of a characters, whitespace, comment or processing instruction event. */
+    public XMLString getText() {
+        return fText;
+    } // getText():XMLString
+
+    /**
+     * Returns a string value of the event: version, encoding and
+     * standalone of declarations; root, public and system identifiers of
+     * doctype declarations; the target of processing instructions; name
+     * and encoding of general entities; the encoding of start document;
+     * the key of errors.
+     */
+    public String getValue(final int index) {
+        return fValues[index];
+    } // getValue(int):String
+
+    /** Returns the arguments of an error, or null. */
+    public Object[] getArguments() {
+        return fArguments;
+    } // getArguments():Object[]
+
+    /** Returns the augmentations, or null. */
+    public Augmentations getAugmentations() {
+        return fAugmentations;
+    } // getAugmentations():Augmentations
+
+    /**
+     * Sends the event to a document handler. Errors and warnings are not
+     * document events and are ignored.
+     */
+    public void send(final XMLDocumentHandler handler) {
+        switch (fType) {
+        case START_DOCUMENT:
+            XercesBridge.getInstance().XMLDocumentHandler_startDocument(handler, fLocator, fValues[1], fNamespaceContext, fAugmentations);
+            break;
+        case XML_DECL:
+            handler.xmlDecl(fValues[0], fValues[1], fValues[2], fAugmentations);
+            break;
+        case DOCTYPE_DECL:
+            handler.doctypeDecl(fValues[0], fValues[1], fValues[2], fAugmentations);
+            break;
+        case COMMENT:
+            handler.comment(fText, fAugmentations);
+            break;
+        case PROCESSING_INSTRUCTION:
+            handler.processingInstruction(fValues[0], fText, fAugmentations);
+            break;
+        case START_ELEMENT:
+            handler.startElement(fElement, fAttributes, fAugmentations);
+            break;
+        case EMPTY_ELEMENT:
+            handler.emptyElement(fElement, fAttributes, fAugmentations);
+            break;
+        case CHARACTERS:
+            handler.characters(fText, fAugmentations);
+            break;
+        case IGNORABLE_WHITESPACE:
+            handler.ignorableWhitespace(fText, fAugmentations);
+            break;
+        case START_GENERAL_ENTITY:
+            handler.startGeneralEntity(fValues[0], fIdentifier, fValues[1], fAugmentations);
+            break;
+        case TEXT_DECL:
+            handler.textDecl(fValues[0], fValues[1], fAugmentations);
+            break;
+        case END_GENERAL_ENTITY:
+            handler.endGeneralEntity(fValues[0], fAugmentations);
+            break;
+        case START_CDATA:
+            handler.startCDATA(fAugmentations);
+            break;
+        case END_CDATA:
+            handler.endCDATA(fAugmentations);
+            break;
+        case END_ELEMENT:
+            handler.endElement(fElement, fAugmentations);
+            break;
+        case END_DOCUMENT:
+            handler.endDocument(fAugmentations);
+            break;
+        default:
+            break;
+        }
+    } // send(XMLDocumentHandler)
+
+    /** Returns a string representation of the event, for debugging. */
+    @Override
+    public String toString() {
+        switch (fType) {
+        case START_ELEMENT:
+        case EMPTY_ELEMENT:
+        case END_ELEMENT:
+            return fType + " " + fElement.rawname;
+        case CHARACTERS:
+        case IGNORABLE_WHITESPACE:
+        case COMMENT:
+            return fType + " " + fText;
+        default:
+            return fType + " " + fValues[0];
+        }
+    } // toString():String
+
+    //
+    // Package methods
+    //
+
+    /** Starts recording an event, clearing the previous one. */
+    void set(final int type, final Augmentations augs) {
+        fType = type;
+        fValues[0] = null;
+        fValues[1] = null;
+        fValues[2] = null;
+        fIdentifier = null;
+        fArguments = null;
+        fLocator = null;
+        fNamespaceContext = null;
+        fAugmentations = augs != null ? fItems.copy(augs) : null;
+    } // set(int,Augmentations)
+
+    /** Records the string values. */
+    void setValues(final String value0, final String value1, final String value2) {
+        fValues[0] = value0;
+        fValues[1] = value1;
+        fValues[2] = value2;
+    } // setValues(String,String,String)
+
+    /** Records the text. */
+    void setText(final XMLString text) {
+        fText.clear();
+        if (text != null) {
+            fText.append(text);
+        }
+    } // setText(XMLString)
+
+    /** Records the element name and attributes. */
+    void setElement(final QName element, final XMLAttributes attributes) {
+        fElement.setValues(element);
+        fAttributes.removeAllAttributes();
+        if (attributes != null) {
+            final int length = attributes.getLength();
+            for (int i = 0; i < length; i++) {
+                attributes.getName(i, fQName);
+                final int index = fAttributes.addAttribute(fQName, attributes.getType(i), attributes.getValue(i));
+                fAttributes.setNonNormalizedValue(index, attributes.getNonNormalizedValue(i));
+                fAttributes.setSpecified(index, attributes.isSpecified(i));
+            }
+        }
+    } // setElement(QName,XMLAttributes)
+
+    /** Records the resource identifier of an entity. */
+    void setIdentifier(final XMLResourceIdentifier id) {
+        fIdentifier =
+                id != null ? new XMLResourceIdentifierImpl(id.getPublicId(), id.getLiteralSystemId(), id.getBaseSystemId(),
+                        id.getExpandedSystemId()) : null;
+    } // setIdentifier(XMLResourceIdentifier)
+
+    //
+    // Classes
+    //
+
+    /**
+     * The augmentations of an event. The event information and the
+     * element information have their own fields, the location being
+     * copied into a location item owned by the event; other items, which
+     * the scanner does not add, go to a map.
+     */
+    private static final class EventAugmentations implements Augmentations {
+
+        /** Key of the event information. */
+        private static final String INFO = HTMLScanner.AUGMENTATIONS;
+
+        /** Key of the element information. */
+        private static final String ELEMENT = HTMLElements.ELEMENT_AUGMENTATION;
+
+        /** The location, when it is the event information. */
+        private final HTMLScanner.LocationItem fLocation = new HTMLScanner.LocationItem();
+
+        /** The event information, or null. */
+        private Object fInfo;
+
+        /** The element information, or null. */
+        private Object fElement;
+
+        /** Other items, or null. */
+        private HTMLAugmentations fOther;
+
+        /** Copies augmentations, returning this object. */
+        EventAugmentations copy(final Augmentations augs) {
+            removeAllItems();
+            if (augs instanceof HTMLAugmentations) {
+                // look the known items up rather than enumerating the keys
+                final HTMLAugmentations items = (HTMLAugmentations) augs;
+                int count = 0;
+                final Object info = items.getItem(INFO);
+                if (info != null) {
+                    putItem(INFO, info);
+                    count++;
+                }
+                final Object element = items.getItem(ELEMENT);
+                if (element != null) {
+                    fElement = element;
+                    count++;
+                }
+                if (items.fItems.size() == count) {
+                    return this;
+                }
+            }
+            for (final Enumeration<?> keys = augs.keys(); keys.hasMoreElements();) {
+                final String key = (String) keys.nextElement();
+                putItem(key, augs.getItem(key));
+            }
+            return this;
+        } // copy(Augmentations):EventAugmentations
+
+        /** Adds an item, copying a location. */
+        @Override
+        public Object putItem(final String key, final Object item) {
+            final Object previous;
+            if (INFO.equals(key)) {
+                previous = fInfo;
+                if (item instanceof HTMLScanner.LocationItem) {
+                    final HTMLScanner.LocationItem location = (HTMLScanner.LocationItem) item;
+                    if (location != fLocation) {
+                        fLocation.setValues(location.fBeginLineNumber, location.fBeginColumnNumber, location.fBeginCharacterOffset,
+                                location.fEndLineNumber, location.fEndColumnNumber, location.fEndCharacterOffset);
+                    }
+                    fInfo = fLocation;
+                } else {
+                    fInfo = item;
+                }
+            } else if (ELEMENT.equals(key)) {
+                previous = fElement;
+                fElement = item;
+            } else {
+                if (fOther == null) {
+                    fOther = new HTMLAugmentations();
+                }
+                previous = fOther.putItem(key, item);
+            }
+            return previous;
+        } // putItem(String,Object):Object
+
+        /** Returns an item. */
+        @Override
+        public Object getItem(final String key) {
+            if (INFO.equals(key)) {
+                return fInfo;
+            }
+            if (ELEMENT.equals(key)) {
+                return fElement;
+            }
+            return fOther != null ? fOther.getItem(key) : null;
+        } // getItem(String):Object
+
+        /** Removes an item. */
+        @Override
+        public Object removeItem(final String key) {
+            final Object previous;
+            if (INFO.equals(key)) {
+                previous = fInfo;
+                fInfo = null;
+            } else if (ELEMENT.equals(key)) {
+                previous = fElement;
+                fElement = null;
+            } else {
+                previous = fOther != null ? fOther.removeItem(key) : null;
+            }
+            return previous;
+        } // removeItem(String):Object
+
+        /** Removes all the items. */
+        @Override
+        public void removeAllItems() {
+            fInfo = null;
+            fElement = null;
+            if (fOther != null) {
+                fOther.removeAllItems();
+            }
+        } // removeAllItems()
+
+        /** Returns the keys of the items. */
+        @Override
+        public Enumeration<String> keys() {
+            final List<String> keys = new ArrayList<>(2);
+            if (fInfo != null) {
+                keys.add(INFO);
+            }
+            if (fElement != null) {
+                keys.add(ELEMENT);
+            }
+            if (fOther != null) {
+                for (final Enumeration<String> other = fOther.keys(); other.hasMoreElements();) {
+                    keys.add(other.nextElement());
+                }
+            }
+            return Collections.enumeration(keys);
+        } // keys():Enumeration
+
+    } // class EventAugmentations
+
+} // class HTMLEvent
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.util.Arrays;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLDocumentHandler;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.parser.XMLDocumentSource;
+
+/**
+ * Records document events, and the errors reported by a component when
+ * set as its error reporter, as {@link HTMLEvent}s that can be replayed
+ * later. The events are reused after {@link #clear}. If a locator is set,
+ * its location is recorded with each event.
+ */
+public class HTMLEventBuffer implements XMLDocumentHandler, HTMLErrorReporter {
+
+    //
+    // Data
+    //
+
+    /** The events. */
+    private HTMLEvent[] fEvents = new HTMLEvent[64];
+
+    /** Number of events. */
+    private int fSize;
+
+    /** The reporter formatting the messages, or null. */
+    private HTMLErrorReporter fErrorReporter;
+
+    /** The document source. */
+    private XMLDocumentSource fDocumentSource;
+
+    /** The locator whose location is recorded with each event, or null. */
+    private XMLLocator fLocator;
+
+    /** Line number of each event. */
+    private int[] fLines;
+
+    /** Column number of each event. */
+    private int[] fColumns;
+
+    /** Character offset of each event. */
+    private int[] fOffsets;
+
+    //
+    // Public methods
+    //
+
+    /** Returns the number of events. */
+    public int size() {
+        return fSize;
+    } // size():int
+
+    /** Returns an event. */
+    public HTMLEvent get(final int index) {
+        return fEvents[checkIndex(index)];
+    } // get(int):HTMLEvent
+
+    /** Returns the line number recorded with an event, or -1 if no locator is set. */
+    public int getLineNumber(final int index) {
+        return fLocator != null ? fLines[checkIndex(index)] : -1;
+    } // getLineNumber(int):int
+
+    /** Returns the column number recorded with an event, or -1 if no locator is set. */
+    public int getColumnNumber(final int index) {
+        return fLocator != null ? fColumns[checkIndex(index)] : -1;
+    } // getColumnNumber(int):int
+
+    /** Returns the character offset recorded with an event, or -1 if no locator is set. */
+    public int getCharacterOffset(final int index) {
+        return fLocator != null ? fOffsets[checkIndex(index)] : -1;
+    } // getCharacterOffset(int):int
+
+    /** Sets the locator whose location is recorded with the next events, or null. */
+    public void setLocator(final XMLLocator locator) {
+        fLocator = locator;
+        if (locator != null && fLines == null) {
+            fLines = new int[fEvents.length];
+            fColumns = new int[fEvents.length];
+            fOffsets = new int[fEvents.length];
+        }
+    } // setLocator(XMLLocator)
+
+    /** Removes the events, keeping them for reuse. */
+    public void clear() {
+        fSize = 0;
+    } // clear()
+
+    /** Sends the events to a document handler. Errors and warnings are skipped. */
+    public void replay(final XMLDocumentHandler handler) {
+        for (int i = 0; i < fSize; i++) {
+            fEvents[i].send(handler);
+        }
+    } // replay(XMLDocumentHandler)
+
+    /** Sets the reporter formatting the messages of the recorded errors. */
+    public void setErrorReporter(final HTMLErrorReporter reporter) {
+        fErrorReporter = reporter;
+    } // setErrorReporter(HTMLErrorReporter)
+
+    //
+    // HTMLErrorReporter methods
+    //
+
+    /** Formats a message with the error reporter, if set. */
+    @Override
+    public String formatMessage(final String key, final Object[] args) {
+        return fErrorReporter != null ? fErrorReporter.formatMessage(key, args) : key;
+    } // formatMessage(String,Object[]):String
+
+    /** Records a warning. */
+    @Override
+    public void reportWarning(final String key, final Object[] args) {
+        final HTMLEvent event = add(HTMLEvent.WARNING, null);
+        event.setValues(key, null, null);
+        event.fArguments = args;
+    } // reportWarning(String,Object[])
+
+    /** Records an error. */
+    @Override
+    public void reportError(final String key, final Object[] args) {
+        final HTMLEvent event = add(HTMLEvent.ERROR, null);
+        event.setValues(key, null, null);
+        event.fArguments = args;
+    } // reportError(String,Object[])
+
+    //
+    // XMLDocumentHandler methods
+    //
+
+    /** Start document. */
+    @Override
+    public void startDocument(final XMLLocator locator, final String encoding, final NamespaceContext nscontext, final Augmentations augs) {
+        final HTMLEvent event = add(HTMLEvent.START_DOCUMENT, augs);
+        event.fLocator = locator;
+        event.fNamespaceContext = nscontext;
+        event.setValues(null, encoding, null);
+    } // startDocument(XMLLocator,String,NamespaceContext,Augmentations)
+
+    /** Start document. */
+    public void startDocument(final XMLLocator locator, final String encoding, final Augmentations augs) {
+        startDocument(locator, encoding, null, augs);
+    } // startDocument(XMLLocator,String,Augmentations)
+
+    /** XML declaration. */
+    @Override
+    public void xmlDecl(final String version, final String encoding, final String standalone, final Augmentations augs) {
+        add(HTMLEvent.XML_DECL, augs).setValues(version, encoding, standalone);
+    } // xmlDecl(String,String,String,Augmentations)
+
+    /** Doctype declaration. */
+    @Override
+    public void doctypeDecl(final String root, final String publicId, final String systemId, final Augmentations augs) {
+        add(HTMLEvent.DOCTYPE_DECL, augs).setValues(root, publicId, systemId);
+    } // doctypeDecl(String,String,String,Augmentations)
+
+    /** Comment. */
+    @Override
+    public void comment(final XMLString text, final Augmentations augs) {
+        add(HTMLEvent.COMMENT, augs).setText(text);
+    } // comment(XMLString,Augmentations)
+
+    /** Processing instruction. */
+    @Override
+    public void processingInstruction(final String target, final XMLString data, final Augmentations augs) {
+        final HTMLEvent event = add(HTMLEvent.PROCESSING_INSTRUCTION, augs);
+        event.setValues(target, null, null);
+        event.setText(data);
+    } // processingInstruction(String,XMLString,Augmentations)
+
+    /** Start element. */
+    @Override
+    public void startElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+        add(HTMLEvent.START_ELEMENT, augs).setElement(element, attributes);
+    } // startElement(QName,XMLAttributes,Augmentations)
+
+    /** Empty element. */
+    @Override
+    public void emptyElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+        add(HTMLEvent.EMPTY_ELEMENT, augs).setElement(element, attributes);
+    } // emptyElement(QName,XMLAttributes,Augmentations)
+
+    /** Characters. */
+    @Override
+    public void characters(final XMLString text, final Augmentations augs) {
+        add(HTMLEvent.CHARACTERS, augs).setText(text);
+    } // characters(XMLString,Augmentations)
+
+    /** Ignorable whitespace. */
+    @Override
+    public void ignorableWhitespace(final XMLString text, final Augmentations augs) {
+        add(HTMLEvent.IGNORABLE_WHITESPACE, augs).setText(text);
+    } // ignorableWhitespace(XMLString,Augmentations)
+
+    /** Start general entity. */
+    @Override
+    public void startGeneralEntity(final String name, final XMLResourceIdentifier id, final String encoding, final Augmentations augs) {
+        final HTMLEvent event = add(HTMLEvent.START_GENERAL_ENTITY, augs);
+        event.setValues(name, encoding, null);
+        event.setIdentifier(id);
+    } // startGeneralEntity(String,XMLResourceIdentifier,String,Augmentations)
+
+    /** Text declaration. */
+    @Override
+    public void textDecl(final String version, final String encoding, final Augmentations augs) {
+        add(HTMLEvent.TEXT_DECL, augs).setValues(version, encoding, null);
+    } // textDecl(String,String,Augmentations)
+
+    /** End general entity. */
+    @Override
+    public void endGeneralEntity(final String name, final Augmentations augs) {
+        add(HTMLEvent.END_GENERAL_ENTITY, augs).setValues(name, null, null);
+    } // endGeneralEntity(String,Augmentations)
+
+    /** Start CDATA section. */
+    @Override
+    public void startCDATA(final Augmentations augs) {
+        add(HTMLEvent.START_CDATA, augs);
+    } // startCDATA(Augmentations)
+
+    /** End CDATA section. */
+    @Override
+    public void endCDATA(final Augmentations augs) {
+        add(HTMLEvent.END_CDATA, augs);
+    } // endCDATA(Augmentations)
+
+    /** End element. */
+    @Override
+    public void endElement(final QName element, final Augmentations augs) {
+        add(HTMLEvent.END_ELEMENT, augs).fElement.setValues(element);
+    } // endElement(QName,Augmentations)
+
+    /** End document. */
+    @Override
+    public void endDocument(final Augmentations augs) {
+        add(HTMLEvent.END_DOCUMENT, augs);
+    } // endDocument(Augmentations)
+
+    /** Sets the document source. */
+    @Override
+    public void setDocumentSource(final XMLDocumentSource source) {
+        fDocumentSource = source;
+    } // setDocumentSource(XMLDocumentSource)
+
+    /** Returns the document source. */
+    @Override
+    public XMLDocumentSource getDocumentSource() {
+        return fDocumentSource;
+    } // getDocumentSource():XMLDocumentSource
+
+    //
+    // Private methods
+    //
+
+    /** Returns the index if it is the index of an event. */
+    private int checkIndex(final int index) {
+        if (index < 0 || index >= fSize) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + fSize);
+        }
+        return index;
+    } // checkIndex(int):int
+
+    /** Returns the next event, recycled or new, cleared for the given type. */
+    private HTMLEvent add(final int type, final Augmentations augs) {
+        if (fSize == fEvents.length) {
+            fEvents = Arrays.copyOf(fEvents, fSize * 2);
+        }
+        if (fLocator != null) {
+            if (fLines.length < fEvents.length) {
+                fLines = Arrays.copyOf(fLines, fEvents.length);
+                fColumns = Arrays.copyOf(fColumns, fEvents.length);
+                fOffsets = Arrays.copyOf(fOffsets, fEvents.length);
+            }
+            fLines[fSize] = fLocator.getLineNumber();
+            fColumns[fSize] = fLocator.getColumnNumber();
+            fOffsets[fSize] = fLocator.getCharacterOffset();
+        }
+        HTMLEvent event = fEvents[fSize];
+        if (event == null) {
+            event = new HTMLEvent();
+            fEvents[fSize] = event;
+        }
+        fSize++;
+        event.set(type, augs);
+        return event;
+    } // add(int,Augmentations):HTMLEvent
+
+} // class HTMLEventBuffer
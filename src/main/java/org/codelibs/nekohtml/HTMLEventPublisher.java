@@ -0,0 +1,267 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/**
+ * Publishes the document events of a document as {@link HTMLEvent}s,
+ * scanning the document only as the subscriber requests events. The
+ * document is parsed with the pull parsing methods of a configuration,
+ * <code>setInputSource</code> and <code>parse(false)</code>, so no more
+ * than a few tokens are scanned ahead of the demand.
+ * <p>
+ * An event is valid until <code>onNext</code> returns: once the events
+ * scanned by a step are delivered, they are reused for the next step. A
+ * subscriber keeping events must copy what it needs. Errors of the
+ * document are reported to the error handler of the configuration as
+ * usual; an exception thrown by the parse is passed to
+ * <code>onError</code>. A subscriber throwing from <code>onNext</code>
+ * is treated as having cancelled the subscription.
+ * <p>
+ * The publisher parses a single document and accepts a single
+ * subscriber. The document is scanned on the thread calling
+ * <code>request</code>. The configuration must not be used for anything
+ * else until the subscription completes or is cancelled.
+ */
+public class HTMLEventPublisher implements Flow.Publisher<HTMLEvent> {
+
+    //
+    // Data
+    //
+
+    /** The configuration. */
+    private final HTMLConfiguration fConfiguration;
+
+    /** The input source of the document. */
+    private final XMLInputSource fInputSource;
+
+    /** True once subscribed. */
+    private final AtomicBoolean fSubscribed = new AtomicBoolean();
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a publisher parsing a document with a default configuration. */
+    public HTMLEventPublisher(final XMLInputSource inputSource) {
+        this(new HTMLConfiguration(), inputSource);
+    } // <init>(XMLInputSource)
+
+    /**
+     * Constructs a publisher.
+     *
+     * @param configuration The configuration parsing the document. Its
+     *                      document handler is replaced.
+     * @param inputSource   The input source of the document.
+     */
+    public HTMLEventPublisher(final HTMLConfiguration configuration, final XMLInputSource inputSource) {
+        fConfiguration = configuration;
+        fInputSource = inputSource;
+    } // <init>(HTMLConfiguration,XMLInputSource)
+
+    //
+    // Flow.Publisher methods
+    //
+
+    /** Subscribes to the events. A second subscriber is passed an error. */
+    @Override
+    public void subscribe(final Flow.Subscriber<? super HTMLEvent> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        if (!fSubscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(final long n) {
+                    // nothing to deliver
+                }
+
+                @Override
+                public void cancel() {
+                    // nothing to cancel
+                }
+            });
+            subscriber.onError(new IllegalStateException("the events of a document can only be published once"));
+            return;
+        }
+        subscriber.onSubscribe(new EventSubscription(subscriber));
+    } // subscribe(Flow.Subscriber)
+
+    //
+    // Classes
+    //
+
+    /**
+     * The subscription. Requests and cancellations from any thread are
+     * serialized by a work counter: the thread that raises it from zero
+     * delivers the events and scans the document, the others only record
+     * their signal.
+     */
+    private class EventSubscription implements Flow.Subscription {
+
+        /** The subscriber. */
+        private final Flow.Subscriber<? super HTMLEvent> fSubscriber;
+
+        /** The events of the current step. */
+        private final HTMLEventBuffer fBuffer = new HTMLEventBuffer();
+
+        /** Number of events requested and not yet delivered. */
+        private final AtomicLong fRequested = new AtomicLong();
+
+        /** Number of signals to process. */
+        private final AtomicInteger fWork = new AtomicInteger();
+
+        /** True once cancelled. */
+        private volatile boolean fCancelled;
+
+        /** The error of an invalid request, or null. */
+        private volatile IllegalArgumentException fInvalidRequest;
+
+        /** Index of the next event of the buffer to deliver. */
+        private int fIndex;
+
+        /** True once the input source is set. */
+        private boolean fStarted;
+
+        /** True once the document is parsed. */
+        private boolean fEnded;
+
+        /** True once the subscription is terminated. */
+        private boolean fDone;
+
+        /** Constructs a subscription. */
+        EventSubscription(final Flow.Subscriber<? super HTMLEvent> subscriber) {
+            fSubscriber = subscriber;
+        } // <init>(Flow.Subscriber)
+
+        /** Requests events. */
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                fInvalidRequest = new IllegalArgumentException("non-positive request: " + n);
+            } else {
+                long requested;
+                do {
+                    requested = fRequested.get();
+                } while (!fRequested.compareAndSet(requested, requested + n < 0 ? Long.MAX_VALUE : requested + n));
+            }
+            drain();
+        } // request(long)
+
+        /** Cancels the subscription, releasing the input. */
+        @Override
+        public void cancel() {
+            fCancelled = true;
+            drain();
+        } // cancel()
+
+        /** Processes the signals, unless another thread does. */
+        private void drain() {
+            if (fWork.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                deliver();
+                missed = fWork.addAndGet(-missed);
+            } while (missed != 0);
+        } // drain()
+
+        /** Delivers events and scans the document while there is demand. */
+        private void deliver() {
+            while (!fDone) {
+                if (fCancelled) {
+                    terminate();
+                    return;
+                }
+                final IllegalArgumentException invalid = fInvalidRequest;
+                if (invalid != null) {
+                    terminate();
+                    fSubscriber.onError(invalid);
+                    return;
+                }
+                if (fIndex == fBuffer.size() && fEnded) {
+                    fDone = true;
+                    fSubscriber.onComplete();
+                    return;
+                }
+                final long requested = fRequested.get();
+                if (requested == 0) {
+                    return;
+                }
+                if (fIndex < fBuffer.size()) {
+                    if (requested != Long.MAX_VALUE) {
+                        fRequested.decrementAndGet();
+                    }
+                    try {
+                        fSubscriber.onNext(fBuffer.get(fIndex++));
+                    } catch (final RuntimeException e) {
+                        // the subscriber broke rule 2.13: cancel it rather
+                        // than throwing into the caller of request
+                        fCancelled = true;
+                    }
+                } else if (!scan()) {
+                    return;
+                }
+            }
+        } // deliver()
+
+        /**
+         * Scans the next step of the document, reusing the events
+         * already delivered.
+         *
+         * @return False if the parse failed and the subscriber was
+         *         passed the error.
+         */
+        private boolean scan() {
+            fBuffer.clear();
+            fIndex = 0;
+            try {
+                if (!fStarted) {
+                    fStarted = true;
+                    fConfiguration.setDocumentHandler(fBuffer);
+                    fConfiguration.setInputSource(fInputSource);
+                }
+                fEnded = !fConfiguration.parse(false);
+                return true;
+            } catch (final IOException | RuntimeException e) {
+                // the configuration releases its resources when the parse fails
+                fEnded = true;
+                fDone = true;
+                fSubscriber.onError(e);
+                return false;
+            }
+        } // scan():boolean
+
+        /** Terminates the subscription, releasing the input of an unfinished parse. */
+        private void terminate() {
+            fDone = true;
+            if (fStarted && !fEnded) {
+                fEnded = true;
+                fConfiguration.cleanup();
+            }
+        } // terminate()
+
+    } // class EventSubscription
+
+} // class HTMLEventPublisher
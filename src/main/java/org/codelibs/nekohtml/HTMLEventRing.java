@@ -0,0 +1,650 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLDocumentHandler;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.parser.XMLDocumentSource;
+
+/**
+ * Connects the scanner, running on a helper thread, to the rest of the
+ * pipeline, running on the parsing thread, for the
+ * {@link HTMLConfiguration#PIPELINED} feature.
+ * <p>
+ * The scanner records its events and errors in a ring of preallocated
+ * {@link HTMLEvent}s, with the location of each one; the parsing thread
+ * replays them to the next stage, the error reporter of the
+ * configuration receiving the errors in order. During the replay the
+ * ring is the locator of the pipeline and reports the location recorded
+ * with the current event. There is a single producer and a single
+ * consumer, so the ring only needs two sequence counters; a side waits
+ * for the other with the configured wait strategy.
+ */
+final class HTMLEventRing implements XMLDocumentHandler, HTMLErrorReporter, XMLLocator {
+
+    //
+    // Constants
+    //
+
+    /** Wait strategy: spin on the sequence of the other side. */
+    static final short WAIT_SPIN = 0;
+
+    /** Wait strategy: spin, then yield the processor. */
+    static final short WAIT_YIELD = 1;
+
+    /** Wait strategy: spin, yield, then park for a short time. */
+    static final short WAIT_PARK = 2;
+
+    /** Number of spins before yielding. */
+    private static final int SPIN_TRIES = 100;
+
+    /** Number of spins before parking. */
+    private static final int YIELD_TRIES = SPIN_TRIES + 100;
+
+    /** Park time in nanoseconds. */
+    private static final long PARK_NANOS = 50000L;
+
+    /** Threads running the scanners. */
+    private static final ExecutorService EXECUTOR = HTMLHelperExecutor.newExecutor("nekohtml-scanner");
+
+    //
+    // Data
+    //
+
+    /** The events. */
+    private final HTMLEvent[] fEvents;
+
+    /** Line numbers of the events. */
+    private final int[] fLines;
+
+    /** Column numbers of the events. */
+    private final int[] fColumns;
+
+    /** Character offsets of the events. */
+    private final int[] fOffsets;
+
+    /** Entities of the events. */
+    private final HTMLScanner.CurrentEntity[] fEntities;
+
+    /** Encodings of the events. */
+    private final String[] fEncodings;
+
+    /** Index mask of the ring. */
+    private final int fMask;
+
+    /** The wait strategy. */
+    private final short fWaitStrategy;
+
+    /** Number of events published by the producer. */
+    private final AtomicLong fPublished = new AtomicLong();
+
+    /** Number of events consumed. */
+    private final AtomicLong fConsumed = new AtomicLong();
+
+    /** True once the producer ended. */
+    private volatile boolean fDone;
+
+    /** True if the consumer failed: the producer must give up. */
+    private volatile boolean fCancelled;
+
+    /** True if parsing was stopped: the remaining events are dropped. */
+    private volatile boolean fStopped;
+
+    /** Exception of the producer, or null. */
+    private volatile Throwable fFailure;
+
+    // producer state
+
+    /** The scanner, while running. */
+    private HTMLScanner fScanner;
+
+    /** The error reporter formatting the messages. */
+    private HTMLErrorReporter fErrorReporter;
+
+    /** Sequence of the next event produced. */
+    private long fProduced;
+
+    /** Last number of consumed events read by the producer. */
+    private long fConsumedCache;
+
+    // consumer state
+
+    /** Index of the current event. */
+    private int fIndex;
+
+    /** The document source. */
+    private XMLDocumentSource fDocumentSource;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructs a ring.
+     *
+     * @param size         The number of events, rounded up to a power of two.
+     * @param waitStrategy The wait strategy, as a <code>WAIT_*</code> constant.
+     */
+    HTMLEventRing(final int size, final short waitStrategy) {
+        final int capacity = Integer.highestOneBit(Math.max(size, 2) * 2 - 1);
+        fEvents = new HTMLEvent[capacity];
+        for (int i = 0; i < capacity; i++) {
+            fEvents[i] = new HTMLEvent();
+        }
+        fLines = new int[capacity];
+        fColumns = new int[capacity];
+        fOffsets = new int[capacity];
+        fEntities = new HTMLScanner.CurrentEntity[capacity];
+        fEncodings = new String[capacity];
+        fMask = capacity - 1;
+        fWaitStrategy = waitStrategy;
+    } // <init>(int,short)
+
+    //
+    // Package methods
+    //
+
+    /** Returns the wait strategy constant of a property value: "spin", "yield" or "park". */
+    static short getWaitStrategyValue(final String value) {
+        if ("spin".equals(value)) {
+            return WAIT_SPIN;
+        }
+        if ("yield".equals(value)) {
+            return WAIT_YIELD;
+        }
+        return WAIT_PARK;
+    } // getWaitStrategyValue(String):short
+
+    /** Returns the wait strategy. */
+    short getWaitStrategy() {
+        return fWaitStrategy;
+    } // getWaitStrategy():short
+
+    /** Returns the number of events of the ring. */
+    int getCapacity() {
+        return fEvents.length;
+    } // getCapacity():int
+
+    /** Returns true while a document is scanned through the ring. */
+    boolean isRunning() {
+        return fScanner != null;
+    } // isRunning():boolean
+
+    /** Drops the events not replayed yet, except the end of the document. */
+    void stop() {
+        fStopped = true;
+    } // stop()
+
+    /**
+     * Scans the document on a helper thread, replaying its events to the
+     * document handler of the scanner and its errors to the given error
+     * reporter on the calling thread. If all the helper threads are busy,
+     * the document is scanned on the calling thread instead.
+     */
+    void run(final HTMLScanner scanner, final HTMLErrorReporter reporter) throws IOException {
+        final XMLDocumentHandler handler = scanner.getDocumentHandler();
+        final HTMLErrorReporter scannerReporter = scanner.fErrorReporter;
+        fScanner = scanner;
+        fErrorReporter = scannerReporter;
+        fProduced = 0;
+        fConsumedCache = 0;
+        fPublished.set(0);
+        fConsumed.set(0);
+        fDone = false;
+        fCancelled = false;
+        fStopped = false;
+        fFailure = null;
+        scanner.setDocumentHandler(this);
+        scanner.fErrorReporter = this;
+        final Future<?> producer;
+        try {
+            producer = EXECUTOR.submit(this::produce);
+        } catch (final RejectedExecutionException e) {
+            restore(handler, scannerReporter);
+            scanner.scanDocument(true);
+            return;
+        }
+        boolean completed = false;
+        try {
+            consume(handler, reporter);
+            completed = true;
+        } finally {
+            if (!completed) {
+                fCancelled = true;
+                scanner.stopScanning();
+            }
+            join(producer);
+            restore(handler, scannerReporter);
+        }
+    } // run(HTMLScanner,HTMLErrorReporter)
+
+    //
+    // XMLLocator methods
+    //
+
+    /** Returns the public identifier of the current event. */
+    @Override
+    public String getPublicId() {
+        final HTMLScanner.CurrentEntity entity = fEntities[fIndex];
+        return entity != null ? entity.publicId : null;
+    } // getPublicId():String
+
+    /** Returns the literal system identifier of the current event. */
+    @Override
+    public String getLiteralSystemId() {
+        final HTMLScanner.CurrentEntity entity = fEntities[fIndex];
+        return entity != null ? entity.literalSystemId : null;
+    } // getLiteralSystemId():String
+
+    /** Returns the base system identifier of the current event. */
+    @Override
+    public String getBaseSystemId() {
+        final HTMLScanner.CurrentEntity entity = fEntities[fIndex];
+        return entity != null ? entity.baseSystemId : null;
+    } // getBaseSystemId():String
+
+    /** Returns the expanded system identifier of the current event. */
+    @Override
+    public String getExpandedSystemId() {
+        final HTMLScanner.CurrentEntity entity = fEntities[fIndex];
+        return entity != null ? entity.expandedSystemId : null;
+    } // getExpandedSystemId():String
+
+    /** Returns the line number of the current event. */
+    @Override
+    public int getLineNumber() {
+        return fLines[fIndex];
+    } // getLineNumber():int
+
+    /** Returns the column number of the current event. */
+    @Override
+    public int getColumnNumber() {
+        return fColumns[fIndex];
+    } // getColumnNumber():int
+
+    /** Returns the character offset of the current event. */
+    @Override
+    public int getCharacterOffset() {
+        return fOffsets[fIndex];
+    } // getCharacterOffset():int
+
+    /** Returns the encoding of the current event. */
+    @Override
+    public String getEncoding() {
+        return fEncodings[fIndex];
+    } // getEncoding():String
+
+    /** Returns the XML version of the current event. */
+    @Override
+    public String getXMLVersion() {
+        final HTMLScanner.CurrentEntity entity = fEntities[fIndex];
+        return entity != null ? entity.version : null;
+    } // getXMLVersion():String
+
+    //
+    // HTMLErrorReporter methods
+    //
+
+    /** Formats a message with the error reporter of the scanner. */
+    @Override
+    public String formatMessage(final String key, final Object[] args) {
+        return fErrorReporter != null ? fErrorReporter.formatMessage(key, args) : key;
+    } // formatMessage(String,Object[]):String
+
+    /** Records a warning. */
+    @Override
+    public void reportWarning(final String key, final Object[] args) {
+        final HTMLEvent event = next(HTMLEvent.WARNING, null);
+        event.setValues(key, null, null);
+        event.fArguments = args;
+        publish();
+    } // reportWarning(String,Object[])
+
+    /** Records an error. */
+    @Override
+    public void reportError(final String key, final Object[] args) {
+        final HTMLEvent event = next(HTMLEvent.ERROR, null);
+        event.setValues(key, null, null);
+        event.fArguments = args;
+        publish();
+    } // reportError(String,Object[])
+
+    //
+    // XMLDocumentHandler methods
+    //
+
+    /** Start document. */
+    @Override
+    public void startDocument(final XMLLocator locator, final String encoding, final NamespaceContext nscontext, final Augmentations augs) {
+        final HTMLEvent event = next(HTMLEvent.START_DOCUMENT, augs);
+        event.fLocator = this;
+        event.fNamespaceContext = nscontext;
+        event.setValues(null, encoding, null);
+        publish();
+    } // startDocument(XMLLocator,String,NamespaceContext,Augmentations)
+
+    /** Start document. */
+    public void startDocument(final XMLLocator locator, final String encoding, final Augmentations augs) {
+        startDocument(locator, encoding, null, augs);
+    } // startDocument(XMLLocator,String,Augmentations)
+
+    /** XML declaration. */
+    @Override
+    public void xmlDecl(final String version, final String encoding, final String standalone, final Augmentations augs) {
+        next(HTMLEvent.XML_DECL, augs).setValues(version, encoding, standalone);
+        publish();
+    } // xmlDecl(String,String,String,Augmentations)
+
+    /** Doctype declaration. */
+    @Override
+    public void doctypeDecl(final String root, final String publicId, final String systemId, final Augmentations augs) {
+        next(HTMLEvent.DOCTYPE_DECL, augs).setValues(root, publicId, systemId);
+        publish();
+    } // doctypeDecl(String,String,String,Augmentations)
+
+    /** Comment. */
+    @Override
+    public void comment(final XMLString text, final Augmentations augs) {
+        next(HTMLEvent.COMMENT, augs).setText(text);
+        publish();
+    } // comment(XMLString,Augmentations)
+
+    /** Processing instruction. */
+    @Override
+    public void processingInstruction(final String target, final XMLString data, final Augmentations augs) {
+        final HTMLEvent event = next(HTMLEvent.PROCESSING_INSTRUCTION, augs);
+        event.setValues(target, null, null);
+        event.setText(data);
+        publish();
+    } // processingInstruction(String,XMLString,Augmentations)
+
+    /** Start element. */
+    @Override
+    public void startElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+        next(HTMLEvent.START_ELEMENT, augs).setElement(element, attributes);
+        publish();
+    } // startElement(QName,XMLAttributes,Augmentations)
+
+    /** Empty element. */
+    @Override
+    public void emptyElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+        next(HTMLEvent.EMPTY_ELEMENT, augs).setElement(element, attributes);
+        publish();
+    } // emptyElement(QName,XMLAttributes,Augmentations)
+
+    /** Characters. */
+    @Override
+    public void characters(final XMLString text, final Augmentations augs) {
+        next(HTMLEvent.CHARACTERS, augs).setText(text);
+        publish();
+    } // characters(XMLString,Augmentations)
+
+    /** Ignorable whitespace. */
+    @Override
+    public void ignorableWhitespace(final XMLString text, final Augmentations augs) {
+        next(HTMLEvent.IGNORABLE_WHITESPACE, augs).setText(text);
+        publish();
+    } // ignorableWhitespace(XMLString,Augmentations)
+
+    /** Start general entity. */
+    @Override
+    public void startGeneralEntity(final String name, final XMLResourceIdentifier id, final String encoding, final Augmentations augs) {
+        final HTMLEvent event = next(HTMLEvent.START_GENERAL_ENTITY, augs);
+        event.setValues(name, encoding, null);
+        event.setIdentifier(id);
+        publish();
+    } // startGeneralEntity(String,XMLResourceIdentifier,String,Augmentations)
+
+    /** Text declaration. */
+    @Override
+    public void textDecl(final String version, final String encoding, final Augmentations augs) {
+        next(HTMLEvent.TEXT_DECL, augs).setValues(version, encoding, null);
+        publish();
+    } // textDecl(String,String,Augmentations)
+
+    /** End general entity. */
+    @Override
+    public void endGeneralEntity(final String name, final Augmentations augs) {
+        next(HTMLEvent.END_GENERAL_ENTITY, augs).setValues(name, null, null);
+        publish();
+    } // endGeneralEntity(String,Augmentations)
+
+    /** Start CDATA section. */
+    @Override
+    public void startCDATA(final Augmentations augs) {
+        next(HTMLEvent.START_CDATA, augs);
+        publish();
+    } // startCDATA(Augmentations)
+
+    /** End CDATA section. */
+    @Override
+    public void endCDATA(final Augmentations augs) {
+        next(HTMLEvent.END_CDATA, augs);
+        publish();
+    } // endCDATA(Augmentations)
+
+    /** End element. */
+    @Override
+    public void endElement(final QName element, final Augmentations augs) {
+        next(HTMLEvent.END_ELEMENT, augs).fElement.setValues(element);
+        publish();
+    } // endElement(QName,Augmentations)
+
+    /** End document. */
+    @Override
+    public void endDocument(final Augmentations augs) {
+        next(HTMLEvent.END_DOCUMENT, augs);
+        publish();
+    } // endDocument(Augmentations)
+
+    /** Sets the document source. */
+    @Override
+    public void setDocumentSource(final XMLDocumentSource source) {
+        fDocumentSource = source;
+    } // setDocumentSource(XMLDocumentSource)
+
+    /** Returns the document source. */
+    @Override
+    public XMLDocumentSource getDocumentSource() {
+        return fDocumentSource;
+    } // getDocumentSource():XMLDocumentSource
+
+    //
+    // Private methods
+    //
+
+    /** Gives the scanner its handler and error reporter back. */
+    private void restore(final XMLDocumentHandler handler, final HTMLErrorReporter reporter) {
+        fScanner.setDocumentHandler(handler);
+        fScanner.fErrorReporter = reporter;
+        fScanner = null;
+        fErrorReporter = null;
+        for (int i = 0; i < fEntities.length; i++) {
+            fEntities[i] = null;
+        }
+    } // restore(XMLDocumentHandler,HTMLErrorReporter)
+
+    /** Scans the document, on the helper thread. */
+    private void produce() {
+        try {
+            fScanner.scanDocument(true);
+        } catch (final Cancelled e) {
+            // the consumer failed
+        } catch (final Throwable e) {
+            fFailure = e;
+        } finally {
+            fDone = true;
+        }
+    } // produce()
+
+    /** Returns the event of the next slot, cleared for the given type, once the slot is consumed. */
+    private HTMLEvent next(final int type, final Augmentations augs) {
+        final long sequence = fProduced;
+        if (sequence - fConsumedCache >= fEvents.length) {
+            int spins = 0;
+            while (sequence - (fConsumedCache = fConsumed.get()) >= fEvents.length) {
+                if (fCancelled) {
+                    throw new Cancelled();
+                }
+                spins = idle(spins);
+            }
+        }
+        final int index = (int) sequence & fMask;
+        final HTMLEvent event = fEvents[index];
+        event.set(type, augs);
+        final HTMLScanner scanner = fScanner;
+        fLines[index] = scanner.getLineNumber();
+        fColumns[index] = scanner.getColumnNumber();
+        fOffsets[index] = scanner.getCharacterOffset();
+        fEntities[index] = scanner.fCurrentEntity;
+        fEncodings[index] = scanner.getEncoding();
+        return event;
+    } // next(int,Augmentations):HTMLEvent
+
+    /** Publishes the event of the current slot. */
+    private void publish() {
+        fPublished.lazySet(++fProduced);
+    } // publish()
+
+    /** Replays the events until the end of the document, on the calling thread. */
+    private void consume(final XMLDocumentHandler handler, final HTMLErrorReporter reporter) throws IOException {
+        long sequence = 0;
+        while (true) {
+            final long available = waitFor(sequence);
+            if (available == -1) {
+                return;
+            }
+            for (; sequence < available; sequence++) {
+                fIndex = (int) sequence & fMask;
+                final HTMLEvent event = fEvents[fIndex];
+                final int type = event.fType;
+                if (type == HTMLEvent.END_DOCUMENT) {
+                    if (handler != null) {
+                        event.send(handler);
+                    }
+                    fConsumed.lazySet(sequence + 1);
+                    return;
+                }
+                if (fStopped) {
+                    continue;
+                }
+                if (type == HTMLEvent.ERROR) {
+                    reporter.reportError(event.fValues[0], event.fArguments);
+                } else if (type == HTMLEvent.WARNING) {
+                    reporter.reportWarning(event.fValues[0], event.fArguments);
+                } else if (handler != null) {
+                    event.send(handler);
+                }
+            }
+            fConsumed.lazySet(sequence);
+        }
+    } // consume(XMLDocumentHandler,HTMLErrorReporter)
+
+    /**
+     * Waits for the event of the given sequence to be published, returning
+     * the number of published events, or -1 if the producer ended without
+     * publishing it. The exception of a failed producer is rethrown.
+     */
+    private long waitFor(final long sequence) throws IOException {
+        int spins = 0;
+        long available;
+        while ((available = fPublished.get()) <= sequence) {
+            if (fDone) {
+                available = fPublished.get();
+                if (available > sequence) {
+                    break;
+                }
+                final Throwable failure = fFailure;
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                }
+                if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                }
+                if (failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                return -1;
+            }
+            spins = idle(spins);
+        }
+        return available;
+    } // waitFor(long):long
+
+    /** Waits a little with the wait strategy, returning the new number of spins. */
+    private int idle(final int spins) {
+        if (fWaitStrategy == WAIT_SPIN || spins < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (fWaitStrategy == WAIT_YIELD || spins < YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(this, PARK_NANOS);
+        }
+        return spins + 1;
+    } // idle(int):int
+
+    /** Waits for the producer to end. */
+    private static void join(final Future<?> producer) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                producer.get();
+                break;
+            } catch (final InterruptedException e) {
+                // the scanner must not be used until the producer ended
+                interrupted = true;
+            } catch (final ExecutionException e) {
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    } // join(Future<?>)
+
+    //
+    // Classes
+    //
+
+    /** Thrown in the producer when the consumer failed. */
+    private static final class Cancelled extends RuntimeException {
+
+        /** Serialization version. */
+        private static final long serialVersionUID = 1L;
+
+        /** Constructs the exception, without a stack trace. */
+        Cancelled() {
+            super(null, null, false, false);
+        } // <init>()
+
+    } // class Cancelled
+
+} // class HTMLEventRing
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+/**
+ * Emits JDK Flight Recorder events for the parser. The events are only
+ * created while a recording is running, which is tracked with a
+ * recorder listener; otherwise each hook costs a volatile read. When the
+ * <code>jdk.jfr</code> module is not present the hooks do nothing.
+ * <p>
+ * The events are:
+ * <ul>
+ * <li><code>org.codelibs.nekohtml.Parse</code>: one per document;
+ * <li><code>org.codelibs.nekohtml.EncodingChange</code>: the scanner
+ * restarted decoding after a charset declaration;
+ * <li><code>org.codelibs.nekohtml.BalancerFixup</code>: the tag balancer
+ * synthesized at least {@link #FIXUP_THRESHOLD} events for one position
+ * of the input;
+ * <li><code>org.codelibs.nekohtml.RawText</code>: the content of a
+ * script, style or other raw text element had at least
+ * {@link #RAW_TEXT_THRESHOLD} characters.
+ * </ul>
+ */
+final class HTMLFlightRecorder {
+
+    //
+    // Constants
+    //
+
+    /** Minimum number of synthesized events of a fix-up event. */
+    static final int FIXUP_THRESHOLD = 16;
+
+    /** Minimum number of characters of a raw text event. */
+    static final int RAW_TEXT_THRESHOLD = 65536;
+
+    /** True if the flight recorder is available. */
+    private static final boolean AVAILABLE = isAvailable();
+
+    //
+    // Data
+    //
+
+    /** True while a recording is running. */
+    private static volatile boolean fRecording;
+
+    static {
+        if (AVAILABLE) {
+            try {
+                Events.addListener();
+            } catch (final RuntimeException | LinkageError e) {
+                // recording state unknown: leave the events off
+            }
+        }
+    }
+
+    //
+    // Constructors
+    //
+
+    /** This class cannot be instantiated. */
+    private HTMLFlightRecorder() {
+    } // <init>()
+
+    //
+    // Package static methods
+    //
+
+    /** Returns true while a recording is running. */
+    static boolean isRecording() {
+        return fRecording;
+    } // isRecording():boolean
+
+    /** Starts a parse event, returning null if not recording. */
+    static Object beginParse() {
+        return fRecording ? Events.beginParse() : null;
+    } // beginParse():Object
+
+    /** Ends a parse event started by {@link #beginParse}. */
+    static void endParse(final Object event, final String systemId, final String encoding, final long characters) {
+        if (event != null) {
+            Events.endParse(event, systemId, encoding, characters);
+        }
+    } // endParse(Object,String,String,long)
+
+    /** Reports a charset change. */
+    static void encodingChange(final String systemId, final String from, final String to) {
+        if (fRecording) {
+            Events.encodingChange(systemId, from, to);
+        }
+    } // encodingChange(String,String,String)
+
+    /** Starts a balancer fix-up event, returning null if not recording. */
+    static Object beginFixup() {
+        return fRecording ? Events.beginFixup() : null;
+    } // beginFixup():Object
+
+    /** Ends a fix-up event started by {@link #beginFixup}, if enough events were synthesized. */
+    static void endFixup(final Object event, final String systemId, final int offset, final int count) {
+        if (event != null && count >= FIXUP_THRESHOLD) {
+            Events.endFixup(event, systemId, offset, count);
+        }
+    } // endFixup(Object,String,int,int)
+
+    /** Starts a raw text event, returning null if not recording. */
+    static Object beginRawText() {
+        return fRecording ? Events.beginRawText() : null;
+    } // beginRawText():Object
+
+    /** Ends a raw text event started by {@link #beginRawText}, if the text was long enough. */
+    static void endRawText(final Object event, final String element, final int characters) {
+        if (event != null && characters >= RAW_TEXT_THRESHOLD) {
+            Events.endRawText(event, element, characters);
+        }
+    } // endRawText(Object,String,int)
+
+    //
+    // Private static methods
+    //
+
+    /** Returns true if the flight recorder classes can be loaded. */
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder", false, HTMLFlightRecorder.class.getClassLoader());
+            return true;
+        } catch (final ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    } // isAvailable():boolean
+
+    //
+    // Classes
+    //
+
+    /**
+     * Code using the flight recorder API. It is only loaded when the API
+     * is available, so the event types must not appear outside of it.
+     */
+    private static final class Events {
+
+        /** Tracks the recording state. */
+        static void addListener() {
+            FlightRecorder.addListener(new FlightRecorderListener() {
+                @Override
+                public void recorderInitialized(final FlightRecorder recorder) {
+                    update(recorder);
+                }
+
+                @Override
+                public void recordingStateChanged(final Recording recording) {
+                    update(FlightRecorder.getFlightRecorder());
+                }
+            });
+        } // addListener()
+
+        /** Updates the recording state. */
+        static void update(final FlightRecorder recorder) {
+            boolean recording = false;
+            for (final Recording r : recorder.getRecordings()) {
+                if (r.getState() == RecordingState.RUNNING) {
+                    recording = true;
+                    break;
+                }
+            }
+            fRecording = recording;
+        } // update(FlightRecorder)
+
+        /** Begins a parse event. */
+        static Object beginParse() {
+            final ParseEvent event = new ParseEvent();
+            event.begin();
+            return event;
+        } // beginParse():Object
+
+        /** Ends a parse event. */
+        static void endParse(final Object event, final String systemId, final String encoding, final long characters) {
+            final ParseEvent parse = (ParseEvent) event;
+            parse.end();
+            if (parse.shouldCommit()) {
+                parse.systemId = systemId;
+                parse.encoding = encoding;
+                parse.characters = characters;
+                parse.commit();
+            }
+        } // endParse(Object,String,String,long)
+
+        /** Commits a charset change event. */
+        static void encodingChange(final String systemId, final String from, final String to) {
+            final EncodingChangeEvent event = new EncodingChangeEvent();
+            if (event.shouldCommit()) {
+                event.systemId = systemId;
+                event.from = from;
+                event.to = to;
+                event.commit();
+            }
+        } // encodingChange(String,String,String)
+
+        /** Begins a fix-up event. */
+        static Object beginFixup() {
+            final FixupEvent event = new FixupEvent();
+            event.begin();
+            return event;
+        } // beginFixup():Object
+
+        /** Ends a fix-up event. */
+        static void endFixup(final Object event, final String systemId, final int offset, final int count) {
+            final FixupEvent fixup = (FixupEvent) event;
+            fixup.end();
+            if (fixup.shouldCommit()) {
+                fixup.systemId = systemId;
+                fixup.characterOffset = offset;
+                fixup.synthesizedEvents = count;
+                fixup.commit();
+            }
+        } // endFixup(Object,String,int,int)
+
+        /** Begins a raw text event. */
+        static Object beginRawText() {
+            final RawTextEvent event = new RawTextEvent();
+            event.begin();
+            return event;
+        } // beginRawText():Object
+
+        /** Ends a raw text event. */
+        static void endRawText(final Object event, final String element, final int characters) {
+            final RawTextEvent text = (RawTextEvent) event;
+            text.end();
+            if (text.shouldCommit()) {
+                text.element = element;
+                text.characters = characters;
+                text.commit();
+            }
+        } // endRawText(Object,String,int)
+
+    } // class Events
+
+    /** A document parse. */
+    @Name("org.codelibs.nekohtml.Parse")
+    @Label("HTML Parse")
+    @Category("NekoHTML")
+    @Description("Parse of an HTML document")
+    static final class ParseEvent extends Event {
+
+        @Label("System Id")
+        String systemId;
+
+        @Label("Encoding")
+        String encoding;
+
+        @Label("Characters")
+        long characters;
+
+    } // class ParseEvent
+
+    /** A charset change. */
+    @Name("org.codelibs.nekohtml.EncodingChange")
+    @Label("HTML Encoding Change")
+    @Category("NekoHTML")
+    @Description("Decoding restarted after a charset declaration")
+    static final class EncodingChangeEvent extends Event {
+
+        @Label("System Id")
+        String systemId;
+
+        @Label("From")
+        String from;
+
+        @Label("To")
+        String to;
+
+    } // class EncodingChangeEvent
+
+    /** A burst of synthesized events. */
+    @Name("org.codelibs.nekohtml.BalancerFixup")
+    @Label("HTML Balancer Fix-up")
+    @Category("NekoHTML")
+    @Description("Many events synthesized by the tag balancer for one position of the input")
+    static final class FixupEvent extends Event {
+
+        @Label("System Id")
+        String systemId;
+
+        @Label("Character Offset")
+        int characterOffset;
+
+        @Label("Synthesized Events")
+        int synthesizedEvents;
+
+    } // class FixupEvent
+
+    /** A long raw text element. */
+    @Name("org.codelibs.nekohtml.RawText")
+    @Label("HTML Raw Text")
+    @Category("NekoHTML")
+    @Description("Scan of the content of a long script, style or other raw text element")
+    static final class RawTextEvent extends Event {
+
+        @Label("Element")
+        String element;
+
+        @Label("Characters")
+        int characters;
+
+    } // class RawTextEvent
+
+} // class HTMLFlightRecorder
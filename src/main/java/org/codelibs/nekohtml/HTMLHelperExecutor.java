@@ -0,0 +1,59 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the executors of the helper threads of the scanner. The
+ * threads are daemons, their number is bounded by the number of
+ * processors and idle threads end after a minute. A task is rejected
+ * rather than queued when all the threads are busy, so that the caller
+ * can do the work on its own thread instead of waiting.
+ */
+final class HTMLHelperExecutor {
+
+    //
+    // Constructors
+    //
+
+    /** This class cannot be instantiated. */
+    private HTMLHelperExecutor() {
+    } // <init>()
+
+    //
+    // Package methods
+    //
+
+    /**
+     * Returns a new executor.
+     *
+     * @param name The name of the threads.
+     */
+    static ExecutorService newExecutor(final String name) {
+        return new ThreadPoolExecutor(0, Runtime.getRuntime().availableProcessors(), 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), r -> {
+                    final Thread thread = new Thread(r, name);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    } // newExecutor(String):ExecutorService
+
+} // class HTMLHelperExecutor
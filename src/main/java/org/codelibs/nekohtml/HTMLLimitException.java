@@ -0,0 +1,67 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import org.apache.xerces.xni.XNIException;
+
+/**
+ * Thrown by the scanner when a document exceeds one of the limits set
+ * with the {@link HTMLScanner#MAX_CHARACTERS}, {@link HTMLScanner#MAX_EVENTS}
+ * or {@link HTMLScanner#MAX_TIME} properties and the
+ * {@link HTMLScanner#LIMITS_FAIL} feature is set.
+ */
+public class HTMLLimitException extends XNIException {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = 1L;
+
+    //
+    // Data
+    //
+
+    /** The property identifier of the exceeded limit. */
+    private final String fLimit;
+
+    /** The value of the exceeded limit. */
+    private final long fValue;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs an exception for the given limit. */
+    public HTMLLimitException(final String limit, final long value, final String message) {
+        super(message);
+        fLimit = limit;
+        fValue = value;
+    } // <init>(String,long,String)
+
+    //
+    // Public methods
+    //
+
+    /** Returns the property identifier of the exceeded limit. */
+    public String getLimit() {
+        return fLimit;
+    } // getLimit():String
+
+    /** Returns the value of the exceeded limit. */
+    public long getValue() {
+        return fValue;
+    } // getValue():long
+
+} // class HTMLLimitException
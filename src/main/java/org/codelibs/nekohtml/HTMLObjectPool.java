@@ -0,0 +1,262 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import org.apache.xerces.xni.parser.XMLConfigurationException;
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+
+/**
+ * The idle objects and the settings of a pool of parsers or parser
+ * configurations. Each pooled object is built for a generation of the
+ * settings; changing a setting starts a new generation, so that the idle
+ * objects are discarded and the objects in use are not taken back.
+ * <p>
+ * The settings are checked against the features and properties
+ * recognized by {@link HTMLConfiguration} and by the filters, without
+ * building a configuration. A pool builds its objects while holding the
+ * lock of this object, so that they match {@link #getGeneration}.
+ * <p>
+ * Since filters keep state and are wired into the pipeline of their
+ * configuration, they cannot be shared by the pooled objects: the
+ * filters property is rejected and each object gets the new filters
+ * returned by {@link #setFilters the filter factory} instead.
+ *
+ * @param <T> The type of the pooled objects.
+ */
+public class HTMLObjectPool<T> {
+
+    //
+    // Constants
+    //
+
+    /** Features recognized by the configuration. */
+    private static final Set<String> RECOGNIZED_FEATURES;
+
+    /** Properties recognized by the configuration. */
+    private static final Set<String> RECOGNIZED_PROPERTIES;
+
+    static {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        RECOGNIZED_FEATURES = config.getRecognizedFeatureIds();
+        RECOGNIZED_PROPERTIES = config.getRecognizedPropertyIds();
+    }
+
+    //
+    // Data
+    //
+
+    /** Maximum number of idle objects. */
+    protected final int fMaxIdle;
+
+    /** Returns the settings generation of a pooled object. */
+    protected final ToIntFunction<? super T> fGenerationOf;
+
+    /** Features recognized in addition to the ones of the configuration. */
+    protected final Set<String> fExtraFeatures;
+
+    /** Properties recognized in addition to the ones of the configuration. */
+    protected final Set<String> fExtraProperties;
+
+    /** Idle objects. */
+    protected final ConcurrentLinkedQueue<T> fIdleObjects = new ConcurrentLinkedQueue<>();
+
+    /** Number of idle objects. */
+    protected final AtomicInteger fIdleCount = new AtomicInteger();
+
+    /** Features applied to new objects. */
+    protected final Map<String, Boolean> fFeatures = new LinkedHashMap<>();
+
+    /** Properties applied to new objects. */
+    protected final Map<String, Object> fProperties = new LinkedHashMap<>();
+
+    /** Creates the filters of each new object, or null. */
+    protected Supplier<XMLDocumentFilter[]> fFilters;
+
+    /** Features recognized by the filters. */
+    protected final Set<String> fFilterFeatures = new HashSet<>();
+
+    /** Properties recognized by the filters. */
+    protected final Set<String> fFilterProperties = new HashSet<>();
+
+    /** Settings generation; objects of older generations are discarded. */
+    protected volatile int fGeneration;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructs a pool.
+     *
+     * @param maxIdle         The maximum number of idle objects.
+     * @param generationOf    Returns the settings generation of a pooled
+     *                        object.
+     * @param extraFeatures   Features recognized by the pooled objects in
+     *                        addition to the ones of the configuration.
+     * @param extraProperties Properties recognized by the pooled objects in
+     *                        addition to the ones of the configuration.
+     */
+    public HTMLObjectPool(final int maxIdle, final ToIntFunction<? super T> generationOf, final String[] extraFeatures,
+            final String[] extraProperties) {
+        fMaxIdle = maxIdle;
+        fGenerationOf = generationOf;
+        fExtraFeatures = Set.of(extraFeatures);
+        fExtraProperties = Set.of(extraProperties);
+    } // <init>(int,ToIntFunction,String[],String[])
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Sets a feature of the new objects and starts a new generation.
+     *
+     * @exception XMLConfigurationException Thrown if the feature is not
+     *                                      recognized.
+     */
+    public synchronized void setFeature(final String featureId, final boolean state) {
+        if (!RECOGNIZED_FEATURES.contains(featureId) && !fExtraFeatures.contains(featureId) && !fFilterFeatures.contains(featureId)) {
+            throw new XMLConfigurationException(XMLConfigurationException.NOT_RECOGNIZED, featureId);
+        }
+        fFeatures.put(featureId, state);
+        invalidate();
+    } // setFeature(String,boolean)
+
+    /**
+     * Sets a property of the new objects and starts a new generation.
+     *
+     * @exception XMLConfigurationException Thrown if the property is not
+     *                                      recognized, or is the filters
+     *                                      property.
+     */
+    public synchronized void setProperty(final String propertyId, final Object value) {
+        if (HTMLConfiguration.FILTERS.equals(propertyId)) {
+            throw new XMLConfigurationException(XMLConfigurationException.NOT_SUPPORTED, propertyId
+                    + ": filters cannot be shared by pooled objects, set a filter factory instead");
+        }
+        if (!RECOGNIZED_PROPERTIES.contains(propertyId) && !fExtraProperties.contains(propertyId)
+                && !fFilterProperties.contains(propertyId)) {
+            throw new XMLConfigurationException(XMLConfigurationException.NOT_RECOGNIZED, propertyId);
+        }
+        fProperties.put(propertyId, value);
+        invalidate();
+    } // setProperty(String,Object)
+
+    /**
+     * Sets the factory of the filters of the new objects and starts a new
+     * generation. The factory must return new filter instances on each
+     * call; it is called once here to learn the features and properties
+     * of the filters.
+     *
+     * @param filters The filter factory, or null for no filters.
+     */
+    public synchronized void setFilters(final Supplier<XMLDocumentFilter[]> filters) {
+        fFilters = filters;
+        fFilterFeatures.clear();
+        fFilterProperties.clear();
+        final XMLDocumentFilter[] sample = filters != null ? filters.get() : null;
+        if (sample != null) {
+            for (final XMLDocumentFilter filter : sample) {
+                if (filter instanceof HTMLComponent) {
+                    final HTMLComponent component = (HTMLComponent) filter;
+                    addAll(fFilterFeatures, component.getRecognizedFeatures());
+                    addAll(fFilterProperties, component.getRecognizedProperties());
+                }
+            }
+        }
+        invalidate();
+    } // setFilters(Supplier<XMLDocumentFilter[]>)
+
+    /** Returns new filters for a new object, or null if none. */
+    public synchronized XMLDocumentFilter[] newFilters() {
+        return fFilters != null ? fFilters.get() : null;
+    } // newFilters():XMLDocumentFilter[]
+
+    /** Returns the features to apply to new objects. */
+    public synchronized Map<String, Boolean> getFeatures() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(fFeatures));
+    } // getFeatures():Map<String,Boolean>
+
+    /** Returns the properties to apply to new objects. */
+    public synchronized Map<String, Object> getProperties() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(fProperties));
+    } // getProperties():Map<String,Object>
+
+    /** Returns the current settings generation. */
+    public int getGeneration() {
+        return fGeneration;
+    } // getGeneration():int
+
+    /** Returns an idle object of the current generation, or null if none. */
+    public T poll() {
+        final int generation = fGeneration;
+        T object;
+        while ((object = fIdleObjects.poll()) != null) {
+            fIdleCount.decrementAndGet();
+            if (fGenerationOf.applyAsInt(object) == generation) {
+                return object;
+            }
+        }
+        return null;
+    } // poll():T
+
+    /** Keeps an object as idle if it is of the current generation and the pool is not full. */
+    public void offer(final T object) {
+        final int generation = fGenerationOf.applyAsInt(object);
+        if (generation == fGeneration && fIdleCount.incrementAndGet() <= fMaxIdle) {
+            fIdleObjects.offer(object);
+        } else if (generation == fGeneration) {
+            fIdleCount.decrementAndGet();
+        }
+    } // offer(T)
+
+    /** Returns the number of idle objects. */
+    public int getIdleCount() {
+        return fIdleCount.get();
+    } // getIdleCount():int
+
+    //
+    // Private methods
+    //
+
+    /** Adds the identifiers, if any, to the set. */
+    private static void addAll(final Set<String> set, final String[] ids) {
+        if (ids != null) {
+            set.addAll(Arrays.asList(ids));
+        }
+    } // addAll(Set<String>,String[])
+
+    /** Discards the idle objects after a settings change. */
+    private void invalidate() {
+        fGeneration++;
+        while (fIdleObjects.poll() != null) {
+            fIdleCount.decrementAndGet();
+        }
+    } // invalidate()
+
+} // class HTMLObjectPool
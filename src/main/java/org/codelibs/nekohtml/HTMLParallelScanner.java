@@ -0,0 +1,309 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.xerces.util.NamespaceSupport;
+import org.apache.xerces.xni.XMLDocumentHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.codelibs.nekohtml.xercesbridge.XercesBridge;
+
+/**
+ * Scans a document in chunks on several threads for the
+ * {@link HTMLScanner#PARALLEL_SCANNING} feature.
+ * <p>
+ * The decoded text is split in chunks starting at probable tag
+ * boundaries, a '&lt;' followed by a letter or a '/'. Each chunk is
+ * scanned on the common fork/join pool by its own scanner, which assumes
+ * that the chunk starts in content, records the events in an
+ * {@link HTMLEventBuffer} and stops at the first token starting at or
+ * after the start of the next chunk. The chunks are then replayed in
+ * order to the document handler of the scanner. A chunk whose start does
+ * not match where the previous one stopped, because the chunk started
+ * inside a script, a comment, an attribute value or some other token, is
+ * scanned again from that point; chunks entirely covered by a previous
+ * one are skipped. The events are thus those of a sequential scan, except
+ * that text may be split differently in characters events.
+ * <p>
+ * The location of each event is recorded relative to the start of its
+ * chunk. While a chunk is replayed, the scanner of the document reports
+ * the location of the current event, rebased on the location where the
+ * previous chunk stopped, so that errors have the location of a
+ * sequential scan.
+ */
+final class HTMLParallelScanner {
+
+    //
+    // Data
+    //
+
+    /** The scanner of the document. */
+    private final HTMLScanner fScanner;
+
+    /** The text of the document. */
+    private final char[] fText;
+
+    /** The length of the text. */
+    private final int fLength;
+
+    /** Line number of the start of the chunk being replayed. */
+    private int fStartLine;
+
+    /** Column number of the start of the chunk being replayed. */
+    private int fStartColumn;
+
+    /** Character offset of the start of the chunk being replayed. */
+    private int fStartOffset;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a parallel scanner for the given scanner and text. */
+    HTMLParallelScanner(final HTMLScanner scanner, final CharBuffer text) {
+        fScanner = scanner;
+        fText = text.array();
+        fLength = text.limit();
+    } // <init>(HTMLScanner,CharBuffer)
+
+    //
+    // Package methods
+    //
+
+    /**
+     * Scans the document, returning false without sending any event if
+     * the document is too small to be split.
+     */
+    boolean scan() throws IOException {
+        final int[] starts = split(fScanner.fParallelChunkSize);
+        if (starts.length < 2) {
+            return false;
+        }
+
+        // speculative scans
+        final List<Future<Chunk>> chunks = new ArrayList<>(starts.length);
+        for (int i = 0; i < starts.length; i++) {
+            final int start = starts[i];
+            final int limit = i + 1 < starts.length ? starts[i + 1] : -1;
+            chunks.add(ForkJoinPool.commonPool().submit(() -> scanChunk(start, limit)));
+        }
+
+        // replay in order
+        fStartLine = fScanner.getLineNumber();
+        fStartColumn = fScanner.getColumnNumber();
+        fStartOffset = fScanner.getCharacterOffset();
+        final XMLDocumentHandler handler = fScanner.fDocumentHandler;
+        XercesBridge.getInstance()
+                .XMLDocumentHandler_startDocument(handler, fScanner, fScanner.fIANAEncoding, new NamespaceSupport(), null);
+        try {
+            int position = 0;
+            for (int i = 0; i < starts.length && position < fLength; i++) {
+                final int limit = i + 1 < starts.length ? starts[i + 1] : -1;
+                Chunk chunk = getChunk(chunks.get(i));
+                chunks.set(i, null);
+                if (limit != -1 && position >= limit) {
+                    // covered by the previous chunk
+                    continue;
+                }
+                if (chunk == null || chunk.fStart != position) {
+                    chunk = scanChunk(position, limit);
+                }
+                if (!replay(chunk, handler)) {
+                    break;
+                }
+                position = chunk.fEnd;
+                if (chunk.fEnd < fLength) {
+                    final int line = chunk.fEndLine;
+                    final int column = chunk.fEndColumn;
+                    fStartColumn = line == 1 ? fStartColumn + column - 1 : column;
+                    fStartLine += line - 1;
+                    fStartOffset += chunk.fEnd - chunk.fStart;
+                }
+            }
+        } finally {
+            for (final Future<Chunk> chunk : chunks) {
+                if (chunk != null) {
+                    chunk.cancel(false);
+                }
+            }
+        }
+        fScanner.setScannerState(HTMLScanner.STATE_END_DOCUMENT);
+        handler.endDocument(null);
+        return true;
+    } // scan():boolean
+
+    //
+    // Private methods
+    //
+
+    /** Returns the starts of the chunks. */
+    private int[] split(final int chunkSize) {
+        if (chunkSize <= 0 || fLength < 2L * chunkSize) {
+            return new int[] { 0 };
+        }
+        final int[] starts = new int[fLength / chunkSize + 1];
+        int count = 1;
+        int from = chunkSize;
+        while (from < fLength - chunkSize / 2) {
+            final int boundary = findBoundary(from, Math.min(from + chunkSize, fLength - 1));
+            if (boundary == -1) {
+                // no tag: the previous chunk gets longer
+                from += chunkSize;
+                continue;
+            }
+            starts[count++] = boundary;
+            from = boundary + chunkSize;
+        }
+        final int[] result = new int[count];
+        System.arraycopy(starts, 0, result, 0, count);
+        return result;
+    } // split(int):int[]
+
+    /** Returns the first probable tag boundary in a range, or -1. */
+    private int findBoundary(final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (fText[i] == '<') {
+                final char c = fText[i + 1];
+                if (c == '/' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    } // findBoundary(int,int):int
+
+    /**
+     * Scans a chunk with a new scanner, from its start to the first token
+     * at or after the limit, or to the end of the text if the limit is -1.
+     */
+    private Chunk scanChunk(final int start, final int limit) throws IOException {
+        final HTMLScanner scanner = new HTMLScanner();
+        scanner.applySettings(fScanner.fSettings);
+        final HTMLEventBuffer buffer = new HTMLEventBuffer();
+        buffer.setErrorReporter(fScanner.fErrorReporter);
+        buffer.setLocator(scanner);
+        scanner.fErrorReporter = buffer;
+        scanner.fReportErrors = fScanner.fReportErrors;
+        scanner.fStatistics = null;
+        scanner.fParallelScanning = false;
+        scanner.fInsertDoctype = start == 0 && fScanner.fInsertDoctype;
+        scanner.setDocumentHandler(buffer);
+        final HTMLScanner.CurrentEntity entity = fScanner.fCurrentEntity;
+        scanner.setInputSource(new XMLInputSource(entity.publicId, entity.literalSystemId, entity.baseSystemId, new CharArrayReader(fText,
+                start, fLength - start), fScanner.fIANAEncoding));
+        scanner.fIANAEncoding = fScanner.fIANAEncoding;
+        scanner.fJavaEncoding = fScanner.fJavaEncoding;
+        scanner.fIso8859Encoding = fScanner.fIso8859Encoding;
+        scanner.fSyncLimit = limit != -1 ? limit - start : -1;
+        scanner.scanDocument(true);
+        if (scanner.fSyncOffset == -1) {
+            return new Chunk(start, fLength, 0, 0, buffer);
+        }
+        return new Chunk(start, start + scanner.fSyncOffset, scanner.fSyncLineNumber, scanner.fSyncColumnNumber, buffer);
+    } // scanChunk(int,int):Chunk
+
+    /** Returns the result of a speculative scan, or null if it failed. */
+    private static Chunk getChunk(final Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("parallel scan interrupted");
+        } catch (final ExecutionException e) {
+            // scanned again in order, failing at the same point
+            return null;
+        }
+    } // getChunk(Future<Chunk>):Chunk
+
+    /**
+     * Replays the events of a chunk at their location in the document,
+     * returning false if scanning was stopped meanwhile.
+     */
+    private boolean replay(final Chunk chunk, final XMLDocumentHandler handler) {
+        final HTMLEventBuffer buffer = chunk.fBuffer;
+        final HTMLScanner.CurrentEntity entity = fScanner.fCurrentEntity;
+        final int size = buffer.size();
+        for (int i = 0; i < size; i++) {
+            if (fScanner.fStopScanning) {
+                return false;
+            }
+            final int line = buffer.getLineNumber(i);
+            final int column = buffer.getColumnNumber(i);
+            entity.setLocation(fStartLine + line - 1, line == 1 ? fStartColumn + column - 1 : column,
+                    fStartOffset + buffer.getCharacterOffset(i));
+            final HTMLEvent event = buffer.get(i);
+            switch (event.getType()) {
+            case HTMLEvent.START_DOCUMENT:
+            case HTMLEvent.END_DOCUMENT:
+                break;
+            case HTMLEvent.ERROR:
+                fScanner.fErrorReporter.reportError(event.getValue(0), event.getArguments());
+                break;
+            case HTMLEvent.WARNING:
+                fScanner.fErrorReporter.reportWarning(event.getValue(0), event.getArguments());
+                break;
+            default:
+                event.send(handler);
+                break;
+            }
+        }
+        return true;
+    } // replay(Chunk,XMLDocumentHandler):boolean
+
+    //
+    // Classes
+    //
+
+    /** The events of a chunk. */
+    private static final class Chunk {
+
+        /** Start of the chunk in the text. */
+        final int fStart;
+
+        /** Offset of the first token after the chunk, or the length of the text. */
+        final int fEnd;
+
+        /** Line number of the first token after the chunk, relative to the chunk. */
+        final int fEndLine;
+
+        /** Column number of the first token after the chunk, relative to the chunk. */
+        final int fEndColumn;
+
+        /** The events. */
+        final HTMLEventBuffer fBuffer;
+
+        /** Constructs a chunk. */
+        Chunk(final int start, final int end, final int endLine, final int endColumn, final HTMLEventBuffer buffer) {
+            fStart = start;
+            fEnd = end;
+            fEndLine = endLine;
+            fEndColumn = endColumn;
+            fBuffer = buffer;
+        } // <init>(int,int,int,int,HTMLEventBuffer)
+
+    } // class Chunk
+
+} // class HTMLParallelScanner
@@ -0,0 +1,438 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XMLString;
+import org.codelibs.nekohtml.filters.DefaultFilter;
+
+/**
+ * Statistics of the last document parsed by a configuration. To collect
+ * them, set an instance as the {@link HTMLConfiguration#STATISTICS}
+ * property and read it after the parse; the counters are cleared when
+ * the next document starts.
+ * <p>
+ * Error counts are only collected when the
+ * <code>http://cyberneko.org/html/features/report-errors</code> feature
+ * is set, since the components don't report errors otherwise. The
+ * handler time is the time spent in the filters and document handler
+ * after the tag balancer; the scan time is the rest of the parse time.
+ * <p>
+ * The counters are plain fields updated by the parser thread: an
+ * instance should not be shared by configurations used concurrently.
+ */
+public class HTMLParseStatistics {
+
+    //
+    // Data
+    //
+
+    /** Bytes read from a byte stream. */
+    long fBytesRead;
+
+    /** Characters decoded into the scanner buffers. */
+    long fCharactersDecoded;
+
+    /** Restarts of the decoding after a charset change. */
+    long fEncodingChanges;
+
+    /** Growths of the scanner buffers. */
+    long fBufferGrowths;
+
+    /** Bytes recorded for a possible charset change. */
+    long fBytesRecorded;
+
+    /** Start elements scanned. */
+    long fElementsScanned;
+
+    /** Element events synthesized by the tag balancer. */
+    long fElementsSynthesized;
+
+    /** Element events discarded by the tag balancer. */
+    long fElementsDiscarded;
+
+    /** Entity references scanned. */
+    long fEntityReferences;
+
+    /** Scanner limits exceeded. */
+    long fLimitsExceeded;
+
+    /** Parse time in nanoseconds. */
+    long fParseTime;
+
+    /** Time in the downstream handlers in nanoseconds. */
+    long fHandlerTime;
+
+    /** Reported errors and warnings by key. */
+    private final Map<String, Long> fErrors = new TreeMap<>();
+
+    //
+    // Public methods
+    //
+
+    /** Returns the number of bytes read from a byte stream. */
+    public long getBytesRead() {
+        return fBytesRead;
+    } // getBytesRead():long
+
+    /** Returns the number of characters decoded. */
+    public long getCharactersDecoded() {
+        return fCharactersDecoded;
+    } // getCharactersDecoded():long
+
+    /** Returns the number of times decoding restarted after a charset change. */
+    public long getEncodingChanges() {
+        return fEncodingChanges;
+    } // getEncodingChanges():long
+
+    /** Returns the number of times a scanner buffer was grown. */
+    public long getBufferGrowths() {
+        return fBufferGrowths;
+    } // getBufferGrowths():long
+
+    /** Returns the number of bytes recorded for a possible charset change. */
+    public long getBytesRecorded() {
+        return fBytesRecorded;
+    } // getBytesRecorded():long
+
+    /** Returns the number of start elements scanned. */
+    public long getElementsScanned() {
+        return fElementsScanned;
+    } // getElementsScanned():long
+
+    /** Returns the number of element events synthesized by the tag balancer. */
+    public long getElementsSynthesized() {
+        return fElementsSynthesized;
+    } // getElementsSynthesized():long
+
+    /** Returns the number of element events discarded by the tag balancer. */
+    public long getElementsDiscarded() {
+        return fElementsDiscarded;
+    } // getElementsDiscarded():long
+
+    /** Returns the number of entity references scanned. */
+    public long getEntityReferences() {
+        return fEntityReferences;
+    } // getEntityReferences():long
+
+    /** Returns the number of times a scanner limit was exceeded. */
+    public long getLimitsExceeded() {
+        return fLimitsExceeded;
+    } // getLimitsExceeded():long
+
+    /** Returns the parse time in nanoseconds. */
+    public long getParseTime() {
+        return fParseTime;
+    } // getParseTime():long
+
+    /** Returns the time spent in the downstream handlers in nanoseconds. */
+    public long getHandlerTime() {
+        return fHandlerTime;
+    } // getHandlerTime():long
+
+    /** Returns the time spent scanning and balancing in nanoseconds. */
+    public long getScanTime() {
+        return fParseTime - fHandlerTime;
+    } // getScanTime():long
+
+    /** Returns the number of reported errors and warnings by key. */
+    public Map<String, Long> getErrorCounts() {
+        return Collections.unmodifiableMap(fErrors);
+    } // getErrorCounts():Map<String,Long>
+
+    /** Adds the counters of other statistics to these ones. */
+    public void add(final HTMLParseStatistics stats) {
+        fBytesRead += stats.fBytesRead;
+        fCharactersDecoded += stats.fCharactersDecoded;
+        fEncodingChanges += stats.fEncodingChanges;
+        fBufferGrowths += stats.fBufferGrowths;
+        fBytesRecorded += stats.fBytesRecorded;
+        fElementsScanned += stats.fElementsScanned;
+        fElementsSynthesized += stats.fElementsSynthesized;
+        fElementsDiscarded += stats.fElementsDiscarded;
+        fEntityReferences += stats.fEntityReferences;
+        fLimitsExceeded += stats.fLimitsExceeded;
+        fParseTime += stats.fParseTime;
+        fHandlerTime += stats.fHandlerTime;
+        for (final Map.Entry<String, Long> entry : stats.fErrors.entrySet()) {
+            fErrors.merge(entry.getKey(), entry.getValue(), Long::sum);
+        }
+    } // add(HTMLParseStatistics)
+
+    /** Clears the counters. */
+    public void reset() {
+        fBytesRead = 0;
+        fCharactersDecoded = 0;
+        fEncodingChanges = 0;
+        fBufferGrowths = 0;
+        fBytesRecorded = 0;
+        fElementsScanned = 0;
+        fElementsSynthesized = 0;
+        fElementsDiscarded = 0;
+        fEntityReferences = 0;
+        fLimitsExceeded = 0;
+        fParseTime = 0;
+        fHandlerTime = 0;
+        fErrors.clear();
+    } // reset()
+
+    /** Returns a one line summary. */
+    @Override
+    public String toString() {
+        return "bytes=" + fBytesRead + " chars=" + fCharactersDecoded + " encodingChanges=" + fEncodingChanges + " bufferGrowths="
+                + fBufferGrowths + " bytesRecorded=" + fBytesRecorded + " elements=" + fElementsScanned + " synthesized="
+                + fElementsSynthesized + " discarded=" + fElementsDiscarded + " entityRefs=" + fEntityReferences + " limitsExceeded="
+                + fLimitsExceeded + " parseTime=" + fParseTime / 1000 + "us handlerTime=" + fHandlerTime / 1000 + "us errors=" + fErrors;
+    } // toString():String
+
+    //
+    // Package methods
+    //
+
+    /** Counts a reported error or warning. */
+    void addError(final String key) {
+        fErrors.merge(key, 1L, Long::sum);
+    } // addError(String)
+
+    //
+    // Classes
+    //
+
+    /**
+     * Measures the time spent in the rest of the pipeline. Events sent
+     * back into the pipeline from a handler are counted once, as part of
+     * the outer event.
+     */
+    static class HandlerTimer extends DefaultFilter {
+
+        /** The statistics. */
+        private final HTMLParseStatistics fStatistics;
+
+        /** Nesting depth of the events. */
+        private int fDepth;
+
+        /** Start time of the outer event. */
+        private long fStart;
+
+        /** Constructs a handler timer. */
+        HandlerTimer(final HTMLParseStatistics stats) {
+            fStatistics = stats;
+        } // <init>(HTMLParseStatistics)
+
+        /** Start document. */
+        @Override
+        public void startDocument(final XMLLocator locator, final String encoding, final NamespaceContext nscontext,
+                final Augmentations augs) {
+            enter();
+            try {
+                super.startDocument(locator, encoding, nscontext, augs);
+            } finally {
+                exit();
+            }
+        } // startDocument(XMLLocator,String,NamespaceContext,Augmentations)
+
+        /** XML declaration. */
+        @Override
+        public void xmlDecl(final String version, final String encoding, final String standalone, final Augmentations augs) {
+            enter();
+            try {
+                super.xmlDecl(version, encoding, standalone, augs);
+            } finally {
+                exit();
+            }
+        } // xmlDecl(String,String,String,Augmentations)
+
+        /** Doctype declaration. */
+        @Override
+        public void doctypeDecl(final String root, final String publicId, final String systemId, final Augmentations augs) {
+            enter();
+            try {
+                super.doctypeDecl(root, publicId, systemId, augs);
+            } finally {
+                exit();
+            }
+        } // doctypeDecl(String,String,String,Augmentations)
+
+        /** Comment. */
+        @Override
+        public void comment(final XMLString text, final Augmentations augs) {
+            enter();
+            try {
+                super.comment(text, augs);
+            } finally {
+                exit();
+            }
+        } // comment(XMLString,Augmentations)
+
+        /** Processing instruction. */
+        @Override
+        public void processingInstruction(final String target, final XMLString data, final Augmentations augs) {
+            enter();
+            try {
+                super.processingInstruction(target, data, augs);
+            } finally {
+                exit();
+            }
+        } // processingInstruction(String,XMLString,Augmentations)
+
+        /** Start element. */
+        @Override
+        public void startElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+            enter();
+            try {
+                super.startElement(element, attributes, augs);
+            } finally {
+                exit();
+            }
+        } // startElement(QName,XMLAttributes,Augmentations)
+
+        /** Empty element. */
+        @Override
+        public void emptyElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+            enter();
+            try {
+                super.emptyElement(element, attributes, augs);
+            } finally {
+                exit();
+            }
+        } // emptyElement(QName,XMLAttributes,Augmentations)
+
+        /** Characters. */
+        @Override
+        public void characters(final XMLString text, final Augmentations augs) {
+            enter();
+            try {
+                super.characters(text, augs);
+            } finally {
+                exit();
+            }
+        } // characters(XMLString,Augmentations)
+
+        /** Ignorable whitespace. */
+        @Override
+        public void ignorableWhitespace(final XMLString text, final Augmentations augs) {
+            enter();
+            try {
+                super.ignorableWhitespace(text, augs);
+            } finally {
+                exit();
+            }
+        } // ignorableWhitespace(XMLString,Augmentations)
+
+        /** Start general entity. */
+        @Override
+        public void startGeneralEntity(final String name, final XMLResourceIdentifier id, final String encoding, final Augmentations augs) {
+            enter();
+            try {
+                super.startGeneralEntity(name, id, encoding, augs);
+            } finally {
+                exit();
+            }
+        } // startGeneralEntity(String,XMLResourceIdentifier,String,Augmentations)
+
+        /** Text declaration. */
+        @Override
+        public void textDecl(final String version, final String encoding, final Augmentations augs) {
+            enter();
+            try {
+                super.textDecl(version, encoding, augs);
+            } finally {
+                exit();
+            }
+        } // textDecl(String,String,Augmentations)
+
+        /** End general entity. */
+        @Override
+        public void endGeneralEntity(final String name, final Augmentations augs) {
+            enter();
+            try {
+                super.endGeneralEntity(name, augs);
+            } finally {
+                exit();
+            }
+        } // endGeneralEntity(String,Augmentations)
+
+        /** Start CDATA section. */
+        @Override
+        public void startCDATA(final Augmentations augs) {
+            enter();
+            try {
+                super.startCDATA(augs);
+            } finally {
+                exit();
+            }
+        } // startCDATA(Augmentations)
+
+        /** End CDATA section. */
+        @Override
+        public void endCDATA(final Augmentations augs) {
+            enter();
+            try {
+                super.endCDATA(augs);
+            } finally {
+                exit();
+            }
+        } // endCDATA(Augmentations)
+
+        /** End element. */
+        @Override
+        public void endElement(final QName element, final Augmentations augs) {
+            enter();
+            try {
+                super.endElement(element, augs);
+            } finally {
+                exit();
+            }
+        } // endElement(QName,Augmentations)
+
+        /** End document. */
+        @Override
+        public void endDocument(final Augmentations augs) {
+            enter();
+            try {
+                super.endDocument(augs);
+            } finally {
+                exit();
+            }
+        } // endDocument(Augmentations)
+
+        /** Starts timing an event. */
+        private void enter() {
+            if (fDepth++ == 0) {
+                fStart = System.nanoTime();
+            }
+        } // enter()
+
+        /** Stops timing an event. */
+        private void exit() {
+            if (--fDepth == 0) {
+                fStatistics.fHandlerTime += System.nanoTime() - fStart;
+            }
+        } // exit()
+
+    } // class HandlerTimer
+
+} // class HTMLParseStatistics
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Parser metrics aggregated over all the configurations of the JVM,
+ * exposed as a JMX MBean named {@link #OBJECT_NAME}.
+ * <p>
+ * Nothing is collected until {@link #register} is called. While
+ * registered, each configuration collects {@link HTMLParseStatistics} for
+ * its documents, using its own instance when the
+ * {@link HTMLConfiguration#STATISTICS} property is not set, and adds them
+ * to these metrics at the end of each document. The counters are
+ * {@link LongAdder}s, so parsing threads don't contend on them.
+ * <p>
+ * Errors and warnings are only counted when the
+ * <code>http://cyberneko.org/html/features/report-errors</code> feature
+ * is set, since the components don't report them otherwise.
+ */
+public final class HTMLParserMetrics implements HTMLParserMetricsMBean {
+
+    //
+    // Constants
+    //
+
+    /** The object name of the MBean. */
+    public static final String OBJECT_NAME = "org.codelibs.nekohtml:type=ParserMetrics";
+
+    /** Upper bounds of the latency histogram buckets in milliseconds. */
+    private static final long[] LATENCY_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, };
+
+    /** Number of errors returned by {@link #getTopErrors}. */
+    private static final int TOP_ERRORS = 10;
+
+    /** The instance. */
+    private static final HTMLParserMetrics INSTANCE = new HTMLParserMetrics();
+
+    //
+    // Data
+    //
+
+    /** True while registered. */
+    private static volatile boolean fRegistered;
+
+    /** Documents parsed. */
+    private final LongAdder fDocuments = new LongAdder();
+
+    /** Documents failed. */
+    private final LongAdder fDocumentsFailed = new LongAdder();
+
+    /** Bytes read. */
+    private final LongAdder fBytesRead = new LongAdder();
+
+    /** Characters decoded. */
+    private final LongAdder fCharactersDecoded = new LongAdder();
+
+    /** Encoding changes. */
+    private final LongAdder fEncodingChanges = new LongAdder();
+
+    /** Documents that exceeded a limit. */
+    private final LongAdder fLimitsExceeded = new LongAdder();
+
+    /** Latency histogram. */
+    private final LongAdder[] fLatency = new LongAdder[LATENCY_BOUNDS.length + 1];
+
+    /** Errors and warnings by key. */
+    private final Map<String, LongAdder> fErrors = new ConcurrentHashMap<>();
+
+    //
+    // Constructors
+    //
+
+    /** Constructs the metrics. */
+    private HTMLParserMetrics() {
+        for (int i = 0; i < fLatency.length; i++) {
+            fLatency[i] = new LongAdder();
+        }
+    } // <init>()
+
+    //
+    // Public static methods
+    //
+
+    /** Returns the metrics. */
+    public static HTMLParserMetrics getInstance() {
+        return INSTANCE;
+    } // getInstance():HTMLParserMetrics
+
+    /**
+     * Registers the MBean with the platform MBean server and starts
+     * collecting. Does nothing if already registered.
+     *
+     * @exception JMException Thrown if the MBean cannot be registered.
+     */
+    public static synchronized void register() throws JMException {
+        if (!fRegistered) {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+            fRegistered = true;
+        }
+    } // register()
+
+    /**
+     * Stops collecting and unregisters the MBean. Does nothing if not
+     * registered.
+     *
+     * @exception JMException Thrown if the MBean cannot be unregistered.
+     */
+    public static synchronized void unregister() throws JMException {
+        if (fRegistered) {
+            fRegistered = false;
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+    } // unregister()
+
+    /** Returns true while the metrics are registered. */
+    public static boolean isRegistered() {
+        return fRegistered;
+    } // isRegistered():boolean
+
+    //
+    // HTMLParserMetricsMBean methods
+    //
+
+    @Override
+    public long getDocumentsParsed() {
+        return fDocuments.sum();
+    } // getDocumentsParsed():long
+
+    @Override
+    public long getDocumentsFailed() {
+        return fDocumentsFailed.sum();
+    } // getDocumentsFailed():long
+
+    @Override
+    public long getBytesRead() {
+        return fBytesRead.sum();
+    } // getBytesRead():long
+
+    @Override
+    public long getCharactersDecoded() {
+        return fCharactersDecoded.sum();
+    } // getCharactersDecoded():long
+
+    @Override
+    public long getEncodingChanges() {
+        return fEncodingChanges.sum();
+    } // getEncodingChanges():long
+
+    @Override
+    public long getLimitsExceeded() {
+        return fLimitsExceeded.sum();
+    } // getLimitsExceeded():long
+
+    @Override
+    public long[] getLatencyBucketBounds() {
+        return LATENCY_BOUNDS.clone();
+    } // getLatencyBucketBounds():long[]
+
+    @Override
+    public long[] getLatencyHistogram() {
+        final long[] histogram = new long[fLatency.length];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = fLatency[i].sum();
+        }
+        return histogram;
+    } // getLatencyHistogram():long[]
+
+    @Override
+    public String[] getTopErrors() {
+        final List<Map.Entry<String, Long>> errors = new ArrayList<>();
+        for (final Map.Entry<String, LongAdder> entry : fErrors.entrySet()) {
+            errors.add(Map.entry(entry.getKey(), entry.getValue().sum()));
+        }
+        errors.sort((e1, e2) -> Long.compare(e2.getValue(), e1.getValue()));
+        final int count = Math.min(errors.size(), TOP_ERRORS);
+        final String[] top = new String[count];
+        for (int i = 0; i < count; i++) {
+            top[i] = errors.get(i).getKey() + '=' + errors.get(i).getValue();
+        }
+        return top;
+    } // getTopErrors():String[]
+
+    @Override
+    public void resetCounters() {
+        fDocuments.reset();
+        fDocumentsFailed.reset();
+        fBytesRead.reset();
+        fCharactersDecoded.reset();
+        fEncodingChanges.reset();
+        fLimitsExceeded.reset();
+        for (final LongAdder bucket : fLatency) {
+            bucket.reset();
+        }
+        fErrors.clear();
+    } // resetCounters()
+
+    //
+    // Package methods
+    //
+
+    /** Adds the statistics of a document. */
+    void documentParsed(final HTMLParseStatistics stats, final boolean failed) {
+        fDocuments.increment();
+        if (failed) {
+            fDocumentsFailed.increment();
+        }
+        fBytesRead.add(stats.fBytesRead);
+        fCharactersDecoded.add(stats.fCharactersDecoded);
+        fEncodingChanges.add(stats.fEncodingChanges);
+        if (stats.fLimitsExceeded > 0) {
+            fLimitsExceeded.increment();
+        }
+        final long millis = stats.fParseTime / 1000000L;
+        int bucket = 0;
+        while (bucket < LATENCY_BOUNDS.length && millis >= LATENCY_BOUNDS[bucket]) {
+            bucket++;
+        }
+        fLatency[bucket].increment();
+        for (final Map.Entry<String, Long> entry : stats.getErrorCounts().entrySet()) {
+            fErrors.computeIfAbsent(entry.getKey(), k -> new LongAdder()).add(entry.getValue());
+        }
+    } // documentParsed(HTMLParseStatistics,boolean)
+
+} // class HTMLParserMetrics
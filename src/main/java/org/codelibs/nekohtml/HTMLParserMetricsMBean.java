@@ -0,0 +1,57 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+/**
+ * Management interface of {@link HTMLParserMetrics}.
+ */
+public interface HTMLParserMetricsMBean {
+
+    /** Returns the number of documents parsed. */
+    long getDocumentsParsed();
+
+    /** Returns the number of documents whose parse ended with an exception. */
+    long getDocumentsFailed();
+
+    /** Returns the number of bytes read from byte streams. */
+    long getBytesRead();
+
+    /** Returns the number of characters decoded. */
+    long getCharactersDecoded();
+
+    /** Returns the number of times decoding restarted after a charset change. */
+    long getEncodingChanges();
+
+    /** Returns the number of documents that exceeded a scanner limit. */
+    long getLimitsExceeded();
+
+    /** Returns the upper bounds of the latency histogram buckets in milliseconds. */
+    long[] getLatencyBucketBounds();
+
+    /**
+     * Returns the number of documents by parse time. The last bucket counts
+     * the documents slower than the last bound.
+     */
+    long[] getLatencyHistogram();
+
+    /** Returns the most reported errors and warnings as "key=count", most frequent first. */
+    String[] getTopErrors();
+
+    /** Clears the counters. */
+    void resetCounters();
+
+} // interface HTMLParserMetricsMBean
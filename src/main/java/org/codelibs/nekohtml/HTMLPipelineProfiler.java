@@ -0,0 +1,644 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLDocumentHandler;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XMLString;
+import org.codelibs.nekohtml.filters.DefaultFilter;
+
+/**
+ * Profiles the stages of the parser pipeline: the namespace binder, the
+ * tag balancer, each filter set with the
+ * <code>http://cyberneko.org/html/properties/filters</code> property and
+ * the document handler. To use it, set an instance as the
+ * {@link HTMLConfiguration#PROFILER} property.
+ * <p>
+ * The configuration then puts a timing decorator in front of each stage
+ * which counts the events it receives by type and its exclusive time,
+ * i.e. the time spent in the stage itself and not in the stages after it.
+ * The counters are aggregated across the parsed documents; a report of
+ * each document can also be written at the end of the document with
+ * {@link #setReportWriter}.
+ * <p>
+ * To keep the cost low when always enabled, only one document out of
+ * the sample interval given to the constructor is profiled; the events of
+ * the other documents are passed through the decorators untouched.
+ * <p>
+ * The counters are plain fields updated by the parser thread: an
+ * instance should not be shared by configurations used concurrently.
+ */
+public class HTMLPipelineProfiler {
+
+    //
+    // Constants
+    //
+
+    /** Start document event. */
+    public static final int START_DOCUMENT = 0;
+
+    /** XML declaration event. */
+    public static final int XML_DECL = 1;
+
+    /** Doctype declaration event. */
+    public static final int DOCTYPE_DECL = 2;
+
+    /** Comment event. */
+    public static final int COMMENT = 3;
+
+    /** Processing instruction event. */
+    public static final int PROCESSING_INSTRUCTION = 4;
+
+    /** Start element event. */
+    public static final int START_ELEMENT = 5;
+
+    /** Empty element event. */
+    public static final int EMPTY_ELEMENT = 6;
+
+    /** Characters event. */
+    public static final int CHARACTERS = 7;
+
+    /** Ignorable whitespace event. */
+    public static final int IGNORABLE_WHITESPACE = 8;
+
+    /** Start general entity event. */
+    public static final int START_GENERAL_ENTITY = 9;
+
+    /** Text declaration event. */
+    public static final int TEXT_DECL = 10;
+
+    /** End general entity event. */
+    public static final int END_GENERAL_ENTITY = 11;
+
+    /** Start CDATA section event. */
+    public static final int START_CDATA = 12;
+
+    /** End CDATA section event. */
+    public static final int END_CDATA = 13;
+
+    /** End element event. */
+    public static final int END_ELEMENT = 14;
+
+    /** End document event. */
+    public static final int END_DOCUMENT = 15;
+
+    /** Event names, indexed by event type. */
+    private static final String[] EVENT_NAMES = { "startDocument", "xmlDecl", "doctypeDecl", "comment", "processingInstruction",
+            "startElement", "emptyElement", "characters", "ignorableWhitespace", "startGeneralEntity", "textDecl", "endGeneralEntity",
+            "startCDATA", "endCDATA", "endElement", "endDocument", };
+
+    //
+    // Data
+    //
+
+    /** One document out of this number is profiled. */
+    private final int fSampleInterval;
+
+    /** The stages, in pipeline order. */
+    private final List<Stage> fStages = new ArrayList<>();
+
+    /** Writer of the document reports, or null. */
+    private PrintWriter fReportWriter;
+
+    /** Number of documents started. */
+    private long fDocuments;
+
+    /** Number of documents profiled. */
+    private long fDocumentsProfiled;
+
+    /** True if the current document is profiled. */
+    private boolean fSampled;
+
+    /** Stages currently handling an event, innermost last. */
+    private Stage[] fActive = new Stage[8];
+
+    /** Number of stages currently handling an event. */
+    private int fDepth;
+
+    /** Time of the last stage change. */
+    private long fLastTime;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a profiler of all documents. */
+    public HTMLPipelineProfiler() {
+        this(1);
+    } // <init>()
+
+    /**
+     * Constructs a profiler of one document out of the given number.
+     *
+     * @param sampleInterval The sample interval, at least 1.
+     */
+    public HTMLPipelineProfiler(final int sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("sample interval must be at least 1: " + sampleInterval);
+        }
+        fSampleInterval = sampleInterval;
+    } // <init>(int)
+
+    //
+    // Public methods
+    //
+
+    /** Sets the writer of a report at the end of each profiled document, or null. */
+    public void setReportWriter(final PrintWriter writer) {
+        fReportWriter = writer;
+    } // setReportWriter(PrintWriter)
+
+    /** Returns the number of documents profiled. */
+    public long getDocumentsProfiled() {
+        return fDocumentsProfiled;
+    } // getDocumentsProfiled():long
+
+    /** Returns the stages of the last pipeline, in pipeline order. */
+    public List<Stage> getStages() {
+        return Collections.unmodifiableList(fStages);
+    } // getStages():List<Stage>
+
+    /** Clears the counters. */
+    public void reset() {
+        fStages.clear();
+        fDocuments = 0;
+        fDocumentsProfiled = 0;
+    } // reset()
+
+    /** Returns the name of an event type. */
+    public static String getEventName(final int type) {
+        return EVENT_NAMES[type];
+    } // getEventName(int):String
+
+    /** Returns the report of the aggregated counters. */
+    @Override
+    public String toString() {
+        final StringBuilder str = new StringBuilder();
+        str.append(fDocumentsProfiled).append(" document(s) profiled\n");
+        for (final Stage stage : fStages) {
+            stage.append(str, false);
+        }
+        return str.toString();
+    } // toString():String
+
+    //
+    // Package methods
+    //
+
+    /**
+     * Inserts a timing decorator in front of a stage.
+     *
+     * @param index   The index of the stage in the pipeline.
+     * @param handler The stage.
+     *
+     * @return The decorator.
+     */
+    DefaultFilter decorate(final int index, final XMLDocumentHandler handler) {
+        final String name = handler.getClass().getName();
+        if (index < fStages.size()) {
+            if (!fStages.get(index).fName.equals(name)) {
+                // the pipeline changed
+                fStages.subList(index, fStages.size()).clear();
+            }
+        }
+        if (index == fStages.size()) {
+            fStages.add(new Stage(name));
+        }
+        final Timer timer = new Timer(fStages.get(index), index == 0);
+        timer.setDocumentHandler(handler);
+        return timer;
+    } // decorate(int,XMLDocumentHandler):DefaultFilter
+
+    /** Removes the stages after the given number of stages. */
+    void truncate(final int size) {
+        if (size < fStages.size()) {
+            fStages.subList(size, fStages.size()).clear();
+        }
+    } // truncate(int)
+
+    //
+    // Private methods
+    //
+
+    /** Starts a document. */
+    private void startDocument() {
+        fSampled = fDocuments++ % fSampleInterval == 0;
+        fDepth = 0;
+        for (final Stage stage : fStages) {
+            stage.startDocument();
+        }
+    } // startDocument()
+
+    /** Ends a document. */
+    private void endDocument() {
+        if (!fSampled) {
+            return;
+        }
+        fDocumentsProfiled++;
+        if (fReportWriter != null) {
+            final StringBuilder str = new StringBuilder();
+            for (final Stage stage : fStages) {
+                stage.append(str, true);
+            }
+            fReportWriter.print(str);
+            fReportWriter.flush();
+        }
+        for (final Stage stage : fStages) {
+            stage.endDocument();
+        }
+    } // endDocument()
+
+    /** Enters a stage. */
+    private void enter(final Stage stage, final int type) {
+        final long now = System.nanoTime();
+        if (fDepth > 0) {
+            fActive[fDepth - 1].fDocumentTime += now - fLastTime;
+        }
+        if (fDepth == fActive.length) {
+            final Stage[] active = new Stage[fDepth * 2];
+            System.arraycopy(fActive, 0, active, 0, fDepth);
+            fActive = active;
+        }
+        fActive[fDepth++] = stage;
+        stage.fDocumentCounts[type]++;
+        fLastTime = now;
+    } // enter(Stage,int)
+
+    /** Exits the innermost stage. */
+    private void exit() {
+        final long now = System.nanoTime();
+        fActive[--fDepth].fDocumentTime += now - fLastTime;
+        fActive[fDepth] = null;
+        fLastTime = now;
+    } // exit()
+
+    //
+    // Classes
+    //
+
+    /** The counters of a pipeline stage. */
+    public static class Stage {
+
+        /** The class name of the stage. */
+        final String fName;
+
+        /** Exclusive time in nanoseconds. */
+        long fTime;
+
+        /** Event counts by type. */
+        final long[] fCounts = new long[EVENT_NAMES.length];
+
+        /** Exclusive time in the current document. */
+        long fDocumentTime;
+
+        /** Event counts by type in the current document. */
+        final long[] fDocumentCounts = new long[EVENT_NAMES.length];
+
+        /** Constructs a stage. */
+        Stage(final String name) {
+            fName = name;
+        } // <init>(String)
+
+        /** Returns the class name of the stage. */
+        public String getName() {
+            return fName;
+        } // getName():String
+
+        /** Returns the exclusive time of the stage in nanoseconds. */
+        public long getTime() {
+            return fTime;
+        } // getTime():long
+
+        /** Returns the number of events of the given type received by the stage. */
+        public long getEventCount(final int type) {
+            return fCounts[type];
+        } // getEventCount(int):long
+
+        /** Returns the number of events received by the stage. */
+        public long getEventCount() {
+            long count = 0;
+            for (final long c : fCounts) {
+                count += c;
+            }
+            return count;
+        } // getEventCount():long
+
+        /** Clears the document counters. */
+        void startDocument() {
+            fDocumentTime = 0;
+            for (int i = 0; i < fDocumentCounts.length; i++) {
+                fDocumentCounts[i] = 0;
+            }
+        } // startDocument()
+
+        /** Adds the document counters to the totals. */
+        void endDocument() {
+            fTime += fDocumentTime;
+            for (int i = 0; i < fCounts.length; i++) {
+                fCounts[i] += fDocumentCounts[i];
+            }
+        } // endDocument()
+
+        /** Appends a report line. */
+        void append(final StringBuilder str, final boolean document) {
+            final long[] counts = document ? fDocumentCounts : fCounts;
+            str.append(fName).append(": ").append((document ? fDocumentTime : fTime) / 1000).append("us");
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    str.append(' ').append(EVENT_NAMES[i]).append('=').append(counts[i]);
+                }
+            }
+            str.append('\n');
+        } // append(StringBuilder,boolean)
+
+    } // class Stage
+
+    /** Timing decorator in front of a stage. */
+    class Timer extends DefaultFilter {
+
+        /** The stage. */
+        private final Stage fStage;
+
+        /** True if the first stage of the pipeline. */
+        private final boolean fFirst;
+
+        /** Constructs a timer. */
+        Timer(final Stage stage, final boolean first) {
+            fStage = stage;
+            fFirst = first;
+        } // <init>(Stage,boolean)
+
+        /** Start document. */
+        @Override
+        public void startDocument(final XMLLocator locator, final String encoding, final NamespaceContext nscontext,
+                final Augmentations augs) {
+            if (fFirst) {
+                HTMLPipelineProfiler.this.startDocument();
+            }
+            if (!fSampled) {
+                super.startDocument(locator, encoding, nscontext, augs);
+                return;
+            }
+            enter(fStage, START_DOCUMENT);
+            try {
+                super.startDocument(locator, encoding, nscontext, augs);
+            } finally {
+                exit();
+            }
+        } // startDocument(XMLLocator,String,NamespaceContext,Augmentations)
+
+        /** XML declaration. */
+        @Override
+        public void xmlDecl(final String version, final String encoding, final String standalone, final Augmentations augs) {
+            if (!fSampled) {
+                super.xmlDecl(version, encoding, standalone, augs);
+                return;
+            }
+            enter(fStage, XML_DECL);
+            try {
+                super.xmlDecl(version, encoding, standalone, augs);
+            } finally {
+                exit();
+            }
+        } // xmlDecl(String,String,String,Augmentations)
+
+        /** Doctype declaration. */
+        @Override
+        public void doctypeDecl(final String root, final String publicId, final String systemId, final Augmentations augs) {
+            if (!fSampled) {
+                super.doctypeDecl(root, publicId, systemId, augs);
+                return;
+            }
+            enter(fStage, DOCTYPE_DECL);
+            try {
+                super.doctypeDecl(root, publicId, systemId, augs);
+            } finally {
+                exit();
+            }
+        } // doctypeDecl(String,String,String,Augmentations)
+
+        /** Comment. */
+        @Override
+        public void comment(final XMLString text, final Augmentations augs) {
+            if (!fSampled) {
+                super.comment(text, augs);
+                return;
+            }
+            enter(fStage, COMMENT);
+            try {
+                super.comment(text, augs);
+            } finally {
+                exit();
+            }
+        } // comment(XMLString,Augmentations)
+
+        /** Processing instruction. */
+        @Override
+        public void processingInstruction(final String target, final XMLString data, final Augmentations augs) {
+            if (!fSampled) {
+                super.processingInstruction(target, data, augs);
+                return;
+            }
+            enter(fStage, PROCESSING_INSTRUCTION);
+            try {
+                super.processingInstruction(target, data, augs);
+            } finally {
+                exit();
+            }
+        } // processingInstruction(String,XMLString,Augmentations)
+
+        /** Start element. */
+        @Override
+        public void startElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+            if (!fSampled) {
+                super.startElement(element, attributes, augs);
+                return;
+            }
+            enter(fStage, START_ELEMENT);
+            try {
+                super.startElement(element, attributes, augs);
+            } finally {
+                exit();
+            }
+        } // startElement(QName,XMLAttributes,Augmentations)
+
+        /** Empty element. */
+        @Override
+        public void emptyElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+            if (!fSampled) {
+                super.emptyElement(element, attributes, augs);
+                return;
+            }
+            enter(fStage, EMPTY_ELEMENT);
+            try {
+                super.emptyElement(element, attributes, augs);
+            } finally {
+                exit();
+            }
+        } // emptyElement(QName,XMLAttributes,Augmentations)
+
+        /** Characters. */
+        @Override
+        public void characters(final XMLString text, final Augmentations augs) {
+            if (!fSampled) {
+                super.characters(text, augs);
+                return;
+            }
+            enter(fStage, CHARACTERS);
+            try {
+                super.characters(text, augs);
+            } finally {
+                exit();
+            }
+        } // characters(XMLString,Augmentations)
+
+        /** Ignorable whitespace. */
+        @Override
+        public void ignorableWhitespace(final XMLString text, final Augmentations augs) {
+            if (!fSampled) {
+                super.ignorableWhitespace(text, augs);
+                return;
+            }
+            enter(fStage, IGNORABLE_WHITESPACE);
+            try {
+                super.ignorableWhitespace(text, augs);
+            } finally {
+                exit();
+            }
+        } // ignorableWhitespace(XMLString,Augmentations)
+
+        /** Start general entity. */
+        @Override
+        public void startGeneralEntity(final String name, final XMLResourceIdentifier id, final String encoding, final Augmentations augs) {
+            if (!fSampled) {
+                super.startGeneralEntity(name, id, encoding, augs);
+                return;
+            }
+            enter(fStage, START_GENERAL_ENTITY);
+            try {
+                super.startGeneralEntity(name, id, encoding, augs);
+            } finally {
+                exit();
+            }
+        } // startGeneralEntity(String,XMLResourceIdentifier,String,Augmentations)
+
+        /** Text declaration. */
+        @Override
+        public void textDecl(final String version, final String encoding, final Augmentations augs) {
+            if (!fSampled) {
+                super.textDecl(version, encoding, augs);
+                return;
+            }
+            enter(fStage, TEXT_DECL);
+            try {
+                super.textDecl(version, encoding, augs);
+            } finally {
+                exit();
+            }
+        } // textDecl(String,String,Augmentations)
+
+        /** End general entity. */
+        @Override
+        public void endGeneralEntity(final String name, final Augmentations augs) {
+            if (!fSampled) {
+                super.endGeneralEntity(name, augs);
+                return;
+            }
+            enter(fStage, END_GENERAL_ENTITY);
+            try {
+                super.endGeneralEntity(name, augs);
+            } finally {
+                exit();
+            }
+        } // endGeneralEntity(String,Augmentations)
+
+        /** Start CDATA section. */
+        @Override
+        public void startCDATA(final Augmentations augs) {
+            if (!fSampled) {
+                super.startCDATA(augs);
+                return;
+            }
+            enter(fStage, START_CDATA);
+            try {
+                super.startCDATA(augs);
+            } finally {
+                exit();
+            }
+        } // startCDATA(Augmentations)
+
+        /** End CDATA section. */
+        @Override
+        public void endCDATA(final Augmentations augs) {
+            if (!fSampled) {
+                super.endCDATA(augs);
+                return;
+            }
+            enter(fStage, END_CDATA);
+            try {
+                super.endCDATA(augs);
+            } finally {
+                exit();
+            }
+        } // endCDATA(Augmentations)
+
+        /** End element. */
+        @Override
+        public void endElement(final QName element, final Augmentations augs) {
+            if (!fSampled) {
+                super.endElement(element, augs);
+                return;
+            }
+            enter(fStage, END_ELEMENT);
+            try {
+                super.endElement(element, augs);
+            } finally {
+                exit();
+            }
+        } // endElement(QName,Augmentations)
+
+        /** End document. */
+        @Override
+        public void endDocument(final Augmentations augs) {
+            if (!fSampled) {
+                super.endDocument(augs);
+                return;
+            }
+            enter(fStage, END_DOCUMENT);
+            try {
+                super.endDocument(augs);
+            } finally {
+                exit();
+            }
+            if (fFirst) {
+                HTMLPipelineProfiler.this.endDocument();
+            }
+        } // endDocument(Augmentations)
+
+    } // class Timer
+
+} // class HTMLPipelineProfiler
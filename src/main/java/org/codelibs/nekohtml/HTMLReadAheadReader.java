@@ -0,0 +1,250 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Reads and decodes a stream on a helper thread, one buffer ahead of the
+ * scanner, for the {@link HTMLScanner#READ_AHEAD} feature. Two buffers
+ * are passed between the threads: the helper fills one while the scanner
+ * consumes the other.
+ * <p>
+ * The scanner only wraps its stream once the charset of the document can
+ * no longer change, since the bytes read ahead would otherwise have to be
+ * decoded again. The helper thread is never interrupted, since
+ * interrupting a read closes some streams: {@link #detach} and
+ * {@link #close} wait for the read in progress instead. The characters
+ * read ahead and not consumed are lost to the owner of the stream.
+ */
+final class HTMLReadAheadReader extends Reader {
+
+    //
+    // Constants
+    //
+
+    /** Number of characters of a buffer. */
+    static final int BUFFER_SIZE = 8192;
+
+    /** Threads reading ahead. */
+    private static final ExecutorService EXECUTOR = HTMLHelperExecutor.newExecutor("nekohtml-read-ahead");
+
+    /** Marker telling the helper to stop. */
+    private static final Chunk STOP = new Chunk(0);
+
+    //
+    // Data
+    //
+
+    /** The stream read ahead. */
+    private final Reader fIn;
+
+    /** Buffers to fill, and the stop marker. */
+    private final BlockingQueue<Chunk> fFree = new ArrayBlockingQueue<>(3);
+
+    /** Filled buffers, in order, and the failure of the helper. */
+    private final BlockingQueue<Chunk> fFilled = new ArrayBlockingQueue<>(3);
+
+    /** The helper task. */
+    private final Future<?> fHelper;
+
+    /** True once closed or detached. */
+    private volatile boolean fClosed;
+
+    /** The buffer read, or null. */
+    private Chunk fCurrent;
+
+    /** Position in the buffer read. */
+    private int fPosition;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructs a reader, starting to read ahead.
+     *
+     * @exception RejectedExecutionException Thrown if all the helper
+     *                                       threads are busy.
+     */
+    private HTMLReadAheadReader(final Reader in) {
+        fIn = in;
+        fFree.add(new Chunk(BUFFER_SIZE));
+        fFree.add(new Chunk(BUFFER_SIZE));
+        fHelper = EXECUTOR.submit(this::fill);
+    } // <init>(Reader)
+
+    //
+    // Package methods
+    //
+
+    /**
+     * Returns a reader reading a stream ahead, or the stream itself if
+     * all the helper threads are busy.
+     */
+    static Reader start(final Reader in) {
+        try {
+            return new HTMLReadAheadReader(in);
+        } catch (final RejectedExecutionException e) {
+            return in;
+        }
+    } // start(Reader):Reader
+
+    /**
+     * Stops reading ahead, without closing the stream. Returns once the
+     * helper no longer reads the stream.
+     */
+    void detach() {
+        if (fClosed) {
+            return;
+        }
+        fClosed = true;
+        fFree.offer(STOP);
+        try {
+            fHelper.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            // the failures are handed to the reader
+        }
+    } // detach()
+
+    //
+    // Reader methods
+    //
+
+    /** Reads characters. */
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (fCurrent == null || fPosition >= fCurrent.fLength) {
+            if (fCurrent != null) {
+                if (fCurrent.fLength == -1) {
+                    return -1;
+                }
+                fFree.add(fCurrent);
+            }
+            try {
+                fCurrent = fFilled.take();
+            } catch (final InterruptedException e) {
+                fCurrent = null;
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("read ahead interrupted");
+            }
+            fPosition = 0;
+            if (fCurrent.fFailure != null) {
+                final Throwable failure = fCurrent.fFailure;
+                fCurrent.fFailure = null;
+                fCurrent.fLength = -1;
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                }
+                if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                }
+                if (failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                throw new IOException(failure);
+            }
+            if (fCurrent.fLength == -1) {
+                return -1;
+            }
+        }
+        final int count = Math.min(len, fCurrent.fLength - fPosition);
+        System.arraycopy(fCurrent.fChars, fPosition, cbuf, off, count);
+        fPosition += count;
+        return count;
+    } // read(char[],int,int):int
+
+    /** Closes the reader and, once the helper is done, the stream read ahead. */
+    @Override
+    public void close() throws IOException {
+        detach();
+        fIn.close();
+    } // close()
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Fills the buffers, on the helper thread. The last buffer handed to
+     * the reader is the end of the stream or carries the failure.
+     */
+    private void fill() {
+        Chunk chunk = null;
+        try {
+            while (true) {
+                chunk = fFree.take();
+                if (chunk == STOP || fClosed) {
+                    return;
+                }
+                try {
+                    chunk.fLength = fIn.read(chunk.fChars, 0, BUFFER_SIZE);
+                } catch (final Throwable e) {
+                    chunk.fFailure = e;
+                }
+                final boolean end = chunk.fLength == -1 || chunk.fFailure != null;
+                fFilled.add(chunk);
+                chunk = null;
+                if (end) {
+                    return;
+                }
+            }
+        } catch (final InterruptedException e) {
+            // only an executor shutting down interrupts the helper
+            final Chunk failure = chunk != null && chunk != STOP ? chunk : new Chunk(0);
+            failure.fFailure = new InterruptedIOException("read ahead interrupted");
+            fFilled.offer(failure);
+        }
+    } // fill()
+
+    //
+    // Classes
+    //
+
+    /** A buffer passed between the threads. */
+    private static final class Chunk {
+
+        /** The characters. */
+        final char[] fChars;
+
+        /** Number of characters, or -1 at the end of the stream. */
+        int fLength;
+
+        /** Exception of the helper, or null. */
+        Throwable fFailure;
+
+        /** Constructs a buffer. */
+        Chunk(final int size) {
+            fChars = new char[size];
+        } // <init>(int)
+
+    } // class Chunk
+
+} // class HTMLReadAheadReader
@@ -16,6 +16,7 @@
 
 package org.codelibs.nekohtml;
 
+import java.io.CharArrayReader;
 import java.io.EOFException;
 import java.io.FilterInputStream;
 import java.io.IOException;
@@ -24,9 +25,12 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Deque;
 import java.util.Locale;
-import java.util.Stack;
 
 import org.apache.xerces.util.EncodingMap;
 import org.apache.xerces.util.NamespaceSupport;
@@ -212,16 +216,54 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
     /** Normalize attribute values. */
     protected static final String NORMALIZE_ATTRIBUTES = "http://cyberneko.org/html/features/scanner/normalize-attrs";
 
+    /**
+     * Skip the attributes of all the elements except &lt;meta&gt;: start
+     * tags are only scanned for their end and are reported without
+     * attributes.
+     */
+    public static final String SKIP_ATTRIBUTES = "http://cyberneko.org/html/features/scanner/skip-attributes";
+
+    /**
+     * Skip the content of &lt;script&gt;, &lt;style&gt; and unparsed
+     * &lt;noscript&gt; elements without buffering or reporting it.
+     */
+    public static final String SKIP_SCRIPT_CONTENT = "http://cyberneko.org/html/features/scanner/skip-script-content";
+
+    /**
+     * Fail with an {@link HTMLLimitException} when a document exceeds one
+     * of the limits instead of ending it at that point.
+     */
+    public static final String LIMITS_FAIL = "http://cyberneko.org/html/features/scanner/limits/fail";
+
+    /**
+     * Scan large documents in chunks on several threads. The chunks start
+     * at probable tag boundaries; a chunk that turns out to start inside a
+     * token is scanned again. Only used for complete parses of character
+     * input, or of byte input when the specified charset is ignored, with
+     * augmentations off and no limits; the locator does not follow the
+     * events and the errors are reported without location.
+     */
+    public static final String PARALLEL_SCANNING = "http://cyberneko.org/html/features/scanner/parallel-scanning";
+
+    /**
+     * Read and decode the input on a helper thread, one buffer ahead of
+     * the scanner. For byte input, reading ahead starts once the charset
+     * can no longer change.
+     */
+    public static final String READ_AHEAD = "http://cyberneko.org/html/features/scanner/read-ahead";
+
     /** Recognized features. */
     private static final String[] RECOGNIZED_FEATURES = { AUGMENTATIONS, REPORT_ERRORS, NOTIFY_CHAR_REFS, NOTIFY_XML_BUILTIN_REFS,
             NOTIFY_HTML_BUILTIN_REFS, FIX_MSWINDOWS_REFS, SCRIPT_STRIP_CDATA_DELIMS, SCRIPT_STRIP_COMMENT_DELIMS, STYLE_STRIP_CDATA_DELIMS,
             STYLE_STRIP_COMMENT_DELIMS, IGNORE_SPECIFIED_CHARSET, CDATA_SECTIONS, OVERRIDE_DOCTYPE, INSERT_DOCTYPE, NORMALIZE_ATTRIBUTES,
-            PARSE_NOSCRIPT_CONTENT, ALLOW_SELFCLOSING_IFRAME, ALLOW_SELFCLOSING_TAGS, };
+            PARSE_NOSCRIPT_CONTENT, ALLOW_SELFCLOSING_IFRAME, ALLOW_SELFCLOSING_TAGS, SKIP_ATTRIBUTES, SKIP_SCRIPT_CONTENT, LIMITS_FAIL,
+            PARALLEL_SCANNING, READ_AHEAD, };
 
     /** Recognized features defaults. */
     private static final Boolean[] RECOGNIZED_FEATURES_DEFAULTS = { null, null, Boolean.FALSE, Boolean.FALSE, Boolean.FALSE, Boolean.FALSE,
             Boolean.FALSE, Boolean.FALSE, Boolean.FALSE, Boolean.FALSE, Boolean.FALSE, Boolean.FALSE, Boolean.FALSE, Boolean.FALSE,
-            Boolean.FALSE, Boolean.TRUE, Boolean.FALSE, Boolean.FALSE, };
+            Boolean.FALSE, Boolean.TRUE, Boolean.FALSE, Boolean.FALSE, Boolean.FALSE, Boolean.FALSE, Boolean.FALSE, Boolean.FALSE,
+            Boolean.FALSE, };
 
     // properties
 
@@ -243,13 +285,28 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
     /** Doctype declaration system identifier. */
     protected static final String DOCTYPE_SYSID = "http://cyberneko.org/html/properties/doctype/sysid";
 
+    /** Parse statistics. */
+    protected static final String STATISTICS = "http://cyberneko.org/html/properties/statistics";
+
+    /** Maximum number of characters read from a document, or 0 for no limit. */
+    public static final String MAX_CHARACTERS = "http://cyberneko.org/html/properties/limits/max-characters";
+
+    /** Maximum number of tokens scanned in a document, or 0 for no limit. */
+    public static final String MAX_EVENTS = "http://cyberneko.org/html/properties/limits/max-events";
+
+    /** Maximum time spent on a document in milliseconds, or 0 for no limit. */
+    public static final String MAX_TIME = "http://cyberneko.org/html/properties/limits/max-time";
+
+    /** Number of characters of the chunks of a parallel scan. */
+    public static final String PARALLEL_CHUNK_SIZE = "http://cyberneko.org/html/properties/parallel-scanning/chunk-size";
+
     /** Recognized properties. */
     private static final String[] RECOGNIZED_PROPERTIES = { NAMES_ELEMS, NAMES_ATTRS, DEFAULT_ENCODING, ERROR_REPORTER, DOCTYPE_PUBID,
-            DOCTYPE_SYSID, };
+            DOCTYPE_SYSID, MAX_CHARACTERS, MAX_EVENTS, MAX_TIME, STATISTICS, PARALLEL_CHUNK_SIZE, };
 
     /** Recognized properties defaults. */
     private static final Object[] RECOGNIZED_PROPERTIES_DEFAULTS = { null, null, "Windows-1252", null, HTML_4_01_TRANSITIONAL_PUBID,
-            HTML_4_01_TRANSITIONAL_SYSID, };
+            HTML_4_01_TRANSITIONAL_SYSID, 0L, 0L, 0L, null, 1048576L, };
 
     // states
 
@@ -357,6 +414,12 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
     /** Allows self closing tags. */
     protected boolean fAllowSelfclosingTags;
 
+    /** Skip attributes. */
+    protected boolean fSkipAttributes;
+
+    /** Skip script content. */
+    protected boolean fSkipScriptContent;
+
     // properties
 
     /** Modify HTML element names. */
@@ -377,6 +440,36 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
     /** Doctype declaration system identifier. */
     protected String fDoctypeSysid;
 
+    /** Maximum number of characters read, or 0. */
+    protected long fMaxCharacters;
+
+    /** Maximum number of tokens scanned, or 0. */
+    protected long fMaxEvents;
+
+    /** Maximum time in nanoseconds, or 0. */
+    protected long fMaxTime;
+
+    /** Fail when a limit is exceeded. */
+    protected boolean fLimitsFail;
+
+    /** The limit exceeded by the current document, or null. */
+    protected String fLimitExceeded;
+
+    /** Parse statistics, or null. */
+    protected HTMLParseStatistics fStatistics;
+
+    /** Scan large documents in chunks on several threads. */
+    protected boolean fParallelScanning;
+
+    /** Number of characters of the chunks of a parallel scan. */
+    protected int fParallelChunkSize;
+
+    /** Read the input on a helper thread. */
+    protected boolean fReadAhead;
+
+    /** The settings of the last reset, or null. */
+    HTMLSettings fSettings;
+
     // boundary locator information
 
     /** Beginning line number. */
@@ -402,11 +495,23 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
     /** The playback byte stream. */
     protected PlaybackInputStream fByteStream;
 
+    /** True once the document should end without reading further. */
+    protected volatile boolean fStopScanning;
+
+    /** True while an input source is evaluated: its end is not the end of the document. */
+    protected boolean fEvaluating;
+
+    /** Number of tokens scanned, counted when limits are set. */
+    protected long fEventCount;
+
+    /** Start time of the document, when a time limit is set. */
+    protected long fStartTime;
+
     /** Current entity. */
     protected CurrentEntity fCurrentEntity;
 
     /** The current entity stack. */
-    protected final Stack<CurrentEntity> fCurrentEntityStack = new Stack<>();
+    protected final Deque<CurrentEntity> fCurrentEntityStack = new ArrayDeque<>();
 
     /** The current scanner. */
     protected Scanner fScanner;
@@ -432,6 +537,18 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
     /** Element depth. */
     protected int fElementDepth;
 
+    /** Character offset at which a chunk of a parallel scan ends, or -1. */
+    int fSyncLimit = -1;
+
+    /** Character offset of the first token after the sync limit, or -1. */
+    int fSyncOffset = -1;
+
+    /** Line number of the first token after the sync limit. */
+    int fSyncLineNumber;
+
+    /** Column number of the first token after the sync limit. */
+    int fSyncColumnNumber;
+
     // scanners
 
     /** Content scanner. */
@@ -497,6 +614,7 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
         final String literalSystemId = inputSource.getSystemId();
         final String expandedSystemId = expandSystemId(literalSystemId, baseSystemId);
         fCurrentEntity = new CurrentEntity(reader, encoding, publicId, baseSystemId, literalSystemId, expandedSystemId);
+        fCurrentEntity.fStatistics = fStatistics;
     } // pushInputSource(XMLInputSource)
 
     private Reader getReader(final XMLInputSource inputSource) {
@@ -530,14 +648,19 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
         final String literalSystemId = inputSource.getSystemId();
         final String expandedSystemId = expandSystemId(literalSystemId, baseSystemId);
         fCurrentEntity = new CurrentEntity(reader, encoding, publicId, baseSystemId, literalSystemId, expandedSystemId);
+        fCurrentEntity.fStatistics = fStatistics;
         setScanner(fContentScanner);
         setScannerState(STATE_CONTENT);
+        final boolean previousEvaluating = fEvaluating;
+        fEvaluating = true;
         try {
             do {
                 fScanner.scan(false);
             } while (fScannerState != STATE_END_DOCUMENT);
         } catch (final IOException e) {
             // ignore
+        } finally {
+            fEvaluating = previousEvaluating;
         }
         setScanner(previousScanner);
         setScannerState(previousScannerState);
@@ -555,6 +678,7 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
      *                 be responsible for closing it.
      */
     public void cleanup(final boolean closeall) {
+        final CurrentEntity document = getDocumentEntity();
         final int size = fCurrentEntityStack.size();
         if (size > 0) {
             // current entity is not the original, so close it
@@ -569,6 +693,10 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
         } else if (closeall && fCurrentEntity != null) {
             fCurrentEntity.closeQuietly();
         }
+        if (!closeall && document != null) {
+            // the application closes the stream
+            document.stopReadAhead();
+        }
     } // cleanup(boolean)
 
     //
@@ -676,36 +804,53 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
     /** Resets the component. */
     @Override
     public void reset(final XMLComponentManager manager) {
+        applySettings(HTMLSettings.get(manager));
+    } // reset(XMLComponentManager)
+
+    /** Reads the features and properties from a settings snapshot. */
+    void applySettings(final HTMLSettings settings) {
+
+        fSettings = settings;
 
         // get features
-        fAugmentations = manager.getFeature(AUGMENTATIONS);
-        fReportErrors = manager.getFeature(REPORT_ERRORS);
-        fNotifyCharRefs = manager.getFeature(NOTIFY_CHAR_REFS);
-        fNotifyXmlBuiltinRefs = manager.getFeature(NOTIFY_XML_BUILTIN_REFS);
-        fNotifyHtmlBuiltinRefs = manager.getFeature(NOTIFY_HTML_BUILTIN_REFS);
-        fFixWindowsCharRefs = manager.getFeature(FIX_MSWINDOWS_REFS);
-        fScriptStripCDATADelims = manager.getFeature(SCRIPT_STRIP_CDATA_DELIMS);
-        fScriptStripCommentDelims = manager.getFeature(SCRIPT_STRIP_COMMENT_DELIMS);
-        fStyleStripCDATADelims = manager.getFeature(STYLE_STRIP_CDATA_DELIMS);
-        fStyleStripCommentDelims = manager.getFeature(STYLE_STRIP_COMMENT_DELIMS);
-        fIgnoreSpecifiedCharset = manager.getFeature(IGNORE_SPECIFIED_CHARSET);
-        fCDATASections = manager.getFeature(CDATA_SECTIONS);
-        fOverrideDoctype = manager.getFeature(OVERRIDE_DOCTYPE);
-        fInsertDoctype = manager.getFeature(INSERT_DOCTYPE);
-        fNormalizeAttributes = manager.getFeature(NORMALIZE_ATTRIBUTES);
-        fParseNoScriptContent = manager.getFeature(PARSE_NOSCRIPT_CONTENT);
-        fAllowSelfclosingIframe = manager.getFeature(ALLOW_SELFCLOSING_IFRAME);
-        fAllowSelfclosingTags = manager.getFeature(ALLOW_SELFCLOSING_TAGS);
+        fAugmentations = settings.augmentations;
+        fReportErrors = settings.reportErrors;
+        fNotifyCharRefs = settings.notifyCharRefs;
+        fNotifyXmlBuiltinRefs = settings.notifyXmlBuiltinRefs;
+        fNotifyHtmlBuiltinRefs = settings.notifyHtmlBuiltinRefs;
+        fFixWindowsCharRefs = settings.fixWindowsCharRefs;
+        fScriptStripCDATADelims = settings.scriptStripCDATADelims;
+        fScriptStripCommentDelims = settings.scriptStripCommentDelims;
+        fStyleStripCDATADelims = settings.styleStripCDATADelims;
+        fStyleStripCommentDelims = settings.styleStripCommentDelims;
+        fIgnoreSpecifiedCharset = settings.ignoreSpecifiedCharset;
+        fCDATASections = settings.cdataSections;
+        fOverrideDoctype = settings.overrideDoctype;
+        fInsertDoctype = settings.insertDoctype;
+        fNormalizeAttributes = settings.normalizeAttributes;
+        fParseNoScriptContent = settings.parseNoScriptContent;
+        fAllowSelfclosingIframe = settings.allowSelfclosingIframe;
+        fAllowSelfclosingTags = settings.allowSelfclosingTags;
+        fSkipAttributes = settings.skipAttributes;
+        fSkipScriptContent = settings.skipScriptContent;
+        fLimitsFail = settings.limitsFail;
+        fParallelScanning = settings.parallelScanning;
+        fReadAhead = settings.readAhead;
 
         // get properties
-        fNamesElems = getNamesValue(String.valueOf(manager.getProperty(NAMES_ELEMS)));
-        fNamesAttrs = getNamesValue(String.valueOf(manager.getProperty(NAMES_ATTRS)));
-        fDefaultIANAEncoding = String.valueOf(manager.getProperty(DEFAULT_ENCODING));
-        fErrorReporter = (HTMLErrorReporter) manager.getProperty(ERROR_REPORTER);
-        fDoctypePubid = String.valueOf(manager.getProperty(DOCTYPE_PUBID));
-        fDoctypeSysid = String.valueOf(manager.getProperty(DOCTYPE_SYSID));
-
-    } // reset(XMLComponentManager)
+        fNamesElems = settings.namesElems;
+        fNamesAttrs = settings.namesAttrs;
+        fDefaultIANAEncoding = settings.defaultEncoding;
+        fErrorReporter = settings.errorReporter;
+        fDoctypePubid = settings.doctypePubid;
+        fDoctypeSysid = settings.doctypeSysid;
+        fMaxCharacters = settings.maxCharacters;
+        fMaxEvents = settings.maxEvents;
+        fMaxTime = settings.maxTime * 1000000L;
+        fStatistics = settings.statistics;
+        fParallelChunkSize = settings.parallelChunkSize;
+
+    } // applySettings(HTMLSettings)
 
     /** Sets a feature. */
     @Override
@@ -751,6 +896,21 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
         case ALLOW_SELFCLOSING_TAGS:
             fAllowSelfclosingTags = state;
             break;
+        case SKIP_ATTRIBUTES:
+            fSkipAttributes = state;
+            break;
+        case SKIP_SCRIPT_CONTENT:
+            fSkipScriptContent = state;
+            break;
+        case LIMITS_FAIL:
+            fLimitsFail = state;
+            break;
+        case PARALLEL_SCANNING:
+            fParallelScanning = state;
+            break;
+        case READ_AHEAD:
+            fReadAhead = state;
+            break;
         }
 
     } // setFeature(String,boolean)
@@ -769,11 +929,36 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
             return;
         }
 
+        if (propertyId.equals(MAX_CHARACTERS)) {
+            fMaxCharacters = getLimitValue(value);
+            return;
+        }
+
+        if (propertyId.equals(MAX_EVENTS)) {
+            fMaxEvents = getLimitValue(value);
+            return;
+        }
+
+        if (propertyId.equals(MAX_TIME)) {
+            fMaxTime = getLimitValue(value) * 1000000L;
+            return;
+        }
+
+        if (propertyId.equals(STATISTICS)) {
+            fStatistics = (HTMLParseStatistics) value;
+            return;
+        }
+
         if (propertyId.equals(DEFAULT_ENCODING)) {
             fDefaultIANAEncoding = String.valueOf(value);
             return;
         }
 
+        if (propertyId.equals(PARALLEL_CHUNK_SIZE)) {
+            fParallelChunkSize = (int) Math.min(getLimitValue(value), Integer.MAX_VALUE);
+            return;
+        }
+
     } // setProperty(String,Object)
 
     //
@@ -788,7 +973,11 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
         fElementCount = 0;
         fElementDepth = -1;
         fByteStream = null;
-        fCurrentEntityStack.removeAllElements();
+        fStopScanning = false;
+        fEventCount = 0;
+        fStartTime = fMaxTime > 0 ? System.nanoTime() : 0;
+        fLimitExceeded = null;
+        fCurrentEntityStack.clear();
 
         fBeginLineNumber = 1;
         fBeginColumnNumber = 1;
@@ -817,6 +1006,7 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
                 inputStream = url.openStream();
             }
             fByteStream = new PlaybackInputStream(inputStream);
+            fByteStream.fStatistics = fStatistics;
             final String[] encodings = new String[2];
             if (encoding == null) {
                 fByteStream.detectEncoding(encodings);
@@ -847,7 +1037,18 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
             encoding = fIANAEncoding;
             reader = new InputStreamReader(fByteStream, fJavaEncoding);
         }
-        fCurrentEntity = new CurrentEntity(reader, encoding, publicId, baseSystemId, literalSystemId, expandedSystemId);
+        // reuse the character buffer of the previous document; a grown
+        // buffer is not kept so that every document is read in the same
+        // size of chunks
+        final char[] buffer = fCurrentEntity != null && fCurrentEntity.buffer.length == DEFAULT_BUFFER_SIZE ? fCurrentEntity.buffer : null;
+        fCurrentEntity = new CurrentEntity(reader, encoding, publicId, baseSystemId, literalSystemId, expandedSystemId, buffer);
+        fCurrentEntity.fStatistics = fStatistics;
+        if ((fMaxCharacters | fMaxTime) != 0) {
+            fCurrentEntity.fLimits = this;
+        }
+        if (fByteStream == null) {
+            startReadAhead();
+        }
 
         // set scanner and state
         setScanner(fContentScanner);
@@ -858,6 +1059,18 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
     /** Scans the document. */
     @Override
     public boolean scanDocument(final boolean complete) throws IOException {
+        if (complete && fParallelScanning && fScannerState == STATE_START_DOCUMENT && isParallelizable()) {
+            final CharBuffer text = readToEnd();
+            if (new HTMLParallelScanner(this, text).scan()) {
+                return false;
+            }
+            // too small to be split: scan the text read
+            final CurrentEntity entity = fCurrentEntity;
+            entity.closeQuietly();
+            fCurrentEntity =
+                    new CurrentEntity(new CharArrayReader(text.array(), 0, text.limit()), entity.encoding, entity.publicId,
+                            entity.baseSystemId, entity.literalSystemId, entity.expandedSystemId);
+        }
         do {
             if (!fScanner.scan(complete)) {
                 return false;
@@ -866,6 +1079,14 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
         return true;
     } // scanDocument(boolean):boolean
 
+    /**
+     * Ends the document before the next token: nothing more is read from
+     * the input and the document handler receives the end of the document.
+     */
+    void stopScanning() {
+        fStopScanning = true;
+    } // stopScanning()
+
     /** Sets the document handler. */
     @Override
     public void setDocumentHandler(final XMLDocumentHandler handler) {
@@ -1039,6 +1260,14 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
         return NAMES_NO_CHANGE;
     } // getNamesValue(String):short
 
+    /** Returns the value of a limit property, 0 meaning no limit. */
+    protected static final long getLimitValue(final Object value) {
+        if (value instanceof Number) {
+            return Math.max(0, ((Number) value).longValue());
+        }
+        return value != null ? Math.max(0, Long.parseLong(String.valueOf(value))) : 0;
+    } // getLimitValue(Object):long
+
     /**
      * Fixes Microsoft Windows&reg; specific characters.
      * <p>
@@ -1118,6 +1347,139 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
         fScanner = scanner;
     } // setScanner(Scanner)
 
+    /**
+     * Counts a token and checks the limits of the document. When a limit
+     * is exceeded the document either ends at this point or fails with an
+     * {@link HTMLLimitException}, depending on the {@link #LIMITS_FAIL}
+     * feature. The clock is only read every 256 tokens here, the
+     * characters and the time being also checked each time the buffer of
+     * the document is filled.
+     */
+    protected void checkLimits() {
+        fEventCount++;
+        if (fMaxEvents > 0 && fEventCount > fMaxEvents) {
+            limitExceeded(MAX_EVENTS, fMaxEvents);
+        } else if (fMaxCharacters > 0 && getDocumentEntity().getCharacterOffset() > fMaxCharacters) {
+            limitExceeded(MAX_CHARACTERS, fMaxCharacters);
+        } else if (fMaxTime > 0 && (fEventCount & 0xFF) == 0 && System.nanoTime() - fStartTime > fMaxTime) {
+            limitExceeded(MAX_TIME, fMaxTime / 1000000L);
+        }
+    } // checkLimits()
+
+    /** Returns true if any limit is set. */
+    protected boolean hasLimits() {
+        return (fMaxEvents | fMaxCharacters | fMaxTime) != 0;
+    } // hasLimits():boolean
+
+    /**
+     * Charges characters loaded in the buffer of the document to the
+     * limits, returning the number of them that are kept, or -1 if the
+     * document ends before them. The input ends at an exceeded limit, so
+     * that the characters already loaded are still scanned.
+     */
+    int chargeCharacters(final long loaded, final int count) {
+        if (fLimitExceeded != null) {
+            return -1;
+        }
+        if (fMaxCharacters > 0 && loaded + count > fMaxCharacters) {
+            reportLimitExceeded(MAX_CHARACTERS, fMaxCharacters);
+            final int kept = (int) (fMaxCharacters - loaded);
+            return kept > 0 ? kept : -1;
+        }
+        if (fMaxTime > 0 && System.nanoTime() - fStartTime > fMaxTime) {
+            reportLimitExceeded(MAX_TIME, fMaxTime / 1000000L);
+            return -1;
+        }
+        return count;
+    } // chargeCharacters(long,int):int
+
+    /** Returns the identifier of the limit exceeded by the current document, or null. */
+    String getLimitExceeded() {
+        return fLimitExceeded;
+    } // getLimitExceeded():String
+
+    /** Handles an exceeded limit, ending the document before the next token. */
+    protected void limitExceeded(final String limit, final long value) {
+        reportLimitExceeded(limit, value);
+        stopScanning();
+    } // limitExceeded(String,long)
+
+    /**
+     * Records and reports an exceeded limit, failing if the
+     * {@link #LIMITS_FAIL} feature is set. Only the first limit exceeded
+     * by a document is reported.
+     */
+    protected void reportLimitExceeded(final String limit, final long value) {
+        if (fLimitExceeded != null) {
+            return;
+        }
+        fLimitExceeded = limit;
+        final Object[] args = { limit.substring(limit.lastIndexOf('/') + 1), String.valueOf(value) };
+        if (fStatistics != null) {
+            fStatistics.fLimitsExceeded++;
+        }
+        if (fLimitsFail) {
+            throw new HTMLLimitException(limit, value, fErrorReporter.formatMessage("HTML1016", args));
+        }
+        if (fReportErrors) {
+            fErrorReporter.reportError("HTML1016", args);
+        }
+    } // reportLimitExceeded(String,long)
+
+    /** Returns the entity of the document itself. */
+    protected CurrentEntity getDocumentEntity() {
+        return fCurrentEntityStack.isEmpty() ? fCurrentEntity : fCurrentEntityStack.peekLast();
+    } // getDocumentEntity():CurrentEntity
+
+    /** Returns true if the current document can be scanned in parallel. */
+    protected boolean isParallelizable() {
+        return fSettings != null && fScanner == fContentScanner && fCurrentEntityStack.isEmpty() && fDocumentHandler != null
+                && !fAugmentations && !hasLimits() && (fByteStream == null || fIgnoreSpecifiedCharset);
+    } // isParallelizable():boolean
+
+    /**
+     * Reads the rest of the current entity, after which the entity is at
+     * its end.
+     */
+    CharBuffer readToEnd() throws IOException {
+        if (fByteStream != null) {
+            // the charset is ignored: nothing to play back
+            fByteStream.clear();
+            fByteStream = null;
+        }
+        final CurrentEntity entity = fCurrentEntity;
+        char[] text = new char[Math.max(entity.length - entity.offset, 0) + entity.buffer.length];
+        int length = Math.max(entity.length - entity.offset, 0);
+        System.arraycopy(entity.buffer, entity.offset, text, 0, length);
+        entity.offset = entity.length;
+        while (!entity.endReached_ && entity.load(0) != -1) {
+            if (length + entity.length > text.length) {
+                text = Arrays.copyOf(text, Math.max(text.length * 2, length + entity.length));
+            }
+            System.arraycopy(entity.buffer, 0, text, length, entity.length);
+            length += entity.length;
+            entity.offset = entity.length;
+        }
+        return CharBuffer.wrap(text, 0, length);
+    } // readToEnd():CharBuffer
+
+    /** Reads the document entity ahead from now on, if enabled. */
+    protected void startReadAhead() {
+        if (fReadAhead && fCurrentEntityStack.isEmpty() && fCurrentEntity != null) {
+            fCurrentEntity.startReadAhead();
+        }
+    } // startReadAhead()
+
+    /** Switches to the end of the document after a stop request. */
+    protected void scanStopped() {
+        if (fByteStream != null) {
+            fByteStream.clear();
+            fByteStream = null;
+        }
+        setScanner(fContentScanner);
+        setScannerState(STATE_END_DOCUMENT);
+    } // scanStopped()
+
     /** Sets the scanner state. */
     protected void setScannerState(final short state) {
         fScannerState = state;
@@ -1252,6 +1614,9 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
 
     /** Scans an entity reference. */
     protected int scanEntityRef(final XMLStringBuffer str, final boolean content) throws IOException {
+        if (fStatistics != null) {
+            fStatistics.fEntityReferences++;
+        }
         str.clear();
         str.append('&');
         boolean endsWithSemicolon = false;
@@ -1529,6 +1894,18 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
         return augs;
     } // locationAugs():Augmentations
 
+    /**
+     * Returns an augmentations object with a location item and the
+     * resolved element information added.
+     */
+    protected final Augmentations locationAugs(final HTMLElements.Element element) {
+        final Augmentations augs = locationAugs();
+        if (augs != null && element != null) {
+            augs.putItem(HTMLElements.ELEMENT_AUGMENTATION, element);
+        }
+        return augs;
+    } // locationAugs(HTMLElements.Element):Augmentations
+
     /** Returns an augmentations object with a synthesized item added. */
     protected final Augmentations synthesizedAugs() {
         HTMLAugmentations augs = null;
@@ -1678,7 +2055,7 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
         // buffer
 
         /** Character buffer. */
-        public char[] buffer = new char[DEFAULT_BUFFER_SIZE];
+        public char[] buffer;
 
         /** Offset into character buffer. */
         public int offset = 0;
@@ -1688,6 +2065,15 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
 
         private boolean endReached_ = false;
 
+        /** Parse statistics, or null. */
+        HTMLParseStatistics fStatistics;
+
+        /** Scanner whose limits the loaded characters are charged to, or null. */
+        HTMLScanner fLimits;
+
+        /** Number of characters loaded, charged to the limits. */
+        private long charactersLoaded_;
+
         //
         // Constructors
         //
@@ -1695,13 +2081,20 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
         /** Constructs an entity from the specified stream. */
         public CurrentEntity(final Reader stream, final String encoding, final String publicId, final String baseSystemId,
                 final String literalSystemId, final String expandedSystemId) {
+            this(stream, encoding, publicId, baseSystemId, literalSystemId, expandedSystemId, null);
+        } // <init>(Reader,String,String,String,String)
+
+        /** Constructs an entity from the specified stream, reusing the given character buffer if not null. */
+        CurrentEntity(final Reader stream, final String encoding, final String publicId, final String baseSystemId,
+                final String literalSystemId, final String expandedSystemId, final char[] buffer) {
             stream_ = stream;
             this.encoding = encoding;
             this.publicId = publicId;
             this.baseSystemId = baseSystemId;
             this.literalSystemId = literalSystemId;
             this.expandedSystemId = expandedSystemId;
-        } // <init>(Reader,String,String,String,String)
+            this.buffer = buffer != null ? buffer : new char[DEFAULT_BUFFER_SIZE];
+        } // <init>(Reader,String,String,String,String,char[])
 
         private char getCurrentChar() {
             return buffer[offset];
@@ -1745,11 +2138,22 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
                 final char[] array = new char[buffer.length + adjust];
                 System.arraycopy(buffer, 0, array, 0, length);
                 buffer = array;
+                if (fStatistics != null) {
+                    fStatistics.fBufferGrowths++;
+                }
             }
             // read a block of characters
-            final int count = stream_.read(buffer, offset, buffer.length - offset);
+            int count = stream_.read(buffer, offset, buffer.length - offset);
+            if (count != -1 && fLimits != null) {
+                count = fLimits.chargeCharacters(charactersLoaded_, count);
+                if (count != -1) {
+                    charactersLoaded_ += count;
+                }
+            }
             if (count == -1) {
                 endReached_ = true;
+            } else if (fStatistics != null) {
+                fStatistics.fCharactersDecoded += count;
             }
             length = count != -1 ? count + offset : offset;
             this.offset = offset;
@@ -1773,9 +2177,24 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
             return c;
         } // read():int
 
+        /** Reads the stream on a helper thread from now on. */
+        void startReadAhead() {
+            if (!endReached_ && !(stream_ instanceof HTMLReadAheadReader)) {
+                stream_ = HTMLReadAheadReader.start(stream_);
+            }
+        } // startReadAhead()
+
+        /** Stops reading ahead, without closing the stream. */
+        void stopReadAhead() {
+            if (stream_ instanceof HTMLReadAheadReader) {
+                ((HTMLReadAheadReader) stream_).detach();
+            }
+        } // stopReadAhead()
+
         private void setStream(final InputStreamReader inputStreamReader) {
             stream_ = inputStreamReader;
             offset = length = characterOffset_ = 0;
+            charactersLoaded_ = 0;
             lineNumber_ = columnNumber_ = 1;
             encoding = inputStreamReader.getEncoding();
         }
@@ -1831,6 +2250,13 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
         private int getCharacterOffset() {
             return characterOffset_;
         }
+
+        /** Sets the location reported by the scanner, e.g. while events are replayed. */
+        void setLocation(final int lineNumber, final int columnNumber, final int characterOffset) {
+            lineNumber_ = lineNumber;
+            columnNumber_ = columnNumber;
+            characterOffset_ = characterOffset;
+        }
     } // class CurrentEntity
 
     /**
@@ -1852,6 +2278,9 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
         /** Attributes. */
         private final XMLAttributesImpl fAttributes = new XMLAttributesImpl();
 
+        /** The element information of the last scanned start element. */
+        private HTMLElements.Element fElement;
+
         //
         // Scanner methods
         //
@@ -1861,6 +2290,12 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
         public boolean scan(final boolean complete) throws IOException {
             boolean next;
             do {
+                if (fScannerState == STATE_CONTENT && hasLimits()) {
+                    checkLimits();
+                }
+                if (fStopScanning && fScannerState != STATE_END_DOCUMENT) {
+                    scanStopped();
+                }
                 try {
                     next = false;
                     switch (fScannerState) {
@@ -1868,6 +2303,15 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
                         fBeginLineNumber = fCurrentEntity.getLineNumber();
                         fBeginColumnNumber = fCurrentEntity.getColumnNumber();
                         fBeginCharacterOffset = fCurrentEntity.getCharacterOffset();
+                        if (fSyncLimit != -1 && fBeginCharacterOffset >= fSyncLimit && fCurrentEntityStack.isEmpty()) {
+                            // end of a chunk of a parallel scan
+                            fSyncOffset = fBeginCharacterOffset;
+                            fSyncLineNumber = fBeginLineNumber;
+                            fSyncColumnNumber = fBeginColumnNumber;
+                            setScannerState(STATE_END_DOCUMENT);
+                            next = true;
+                            break;
+                        }
                         final int c = fCurrentEntity.read();
                         if (c == '<') {
                             setScannerState(STATE_MARKUP_BRACKET);
@@ -1920,7 +2364,14 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
                             fBeginLineNumber = fCurrentEntity.getLineNumber();
                             fBeginColumnNumber = fCurrentEntity.getColumnNumber();
                             fBeginCharacterOffset = fCurrentEntity.getCharacterOffset();
-                            if ("script".equals(enameLC)) {
+                            final Object rawText = ename != null ? HTMLFlightRecorder.beginRawText() : null;
+                            final int rawTextOffset = fBeginCharacterOffset;
+                            if (fSkipScriptContent
+                                    && ename != null
+                                    && !fSingleBoolean[0]
+                                    && (fElement.code == HTMLElements.SCRIPT || fElement.code == HTMLElements.STYLE || (!fParseNoScriptContent && fElement.code == HTMLElements.NOSCRIPT))) {
+                                skipUntilEndTag(enameLC, fElement.code == HTMLElements.SCRIPT);
+                            } else if ("script".equals(enameLC)) {
                                 scanScriptContent();
                             } else if (!fAllowSelfclosingTags && !fAllowSelfclosingIframe && "iframe".equals(enameLC)) {
                                 scanUntilEndTag("iframe");
@@ -1928,12 +2379,15 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
                                 scanUntilEndTag("noscript");
                             } else if (!fParseNoFramesContent && "noframes".equals(enameLC)) {
                                 scanUntilEndTag("noframes");
-                            } else if (ename != null && !fSingleBoolean[0] && HTMLElements.getElement(enameLC).isSpecial()
-                                    && (!"TITLE".equalsIgnoreCase(ename) || isEnded(enameLC))) {
-                                setScanner(fSpecialScanner.setElementName(ename));
+                            } else if (ename != null && !fSingleBoolean[0] && fElement.isSpecial()
+                                    && (fElement.code != HTMLElements.TITLE || isEnded(enameLC))) {
+                                setScanner(fSpecialScanner.setElement(ename, fElement));
                                 setScannerState(STATE_CONTENT);
                                 return true;
                             }
+                            if (rawText != null) {
+                                HTMLFlightRecorder.endRawText(rawText, ename, fCurrentEntity.getCharacterOffset() - rawTextOffset);
+                            }
                         }
                         setScannerState(STATE_CONTENT);
                         break;
@@ -1958,7 +2412,7 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
                         break;
                     }
                     case STATE_END_DOCUMENT: {
-                        if (fDocumentHandler != null && fElementCount >= fElementDepth && complete) {
+                        if (fDocumentHandler != null && fElementCount >= fElementDepth && (!fEvaluating || fStopScanning)) {
                             fEndLineNumber = fCurrentEntity.getLineNumber();
                             fEndColumnNumber = fCurrentEntity.getColumnNumber();
                             fEndCharacterOffset = fCurrentEntity.getCharacterOffset();
@@ -1971,7 +2425,7 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
                     }
                     }
                 } catch (final EOFException e) {
-                    if (fCurrentEntityStack.empty()) {
+                    if (fCurrentEntityStack.isEmpty()) {
                         setScannerState(STATE_END_DOCUMENT);
                     } else {
                         fCurrentEntity = fCurrentEntityStack.pop();
@@ -2024,6 +2478,48 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
             }
         }
 
+        /**
+         * Skips the content of an element up to its end tag without
+         * buffering it.
+         * @param tagName the lower case name of the element
+         * @param script <code>true</code> to ignore end tags within
+         *               comments, as {@link #scanScriptContent()} does
+         */
+        private void skipUntilEndTag(final String tagName, final boolean script) throws IOException {
+            final String end = "/" + tagName;
+            final int lengthToScan = tagName.length() + 2;
+            boolean waitForEndComment = false;
+            // the last three characters skipped, the latest in c3
+            int c1 = -1;
+            int c2 = -1;
+            int c3 = -1;
+            while (true) {
+                int c = fCurrentEntity.read();
+                if (c == -1) {
+                    break;
+                } else if (script && c == '-' && c1 == '<' && c2 == '!' && c3 == '-') {
+                    waitForEndComment = endCommentAvailable();
+                } else if (!waitForEndComment && c == '<') {
+                    final String next = nextContent(lengthToScan) + " ";
+                    if (next.length() >= lengthToScan && end.equalsIgnoreCase(next.substring(0, end.length()))
+                            && ('>' == next.charAt(lengthToScan - 1) || Character.isWhitespace(next.charAt(lengthToScan - 1)))) {
+                        fCurrentEntity.rewind();
+                        break;
+                    }
+                } else if (c == '>' && c2 == '-' && c3 == '-') {
+                    waitForEndComment = false;
+                }
+                if (c == '\r' || c == '\n') {
+                    fCurrentEntity.rewind();
+                    skipNewlines();
+                    c = '\n';
+                }
+                c1 = c2;
+                c2 = c3;
+                c3 = c;
+            }
+        } // skipUntilEndTag(String,boolean)
+
         private void scanScriptContent() throws IOException {
 
             final XMLStringBuffer buffer = new XMLStringBuffer();
@@ -2416,12 +2912,20 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
                 return null;
             }
             ename = modifyName(ename, fNamesElems);
+            fElement = HTMLElements.getElement(ename);
             fAttributes.removeAllAttributes();
+            if (fStatistics != null) {
+                fStatistics.fElementsScanned++;
+            }
             final int beginLineNumber = fBeginLineNumber;
             final int beginColumnNumber = fBeginColumnNumber;
             final int beginCharacterOffset = fBeginCharacterOffset;
-            while (scanAttribute(fAttributes, empty)) {
-                // do nothing
+            if (fSkipAttributes && fElement.code != HTMLElements.META) {
+                skipAttributes(empty);
+            } else {
+                while (scanAttribute(fAttributes, empty)) {
+                    // do nothing
+                }
             }
             fBeginLineNumber = beginLineNumber;
             fBeginColumnNumber = beginColumnNumber;
@@ -2449,15 +2953,21 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
                 } else if ("BODY".equalsIgnoreCase(ename)) {
                     fByteStream.clear();
                     fByteStream = null;
+                    startReadAhead();
                 } else {
-                    final HTMLElements.Element element = HTMLElements.getElement(ename);
+                    final HTMLElements.Element element = fElement;
                     if (element.parent != null && element.parent.length > 0) {
                         if (element.parent[0].code == HTMLElements.BODY) {
                             fByteStream.clear();
                             fByteStream = null;
+                            startReadAhead();
                         }
                     }
                 }
+            } else if (fReadAhead && fByteStream != null && fByteStream.fCleared) {
+                // played back in the new charset, which cannot change again
+                fByteStream = null;
+                startReadAhead();
             }
             if (fDocumentHandler != null && fElementCount >= fElementDepth) {
                 fQName.setValues(null, ename, ename, null);
@@ -2465,9 +2975,9 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
                 fEndColumnNumber = fCurrentEntity.getColumnNumber();
                 fEndCharacterOffset = fCurrentEntity.getCharacterOffset();
                 if (empty[0]) {
-                    fDocumentHandler.emptyElement(fQName, fAttributes, locationAugs());
+                    fDocumentHandler.emptyElement(fQName, fAttributes, locationAugs(fElement));
                 } else {
-                    fDocumentHandler.startElement(fQName, fAttributes, locationAugs());
+                    fDocumentHandler.startElement(fQName, fAttributes, locationAugs(fElement));
                 }
             }
             return ename;
@@ -2521,12 +3031,16 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
                         fIso8859Encoding =
                                 ianaEncoding.toUpperCase(Locale.ENGLISH).startsWith("ISO-8859")
                                         || ianaEncoding.equalsIgnoreCase(fDefaultIANAEncoding);
+                        HTMLFlightRecorder.encodingChange(fCurrentEntity.expandedSystemId, fJavaEncoding, javaEncoding);
                         fJavaEncoding = javaEncoding;
                         fCurrentEntity.setStream(new InputStreamReader(fByteStream, javaEncoding));
                         fByteStream.playback();
                         fElementDepth = fElementCount;
                         fElementCount = 0;
                         encodingChanged = true;
+                        if (fStatistics != null) {
+                            fStatistics.fEncodingChanges++;
+                        }
                     }
                 }
             } catch (final UnsupportedEncodingException e) {
@@ -2538,10 +3052,66 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
                 //       buffer the input stream.
                 fByteStream.clear();
                 fByteStream = null;
+                startReadAhead();
             }
             return encodingChanged;
         }
 
+        /**
+         * Skips the attributes of a start tag up to its end, honoring
+         * quoted attribute values.
+         *
+         * @param empty Is used for a second return value to indicate
+         *              whether the start element tag is empty
+         *              (e.g. "/&gt;").
+         */
+        protected void skipAttributes(final boolean[] empty) throws IOException {
+            int quote = -1;
+            boolean afterEquals = false;
+            boolean inValue = false;
+            int prev = -1;
+            while (true) {
+                final int c = fCurrentEntity.read();
+                if (c == -1) {
+                    if (fReportErrors) {
+                        fErrorReporter.reportError("HTML1007", null);
+                    }
+                    return;
+                }
+                if (c == '\r' || c == '\n') {
+                    fCurrentEntity.rewind();
+                    skipNewlines();
+                    afterEquals = afterEquals && quote == -1;
+                    inValue = false;
+                    prev = ' ';
+                    continue;
+                }
+                if (quote != -1) {
+                    if (c == quote) {
+                        quote = -1;
+                    }
+                } else if (c == '>') {
+                    empty[0] = prev == '/';
+                    return;
+                } else if (c == '<' && !inValue) {
+                    // same as an attribute starting with '<'
+                    fCurrentEntity.rewind();
+                    return;
+                } else if (c == ' ' || c == '\t') {
+                    inValue = false;
+                } else if (c == '=') {
+                    afterEquals = !inValue;
+                } else if (afterEquals && (c == '"' || c == '\'')) {
+                    afterEquals = false;
+                    quote = c;
+                } else if (afterEquals) {
+                    afterEquals = false;
+                    inValue = true;
+                }
+                prev = c;
+            }
+        } // skipAttributes(boolean[])
+
         /**
          * Scans a real attribute.
          *
@@ -2816,7 +3386,7 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
                     fEndLineNumber = fCurrentEntity.getLineNumber();
                     fEndColumnNumber = fCurrentEntity.getColumnNumber();
                     fEndCharacterOffset = fCurrentEntity.getCharacterOffset();
-                    fDocumentHandler.endElement(fQName, locationAugs());
+                    fDocumentHandler.endElement(fQName, locationAugs(fAugmentations ? HTMLElements.getElement(ename) : null));
                 }
             }
         } // scanEndElement()
@@ -2851,6 +3421,9 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
         /** Name of element whose content needs to be scanned as text. */
         protected String fElementName;
 
+        /** Information of element whose content needs to be scanned as text. */
+        protected HTMLElements.Element fElement;
+
         /** True if &lt;style&gt; element. */
         protected boolean fStyle;
 
@@ -2860,6 +3433,12 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
         /** True if &lt;title&gt; element. */
         protected boolean fTitle;
 
+        /** Flight recorder event of the element content, or null. */
+        private Object fRawTextEvent;
+
+        /** Character offset of the element content. */
+        private int fRawTextOffset;
+
         // temp vars
 
         /** A qualified name. */
@@ -2874,12 +3453,22 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
 
         /** Sets the element name. */
         public Scanner setElementName(final String ename) {
+            return setElement(ename, HTMLElements.getElement(ename));
+        } // setElementName(String):Scanner
+
+        /** Sets the element name and its already resolved element information. */
+        public Scanner setElement(final String ename, final HTMLElements.Element element) {
             fElementName = ename;
-            fStyle = "STYLE".equalsIgnoreCase(fElementName);
-            fTextarea = "TEXTAREA".equalsIgnoreCase(fElementName);
-            fTitle = "TITLE".equalsIgnoreCase(fElementName);
+            fElement = element;
+            fStyle = element.code == HTMLElements.STYLE;
+            fTextarea = element.code == HTMLElements.TEXTAREA;
+            fTitle = element.code == HTMLElements.TITLE;
+            fRawTextEvent = HTMLFlightRecorder.beginRawText();
+            if (fRawTextEvent != null) {
+                fRawTextOffset = fCurrentEntity.getCharacterOffset();
+            }
             return this;
-        } // setElementName(String):Scanner
+        } // setElement(String,HTMLElements.Element):Scanner
 
         //
         // Scanner methods
@@ -2890,6 +3479,13 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
         public boolean scan(final boolean complete) throws IOException {
             boolean next;
             do {
+                if (fScannerState == STATE_CONTENT && hasLimits()) {
+                    checkLimits();
+                }
+                if (fStopScanning) {
+                    scanStopped();
+                    return true;
+                }
                 try {
                     next = false;
                     switch (fScannerState) {
@@ -2935,7 +3531,12 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
                                             fEndLineNumber = fCurrentEntity.getLineNumber();
                                             fEndColumnNumber = fCurrentEntity.getColumnNumber();
                                             fEndCharacterOffset = fCurrentEntity.getCharacterOffset();
-                                            fDocumentHandler.endElement(fQName, locationAugs());
+                                            fDocumentHandler.endElement(fQName, locationAugs(fElement));
+                                        }
+                                        if (fRawTextEvent != null) {
+                                            HTMLFlightRecorder.endRawText(fRawTextEvent, fElementName, fCurrentEntity.getCharacterOffset()
+                                                    - fRawTextOffset);
+                                            fRawTextEvent = null;
                                         }
                                         setScanner(fContentScanner);
                                         setScannerState(STATE_CONTENT);
@@ -2963,7 +3564,7 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
                 } // try
                 catch (final EOFException e) {
                     setScanner(fContentScanner);
-                    if (fCurrentEntityStack.empty()) {
+                    if (fCurrentEntityStack.isEmpty()) {
                         setScannerState(STATE_END_DOCUMENT);
                     } else {
                         fCurrentEntity = fCurrentEntityStack.pop();
@@ -3082,6 +3683,9 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
         /** Pushback length. */
         public int fPushbackLength = 0;
 
+        /** Parse statistics, or null. */
+        HTMLParseStatistics fStatistics;
+
         //
         // Constructors
         //
@@ -3168,7 +3772,11 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
                 return fByteBuffer[fPushbackOffset++] & 0xFF;
             }
             if (fCleared) {
-                return in.read();
+                final int c = in.read();
+                if (c != -1 && fStatistics != null) {
+                    fStatistics.fBytesRead++;
+                }
+                return c;
             }
             if (fPlayback) {
                 final int c = fByteBuffer[fByteOffset++];
@@ -3180,6 +3788,10 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
             }
             final int c = in.read();
             if (c != -1) {
+                if (fStatistics != null) {
+                    fStatistics.fBytesRead++;
+                    fStatistics.fBytesRecorded++;
+                }
                 if (fByteLength == fByteBuffer.length) {
                     final byte[] newarray = new byte[fByteLength + 1024];
                     System.arraycopy(fByteBuffer, 0, newarray, 0, fByteLength);
@@ -3209,7 +3821,11 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
                 return count;
             }
             if (fCleared) {
-                return in.read(array, offset, length);
+                final int count = in.read(array, offset, length);
+                if (count > 0 && fStatistics != null) {
+                    fStatistics.fBytesRead += count;
+                }
+                return count;
             }
             if (fPlayback) {
                 if (fByteOffset + length > fByteLength) {
@@ -3225,6 +3841,10 @@ public class HTMLScanner implements XMLDocumentScanner, XMLLocator, HTMLComponen
             }
             final int count = in.read(array, offset, length);
             if (count != -1) {
+                if (fStatistics != null) {
+                    fStatistics.fBytesRead += count;
+                    fStatistics.fBytesRecorded += count;
+                }
                 if (fByteLength + count > fByteBuffer.length) {
                     final byte[] newarray = new byte[fByteLength + count + 512];
                     System.arraycopy(fByteBuffer, 0, newarray, 0, fByteLength);
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.parser.XMLComponentManager;
+import org.apache.xerces.xni.parser.XMLConfigurationException;
+
+/**
+ * An immutable snapshot of the features and properties read by the
+ * scanner, the tag balancer and the namespace binder. The components
+ * read their settings from the plain fields of a snapshot on reset
+ * instead of looking each setting up by its identifier.
+ * <p>
+ * {@link HTMLConfiguration} builds a snapshot once and keeps it until a
+ * feature or property changes. The names settings are already converted
+ * to the <code>NAMES_*</code> constants of the components.
+ */
+public final class HTMLSettings {
+
+    //
+    // Constants
+    //
+
+    /** Namespaces. */
+    private static final String NAMESPACES = "http://xml.org/sax/features/namespaces";
+
+    /** Override namespace binding URI. */
+    private static final String OVERRIDE_NAMESPACES = "http://cyberneko.org/html/features/override-namespaces";
+
+    /** Insert namespace binding URIs. */
+    private static final String INSERT_NAMESPACES = "http://cyberneko.org/html/features/insert-namespaces";
+
+    /** Namespaces URI. */
+    private static final String NAMESPACES_URI = "http://cyberneko.org/html/properties/namespaces-uri";
+
+    //
+    // Data
+    //
+
+    // features
+
+    /** Namespaces. */
+    public final boolean namespaces;
+
+    /** Include infoset augmentations. */
+    public final boolean augmentations;
+
+    /** Report errors. */
+    public final boolean reportErrors;
+
+    /** Notify character entity references. */
+    public final boolean notifyCharRefs;
+
+    /** Notify XML built-in entity references. */
+    public final boolean notifyXmlBuiltinRefs;
+
+    /** Notify HTML built-in entity references. */
+    public final boolean notifyHtmlBuiltinRefs;
+
+    /** Fix Microsoft Windows&reg; character entity references. */
+    public final boolean fixWindowsCharRefs;
+
+    /** Strip CDATA delimiters from script content. */
+    public final boolean scriptStripCDATADelims;
+
+    /** Strip comment delimiters from script content. */
+    public final boolean scriptStripCommentDelims;
+
+    /** Strip CDATA delimiters from style content. */
+    public final boolean styleStripCDATADelims;
+
+    /** Strip comment delimiters from style content. */
+    public final boolean styleStripCommentDelims;
+
+    /** Ignore the charset specified in the document. */
+    public final boolean ignoreSpecifiedCharset;
+
+    /** Report CDATA sections. */
+    public final boolean cdataSections;
+
+    /** Override the doctype declaration. */
+    public final boolean overrideDoctype;
+
+    /** Insert a doctype declaration. */
+    public final boolean insertDoctype;
+
+    /** Normalize attribute values. */
+    public final boolean normalizeAttributes;
+
+    /** Parse the content of noscript elements. */
+    public final boolean parseNoScriptContent;
+
+    /** Allow self-closing iframe tags. */
+    public final boolean allowSelfclosingIframe;
+
+    /** Allow self-closing tags. */
+    public final boolean allowSelfclosingTags;
+
+    /** Skip the attributes of the elements. */
+    public final boolean skipAttributes;
+
+    /** Skip the content of script elements. */
+    public final boolean skipScriptContent;
+
+    /** Fail when a limit is exceeded. */
+    public final boolean limitsFail;
+
+    /** Balance a document fragment. */
+    public final boolean documentFragment;
+
+    /** Ignore the content outside of the root element. */
+    public final boolean ignoreOutsideContent;
+
+    /** Stop after the head element. */
+    public final boolean headOnly;
+
+    /** Override namespace binding URIs. */
+    public final boolean overrideNamespaces;
+
+    /** Insert namespace binding URIs. */
+    public final boolean insertNamespaces;
+
+    /** Scan large documents in chunks on several threads. */
+    public final boolean parallelScanning;
+
+    /** Read the input on a helper thread. */
+    public final boolean readAhead;
+
+    // properties
+
+    /** Modify HTML element names, as a <code>NAMES_*</code> constant. */
+    public final short namesElems;
+
+    /** Modify HTML attribute names, as a <code>NAMES_*</code> constant. */
+    public final short namesAttrs;
+
+    /** Default encoding. */
+    public final String defaultEncoding;
+
+    /** Error reporter. */
+    public final HTMLErrorReporter errorReporter;
+
+    /** Doctype public identifier. */
+    public final String doctypePubid;
+
+    /** Doctype system identifier. */
+    public final String doctypeSysid;
+
+    /** Maximum number of characters, 0 meaning no limit. */
+    public final long maxCharacters;
+
+    /** Maximum number of events, 0 meaning no limit. */
+    public final long maxEvents;
+
+    /** Maximum parse time in milliseconds, 0 meaning no limit. */
+    public final long maxTime;
+
+    /** Parse statistics, or null. */
+    public final HTMLParseStatistics statistics;
+
+    /** Fragment context stack, or null. */
+    public final QName[] fragmentContextStack;
+
+    /** Namespaces URI. */
+    public final String namespacesURI;
+
+    /** Number of characters of the chunks of a parallel scan. */
+    public final int parallelChunkSize;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Reads the settings of a component manager. Settings the manager
+     * does not recognize are false or null.
+     */
+    HTMLSettings(final XMLComponentManager manager) {
+
+        // features
+        namespaces = getFeature(manager, NAMESPACES);
+        augmentations = getFeature(manager, HTMLScanner.AUGMENTATIONS);
+        reportErrors = getFeature(manager, HTMLScanner.REPORT_ERRORS);
+        notifyCharRefs = getFeature(manager, HTMLScanner.NOTIFY_CHAR_REFS);
+        notifyXmlBuiltinRefs = getFeature(manager, HTMLScanner.NOTIFY_XML_BUILTIN_REFS);
+        notifyHtmlBuiltinRefs = getFeature(manager, HTMLScanner.NOTIFY_HTML_BUILTIN_REFS);
+        fixWindowsCharRefs = getFeature(manager, HTMLScanner.FIX_MSWINDOWS_REFS);
+        scriptStripCDATADelims = getFeature(manager, HTMLScanner.SCRIPT_STRIP_CDATA_DELIMS);
+        scriptStripCommentDelims = getFeature(manager, HTMLScanner.SCRIPT_STRIP_COMMENT_DELIMS);
+        styleStripCDATADelims = getFeature(manager, HTMLScanner.STYLE_STRIP_CDATA_DELIMS);
+        styleStripCommentDelims = getFeature(manager, HTMLScanner.STYLE_STRIP_COMMENT_DELIMS);
+        ignoreSpecifiedCharset = getFeature(manager, HTMLScanner.IGNORE_SPECIFIED_CHARSET);
+        cdataSections = getFeature(manager, HTMLScanner.CDATA_SECTIONS);
+        overrideDoctype = getFeature(manager, HTMLScanner.OVERRIDE_DOCTYPE);
+        insertDoctype = getFeature(manager, HTMLScanner.INSERT_DOCTYPE);
+        normalizeAttributes = getFeature(manager, HTMLScanner.NORMALIZE_ATTRIBUTES);
+        parseNoScriptContent = getFeature(manager, HTMLScanner.PARSE_NOSCRIPT_CONTENT);
+        allowSelfclosingIframe = getFeature(manager, HTMLScanner.ALLOW_SELFCLOSING_IFRAME);
+        allowSelfclosingTags = getFeature(manager, HTMLScanner.ALLOW_SELFCLOSING_TAGS);
+        skipAttributes = getFeature(manager, HTMLScanner.SKIP_ATTRIBUTES);
+        skipScriptContent = getFeature(manager, HTMLScanner.SKIP_SCRIPT_CONTENT);
+        limitsFail = getFeature(manager, HTMLScanner.LIMITS_FAIL);
+        documentFragment =
+                getFeature(manager, HTMLTagBalancer.DOCUMENT_FRAGMENT) || getFeature(manager, HTMLTagBalancer.DOCUMENT_FRAGMENT_DEPRECATED);
+        ignoreOutsideContent = getFeature(manager, HTMLTagBalancer.IGNORE_OUTSIDE_CONTENT);
+        headOnly = getFeature(manager, HTMLTagBalancer.HEAD_ONLY);
+        overrideNamespaces = getFeature(manager, OVERRIDE_NAMESPACES);
+        insertNamespaces = getFeature(manager, INSERT_NAMESPACES);
+        parallelScanning = getFeature(manager, HTMLScanner.PARALLEL_SCANNING);
+        readAhead = getFeature(manager, HTMLScanner.READ_AHEAD);
+
+        // properties
+        namesElems = HTMLScanner.getNamesValue(String.valueOf(getProperty(manager, HTMLScanner.NAMES_ELEMS)));
+        namesAttrs = HTMLScanner.getNamesValue(String.valueOf(getProperty(manager, HTMLScanner.NAMES_ATTRS)));
+        defaultEncoding = String.valueOf(getProperty(manager, HTMLScanner.DEFAULT_ENCODING));
+        errorReporter = (HTMLErrorReporter) getProperty(manager, HTMLScanner.ERROR_REPORTER);
+        doctypePubid = String.valueOf(getProperty(manager, HTMLScanner.DOCTYPE_PUBID));
+        doctypeSysid = String.valueOf(getProperty(manager, HTMLScanner.DOCTYPE_SYSID));
+        maxCharacters = HTMLScanner.getLimitValue(getProperty(manager, HTMLScanner.MAX_CHARACTERS));
+        maxEvents = HTMLScanner.getLimitValue(getProperty(manager, HTMLScanner.MAX_EVENTS));
+        maxTime = HTMLScanner.getLimitValue(getProperty(manager, HTMLScanner.MAX_TIME));
+        statistics = (HTMLParseStatistics) getProperty(manager, HTMLScanner.STATISTICS);
+        final QName[] fragmentContextStack = (QName[]) getProperty(manager, HTMLTagBalancer.FRAGMENT_CONTEXT_STACK);
+        this.fragmentContextStack = fragmentContextStack != null ? fragmentContextStack.clone() : null;
+        namespacesURI = String.valueOf(getProperty(manager, NAMESPACES_URI));
+        parallelChunkSize =
+                (int) Math.min(HTMLScanner.getLimitValue(getProperty(manager, HTMLScanner.PARALLEL_CHUNK_SIZE)), Integer.MAX_VALUE);
+
+    } // <init>(XMLComponentManager)
+
+    //
+    // Public static methods
+    //
+
+    /**
+     * Returns the settings of a component manager: the snapshot kept by
+     * an {@link HTMLConfiguration}, or a new snapshot for other managers.
+     */
+    public static HTMLSettings get(final XMLComponentManager manager) {
+        if (manager instanceof HTMLConfiguration) {
+            return ((HTMLConfiguration) manager).getHTMLSettings();
+        }
+        return new HTMLSettings(manager);
+    } // get(XMLComponentManager):HTMLSettings
+
+    //
+    // Private static methods
+    //
+
+    /** Returns the state of a feature, or false if it is not recognized. */
+    private static boolean getFeature(final XMLComponentManager manager, final String featureId) {
+        try {
+            return manager.getFeature(featureId);
+        } catch (final XMLConfigurationException e) {
+            return false;
+        }
+    } // getFeature(XMLComponentManager,String):boolean
+
+    /** Returns the value of a property, or null if it is not recognized. */
+    private static Object getProperty(final XMLComponentManager manager, final String propertyId) {
+        try {
+            return manager.getProperty(propertyId);
+        } catch (final XMLConfigurationException e) {
+            return null;
+        }
+    } // getProperty(XMLComponentManager,String):Object
+
+} // class HTMLSettings
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParserConfiguration;
+
+/**
+ * Keeps the input of the documents whose parse takes longer than a
+ * threshold. To use it, set an instance as the
+ * {@link HTMLConfiguration#SLOW_PARSE_RECORDER} property.
+ * <p>
+ * While a document is parsed, the first bytes (or characters) read from
+ * its input are copied into a buffer of bounded size. When the parse of
+ * the document ends after the threshold, the buffer is written to
+ * <code>slow-<i>time</i>-<i>n</i>.html</code> in the directory of the
+ * recorder, next to a <code>.html.settings</code> file with the features
+ * and the properties of the configuration, in the format read by
+ * {@link #readSettings}. Documents longer than the buffer are truncated.
+ * <p>
+ * The time is measured from the call to <code>setInputSource</code> to
+ * the end of the document, so it includes the time spent in the document
+ * handler. An instance can be shared by several configurations.
+ */
+public class HTMLSlowParseRecorder {
+
+    //
+    // Constants
+    //
+
+    /** Default maximum number of bytes kept for a document. */
+    public static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+
+    /** Default encoding property. */
+    private static final String DEFAULT_ENCODING = "http://cyberneko.org/html/properties/default-encoding";
+
+    //
+    // Data
+    //
+
+    /** The directory of the recorded documents. */
+    private final File fDirectory;
+
+    /** The threshold in nanoseconds. */
+    private final long fThreshold;
+
+    /** The maximum number of bytes kept for a document. */
+    private final int fMaxBytes;
+
+    /** Sequence number of the file names. */
+    private final AtomicLong fSequence = new AtomicLong();
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructs a recorder keeping up to {@link #DEFAULT_MAX_BYTES} of
+     * each document.
+     *
+     * @param directory       The directory of the recorded documents.
+     * @param thresholdMillis The parse time threshold in milliseconds.
+     */
+    public HTMLSlowParseRecorder(final File directory, final long thresholdMillis) {
+        this(directory, thresholdMillis, DEFAULT_MAX_BYTES);
+    } // <init>(File,long)
+
+    /**
+     * Constructs a recorder.
+     *
+     * @param directory       The directory of the recorded documents.
+     * @param thresholdMillis The parse time threshold in milliseconds.
+     * @param maxBytes        The maximum number of bytes kept for a document.
+     */
+    public HTMLSlowParseRecorder(final File directory, final long thresholdMillis, final int maxBytes) {
+        fDirectory = directory;
+        fThreshold = thresholdMillis * 1000000L;
+        fMaxBytes = maxBytes;
+    } // <init>(File,long,int)
+
+    //
+    // Public methods
+    //
+
+    /** Returns the directory of the recorded documents. */
+    public File getDirectory() {
+        return fDirectory;
+    } // getDirectory():File
+
+    /** Returns the number of documents recorded. */
+    public long getDocumentsRecorded() {
+        return fSequence.get();
+    } // getDocumentsRecorded():long
+
+    /**
+     * Applies the settings written for a recorded document to a
+     * configuration. Each line is "feature <i>id</i> <i>value</i>" or
+     * "property <i>id</i> <i>value</i>".
+     *
+     * @param settings The settings file.
+     * @param config   The configuration.
+     *
+     * @exception IOException Thrown on I/O error.
+     */
+    public static void readSettings(final File settings, final XMLParserConfiguration config) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(settings.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final StringTokenizer tokenizer = new StringTokenizer(line);
+                if (tokenizer.countTokens() != 3) {
+                    continue;
+                }
+                final String type = tokenizer.nextToken();
+                final String id = tokenizer.nextToken();
+                final String value = tokenizer.nextToken();
+                if ("feature".equals(type)) {
+                    config.setFeature(id, "true".equals(value));
+                } else {
+                    config.setProperty(id, value);
+                }
+            }
+        }
+    } // readSettings(File,XMLParserConfiguration)
+
+    //
+    // Package methods
+    //
+
+    /**
+     * Starts capturing the input of a document.
+     *
+     * @param source The input source of the document.
+     *
+     * @return The capture, whose input source must be parsed instead.
+     *
+     * @exception IOException Thrown if the document cannot be opened.
+     */
+    Capture capture(final XMLInputSource source) throws IOException {
+        return new Capture(source);
+    } // capture(XMLInputSource):Capture
+
+    //
+    // Classes
+    //
+
+    /** The captured input of a document. */
+    class Capture {
+
+        /** The input source to parse. */
+        private final XMLInputSource fSource;
+
+        /** Start time. */
+        private final long fStart = System.nanoTime();
+
+        /** Captured bytes or UTF-8 encoded characters. */
+        private byte[] fBuffer = new byte[256];
+
+        /** Length of the captured input. */
+        private int fLength;
+
+        /** True if the input is read from a character stream. */
+        private final boolean fCharacters;
+
+        /** Constructs a capture. */
+        Capture(final XMLInputSource source) throws IOException {
+            fSource = new XMLInputSource(source.getPublicId(), source.getSystemId(), source.getBaseSystemId());
+            fSource.setEncoding(source.getEncoding());
+            final Reader reader = source.getCharacterStream();
+            fCharacters = reader != null;
+            if (reader != null) {
+                fSource.setCharacterStream(new CapturingReader(reader));
+            } else {
+                InputStream stream = source.getByteStream();
+                if (stream == null) {
+                    stream = new URL(HTMLScanner.expandSystemId(source.getSystemId(), source.getBaseSystemId())).openStream();
+                }
+                fSource.setByteStream(new CapturingInputStream(stream));
+            }
+        } // <init>(XMLInputSource)
+
+        /** Returns the input source to parse. */
+        XMLInputSource getInputSource() {
+            return fSource;
+        } // getInputSource():XMLInputSource
+
+        /** Ends the document, writing it if its parse was slow. */
+        void end(final HTMLConfiguration config) {
+            if (System.nanoTime() - fStart < fThreshold) {
+                return;
+            }
+            final Map<String, String> settings = config.getSettings();
+            if (fCharacters) {
+                // the characters are written in UTF-8
+                settings.put("feature " + HTMLScanner.IGNORE_SPECIFIED_CHARSET, "true");
+                settings.put("property " + DEFAULT_ENCODING, "UTF-8");
+            } else if (fSource.getEncoding() != null) {
+                settings.put("property " + DEFAULT_ENCODING, fSource.getEncoding());
+            }
+            final StringBuilder str = new StringBuilder();
+            for (final Map.Entry<String, String> setting : settings.entrySet()) {
+                str.append(setting.getKey()).append(' ').append(setting.getValue()).append('\n');
+            }
+            final String name = "slow-" + System.currentTimeMillis() + '-' + fSequence.incrementAndGet() + ".html";
+            try {
+                fDirectory.mkdirs();
+                try (OutputStream out = new FileOutputStream(new File(fDirectory, name))) {
+                    out.write(fBuffer, 0, fLength);
+                }
+                Files.write(new File(fDirectory, name + ".settings").toPath(), str.toString().getBytes(StandardCharsets.UTF_8));
+            } catch (final IOException e) {
+                // recording is best effort: never fail the parse
+            }
+        } // end(HTMLConfiguration)
+
+        /** Captures bytes, up to the maximum. */
+        void capture(final byte[] bytes, final int offset, final int length) {
+            final int count = Math.min(length, fMaxBytes - fLength);
+            if (count <= 0) {
+                return;
+            }
+            if (fLength + count > fBuffer.length) {
+                fBuffer = Arrays.copyOf(fBuffer, Math.min(Math.max(fBuffer.length * 2, fLength + count), fMaxBytes));
+            }
+            System.arraycopy(bytes, offset, fBuffer, fLength, count);
+            fLength += count;
+        } // capture(byte[],int,int)
+
+        /** Input stream capturing the bytes read. */
+        class CapturingInputStream extends FilterInputStream {
+
+            /** Constructs a capturing stream. */
+            CapturingInputStream(final InputStream in) {
+                super(in);
+            } // <init>(InputStream)
+
+            /** Reads a byte. */
+            @Override
+            public int read() throws IOException {
+                final int b = in.read();
+                if (b != -1) {
+                    capture(new byte[] { (byte) b }, 0, 1);
+                }
+                return b;
+            } // read():int
+
+            /** Reads bytes. */
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                final int count = in.read(b, off, len);
+                if (count > 0) {
+                    capture(b, off, count);
+                }
+                return count;
+            } // read(byte[],int,int):int
+
+            /** Skips bytes, capturing them. */
+            @Override
+            public long skip(final long n) throws IOException {
+                final byte[] skipped = new byte[(int) Math.min(n, 1024)];
+                final int count = read(skipped, 0, skipped.length);
+                return Math.max(count, 0);
+            } // skip(long):long
+
+            /** Marks are not supported since the bytes are captured once. */
+            @Override
+            public boolean markSupported() {
+                return false;
+            } // markSupported():boolean
+
+        } // class CapturingInputStream
+
+        /** Reader capturing the characters read as UTF-8. */
+        class CapturingReader extends FilterReader {
+
+            /** Constructs a capturing reader. */
+            CapturingReader(final Reader in) {
+                super(in);
+            } // <init>(Reader)
+
+            /** Reads a character. */
+            @Override
+            public int read() throws IOException {
+                final int c = in.read();
+                if (c != -1) {
+                    capture(new char[] { (char) c }, 0, 1);
+                }
+                return c;
+            } // read():int
+
+            /** Reads characters. */
+            @Override
+            public int read(final char[] cbuf, final int off, final int len) throws IOException {
+                final int count = in.read(cbuf, off, len);
+                if (count > 0) {
+                    capture(cbuf, off, count);
+                }
+                return count;
+            } // read(char[],int,int):int
+
+            /** Skips characters, capturing them. */
+            @Override
+            public long skip(final long n) throws IOException {
+                final char[] skipped = new char[(int) Math.min(n, 1024)];
+                final int count = read(skipped, 0, skipped.length);
+                return Math.max(count, 0);
+            } // skip(long):long
+
+            /** Marks are not supported since the characters are captured once. */
+            @Override
+            public boolean markSupported() {
+                return false;
+            } // markSupported():boolean
+
+            /** Captures characters. */
+            private void capture(final char[] cbuf, final int off, final int len) {
+                if (fLength < fMaxBytes) {
+                    final byte[] bytes = new String(cbuf, off, len).getBytes(StandardCharsets.UTF_8);
+                    Capture.this.capture(bytes, 0, bytes.length);
+                }
+            } // capture(char[],int,int)
+
+        } // class CapturingReader
+
+    } // class Capture
+
+} // class HTMLSlowParseRecorder
@@ -95,12 +95,15 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
     /** Ignore outside content. */
     protected static final String IGNORE_OUTSIDE_CONTENT = "http://cyberneko.org/html/features/balance-tags/ignore-outside-content";
 
+    /** Stop the parse at the first body content. */
+    public static final String HEAD_ONLY = "http://cyberneko.org/html/features/balance-tags/head-only";
+
     /** Recognized features. */
     private static final String[] RECOGNIZED_FEATURES = { NAMESPACES, AUGMENTATIONS, REPORT_ERRORS, DOCUMENT_FRAGMENT_DEPRECATED,
-            DOCUMENT_FRAGMENT, IGNORE_OUTSIDE_CONTENT, };
+            DOCUMENT_FRAGMENT, IGNORE_OUTSIDE_CONTENT, HEAD_ONLY, };
 
     /** Recognized features defaults. */
-    private static final Boolean[] RECOGNIZED_FEATURES_DEFAULTS = { null, null, null, null, Boolean.FALSE, Boolean.FALSE, };
+    private static final Boolean[] RECOGNIZED_FEATURES_DEFAULTS = { null, null, null, null, Boolean.FALSE, Boolean.FALSE, Boolean.FALSE, };
 
     // properties
 
@@ -118,11 +121,14 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
      **/
     public static final String FRAGMENT_CONTEXT_STACK = "http://cyberneko.org/html/properties/balance-tags/fragment-context-stack";
 
+    /** Parse statistics. */
+    protected static final String STATISTICS = "http://cyberneko.org/html/properties/statistics";
+
     /** Recognized properties. */
-    private static final String[] RECOGNIZED_PROPERTIES = { NAMES_ELEMS, NAMES_ATTRS, ERROR_REPORTER, FRAGMENT_CONTEXT_STACK, };
+    private static final String[] RECOGNIZED_PROPERTIES = { NAMES_ELEMS, NAMES_ATTRS, ERROR_REPORTER, FRAGMENT_CONTEXT_STACK, STATISTICS, };
 
     /** Recognized properties defaults. */
-    private static final Object[] RECOGNIZED_PROPERTIES_DEFAULTS = { null, null, null, null, };
+    private static final Object[] RECOGNIZED_PROPERTIES_DEFAULTS = { null, null, null, null, null, };
 
     // modify HTML names
 
@@ -164,6 +170,9 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
     /** Ignore outside content. */
     protected boolean fIgnoreOutsideContent;
 
+    /** Stop the parse at the first body content. */
+    protected boolean fHeadOnly;
+
     /** Allows self closing iframe tags. */
     protected boolean fAllowSelfclosingIframe;
 
@@ -181,6 +190,9 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
     /** Error reporter. */
     protected HTMLErrorReporter fErrorReporter;
 
+    /** Parse statistics, or null. */
+    protected HTMLParseStatistics fStatistics;
+
     // connections
 
     /** The document source. */
@@ -228,6 +240,18 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
     /** True if a form is in the stack (allow to discard opening of nested forms) */
     protected boolean fOpenedForm;
 
+    /** The document locator. */
+    protected XMLLocator fLocator;
+
+    /** Flight recorder event of the current fix-up, or null. */
+    private Object fFixupEvent;
+
+    /** Character offset of the current fix-up. */
+    private int fFixupOffset;
+
+    /** Number of events synthesized by the current fix-up. */
+    private int fFixupCount;
+
     // temp vars
 
     /** A qualified name. */
@@ -301,29 +325,25 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
     @Override
     public void reset(final XMLComponentManager manager) {
 
+        final HTMLSettings settings = HTMLSettings.get(manager);
+
         // get features
-        fNamespaces = manager.getFeature(NAMESPACES);
-        fAugmentations = manager.getFeature(AUGMENTATIONS);
-        fReportErrors = manager.getFeature(REPORT_ERRORS);
-        fDocumentFragment = manager.getFeature(DOCUMENT_FRAGMENT) || manager.getFeature(DOCUMENT_FRAGMENT_DEPRECATED);
-        fIgnoreOutsideContent = manager.getFeature(IGNORE_OUTSIDE_CONTENT);
-        fAllowSelfclosingIframe = manager.getFeature(HTMLScanner.ALLOW_SELFCLOSING_IFRAME);
-        fAllowSelfclosingTags = manager.getFeature(HTMLScanner.ALLOW_SELFCLOSING_TAGS);
+        fNamespaces = settings.namespaces;
+        fAugmentations = settings.augmentations;
+        fReportErrors = settings.reportErrors;
+        fDocumentFragment = settings.documentFragment;
+        fIgnoreOutsideContent = settings.ignoreOutsideContent;
+        fHeadOnly = settings.headOnly;
+        fAllowSelfclosingIframe = settings.allowSelfclosingIframe;
+        fAllowSelfclosingTags = settings.allowSelfclosingTags;
 
         // get properties
-        fNamesElems = getNamesValue(String.valueOf(manager.getProperty(NAMES_ELEMS)));
-        fNamesAttrs = getNamesValue(String.valueOf(manager.getProperty(NAMES_ATTRS)));
-        fErrorReporter = (HTMLErrorReporter) manager.getProperty(ERROR_REPORTER);
+        fNamesElems = settings.namesElems;
+        fNamesAttrs = settings.namesAttrs;
+        fErrorReporter = settings.errorReporter;
+        fStatistics = settings.statistics;
 
-        fragmentContextStack_ = (QName[]) manager.getProperty(FRAGMENT_CONTEXT_STACK);
-        fSeenAnything = false;
-        fSeenDoctype = false;
-        fSeenRootElement = false;
-        fSeenRootElementEnd = false;
-        fSeenHeadElement = false;
-        fSeenBodyElement = false;
-        fSeenBodyElementEnd = false;
-        fSeenFramesetElement = false;
+        fragmentContextStack_ = settings.fragmentContextStack;
 
     } // reset(XMLComponentManager)
 
@@ -343,6 +363,10 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
             fIgnoreOutsideContent = state;
             return;
         }
+        if (featureId.equals(HEAD_ONLY)) {
+            fHeadOnly = state;
+            return;
+        }
 
     } // setFeature(String,boolean)
 
@@ -360,6 +384,11 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
             return;
         }
 
+        if (propertyId.equals(STATISTICS)) {
+            fStatistics = (HTMLParseStatistics) value;
+            return;
+        }
+
     } // setProperty(String,Object)
 
     //
@@ -391,7 +420,19 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
     public void startDocument(final XMLLocator locator, final String encoding, final NamespaceContext nscontext, final Augmentations augs) {
 
         // reset state
+        fSeenAnything = false;
+        fSeenDoctype = false;
+        fSeenRootElement = false;
+        fSeenRootElementEnd = false;
+        fSeenHeadElement = false;
+        fSeenBodyElement = false;
+        fSeenBodyElementEnd = false;
+        fSeenFramesetElement = false;
+        fOpenedForm = false;
+        endElementsBuffer_.clear();
         fElementStack.top = 0;
+        fLocator = locator;
+        fFixupEvent = null;
         if (fragmentContextStack_ != null) {
             fragmentContextStackSize_ = fragmentContextStack_.length;
             for (final QName name : fragmentContextStack_) {
@@ -444,8 +485,10 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
     public void endDocument(final Augmentations augs) {
 
         // </body> and </html> have been buffered to consider outside content
+        final boolean ignoreOutsideContent = fIgnoreOutsideContent;
         fIgnoreOutsideContent = true; // endElement should not ignore the elements passed from buffer
         consumeBufferedEndElements();
+        fIgnoreOutsideContent = ignoreOutsideContent;
 
         // handle empty document
         if (!fSeenRootElement && !fDocumentFragment) {
@@ -457,11 +500,11 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
                 forceStartBody(); // will force <html> and <head></head>
                 final String body = modifyName("body", fNamesElems);
                 fQName.setValues(null, body, body, null);
-                callEndElement(fQName, synthesizedAugs());
+                callEndElement(fQName, elementAugs(synthesizedAugs(), HTMLElements.getElement(HTMLElements.BODY)));
 
                 final String ename = modifyName("html", fNamesElems);
                 fQName.setValues(null, ename, ename, null);
-                callEndElement(fQName, synthesizedAugs());
+                callEndElement(fQName, elementAugs(synthesizedAugs(), HTMLElements.getElement(HTMLElements.HTML)));
             }
         }
 
@@ -475,11 +518,13 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
                     fErrorReporter.reportWarning("HTML2001", new Object[] { ename });
                 }
                 if (fDocumentHandler != null) {
-                    callEndElement(info.qname, synthesizedAugs());
+                    callEndElement(info.qname, elementAugs(synthesizedAugs(), info.element));
                 }
             }
         }
 
+        endFixup();
+
         // call handler
         if (fDocumentHandler != null) {
             fDocumentHandler.endDocument(augs);
@@ -545,7 +590,7 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
         }
 
         // get element information
-        final HTMLElements.Element element = getElement(elem);
+        final HTMLElements.Element element = getElement(elem, augs);
         final short elementCode = element.code;
 
         // the creation of some elements like TABLE or SELECT can't be forced. Any others?
@@ -579,6 +624,10 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
                 endElement(head, synthesizedAugs());
             }
             consumeBufferedEndElements(); // </head> (if any) has been buffered
+            if (fHeadOnly && !fDocumentFragment) {
+                stopAtBody();
+                return;
+            }
             fSeenFramesetElement = true;
         } else if (elementCode == HTMLElements.BODY) {
             // create <head></head> if none was present
@@ -588,6 +637,10 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
                 endElement(head, synthesizedAugs());
             }
             consumeBufferedEndElements(); // </head> (if any) has been buffered
+            if (fHeadOnly && !fDocumentFragment) {
+                stopAtBody();
+                return;
+            }
 
             if (fSeenBodyElement) {
                 notifyDiscardedStartElement(elem, attrs, augs);
@@ -669,7 +722,7 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
                 && fElementStack.data[fElementStack.top - 2].element.code == HTMLElements.HEAD) {
             final Info info = fElementStack.pop();
             if (fDocumentHandler != null) {
-                callEndElement(info.qname, synthesizedAugs());
+                callEndElement(info.qname, elementAugs(synthesizedAugs(), info.element));
             }
         }
         if (element.closes != null) {
@@ -688,7 +741,7 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
                         info = fElementStack.pop();
                         if (fDocumentHandler != null) {
                             // PATCH: Marc-Andr� Morissette
-                            callEndElement(info.qname, synthesizedAugs());
+                            callEndElement(info.qname, elementAugs(synthesizedAugs(), info.element));
                         }
                     }
                     length = i;
@@ -709,7 +762,7 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
                 attrs = emptyAttributes();
             }
             if (fDocumentHandler != null) {
-                fDocumentHandler.emptyElement(elem, attrs, augs);
+                fDocumentHandler.emptyElement(elem, attrs, elementAugs(augs, element));
             }
         } else {
             final boolean inline = element != null && element.isInline();
@@ -718,7 +771,7 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
                 attrs = emptyAttributes();
             }
             if (fDocumentHandler != null) {
-                callStartElement(elem, attrs, augs);
+                callStartElement(elem, attrs, elementAugs(augs, element));
             }
         }
 
@@ -746,6 +799,46 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
         return fElementStack.top > 0 && elem.equals(fElementStack.peek().qname);
     }
 
+    /**
+     * Ends a head-only parse: the open elements are closed, the remaining
+     * events are ignored and the scanner is told to stop reading.
+     */
+    private void stopAtBody() {
+        while (fElementStack.top > fragmentContextStackSize_) {
+            final Info info = fElementStack.pop();
+            if (fDocumentHandler != null) {
+                callEndElement(info.qname, elementAugs(synthesizedAugs(), info.element));
+            }
+        }
+        fSeenRootElementEnd = true;
+        if (fDocumentSource instanceof HTMLScanner) {
+            ((HTMLScanner) fDocumentSource).stopScanning();
+        }
+    } // stopAtBody()
+
+    /**
+     * Counts a synthesized event for the flight recorder. The events
+     * synthesized for the same position of the input make up one fix-up.
+     */
+    private void countFixup() {
+        final int offset = fLocator != null ? fLocator.getCharacterOffset() : -1;
+        if (fFixupEvent == null || offset != fFixupOffset) {
+            endFixup();
+            fFixupEvent = HTMLFlightRecorder.beginFixup();
+            fFixupOffset = offset;
+            fFixupCount = 0;
+        }
+        fFixupCount++;
+    } // countFixup()
+
+    /** Ends the current fix-up, if any. */
+    private void endFixup() {
+        if (fFixupEvent != null) {
+            HTMLFlightRecorder.endFixup(fFixupEvent, fLocator != null ? fLocator.getExpandedSystemId() : null, fFixupOffset, fFixupCount);
+            fFixupEvent = null;
+        }
+    } // endFixup()
+
     private QName createQName(String tagName) {
         tagName = modifyName(tagName, fNamesElems);
         return new QName(null, tagName, tagName, NamespaceBinder.XHTML_1_0_URI);
@@ -756,7 +849,7 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
     public void emptyElement(final QName element, final XMLAttributes attrs, final Augmentations augs) {
         startElement(element, attrs, augs);
         // browser ignore the closing indication for non empty tags like <form .../> but not for unknown element
-        final HTMLElements.Element elem = getElement(element);
+        final HTMLElements.Element elem = getElement(element, augs);
         if (elem.isEmpty() || fAllowSelfclosingTags || elem.code == HTMLElements.UNKNOWN
                 || (elem.code == HTMLElements.IFRAME && fAllowSelfclosingIframe)) {
             endElement(element, augs);
@@ -791,6 +884,9 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
             }
             if (insertBody) {
                 forceStartBody();
+                if (fSeenRootElementEnd) {
+                    return;
+                }
             }
         }
 
@@ -932,6 +1028,11 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
                     forceStartBody();
                 }
             }
+
+            // body content ends a head-only parse
+            if (fSeenRootElementEnd) {
+                return;
+            }
         }
 
         // call handler
@@ -958,7 +1059,7 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
         }
 
         // get element information
-        final HTMLElements.Element elem = getElement(element);
+        final HTMLElements.Element elem = getElement(element, augs);
 
         // if we consider outside content, just buffer </body> and </html> to consider them at the very end
         if (!fIgnoreOutsideContent && (elem.code == HTMLElements.BODY || elem.code == HTMLElements.HTML)) {
@@ -1028,7 +1129,7 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
             }
             if (fDocumentHandler != null) {
                 // PATCH: Marc-Andr� Morissette
-                callEndElement(info.qname, i < depth - 1 ? synthesizedAugs() : augs);
+                callEndElement(info.qname, elementAugs(i < depth - 1 ? synthesizedAugs() : augs, info.element));
             }
         }
 
@@ -1115,6 +1216,20 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
         return HTMLElements.getElement(name);
     } // getElement(String):HTMLElements.Element
 
+    /**
+     * Returns an HTML element, reusing the element information passed
+     * along with the event when it resolves to the same element.
+     */
+    protected HTMLElements.Element getElement(final QName elementName, final Augmentations augs) {
+        if (augs != null && elementName.prefix == null) {
+            final Object item = augs.getItem(HTMLElements.ELEMENT_AUGMENTATION);
+            if (item instanceof HTMLElements.Element) {
+                return (HTMLElements.Element) item;
+            }
+        }
+        return getElement(elementName);
+    } // getElement(QName,Augmentations):HTMLElements.Element
+
     /** Call document handler start element. */
     protected final void callStartElement(final QName element, final XMLAttributes attrs, final Augmentations augs) {
         fDocumentHandler.startElement(element, attrs, augs);
@@ -1189,6 +1304,12 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
 
     /** Returns an augmentations object with a synthesized item added. */
     protected final Augmentations synthesizedAugs() {
+        if (fStatistics != null) {
+            fStatistics.fElementsSynthesized++;
+        }
+        if (HTMLFlightRecorder.isRecording()) {
+            countFixup();
+        }
         HTMLAugmentations augs = null;
         if (fAugmentations) {
             augs = fInfosetAugs;
@@ -1198,6 +1319,14 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
         return augs;
     } // synthesizedAugs():Augmentations
 
+    /** Returns the augmentations with the element information item added. */
+    protected final Augmentations elementAugs(final Augmentations augs, final HTMLElements.Element element) {
+        if (augs != null) {
+            augs.putItem(HTMLElements.ELEMENT_AUGMENTATION, element);
+        }
+        return augs;
+    } // elementAugs(Augmentations,HTMLElements.Element):Augmentations
+
     //
     // Protected static methods
     //
@@ -1385,6 +1514,9 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
      * Notifies the tagBalancingListener (if any) of an ignored start element
      */
     private void notifyDiscardedStartElement(final QName elem, final XMLAttributes attrs, final Augmentations augs) {
+        if (fStatistics != null) {
+            fStatistics.fElementsDiscarded++;
+        }
         if (tagBalancingListener != null) {
             tagBalancingListener.ignoredStartElement(elem, attrs, augs);
         }
@@ -1394,6 +1526,9 @@ public class HTMLTagBalancer implements XMLDocumentFilter, HTMLComponent {
      * Notifies the tagBalancingListener (if any) of an ignored end element
      */
     private void notifyDiscardedEndElement(final QName element, final Augmentations augs) {
+        if (fStatistics != null) {
+            fStatistics.fElementsDiscarded++;
+        }
         if (tagBalancingListener != null) {
             tagBalancingListener.ignoredEndElement(element, augs);
         }
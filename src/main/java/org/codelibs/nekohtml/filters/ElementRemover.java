@@ -16,7 +16,8 @@
 
 package org.codelibs.nekohtml.filters;
 
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.xerces.xni.Augmentations;
 import org.apache.xerces.xni.NamespaceContext;
@@ -25,6 +26,7 @@ import org.apache.xerces.xni.XMLAttributes;
 import org.apache.xerces.xni.XMLLocator;
 import org.apache.xerces.xni.XMLResourceIdentifier;
 import org.apache.xerces.xni.XMLString;
+import org.codelibs.nekohtml.HTMLElements;
 
 /**
  * This class is a document filter capable of removing specified
@@ -106,10 +108,16 @@ public class ElementRemover extends DefaultFilter {
     // information
 
     /** Accepted elements. */
-    protected Hashtable<String, Object> fAcceptedElements = new Hashtable<>();
+    protected Map<String, Object> fAcceptedElements = new HashMap<>();
 
     /** Removed elements. */
-    protected Hashtable<String, Object> fRemovedElements = new Hashtable<>();
+    protected Map<String, Object> fRemovedElements = new HashMap<>();
+
+    /** Accepted elements indexed by element code, for known HTML elements. */
+    protected final Object[] fAcceptedElementCodes = new Object[HTMLElements.UNKNOWN];
+
+    /** Removed elements indexed by element code, for known HTML elements. */
+    protected final boolean[] fRemovedElementCodes = new boolean[HTMLElements.UNKNOWN];
 
     // state
 
@@ -119,6 +127,12 @@ public class ElementRemover extends DefaultFilter {
     /** The element depth at element removal. */
     protected int fRemovalElementDepth;
 
+    /** The element name of the current element event. */
+    private String fElementName;
+
+    /** The known HTML element of the current element event, or null. */
+    private HTMLElements.Element fElement;
+
     //
     // Public methods
     //
@@ -144,6 +158,10 @@ public class ElementRemover extends DefaultFilter {
             value = attributes;
         }
         fAcceptedElements.put(key, value);
+        final HTMLElements.Element elem = HTMLElements.getElement(key, HTMLElements.NO_SUCH_ELEMENT);
+        if (elem != HTMLElements.NO_SUCH_ELEMENT) {
+            fAcceptedElementCodes[elem.code] = value;
+        }
     } // acceptElement(String,String[])
 
     /**
@@ -158,6 +176,10 @@ public class ElementRemover extends DefaultFilter {
         final String key = element.toLowerCase();
         final Object value = NULL;
         fRemovedElements.put(key, value);
+        final HTMLElements.Element elem = HTMLElements.getElement(key, HTMLElements.NO_SUCH_ELEMENT);
+        if (elem != HTMLElements.NO_SUCH_ELEMENT) {
+            fRemovedElementCodes[elem.code] = true;
+        }
     } // removeElement(String)
 
     //
@@ -171,6 +193,8 @@ public class ElementRemover extends DefaultFilter {
     public void startDocument(final XMLLocator locator, final String encoding, final NamespaceContext nscontext, final Augmentations augs) {
         fElementDepth = 0;
         fRemovalElementDepth = Integer.MAX_VALUE;
+        fElementName = null;
+        fElement = null;
         super.startDocument(locator, encoding, nscontext, augs);
     } // startDocument(XMLLocator,String,NamespaceContext,Augmentations)
 
@@ -193,6 +217,7 @@ public class ElementRemover extends DefaultFilter {
     /** Start element. */
     @Override
     public void startElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+        setElement(element, augs);
         if (fElementDepth <= fRemovalElementDepth && handleOpenTag(element, attributes)) {
             super.startElement(element, attributes, augs);
         }
@@ -202,6 +227,7 @@ public class ElementRemover extends DefaultFilter {
     /** Empty element. */
     @Override
     public void emptyElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+        setElement(element, augs);
         if (fElementDepth <= fRemovalElementDepth && handleOpenTag(element, attributes)) {
             super.emptyElement(element, attributes, augs);
         }
@@ -282,6 +308,7 @@ public class ElementRemover extends DefaultFilter {
     /** End element. */
     @Override
     public void endElement(final QName element, final Augmentations augs) {
+        setElement(element, augs);
         if (fElementDepth <= fRemovalElementDepth && elementAccepted(element.rawname)) {
             super.endElement(element, augs);
         }
@@ -305,12 +332,20 @@ public class ElementRemover extends DefaultFilter {
 
     /** Returns true if the specified element is accepted. */
     protected boolean elementAccepted(final String element) {
+        final HTMLElements.Element elem = getKnownElement(element);
+        if (elem != null) {
+            return fAcceptedElementCodes[elem.code] != null;
+        }
         final String key = element.toLowerCase();
         return fAcceptedElements.containsKey(key);
     } // elementAccepted(String):boolean
 
     /** Returns true if the specified element should be removed. */
     protected boolean elementRemoved(final String element) {
+        final HTMLElements.Element elem = getKnownElement(element);
+        if (elem != null) {
+            return fRemovedElementCodes[elem.code];
+        }
         final String key = element.toLowerCase();
         return fRemovedElements.containsKey(key);
     } // elementRemoved(String):boolean
@@ -318,23 +353,12 @@ public class ElementRemover extends DefaultFilter {
     /** Handles an open tag. */
     protected boolean handleOpenTag(final QName element, final XMLAttributes attributes) {
         if (elementAccepted(element.rawname)) {
-            final String key = element.rawname.toLowerCase();
-            final Object value = fAcceptedElements.get(key);
-            if (value != NULL) {
-                final String[] anames = (String[]) value;
-                int attributeCount = attributes.getLength();
-                LOOP: for (int i = 0; i < attributeCount; i++) {
-                    final String aname = attributes.getQName(i).toLowerCase();
-                    for (final String aname2 : anames) {
-                        if (aname2.equals(aname)) {
-                            continue LOOP;
-                        }
-                    }
-                    attributes.removeAttributeAt(i--);
-                    attributeCount--;
-                }
+            final HTMLElements.Element elem = getKnownElement(element.rawname);
+            if (elem != null) {
+                filterAttributes(fAcceptedElementCodes[elem.code], attributes);
             } else {
-                attributes.removeAllAttributes();
+                final String key = element.rawname.toLowerCase();
+                filterAttributes(fAcceptedElements.get(key), attributes);
             }
             return true;
         } else if (elementRemoved(element.rawname)) {
@@ -343,4 +367,51 @@ public class ElementRemover extends DefaultFilter {
         return false;
     } // handleOpenTag(QName,XMLAttributes):boolean
 
+    //
+    // Private methods
+    //
+
+    /** Removes the attributes not kept for an accepted element. */
+    private static void filterAttributes(final Object value, final XMLAttributes attributes) {
+        if (value != NULL && value != null) {
+            final String[] anames = (String[]) value;
+            int attributeCount = attributes.getLength();
+            LOOP: for (int i = 0; i < attributeCount; i++) {
+                final String aname = attributes.getQName(i).toLowerCase();
+                for (final String aname2 : anames) {
+                    if (aname2.equals(aname)) {
+                        continue LOOP;
+                    }
+                }
+                attributes.removeAttributeAt(i--);
+                attributeCount--;
+            }
+        } else {
+            attributes.removeAllAttributes();
+        }
+    } // filterAttributes(Object,XMLAttributes)
+
+    /**
+     * Remembers the element of the current event and, if it is a known
+     * HTML element, the element information passed along with the event.
+     */
+    private void setElement(final QName element, final Augmentations augs) {
+        fElementName = element.rawname;
+        fElement = null;
+        if (augs != null && element.prefix == null) {
+            final Object item = augs.getItem(HTMLElements.ELEMENT_AUGMENTATION);
+            if (item instanceof HTMLElements.Element && ((HTMLElements.Element) item).code != HTMLElements.UNKNOWN) {
+                fElement = (HTMLElements.Element) item;
+            }
+        }
+    } // setElement(QName,Augmentations)
+
+    /**
+     * Returns the known HTML element of the current event if the given
+     * name is the name of that event, null otherwise.
+     */
+    private HTMLElements.Element getKnownElement(final String element) {
+        return element == fElementName ? fElement : null;
+    } // getKnownElement(String):HTMLElements.Element
+
 } // class DefaultFilter
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml.filters;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.apache.xerces.util.URI;
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLComponentManager;
+import org.codelibs.nekohtml.HTMLElements;
+import org.codelibs.nekohtml.HTMLEventInfo;
+import org.codelibs.nekohtml.HTMLSettings;
+
+/**
+ * Reports the links of a document to a {@link LinkHandler} as the
+ * document is parsed. By default the links are <code>a/@href</code>,
+ * <code>link/@href</code>, <code>img/@src</code>,
+ * <code>iframe/@src</code>, <code>form/@action</code> and
+ * <code>base/@href</code>; more can be added with {@link #addLink}, an
+ * element having any number of link attributes.
+ * <p>
+ * Links are resolved against the first <code>&lt;base href&gt;</code>
+ * of the document if it is, or resolves to, an absolute URI, or else
+ * against the document system identifier; without either they are
+ * reported unresolved.
+ * The base is parsed once and reused for all the links. When the
+ * augmentations feature is set, the location of each link attribute
+ * is passed along with it.
+ * <p>
+ * All events are passed on to the next handler, if any.
+ */
+public class LinkExtractor extends DefaultFilter {
+
+    //
+    // Constants
+    //
+
+    /** Include infoset augmentations. */
+    protected static final String AUGMENTATIONS = "http://cyberneko.org/html/features/augmentations";
+
+    //
+    // Data
+    //
+
+    /** The link handler. */
+    protected LinkHandler fLinkHandler;
+
+    /** The link attributes of each element code, in lower case, or null. */
+    protected final String[][] fLinkAttributes = new String[HTMLElements.UNKNOWN][];
+
+    /**
+     * The link attributes of each element code in the case of the
+     * attribute names of the scanner, or null if the scanner keeps the
+     * case of the document.
+     */
+    private final String[][] fAttributeNames = new String[HTMLElements.UNKNOWN][];
+
+    /** The case of the attribute names of the scanner. */
+    private short fNamesAttrs = NamespaceBinder.NAMES_LOWERCASE;
+
+    /** The document system identifier. */
+    protected String fDocumentURI;
+
+    /** The base URI, parsed on first use. */
+    protected URI fBaseURI;
+
+    /** True once the base URI has been parsed or a base element seen. */
+    protected boolean fBaseResolved;
+
+    /** True once a base element has been seen. */
+    protected boolean fSeenBase;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a link extractor reporting links to the given handler. */
+    public LinkExtractor(final LinkHandler handler) {
+        fLinkHandler = handler;
+        addLink(HTMLElements.A, "href");
+        addLink(HTMLElements.LINK, "href");
+        addLink(HTMLElements.IMG, "src");
+        addLink(HTMLElements.IFRAME, "src");
+        addLink(HTMLElements.FORM, "action");
+        addLink(HTMLElements.BASE, "href");
+    } // <init>(LinkHandler)
+
+    //
+    // Public methods
+    //
+
+    /** Sets the link handler. */
+    public void setLinkHandler(final LinkHandler handler) {
+        fLinkHandler = handler;
+    } // setLinkHandler(LinkHandler)
+
+    /**
+     * Reports the given attribute of the element as a link, in addition to
+     * its other link attributes. A null attribute stops reporting the
+     * links of the element.
+     */
+    public void addLink(final short elementCode, final String attribute) {
+        if (attribute == null) {
+            fLinkAttributes[elementCode] = null;
+        } else {
+            final String name = attribute.toLowerCase(Locale.ENGLISH);
+            final String[] names = fLinkAttributes[elementCode];
+            if (names == null) {
+                fLinkAttributes[elementCode] = new String[] { name };
+            } else if (!Arrays.asList(names).contains(name)) {
+                final String[] newnames = Arrays.copyOf(names, names.length + 1);
+                newnames[names.length] = name;
+                fLinkAttributes[elementCode] = newnames;
+            }
+        }
+        fAttributeNames[elementCode] = toNamesCase(fLinkAttributes[elementCode]);
+    } // addLink(short,String)
+
+    //
+    // HTMLComponent methods
+    //
+
+    /** Resets the component, following the case of the attribute names. */
+    @Override
+    public void reset(final XMLComponentManager manager) {
+        super.reset(manager);
+        final short namesAttrs = HTMLSettings.get(manager).namesAttrs;
+        if (namesAttrs != fNamesAttrs) {
+            fNamesAttrs = namesAttrs;
+            for (int i = 0; i < fLinkAttributes.length; i++) {
+                fAttributeNames[i] = toNamesCase(fLinkAttributes[i]);
+            }
+        }
+    } // reset(XMLComponentManager)
+
+    //
+    // XMLDocumentHandler methods
+    //
+
+    /** Start document. */
+    @Override
+    public void startDocument(final XMLLocator locator, final String encoding, final NamespaceContext nscontext, final Augmentations augs)
+            throws XNIException {
+        fDocumentURI = locator != null ? locator.getExpandedSystemId() : null;
+        fBaseURI = null;
+        fBaseResolved = false;
+        fSeenBase = false;
+        super.startDocument(locator, encoding, nscontext, augs);
+    } // startDocument(XMLLocator,String,NamespaceContext,Augmentations)
+
+    /** Start element. */
+    @Override
+    public void startElement(final QName element, final XMLAttributes attributes, final Augmentations augs) throws XNIException {
+        handleElement(element, attributes, augs);
+        super.startElement(element, attributes, augs);
+    } // startElement(QName,XMLAttributes,Augmentations)
+
+    /** Empty element. */
+    @Override
+    public void emptyElement(final QName element, final XMLAttributes attributes, final Augmentations augs) throws XNIException {
+        handleElement(element, attributes, augs);
+        super.emptyElement(element, attributes, augs);
+    } // emptyElement(QName,XMLAttributes,Augmentations)
+
+    //
+    // Protected methods
+    //
+
+    /** Reports the links of the element, if any. */
+    protected void handleElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+        final HTMLElements.Element elem = HTMLElements.getElement(augs, element.rawname);
+        if (elem.code == HTMLElements.UNKNOWN || fLinkAttributes[elem.code] == null || attributes == null) {
+            return;
+        }
+        final String[] names = fAttributeNames[elem.code];
+        final int length = attributes.getLength();
+        for (int i = 0; i < length; i++) {
+            if (names != null ? contains(names, attributes.getQName(i)) : containsIgnoreCase(fLinkAttributes[elem.code],
+                    attributes.getQName(i))) {
+                handleLink(elem, attributes, i, augs);
+            }
+        }
+    } // handleElement(QName,XMLAttributes,Augmentations)
+
+    /** Reports a link attribute of an element. */
+    protected void handleLink(final HTMLElements.Element elem, final XMLAttributes attributes, final int index, final Augmentations augs) {
+        final String value = attributes.getValue(index).trim();
+        final String uri;
+        if (elem.code == HTMLElements.BASE) {
+            uri = resolve(getDocumentURI(), value);
+            if (!fSeenBase) {
+                fSeenBase = true;
+                // a base that is not absolute leaves the document URI as base
+                final URI base = parse(uri);
+                if (base != null) {
+                    fBaseResolved = true;
+                    fBaseURI = base;
+                }
+            }
+        } else {
+            uri = resolve(getBaseURI(), value);
+        }
+        if (fLinkHandler != null) {
+            HTMLEventInfo info = getEventInfo(attributes.getAugmentations(index));
+            if (info == null) {
+                info = getEventInfo(augs);
+            }
+            fLinkHandler.link(elem, attributes.getQName(index), value, uri, info);
+        }
+    } // handleLink(HTMLElements.Element,XMLAttributes,int,Augmentations)
+
+    /** Returns the base URI or null if there is none. */
+    protected URI getBaseURI() {
+        if (!fBaseResolved) {
+            fBaseResolved = true;
+            fBaseURI = getDocumentURI();
+        }
+        return fBaseURI;
+    } // getBaseURI():URI
+
+    //
+    // Private methods
+    //
+
+    /** Returns the document URI or null. */
+    private URI getDocumentURI() {
+        return fDocumentURI != null ? parse(fDocumentURI) : null;
+    } // getDocumentURI():URI
+
+    /** Resolves a value against a base, returning the value itself if it cannot be resolved. */
+    private static String resolve(final URI base, final String value) {
+        try {
+            return (base != null ? new URI(base, value) : new URI(value)).toString();
+        } catch (final URI.MalformedURIException e) {
+            return value;
+        }
+    } // resolve(URI,String):String
+
+    /** Parses an absolute URI, returning null if it is not one. */
+    private static URI parse(final String uri) {
+        try {
+            return new URI(uri);
+        } catch (final URI.MalformedURIException e) {
+            return null;
+        }
+    } // parse(String):URI
+
+    /** Returns the names in the case of the attribute names of the scanner, or null if it keeps the case. */
+    private String[] toNamesCase(final String[] names) {
+        if (names == null || fNamesAttrs == NamespaceBinder.NAMES_LOWERCASE) {
+            return names;
+        }
+        if (fNamesAttrs != NamespaceBinder.NAMES_UPPERCASE) {
+            return null;
+        }
+        final String[] newnames = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            newnames[i] = names[i].toUpperCase(Locale.ENGLISH);
+        }
+        return newnames;
+    } // toNamesCase(String[]):String[]
+
+    /** Returns true if the names contain the name. */
+    private static boolean contains(final String[] names, final String name) {
+        for (final String name2 : names) {
+            if (name2.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    } // contains(String[],String):boolean
+
+    /** Returns true if the names contain the name, compared case-insensitively. */
+    private static boolean containsIgnoreCase(final String[] names, final String name) {
+        for (final String name2 : names) {
+            if (name2.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    } // containsIgnoreCase(String[],String):boolean
+
+    /** Returns the event information of the augmentations, if any. */
+    private static HTMLEventInfo getEventInfo(final Augmentations augs) {
+        if (augs != null) {
+            final Object item = augs.getItem(AUGMENTATIONS);
+            if (item instanceof HTMLEventInfo) {
+                return (HTMLEventInfo) item;
+            }
+        }
+        return null;
+    } // getEventInfo(Augmentations):HTMLEventInfo
+
+    //
+    // Interfaces
+    //
+
+    /** Receives the links found by a {@link LinkExtractor}. */
+    public interface LinkHandler {
+
+        /**
+         * Reports a link.
+         *
+         * @param element   The element holding the link.
+         * @param attribute The name of the link attribute.
+         * @param value     The attribute value, without surrounding whitespace.
+         * @param uri       The resolved URI or the value if it cannot be resolved.
+         * @param location  The location of the attribute, or of the element
+         *                  when the attribute has none, or null without
+         *                  augmentations.
+         */
+        void link(HTMLElements.Element element, String attribute, String value, String uri, HTMLEventInfo location);
+
+    } // interface LinkHandler
+
+} // class LinkExtractor
@@ -16,9 +16,11 @@
 
 package org.codelibs.nekohtml.filters;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Locale;
-import java.util.Vector;
 
 import org.apache.xerces.xni.Augmentations;
 import org.apache.xerces.xni.NamespaceContext;
@@ -27,6 +29,7 @@ import org.apache.xerces.xni.XMLAttributes;
 import org.apache.xerces.xni.XMLLocator;
 import org.apache.xerces.xni.parser.XMLComponentManager;
 import org.codelibs.nekohtml.HTMLElements;
+import org.codelibs.nekohtml.HTMLSettings;
 import org.codelibs.nekohtml.xercesbridge.XercesBridge;
 
 /**
@@ -210,18 +213,17 @@ public class NamespaceBinder extends DefaultFilter {
     public void reset(final XMLComponentManager manager) {
         super.reset(manager);
 
+        final HTMLSettings settings = HTMLSettings.get(manager);
+
         // features
-        fNamespaces = manager.getFeature(NAMESPACES);
-        fOverrideNamespaces = manager.getFeature(OVERRIDE_NAMESPACES);
-        fInsertNamespaces = manager.getFeature(INSERT_NAMESPACES);
+        fNamespaces = settings.namespaces;
+        fOverrideNamespaces = settings.overrideNamespaces;
+        fInsertNamespaces = settings.insertNamespaces;
 
         // get properties
-        fNamesElems = getNamesValue(String.valueOf(manager.getProperty(NAMES_ELEMS)));
-        fNamesAttrs = getNamesValue(String.valueOf(manager.getProperty(NAMES_ATTRS)));
-        fNamespacesURI = String.valueOf(manager.getProperty(NAMESPACES_URI));
-
-        // initialize state
-        fNamespaceContext.reset();
+        fNamesElems = settings.namesElems;
+        fNamesAttrs = settings.namesAttrs;
+        fNamespacesURI = settings.namespacesURI;
 
     } // reset(XMLComponentManager)
 
@@ -233,6 +235,9 @@ public class NamespaceBinder extends DefaultFilter {
     @Override
     public void startDocument(final XMLLocator locator, final String encoding, final NamespaceContext nscontext, final Augmentations augs) {
 
+        // initialize state
+        fNamespaceContext.reset();
+
         // perform default handling
         // NOTE: using own namespace context
         super.startDocument(locator, encoding, fNamespaceContext, augs);
@@ -590,14 +595,14 @@ public class NamespaceBinder extends DefaultFilter {
         /** Get all prefixes. */
         @Override
         public Enumeration<String> getAllPrefixes() {
-            final Vector<String> prefixes = new Vector<>();
+            final List<String> prefixes = new ArrayList<>();
             for (int i = fLevels[1]; i < fLevels[fTop]; i++) {
                 final String prefix = fEntries[i].prefix;
                 if (!prefixes.contains(prefix)) {
-                    prefixes.addElement(prefix);
+                    prefixes.add(prefix);
                 }
             }
-            return prefixes.elements();
+            return Collections.enumeration(prefixes);
         } // getAllPrefixes():Enumeration
 
         //
@@ -16,6 +16,7 @@
 
 package org.codelibs.nekohtml.filters;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
@@ -107,6 +108,12 @@ public class Writer extends DefaultFilter {
     /** Print characters. */
     protected boolean fPrintChars;
 
+    /** The element of the current start tag. */
+    private QName fElementName;
+
+    /** The element information of the current start tag. */
+    private HTMLElements.Element fElement;
+
     //
     // Constructors
     //
@@ -117,7 +124,7 @@ public class Writer extends DefaultFilter {
         //       I've heard of the old M$ JVM not supporting it! Amazing. -Ac
         try {
             fEncoding = "UTF-8";
-            fPrinter = new PrintWriter(new OutputStreamWriter(System.out, fEncoding));
+            fPrinter = new Printer(new OutputStreamWriter(System.out, fEncoding));
         } catch (final UnsupportedEncodingException e) {
             throw new RuntimeException(e.getMessage());
         }
@@ -148,7 +155,7 @@ public class Writer extends DefaultFilter {
         if (writer instanceof PrintWriter) {
             fPrinter = (PrintWriter) writer;
         } else {
-            fPrinter = new PrintWriter(writer);
+            fPrinter = new Printer(writer);
         }
     } // <init>(java.io.Writer,String)
 
@@ -197,7 +204,9 @@ public class Writer extends DefaultFilter {
     public void startElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
         fSeenRootElement = true;
         fElementDepth++;
-        fNormalize = !HTMLElements.getElement(element.rawname).isSpecial();
+        fElementName = element;
+        fElement = HTMLElements.getElement(augs, element.rawname);
+        fNormalize = !fElement.isSpecial();
         printStartElement(element, attributes);
         super.startElement(element, attributes, augs);
     } // startElement(QName,XMLAttributes,Augmentations)
@@ -206,6 +215,8 @@ public class Writer extends DefaultFilter {
     @Override
     public void emptyElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
         fSeenRootElement = true;
+        fElementName = element;
+        fElement = HTMLElements.getElement(augs, element.rawname);
         printStartElement(element, attributes);
         super.emptyElement(element, attributes, augs);
     } // emptyElement(QName,XMLAttributes,Augmentations)
@@ -318,11 +329,17 @@ public class Writer extends DefaultFilter {
 
     /** Print start element. */
     protected void printStartElement(final QName element, final XMLAttributes attributes) {
+        final HTMLElements.Element elem = element == fElementName ? fElement : HTMLElements.getElement(element.rawname);
+        printStartElement(element, attributes, elem);
+    } // printStartElement(QName,XMLAttributes)
+
+    /** Print start element with its resolved element information. */
+    protected void printStartElement(final QName element, final XMLAttributes attributes, final HTMLElements.Element elem) {
 
         // modify META[@http-equiv='content-type']/@content value
         int contentIndex = -1;
         String originalContent = null;
-        if ("meta".equalsIgnoreCase(element.rawname)) {
+        if (elem.code == HTMLElements.META) {
             String httpEquiv = null;
             final int length = attributes.getLength();
             for (int i = 0; i < length; i++) {
@@ -374,7 +391,7 @@ public class Writer extends DefaultFilter {
             attributes.setValue(contentIndex, originalContent);
         }
 
-    } // printStartElement(QName,XMLAttributes)
+    } // printStartElement(QName,XMLAttributes,HTMLElements.Element)
 
     /** Print end element. */
     protected void printEndElement(final QName element) {
@@ -463,4 +480,92 @@ public class Writer extends DefaultFilter {
         System.err.println("  The -e option has been replaced with -oe.");
     } // printUsage()
 
+    //
+    // Classes
+    //
+
+    /**
+     * Print writer that does not lock: a writer filter is used by one
+     * thread, and a monitor held while the underlying writer blocks would
+     * pin a virtual thread to its carrier.
+     */
+    private static final class Printer extends PrintWriter {
+
+        /** Constructs a printer. */
+        Printer(final java.io.Writer out) {
+            super(out);
+        } // <init>(java.io.Writer)
+
+        /** Writes a character. */
+        @Override
+        public void write(final int c) {
+            try {
+                if (out == null) {
+                    throw new IOException("Stream closed");
+                }
+                out.write(c);
+            } catch (final IOException e) {
+                setError();
+            }
+        } // write(int)
+
+        /** Writes characters. */
+        @Override
+        public void write(final char[] buf, final int off, final int len) {
+            try {
+                if (out == null) {
+                    throw new IOException("Stream closed");
+                }
+                out.write(buf, off, len);
+            } catch (final IOException e) {
+                setError();
+            }
+        } // write(char[],int,int)
+
+        /** Writes a string. */
+        @Override
+        public void write(final String s, final int off, final int len) {
+            try {
+                if (out == null) {
+                    throw new IOException("Stream closed");
+                }
+                out.write(s, off, len);
+            } catch (final IOException e) {
+                setError();
+            }
+        } // write(String,int,int)
+
+        /** Writes a line separator. */
+        @Override
+        public void println() {
+            write(System.lineSeparator());
+        } // println()
+
+        /** Flushes the underlying writer. */
+        @Override
+        public void flush() {
+            try {
+                if (out != null) {
+                    out.flush();
+                }
+            } catch (final IOException e) {
+                setError();
+            }
+        } // flush()
+
+        /** Closes the underlying writer. */
+        @Override
+        public void close() {
+            try {
+                if (out != null) {
+                    out.close();
+                    out = null;
+                }
+            } catch (final IOException e) {
+                setError();
+            }
+        } // close()
+
+    } // class Printer
+
 } // class Writer
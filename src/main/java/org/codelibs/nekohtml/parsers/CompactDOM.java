@@ -0,0 +1,1280 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml.parsers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.CDATASection;
+import org.w3c.dom.CharacterData;
+import org.w3c.dom.Comment;
+import org.w3c.dom.DOMConfiguration;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.EntityReference;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.ProcessingInstruction;
+import org.w3c.dom.Text;
+import org.w3c.dom.TypeInfo;
+import org.w3c.dom.UserDataHandler;
+
+/**
+ * Read-only <code>org.w3c.dom</code> view of a {@link CompactDocument}.
+ * View nodes are created on demand and cached by the document view so
+ * that navigating twice to the same node returns the same object.
+ */
+final class CompactDOM {
+
+    //
+    // Constructors
+    //
+
+    /** This class cannot be instantiated. */
+    private CompactDOM() {
+    } // <init>()
+
+    //
+    // Static methods
+    //
+
+    /** Returns the exception thrown by all the modification methods. */
+    static DOMException readOnly() {
+        return new DOMException(DOMException.NO_MODIFICATION_ALLOWED_ERR, "The document is read-only.");
+    } // readOnly():DOMException
+
+    /** Returns the exception thrown by the unsupported methods. */
+    static DOMException notSupported() {
+        return new DOMException(DOMException.NOT_SUPPORTED_ERR, "Not supported by the compact document.");
+    } // notSupported():DOMException
+
+    //
+    // Classes
+    //
+
+    /** Base class of the view nodes. */
+    abstract static class NodeImpl implements Node {
+
+        //
+        // Data
+        //
+
+        /** The document view. */
+        protected final DocumentImpl fOwner;
+
+        /** The compact document. */
+        protected final CompactDocument fCompact;
+
+        /** The node index. */
+        protected final int fIndex;
+
+        //
+        // Constructors
+        //
+
+        /** Constructs a view node; a null owner denotes the document view itself. */
+        NodeImpl(final DocumentImpl owner, final CompactDocument compact, final int index) {
+            fOwner = owner != null ? owner : (DocumentImpl) this;
+            fCompact = compact;
+            fIndex = index;
+        } // <init>(DocumentImpl,CompactDocument,int)
+
+        //
+        // Node methods
+        //
+
+        @Override
+        public String getNodeValue() {
+            return null;
+        }
+
+        @Override
+        public void setNodeValue(final String nodeValue) {
+            throw readOnly();
+        }
+
+        @Override
+        public short getNodeType() {
+            return fCompact.getNodeType(fIndex);
+        }
+
+        @Override
+        public Node getParentNode() {
+            return fOwner.getNode(fCompact.getParent(fIndex));
+        }
+
+        @Override
+        public NodeList getChildNodes() {
+            return new ChildList(fOwner, fIndex);
+        }
+
+        @Override
+        public Node getFirstChild() {
+            return fOwner.getNode(fCompact.getFirstChild(fIndex));
+        }
+
+        @Override
+        public Node getLastChild() {
+            return fOwner.getNode(fCompact.getLastChild(fIndex));
+        }
+
+        @Override
+        public Node getPreviousSibling() {
+            return fOwner.getNode(fCompact.getPreviousSibling(fIndex));
+        }
+
+        @Override
+        public Node getNextSibling() {
+            return fOwner.getNode(fCompact.getNextSibling(fIndex));
+        }
+
+        @Override
+        public NamedNodeMap getAttributes() {
+            return null;
+        }
+
+        @Override
+        public Document getOwnerDocument() {
+            return fOwner;
+        }
+
+        @Override
+        public Node insertBefore(final Node newChild, final Node refChild) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node replaceChild(final Node newChild, final Node oldChild) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node removeChild(final Node oldChild) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node appendChild(final Node newChild) {
+            throw readOnly();
+        }
+
+        @Override
+        public boolean hasChildNodes() {
+            return fCompact.getFirstChild(fIndex) != CompactDocument.NONE;
+        }
+
+        @Override
+        public Node cloneNode(final boolean deep) {
+            throw notSupported();
+        }
+
+        @Override
+        public void normalize() {
+            // text nodes are always merged
+        }
+
+        @Override
+        public boolean isSupported(final String feature, final String version) {
+            return false;
+        }
+
+        @Override
+        public String getNamespaceURI() {
+            return null;
+        }
+
+        @Override
+        public String getPrefix() {
+            return null;
+        }
+
+        @Override
+        public void setPrefix(final String prefix) {
+            throw readOnly();
+        }
+
+        @Override
+        public String getLocalName() {
+            return null;
+        }
+
+        @Override
+        public boolean hasAttributes() {
+            return false;
+        }
+
+        @Override
+        public String getBaseURI() {
+            return fCompact.getDocumentURI();
+        }
+
+        @Override
+        public short compareDocumentPosition(final Node other) {
+            if (other == this) {
+                return 0;
+            }
+            if (!(other instanceof NodeImpl) || ((NodeImpl) other).fCompact != fCompact) {
+                return DOCUMENT_POSITION_DISCONNECTED | DOCUMENT_POSITION_IMPLEMENTATION_SPECIFIC | DOCUMENT_POSITION_FOLLOWING;
+            }
+            final int index = ((NodeImpl) other).fIndex;
+            if (index == fIndex) {
+                // an attribute of this element
+                return DOCUMENT_POSITION_FOLLOWING | DOCUMENT_POSITION_CONTAINED_BY;
+            }
+            if (index > fIndex) {
+                return index < fCompact.getSubtreeEnd(fIndex) ? (short) (DOCUMENT_POSITION_FOLLOWING | DOCUMENT_POSITION_CONTAINED_BY)
+                        : DOCUMENT_POSITION_FOLLOWING;
+            }
+            return fIndex < fCompact.getSubtreeEnd(index) ? (short) (DOCUMENT_POSITION_PRECEDING | DOCUMENT_POSITION_CONTAINS)
+                    : DOCUMENT_POSITION_PRECEDING;
+        }
+
+        @Override
+        public String getTextContent() {
+            return fCompact.getTextContent(fIndex);
+        }
+
+        @Override
+        public void setTextContent(final String textContent) {
+            throw readOnly();
+        }
+
+        @Override
+        public boolean isSameNode(final Node other) {
+            return other == this;
+        }
+
+        @Override
+        public String lookupPrefix(final String namespaceURI) {
+            return null;
+        }
+
+        @Override
+        public boolean isDefaultNamespace(final String namespaceURI) {
+            return namespaceURI == null;
+        }
+
+        @Override
+        public String lookupNamespaceURI(final String prefix) {
+            return null;
+        }
+
+        @Override
+        public boolean isEqualNode(final Node other) {
+            if (other == this) {
+                return true;
+            }
+            if (other == null || other.getNodeType() != getNodeType() || !equals(getNodeName(), other.getNodeName())
+                    || !equals(getNodeValue(), other.getNodeValue())) {
+                return false;
+            }
+            final NamedNodeMap attrs = getAttributes();
+            final NamedNodeMap otherAttrs = other.getAttributes();
+            if (attrs != null) {
+                if (otherAttrs == null || attrs.getLength() != otherAttrs.getLength()) {
+                    return false;
+                }
+                for (int i = 0; i < attrs.getLength(); i++) {
+                    final Node attr = attrs.item(i);
+                    final Node otherAttr = otherAttrs.getNamedItem(attr.getNodeName());
+                    if (otherAttr == null || !attr.isEqualNode(otherAttr)) {
+                        return false;
+                    }
+                }
+            } else if (otherAttrs != null && otherAttrs.getLength() > 0) {
+                return false;
+            }
+            Node child = getFirstChild();
+            Node otherChild = other.getFirstChild();
+            while (child != null && otherChild != null) {
+                if (!child.isEqualNode(otherChild)) {
+                    return false;
+                }
+                child = child.getNextSibling();
+                otherChild = otherChild.getNextSibling();
+            }
+            return child == null && otherChild == null;
+        }
+
+        @Override
+        public Object getFeature(final String feature, final String version) {
+            return null;
+        }
+
+        @Override
+        public Object setUserData(final String key, final Object data, final UserDataHandler handler) {
+            throw readOnly();
+        }
+
+        @Override
+        public Object getUserData(final String key) {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + getNodeName() + ": " + getNodeValue() + "]";
+        }
+
+        //
+        // Private methods
+        //
+
+        /** Compares two strings that may be null. */
+        private static boolean equals(final String s1, final String s2) {
+            return s1 == null ? s2 == null : s1.equals(s2);
+        }
+
+    } // class NodeImpl
+
+    /** The document view. */
+    static final class DocumentImpl extends NodeImpl implements Document {
+
+        //
+        // Data
+        //
+
+        /** The view nodes created so far. */
+        private final Node[] fNodes;
+
+        /** The attribute view nodes created so far. */
+        private final Attr[] fAttrs;
+
+        //
+        // Constructors
+        //
+
+        /** Constructs the view of a compact document. */
+        DocumentImpl(final CompactDocument compact) {
+            super(null, compact, CompactDocument.DOCUMENT);
+            fNodes = new Node[compact.getNodeCount()];
+            fNodes[CompactDocument.DOCUMENT] = this;
+            fAttrs = new Attr[compact.getTotalAttributeCount()];
+        } // <init>(CompactDocument)
+
+        //
+        // Package methods
+        //
+
+        /** Returns the view of the given node or null for {@link CompactDocument#NONE}. */
+        Node getNode(final int index) {
+            if (index == CompactDocument.NONE) {
+                return null;
+            }
+            Node node = fNodes[index];
+            if (node == null) {
+                switch (fCompact.getNodeType(index)) {
+                case ELEMENT_NODE:
+                    node = new ElementImpl(this, fCompact, index);
+                    break;
+                case TEXT_NODE:
+                    node = new TextImpl(this, fCompact, index);
+                    break;
+                case CDATA_SECTION_NODE:
+                    node = new CDATASectionImpl(this, fCompact, index);
+                    break;
+                case COMMENT_NODE:
+                    node = new CommentImpl(this, fCompact, index);
+                    break;
+                default:
+                    node = new ProcessingInstructionImpl(this, fCompact, index);
+                    break;
+                }
+                fNodes[index] = node;
+            }
+            return node;
+        } // getNode(int):Node
+
+        /** Returns the view of the attribute at the given index of the element. */
+        Attr getAttr(final int element, final int index) {
+            final int attribute = fCompact.attributeIndex(element, index);
+            Attr attr = fAttrs[attribute];
+            if (attr == null) {
+                attr = new AttrImpl(this, element, attribute);
+                fAttrs[attribute] = attr;
+            }
+            return attr;
+        } // getAttr(int,int):Attr
+
+        /** Returns the elements with the given name in the subtree of the node. */
+        NodeList getElementsByTagName(final int node, final String name) {
+            final List<Node> elements = new ArrayList<>();
+            final boolean all = "*".equals(name);
+            final int nameIndex = fCompact.lookupName(name);
+            if (all || nameIndex != -1) {
+                final int end = fCompact.getSubtreeEnd(node);
+                for (int n = node + 1; n < end; n++) {
+                    if (fCompact.getNodeType(n) == ELEMENT_NODE && (all || fCompact.getNameIndex(n) == nameIndex)) {
+                        elements.add(getNode(n));
+                    }
+                }
+            }
+            return new ListImpl(elements);
+        } // getElementsByTagName(int,String):NodeList
+
+        //
+        // Node methods
+        //
+
+        @Override
+        public String getNodeName() {
+            return "#document";
+        }
+
+        @Override
+        public Document getOwnerDocument() {
+            return null;
+        }
+
+        @Override
+        public String getTextContent() {
+            return null;
+        }
+
+        //
+        // Document methods
+        //
+
+        @Override
+        public DocumentType getDoctype() {
+            return null;
+        }
+
+        @Override
+        public DOMImplementation getImplementation() {
+            throw notSupported();
+        }
+
+        @Override
+        public Element getDocumentElement() {
+            return (Element) getNode(fCompact.getDocumentElement());
+        }
+
+        @Override
+        public Element createElement(final String tagName) {
+            throw readOnly();
+        }
+
+        @Override
+        public DocumentFragment createDocumentFragment() {
+            throw readOnly();
+        }
+
+        @Override
+        public Text createTextNode(final String data) {
+            throw readOnly();
+        }
+
+        @Override
+        public Comment createComment(final String data) {
+            throw readOnly();
+        }
+
+        @Override
+        public CDATASection createCDATASection(final String data) {
+            throw readOnly();
+        }
+
+        @Override
+        public ProcessingInstruction createProcessingInstruction(final String target, final String data) {
+            throw readOnly();
+        }
+
+        @Override
+        public Attr createAttribute(final String name) {
+            throw readOnly();
+        }
+
+        @Override
+        public EntityReference createEntityReference(final String name) {
+            throw readOnly();
+        }
+
+        @Override
+        public NodeList getElementsByTagName(final String tagname) {
+            return getElementsByTagName(CompactDocument.DOCUMENT, tagname);
+        }
+
+        @Override
+        public Node importNode(final Node importedNode, final boolean deep) {
+            throw readOnly();
+        }
+
+        @Override
+        public Element createElementNS(final String namespaceURI, final String qualifiedName) {
+            throw readOnly();
+        }
+
+        @Override
+        public Attr createAttributeNS(final String namespaceURI, final String qualifiedName) {
+            throw readOnly();
+        }
+
+        @Override
+        public NodeList getElementsByTagNameNS(final String namespaceURI, final String localName) {
+            return namespaceURI == null || "*".equals(namespaceURI) ? getElementsByTagName(localName) : new ListImpl(new ArrayList<>());
+        }
+
+        @Override
+        public Element getElementById(final String elementId) {
+            final int count = fCompact.getNodeCount();
+            for (int n = 0; n < count; n++) {
+                if (fCompact.getNodeType(n) == ELEMENT_NODE && elementId.equals(fCompact.getAttribute(n, "id"))) {
+                    return (Element) getNode(n);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String getInputEncoding() {
+            return fCompact.getInputEncoding();
+        }
+
+        @Override
+        public String getXmlEncoding() {
+            return null;
+        }
+
+        @Override
+        public boolean getXmlStandalone() {
+            return false;
+        }
+
+        @Override
+        public void setXmlStandalone(final boolean xmlStandalone) {
+            throw readOnly();
+        }
+
+        @Override
+        public String getXmlVersion() {
+            return null;
+        }
+
+        @Override
+        public void setXmlVersion(final String xmlVersion) {
+            throw readOnly();
+        }
+
+        @Override
+        public boolean getStrictErrorChecking() {
+            return false;
+        }
+
+        @Override
+        public void setStrictErrorChecking(final boolean strictErrorChecking) {
+            throw readOnly();
+        }
+
+        @Override
+        public String getDocumentURI() {
+            return fCompact.getDocumentURI();
+        }
+
+        @Override
+        public void setDocumentURI(final String documentURI) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node adoptNode(final Node source) {
+            throw readOnly();
+        }
+
+        @Override
+        public DOMConfiguration getDomConfig() {
+            throw notSupported();
+        }
+
+        @Override
+        public void normalizeDocument() {
+            // text nodes are always merged
+        }
+
+        @Override
+        public Node renameNode(final Node n, final String namespaceURI, final String qualifiedName) {
+            throw readOnly();
+        }
+
+    } // class DocumentImpl
+
+    /** Element view. */
+    static final class ElementImpl extends NodeImpl implements Element {
+
+        //
+        // Constructors
+        //
+
+        /** Constructs an element view. */
+        ElementImpl(final DocumentImpl owner, final CompactDocument compact, final int index) {
+            super(owner, compact, index);
+        } // <init>(DocumentImpl,CompactDocument,int)
+
+        //
+        // Node methods
+        //
+
+        @Override
+        public String getNodeName() {
+            return fCompact.getName(fIndex);
+        }
+
+        @Override
+        public String getLocalName() {
+            return fCompact.getName(fIndex);
+        }
+
+        @Override
+        public NamedNodeMap getAttributes() {
+            return new AttributeMap(fOwner, fIndex);
+        }
+
+        @Override
+        public boolean hasAttributes() {
+            return fCompact.getAttributeCount(fIndex) > 0;
+        }
+
+        //
+        // Element methods
+        //
+
+        @Override
+        public String getTagName() {
+            return fCompact.getName(fIndex);
+        }
+
+        @Override
+        public String getAttribute(final String name) {
+            final String value = fCompact.getAttribute(fIndex, name);
+            return value != null ? value : "";
+        }
+
+        @Override
+        public void setAttribute(final String name, final String value) {
+            throw readOnly();
+        }
+
+        @Override
+        public void removeAttribute(final String name) {
+            throw readOnly();
+        }
+
+        @Override
+        public Attr getAttributeNode(final String name) {
+            final int index = fCompact.getAttributeIndex(fIndex, name);
+            return index != -1 ? fOwner.getAttr(fIndex, index) : null;
+        }
+
+        @Override
+        public Attr setAttributeNode(final Attr newAttr) {
+            throw readOnly();
+        }
+
+        @Override
+        public Attr removeAttributeNode(final Attr oldAttr) {
+            throw readOnly();
+        }
+
+        @Override
+        public NodeList getElementsByTagName(final String name) {
+            return fOwner.getElementsByTagName(fIndex, name);
+        }
+
+        @Override
+        public String getAttributeNS(final String namespaceURI, final String localName) {
+            return namespaceURI == null ? getAttribute(localName) : "";
+        }
+
+        @Override
+        public void setAttributeNS(final String namespaceURI, final String qualifiedName, final String value) {
+            throw readOnly();
+        }
+
+        @Override
+        public void removeAttributeNS(final String namespaceURI, final String localName) {
+            throw readOnly();
+        }
+
+        @Override
+        public Attr getAttributeNodeNS(final String namespaceURI, final String localName) {
+            return namespaceURI == null ? getAttributeNode(localName) : null;
+        }
+
+        @Override
+        public Attr setAttributeNodeNS(final Attr newAttr) {
+            throw readOnly();
+        }
+
+        @Override
+        public NodeList getElementsByTagNameNS(final String namespaceURI, final String localName) {
+            return namespaceURI == null || "*".equals(namespaceURI) ? getElementsByTagName(localName) : new ListImpl(new ArrayList<>());
+        }
+
+        @Override
+        public boolean hasAttribute(final String name) {
+            return fCompact.getAttributeIndex(fIndex, name) != -1;
+        }
+
+        @Override
+        public boolean hasAttributeNS(final String namespaceURI, final String localName) {
+            return namespaceURI == null && hasAttribute(localName);
+        }
+
+        @Override
+        public TypeInfo getSchemaTypeInfo() {
+            return null;
+        }
+
+        @Override
+        public void setIdAttribute(final String name, final boolean isId) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setIdAttributeNS(final String namespaceURI, final String localName, final boolean isId) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setIdAttributeNode(final Attr idAttr, final boolean isId) {
+            throw readOnly();
+        }
+
+    } // class ElementImpl
+
+    /** Base class of the character data views. */
+    abstract static class CharacterDataImpl extends NodeImpl implements CharacterData {
+
+        //
+        // Constructors
+        //
+
+        /** Constructs a character data view. */
+        CharacterDataImpl(final DocumentImpl owner, final CompactDocument compact, final int index) {
+            super(owner, compact, index);
+        } // <init>(DocumentImpl,CompactDocument,int)
+
+        //
+        // Node methods
+        //
+
+        @Override
+        public String getNodeValue() {
+            return fCompact.getData(fIndex);
+        }
+
+        @Override
+        public String getTextContent() {
+            return fCompact.getData(fIndex);
+        }
+
+        //
+        // CharacterData methods
+        //
+
+        @Override
+        public String getData() {
+            return fCompact.getData(fIndex);
+        }
+
+        @Override
+        public void setData(final String data) {
+            throw readOnly();
+        }
+
+        @Override
+        public int getLength() {
+            return fCompact.getDataLength(fIndex);
+        }
+
+        @Override
+        public String substringData(final int offset, final int count) {
+            final String data = getData();
+            if (offset < 0 || count < 0 || offset > data.length()) {
+                throw new DOMException(DOMException.INDEX_SIZE_ERR, "Index out of range.");
+            }
+            return data.substring(offset, Math.min(data.length(), offset + count));
+        }
+
+        @Override
+        public void appendData(final String arg) {
+            throw readOnly();
+        }
+
+        @Override
+        public void insertData(final int offset, final String arg) {
+            throw readOnly();
+        }
+
+        @Override
+        public void deleteData(final int offset, final int count) {
+            throw readOnly();
+        }
+
+        @Override
+        public void replaceData(final int offset, final int count, final String arg) {
+            throw readOnly();
+        }
+
+    } // class CharacterDataImpl
+
+    /** Text view. */
+    static class TextImpl extends CharacterDataImpl implements Text {
+
+        //
+        // Constructors
+        //
+
+        /** Constructs a text view. */
+        TextImpl(final DocumentImpl owner, final CompactDocument compact, final int index) {
+            super(owner, compact, index);
+        } // <init>(DocumentImpl,CompactDocument,int)
+
+        //
+        // Node methods
+        //
+
+        @Override
+        public String getNodeName() {
+            return "#text";
+        }
+
+        //
+        // Text methods
+        //
+
+        @Override
+        public Text splitText(final int offset) {
+            throw readOnly();
+        }
+
+        @Override
+        public boolean isElementContentWhitespace() {
+            return false;
+        }
+
+        @Override
+        public String getWholeText() {
+            return getData();
+        }
+
+        @Override
+        public Text replaceWholeText(final String content) {
+            throw readOnly();
+        }
+
+    } // class TextImpl
+
+    /** CDATA section view. */
+    static final class CDATASectionImpl extends TextImpl implements CDATASection {
+
+        //
+        // Constructors
+        //
+
+        /** Constructs a CDATA section view. */
+        CDATASectionImpl(final DocumentImpl owner, final CompactDocument compact, final int index) {
+            super(owner, compact, index);
+        } // <init>(DocumentImpl,CompactDocument,int)
+
+        //
+        // Node methods
+        //
+
+        @Override
+        public String getNodeName() {
+            return "#cdata-section";
+        }
+
+    } // class CDATASectionImpl
+
+    /** Comment view. */
+    static final class CommentImpl extends CharacterDataImpl implements Comment {
+
+        //
+        // Constructors
+        //
+
+        /** Constructs a comment view. */
+        CommentImpl(final DocumentImpl owner, final CompactDocument compact, final int index) {
+            super(owner, compact, index);
+        } // <init>(DocumentImpl,CompactDocument,int)
+
+        //
+        // Node methods
+        //
+
+        @Override
+        public String getNodeName() {
+            return "#comment";
+        }
+
+    } // class CommentImpl
+
+    /** Processing instruction view. */
+    static final class ProcessingInstructionImpl extends NodeImpl implements ProcessingInstruction {
+
+        //
+        // Constructors
+        //
+
+        /** Constructs a processing instruction view. */
+        ProcessingInstructionImpl(final DocumentImpl owner, final CompactDocument compact, final int index) {
+            super(owner, compact, index);
+        } // <init>(DocumentImpl,CompactDocument,int)
+
+        //
+        // Node methods
+        //
+
+        @Override
+        public String getNodeName() {
+            return fCompact.getName(fIndex);
+        }
+
+        @Override
+        public String getNodeValue() {
+            return fCompact.getData(fIndex);
+        }
+
+        @Override
+        public String getTextContent() {
+            return fCompact.getData(fIndex);
+        }
+
+        //
+        // ProcessingInstruction methods
+        //
+
+        @Override
+        public String getTarget() {
+            return fCompact.getName(fIndex);
+        }
+
+        @Override
+        public String getData() {
+            return fCompact.getData(fIndex);
+        }
+
+        @Override
+        public void setData(final String data) {
+            throw readOnly();
+        }
+
+    } // class ProcessingInstructionImpl
+
+    /** Attribute view. */
+    static final class AttrImpl extends NodeImpl implements Attr {
+
+        //
+        // Data
+        //
+
+        /** The global attribute index. */
+        private final int fAttribute;
+
+        //
+        // Constructors
+        //
+
+        /** Constructs an attribute view. */
+        AttrImpl(final DocumentImpl owner, final int element, final int attribute) {
+            super(owner, owner.fCompact, element);
+            fAttribute = attribute;
+        } // <init>(DocumentImpl,int,int)
+
+        //
+        // Node methods
+        //
+
+        @Override
+        public String getNodeName() {
+            return fCompact.getAttributeNameAt(fAttribute);
+        }
+
+        @Override
+        public String getLocalName() {
+            return fCompact.getAttributeNameAt(fAttribute);
+        }
+
+        @Override
+        public String getNodeValue() {
+            return fCompact.getAttributeValueAt(fAttribute);
+        }
+
+        @Override
+        public short getNodeType() {
+            return ATTRIBUTE_NODE;
+        }
+
+        @Override
+        public Node getParentNode() {
+            return null;
+        }
+
+        @Override
+        public NodeList getChildNodes() {
+            return new ListImpl(new ArrayList<>());
+        }
+
+        @Override
+        public Node getFirstChild() {
+            return null;
+        }
+
+        @Override
+        public Node getLastChild() {
+            return null;
+        }
+
+        @Override
+        public Node getPreviousSibling() {
+            return null;
+        }
+
+        @Override
+        public Node getNextSibling() {
+            return null;
+        }
+
+        @Override
+        public boolean hasChildNodes() {
+            return false;
+        }
+
+        @Override
+        public short compareDocumentPosition(final Node other) {
+            if (other == this) {
+                return 0;
+            }
+            final short position = getOwnerElement().compareDocumentPosition(other);
+            if (other == getOwnerElement()) {
+                return DOCUMENT_POSITION_PRECEDING | DOCUMENT_POSITION_CONTAINS;
+            }
+            return (short) (position & ~(DOCUMENT_POSITION_CONTAINED_BY | DOCUMENT_POSITION_CONTAINS));
+        }
+
+        @Override
+        public String getTextContent() {
+            return getValue();
+        }
+
+        //
+        // Attr methods
+        //
+
+        @Override
+        public String getName() {
+            return fCompact.getAttributeNameAt(fAttribute);
+        }
+
+        @Override
+        public boolean getSpecified() {
+            return true;
+        }
+
+        @Override
+        public String getValue() {
+            return fCompact.getAttributeValueAt(fAttribute);
+        }
+
+        @Override
+        public void setValue(final String value) {
+            throw readOnly();
+        }
+
+        @Override
+        public Element getOwnerElement() {
+            return (Element) fOwner.getNode(fIndex);
+        }
+
+        @Override
+        public TypeInfo getSchemaTypeInfo() {
+            return null;
+        }
+
+        @Override
+        public boolean isId() {
+            return "id".equalsIgnoreCase(getName());
+        }
+
+    } // class AttrImpl
+
+    /** Child node list view. */
+    static final class ChildList implements NodeList {
+
+        //
+        // Data
+        //
+
+        /** The document view. */
+        private final DocumentImpl fOwner;
+
+        /** The parent node. */
+        private final int fParent;
+
+        //
+        // Constructors
+        //
+
+        /** Constructs the child list of a node. */
+        ChildList(final DocumentImpl owner, final int parent) {
+            fOwner = owner;
+            fParent = parent;
+        } // <init>(DocumentImpl,int)
+
+        //
+        // NodeList methods
+        //
+
+        @Override
+        public Node item(final int index) {
+            if (index < 0) {
+                return null;
+            }
+            final CompactDocument compact = fOwner.fCompact;
+            int child = compact.getFirstChild(fParent);
+            for (int i = 0; i < index && child != CompactDocument.NONE; i++) {
+                child = compact.getNextSibling(child);
+            }
+            return fOwner.getNode(child);
+        }
+
+        @Override
+        public int getLength() {
+            final CompactDocument compact = fOwner.fCompact;
+            int length = 0;
+            for (int child = compact.getFirstChild(fParent); child != CompactDocument.NONE; child = compact.getNextSibling(child)) {
+                length++;
+            }
+            return length;
+        }
+
+    } // class ChildList
+
+    /** Static node list. */
+    static final class ListImpl implements NodeList {
+
+        //
+        // Data
+        //
+
+        /** The nodes. */
+        private final List<Node> fNodes;
+
+        //
+        // Constructors
+        //
+
+        /** Constructs a node list. */
+        ListImpl(final List<Node> nodes) {
+            fNodes = nodes;
+        } // <init>(List<Node>)
+
+        //
+        // NodeList methods
+        //
+
+        @Override
+        public Node item(final int index) {
+            return index >= 0 && index < fNodes.size() ? fNodes.get(index) : null;
+        }
+
+        @Override
+        public int getLength() {
+            return fNodes.size();
+        }
+
+    } // class ListImpl
+
+    /** Attribute map view. */
+    static final class AttributeMap implements NamedNodeMap {
+
+        //
+        // Data
+        //
+
+        /** The document view. */
+        private final DocumentImpl fOwner;
+
+        /** The element. */
+        private final int fElement;
+
+        //
+        // Constructors
+        //
+
+        /** Constructs the attribute map of an element. */
+        AttributeMap(final DocumentImpl owner, final int element) {
+            fOwner = owner;
+            fElement = element;
+        } // <init>(DocumentImpl,int)
+
+        //
+        // NamedNodeMap methods
+        //
+
+        @Override
+        public Node getNamedItem(final String name) {
+            final int index = fOwner.fCompact.getAttributeIndex(fElement, name);
+            return index != -1 ? fOwner.getAttr(fElement, index) : null;
+        }
+
+        @Override
+        public Node setNamedItem(final Node arg) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node removeNamedItem(final String name) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node item(final int index) {
+            return index >= 0 && index < getLength() ? fOwner.getAttr(fElement, index) : null;
+        }
+
+        @Override
+        public int getLength() {
+            return fOwner.fCompact.getAttributeCount(fElement);
+        }
+
+        @Override
+        public Node getNamedItemNS(final String namespaceURI, final String localName) {
+            return namespaceURI == null ? getNamedItem(localName) : null;
+        }
+
+        @Override
+        public Node setNamedItemNS(final Node arg) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node removeNamedItemNS(final String namespaceURI, final String localName) {
+            throw readOnly();
+        }
+
+    } // class AttributeMap
+
+} // class CompactDOM
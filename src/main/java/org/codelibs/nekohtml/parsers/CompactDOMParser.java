@@ -0,0 +1,351 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml.parsers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.util.ErrorHandlerWrapper;
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLDocumentHandler;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.parser.XMLConfigurationException;
+import org.apache.xerces.xni.parser.XMLDocumentSource;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+import org.apache.xerces.xni.parser.XMLParserConfiguration;
+import org.codelibs.nekohtml.HTMLConfiguration;
+import org.w3c.dom.Node;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * An HTML parser that builds a {@link CompactDocument} instead of a
+ * Xerces DOM. The tree is stored in primitive arrays and a shared
+ * character arena, which makes it much smaller than the equivalent
+ * <code>HTMLDocumentImpl</code>; a read-only <code>org.w3c.dom</code>
+ * view is available through {@link CompactDocument#getDOMDocument}.
+ * <p>
+ * Entity references are not kept as nodes: their replacement text is
+ * stored with the surrounding text.
+ */
+public class CompactDOMParser implements XMLDocumentHandler {
+
+    //
+    // Constants
+    //
+
+    // properties
+
+    /** Property identifier: error handler. */
+    protected static final String ERROR_HANDLER = Constants.XERCES_PROPERTY_PREFIX + Constants.ERROR_HANDLER_PROPERTY;
+
+    //
+    // Data
+    //
+
+    /** Parser configuration. */
+    protected XMLParserConfiguration fParserConfiguration;
+
+    /** Document source. */
+    protected XMLDocumentSource fDocumentSource;
+
+    /** The document being built. */
+    protected CompactDocument fDocument;
+
+    /** Current node. */
+    protected int fCurrentNode;
+
+    /** True if within a CDATA section. */
+    protected boolean fInCDATASection;
+
+    //
+    // Constructors
+    //
+
+    /** Default constructor. */
+    public CompactDOMParser() {
+        this(new HTMLConfiguration());
+    } // <init>()
+
+    /** Constructs a parser with the given configuration. */
+    public CompactDOMParser(final XMLParserConfiguration config) {
+        fParserConfiguration = config;
+        fParserConfiguration.setDocumentHandler(this);
+    } // <init>(XMLParserConfiguration)
+
+    //
+    // Public methods
+    //
+
+    /** Parses a document. */
+    public void parse(final String systemId) throws SAXException, IOException {
+        parse(new InputSource(systemId));
+    } // parse(String)
+
+    /** Parses a document. */
+    public void parse(final InputSource source) throws SAXException, IOException {
+
+        try {
+            final String pubid = source.getPublicId();
+            final String sysid = source.getSystemId();
+            final String encoding = source.getEncoding();
+            final InputStream stream = source.getByteStream();
+            final Reader reader = source.getCharacterStream();
+
+            final XMLInputSource inputSource = new XMLInputSource(pubid, sysid, sysid);
+            inputSource.setEncoding(encoding);
+            inputSource.setByteStream(stream);
+            inputSource.setCharacterStream(reader);
+
+            fParserConfiguration.parse(inputSource);
+        } catch (final XMLParseException e) {
+            final Exception ex = e.getException();
+            if (ex != null) {
+                throw new SAXParseException(e.getMessage(), null, ex);
+            }
+            throw new SAXParseException(e.getMessage(), null);
+        }
+
+    } // parse(InputSource)
+
+    /** Returns the document built by the last parse. */
+    public CompactDocument getDocument() {
+        return fDocument;
+    } // getDocument():CompactDocument
+
+    /** Allow an application to register an error event handler. */
+    public void setErrorHandler(final ErrorHandler errorHandler) {
+        fParserConfiguration.setErrorHandler(new ErrorHandlerWrapper(errorHandler));
+    } // setErrorHandler(ErrorHandler)
+
+    /** Return the current error handler. */
+    public ErrorHandler getErrorHandler() {
+
+        ErrorHandler errorHandler = null;
+        try {
+            final XMLErrorHandler xmlErrorHandler = (XMLErrorHandler) fParserConfiguration.getProperty(ERROR_HANDLER);
+            if (xmlErrorHandler instanceof ErrorHandlerWrapper) {
+                errorHandler = ((ErrorHandlerWrapper) xmlErrorHandler).getErrorHandler();
+            }
+        } catch (final XMLConfigurationException e) {
+            // do nothing
+        }
+        return errorHandler;
+
+    } // getErrorHandler():ErrorHandler
+
+    /** Set the state of a feature. */
+    public void setFeature(final String featureId, final boolean state) throws SAXNotRecognizedException, SAXNotSupportedException {
+
+        try {
+            fParserConfiguration.setFeature(featureId, state);
+        } catch (final XMLConfigurationException e) {
+            final String message = e.getMessage();
+            if (e.getType() == XMLConfigurationException.NOT_RECOGNIZED) {
+                throw new SAXNotRecognizedException(message);
+            }
+            throw new SAXNotSupportedException(message);
+        }
+
+    } // setFeature(String,boolean)
+
+    /** Query the state of a feature. */
+    public boolean getFeature(final String featureId) throws SAXNotRecognizedException, SAXNotSupportedException {
+
+        try {
+            return fParserConfiguration.getFeature(featureId);
+        } catch (final XMLConfigurationException e) {
+            final String message = e.getMessage();
+            if (e.getType() == XMLConfigurationException.NOT_RECOGNIZED) {
+                throw new SAXNotRecognizedException(message);
+            }
+            throw new SAXNotSupportedException(message);
+        }
+
+    } // getFeature(String):boolean
+
+    /** Set the value of a property. */
+    public void setProperty(final String propertyId, final Object value) throws SAXNotRecognizedException, SAXNotSupportedException {
+
+        try {
+            fParserConfiguration.setProperty(propertyId, value);
+        } catch (final XMLConfigurationException e) {
+            final String message = e.getMessage();
+            if (e.getType() == XMLConfigurationException.NOT_RECOGNIZED) {
+                throw new SAXNotRecognizedException(message);
+            }
+            throw new SAXNotSupportedException(message);
+        }
+
+    } // setProperty(String,Object)
+
+    /** Query the value of a property. */
+    public Object getProperty(final String propertyId) throws SAXNotRecognizedException, SAXNotSupportedException {
+
+        try {
+            return fParserConfiguration.getProperty(propertyId);
+        } catch (final XMLConfigurationException e) {
+            final String message = e.getMessage();
+            if (e.getType() == XMLConfigurationException.NOT_RECOGNIZED) {
+                throw new SAXNotRecognizedException(message);
+            }
+            throw new SAXNotSupportedException(message);
+        }
+
+    } // getProperty(String):Object
+
+    //
+    // XMLDocumentHandler methods
+    //
+
+    /** Sets the document source. */
+    @Override
+    public void setDocumentSource(final XMLDocumentSource source) {
+        fDocumentSource = source;
+    } // setDocumentSource(XMLDocumentSource)
+
+    /** Returns the document source. */
+    @Override
+    public XMLDocumentSource getDocumentSource() {
+        return fDocumentSource;
+    } // getDocumentSource():XMLDocumentSource
+
+    /** Start document. */
+    public void startDocument(final XMLLocator locator, final String encoding, final Augmentations augs) {
+        startDocument(locator, encoding, null, augs);
+    } // startDocument(XMLLocator,String,Augmentations)
+
+    /** Start document. */
+    @Override
+    public void startDocument(final XMLLocator locator, final String encoding, final NamespaceContext nscontext, final Augmentations augs) {
+        fDocument = new CompactDocument();
+        fDocument.setDocumentInfo(locator != null ? locator.getExpandedSystemId() : null, encoding);
+        fCurrentNode = CompactDocument.DOCUMENT;
+        fInCDATASection = false;
+    } // startDocument(XMLLocator,String,NamespaceContext,Augmentations)
+
+    /** XML declaration. */
+    @Override
+    public void xmlDecl(final String version, final String encoding, final String standalone, final Augmentations augs) {
+    } // xmlDecl(String,String,String,Augmentations)
+
+    /** Document type declaration. */
+    @Override
+    public void doctypeDecl(final String root, final String pubid, final String sysid, final Augmentations augs) {
+        fDocument.setDoctype(root, pubid, sysid);
+    } // doctypeDecl(String,String,String,Augmentations)
+
+    /** Processing instruction. */
+    @Override
+    public void processingInstruction(final String target, final XMLString data, final Augmentations augs) {
+        fDocument.appendProcessingInstruction(fCurrentNode, target, data.ch, data.offset, data.length);
+    } // processingInstruction(String,XMLString,Augmentations)
+
+    /** Comment. */
+    @Override
+    public void comment(final XMLString text, final Augmentations augs) {
+        fDocument.appendCharacterData(fCurrentNode, Node.COMMENT_NODE, text.ch, text.offset, text.length);
+    } // comment(XMLString,Augmentations)
+
+    /** Start element. */
+    @Override
+    public void startElement(final QName element, final XMLAttributes attrs, final Augmentations augs) {
+        final int node = fDocument.appendElement(fCurrentNode, element.rawname);
+        final int count = attrs != null ? attrs.getLength() : 0;
+        for (int i = 0; i < count; i++) {
+            fDocument.appendAttribute(node, attrs.getQName(i), attrs.getValue(i));
+        }
+        fCurrentNode = node;
+    } // startElement(QName,XMLAttributes,Augmentations)
+
+    /** Empty element. */
+    @Override
+    public void emptyElement(final QName element, final XMLAttributes attrs, final Augmentations augs) {
+        startElement(element, attrs, augs);
+        endElement(element, augs);
+    } // emptyElement(QName,XMLAttributes,Augmentations)
+
+    /** Characters. */
+    @Override
+    public void characters(final XMLString text, final Augmentations augs) {
+        if (text.length > 0) {
+            final short type = fInCDATASection ? Node.CDATA_SECTION_NODE : Node.TEXT_NODE;
+            fDocument.appendCharacterData(fCurrentNode, type, text.ch, text.offset, text.length);
+        }
+    } // characters(XMLString,Augmentations)
+
+    /** Ignorable whitespace. */
+    @Override
+    public void ignorableWhitespace(final XMLString text, final Augmentations augs) {
+        characters(text, augs);
+    } // ignorableWhitespace(XMLString,Augmentations)
+
+    /** Start general entity. */
+    @Override
+    public void startGeneralEntity(final String name, final XMLResourceIdentifier id, final String encoding, final Augmentations augs) {
+    } // startGeneralEntity(String,XMLResourceIdentifier,String,Augmentations)
+
+    /** Text declaration. */
+    @Override
+    public void textDecl(final String version, final String encoding, final Augmentations augs) {
+    } // textDecl(String,String,Augmentations)
+
+    /** End general entity. */
+    @Override
+    public void endGeneralEntity(final String name, final Augmentations augs) {
+    } // endGeneralEntity(String,Augmentations)
+
+    /** Start CDATA section. */
+    @Override
+    public void startCDATA(final Augmentations augs) {
+        fInCDATASection = true;
+    } // startCDATA(Augmentations)
+
+    /** End CDATA section. */
+    @Override
+    public void endCDATA(final Augmentations augs) {
+        fInCDATASection = false;
+    } // endCDATA(Augmentations)
+
+    /** End element. */
+    @Override
+    public void endElement(final QName element, final Augmentations augs) {
+        if (fCurrentNode != CompactDocument.DOCUMENT) {
+            fCurrentNode = fDocument.getParent(fCurrentNode);
+        }
+    } // endElement(QName,Augmentations)
+
+    /** End document. */
+    @Override
+    public void endDocument(final Augmentations augs) {
+        fDocument.trimToSize();
+    } // endDocument(Augmentations)
+
+} // class CompactDOMParser
@@ -0,0 +1,614 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml.parsers;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codelibs.nekohtml.HTMLElements;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * A compact, read-only HTML document tree built by the
+ * {@link CompactDOMParser}. Instead of one object per node, the tree is
+ * stored in parallel primitive arrays indexed by node number: node type,
+ * parent, first child, last child and next sibling indices, a name index
+ * and a range into a character arena shared by all the text of the
+ * document. Element and attribute names are stored once per document
+ * in a name table along with their {@link HTMLElements} code.
+ * <p>
+ * Nodes are numbered in document order and the document node is always
+ * node {@link #DOCUMENT}, so the descendants of a node are the nodes
+ * that follow it up to the end of its subtree. The tree can be walked
+ * with the index based methods of this class without creating any
+ * object or through the read-only <code>org.w3c.dom</code> view
+ * returned by {@link #getDOMDocument}.
+ */
+public class CompactDocument {
+
+    //
+    // Constants
+    //
+
+    /** No node. */
+    public static final int NONE = -1;
+
+    /** The document node. */
+    public static final int DOCUMENT = 0;
+
+    /** Initial node capacity. */
+    private static final int INITIAL_NODE_CAPACITY = 64;
+
+    /** Initial attribute capacity. */
+    private static final int INITIAL_ATTRIBUTE_CAPACITY = 32;
+
+    /** Initial character capacity. */
+    private static final int INITIAL_CHAR_CAPACITY = 1024;
+
+    //
+    // Data
+    //
+
+    // nodes
+
+    /** Number of nodes. */
+    private int fNodeCount;
+
+    /** Node types. */
+    private byte[] fTypes = new byte[INITIAL_NODE_CAPACITY];
+
+    /** Parent node indices. */
+    private int[] fParents = new int[INITIAL_NODE_CAPACITY];
+
+    /** First child node indices. */
+    private int[] fFirstChildren = new int[INITIAL_NODE_CAPACITY];
+
+    /** Last child node indices. */
+    private int[] fLastChildren = new int[INITIAL_NODE_CAPACITY];
+
+    /** Next sibling node indices. */
+    private int[] fNextSiblings = new int[INITIAL_NODE_CAPACITY];
+
+    /** Name indices of elements and processing instruction targets. */
+    private int[] fNames = new int[INITIAL_NODE_CAPACITY];
+
+    /**
+     * Start of the node data: the offset in the character arena for
+     * character data nodes, the first attribute for elements.
+     */
+    private int[] fStarts = new int[INITIAL_NODE_CAPACITY];
+
+    /**
+     * Length of the node data: the number of characters for character
+     * data nodes, the number of attributes for elements.
+     */
+    private int[] fLengths = new int[INITIAL_NODE_CAPACITY];
+
+    // attributes
+
+    /** Number of attributes. */
+    private int fAttributeCount;
+
+    /** Attribute name indices. */
+    private int[] fAttributeNames = new int[INITIAL_ATTRIBUTE_CAPACITY];
+
+    /** Attribute value offsets in the character arena. */
+    private int[] fAttributeOffsets = new int[INITIAL_ATTRIBUTE_CAPACITY];
+
+    /** Attribute value lengths. */
+    private int[] fAttributeLengths = new int[INITIAL_ATTRIBUTE_CAPACITY];
+
+    // characters
+
+    /** Number of characters in the arena. */
+    private int fCharCount;
+
+    /** Character arena. */
+    private char[] fChars = new char[INITIAL_CHAR_CAPACITY];
+
+    // names
+
+    /** Number of names. */
+    private int fNameCount;
+
+    /** Name table. */
+    private String[] fNameTable = new String[16];
+
+    /** Element codes of the names in the name table. */
+    private short[] fNameCodes = new short[16];
+
+    /** Name table index. */
+    private final Map<String, Integer> fNameIndices = new HashMap<>();
+
+    // document information
+
+    /** Document URI. */
+    private String fDocumentURI;
+
+    /** Input encoding. */
+    private String fEncoding;
+
+    /** Document type root element name. */
+    private String fDoctypeName;
+
+    /** Document type public identifier. */
+    private String fDoctypePublicId;
+
+    /** Document type system identifier. */
+    private String fDoctypeSystemId;
+
+    /** Lazily created DOM view. */
+    private Document fDOMDocument;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs an empty document. */
+    CompactDocument() {
+        appendNode(Node.DOCUMENT_NODE, NONE, -1, 0, 0);
+    } // <init>()
+
+    //
+    // Public methods
+    //
+
+    /** Returns the number of nodes, including the document node. */
+    public int getNodeCount() {
+        return fNodeCount;
+    } // getNodeCount():int
+
+    /** Returns the DOM node type of the node, e.g. {@link Node#ELEMENT_NODE}. */
+    public short getNodeType(final int node) {
+        return fTypes[node];
+    } // getNodeType(int):short
+
+    /** Returns the parent of the node or {@link #NONE}. */
+    public int getParent(final int node) {
+        return fParents[node];
+    } // getParent(int):int
+
+    /** Returns the first child of the node or {@link #NONE}. */
+    public int getFirstChild(final int node) {
+        return fFirstChildren[node];
+    } // getFirstChild(int):int
+
+    /** Returns the last child of the node or {@link #NONE}. */
+    public int getLastChild(final int node) {
+        return fLastChildren[node];
+    } // getLastChild(int):int
+
+    /** Returns the next sibling of the node or {@link #NONE}. */
+    public int getNextSibling(final int node) {
+        return fNextSiblings[node];
+    } // getNextSibling(int):int
+
+    /** Returns the previous sibling of the node or {@link #NONE}. */
+    public int getPreviousSibling(final int node) {
+        final int parent = fParents[node];
+        if (parent == NONE) {
+            return NONE;
+        }
+        int previous = NONE;
+        for (int child = fFirstChildren[parent]; child != node; child = fNextSiblings[child]) {
+            previous = child;
+        }
+        return previous;
+    } // getPreviousSibling(int):int
+
+    /**
+     * Returns the node that follows the subtree of the node in document
+     * order, i.e. the descendants of the node are the nodes between the
+     * node and the returned index.
+     */
+    public int getSubtreeEnd(final int node) {
+        for (int n = node; n != NONE; n = fParents[n]) {
+            if (fNextSiblings[n] != NONE) {
+                return fNextSiblings[n];
+            }
+        }
+        return fNodeCount;
+    } // getSubtreeEnd(int):int
+
+    /** Returns the root element or {@link #NONE}. */
+    public int getDocumentElement() {
+        for (int child = fFirstChildren[DOCUMENT]; child != NONE; child = fNextSiblings[child]) {
+            if (fTypes[child] == Node.ELEMENT_NODE) {
+                return child;
+            }
+        }
+        return NONE;
+    } // getDocumentElement():int
+
+    /**
+     * Returns the name of an element, the target of a processing
+     * instruction or null for other nodes.
+     */
+    public String getName(final int node) {
+        final int name = fNames[node];
+        return name != -1 ? fNameTable[name] : null;
+    } // getName(int):String
+
+    /**
+     * Returns the {@link HTMLElements} code of an element or
+     * {@link HTMLElements#UNKNOWN} for other nodes.
+     */
+    public short getElementCode(final int node) {
+        final int name = fNames[node];
+        return fTypes[node] == Node.ELEMENT_NODE ? fNameCodes[name] : HTMLElements.UNKNOWN;
+    } // getElementCode(int):short
+
+    /**
+     * Returns the character data of a text, CDATA section, comment or
+     * processing instruction node, null for other nodes.
+     */
+    public String getData(final int node) {
+        if (!isCharacterData(node)) {
+            return null;
+        }
+        return new String(fChars, fStarts[node], fLengths[node]);
+    } // getData(int):String
+
+    /** Returns the length of the character data of the node. */
+    public int getDataLength(final int node) {
+        return isCharacterData(node) ? fLengths[node] : 0;
+    } // getDataLength(int):int
+
+    /** Appends the character data of the node to the given buffer. */
+    public void appendData(final int node, final StringBuilder buffer) {
+        if (isCharacterData(node)) {
+            buffer.append(fChars, fStarts[node], fLengths[node]);
+        }
+    } // appendData(int,StringBuilder)
+
+    /**
+     * Appends the text of all the text and CDATA section descendants of
+     * the node to the given buffer.
+     */
+    public void appendTextContent(final int node, final StringBuilder buffer) {
+        final int end = getSubtreeEnd(node);
+        for (int n = node; n < end; n++) {
+            final byte type = fTypes[n];
+            if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+                buffer.append(fChars, fStarts[n], fLengths[n]);
+            }
+        }
+    } // appendTextContent(int,StringBuilder)
+
+    /** Returns the text of all the text and CDATA section descendants of the node. */
+    public String getTextContent(final int node) {
+        final StringBuilder buffer = new StringBuilder();
+        appendTextContent(node, buffer);
+        return buffer.toString();
+    } // getTextContent(int):String
+
+    /** Returns the number of attributes of the node. */
+    public int getAttributeCount(final int node) {
+        return fTypes[node] == Node.ELEMENT_NODE ? fLengths[node] : 0;
+    } // getAttributeCount(int):int
+
+    /** Returns the name of the attribute at the given index. */
+    public String getAttributeName(final int node, final int index) {
+        return fNameTable[fAttributeNames[attributeIndex(node, index)]];
+    } // getAttributeName(int,int):String
+
+    /** Returns the value of the attribute at the given index. */
+    public String getAttributeValue(final int node, final int index) {
+        final int attribute = attributeIndex(node, index);
+        return new String(fChars, fAttributeOffsets[attribute], fAttributeLengths[attribute]);
+    } // getAttributeValue(int,int):String
+
+    /** Returns the index of the named attribute of the node or -1. */
+    public int getAttributeIndex(final int node, final String name) {
+        final Integer nameIndex = fNameIndices.get(name);
+        if (nameIndex != null && fTypes[node] == Node.ELEMENT_NODE) {
+            final int start = fStarts[node];
+            final int length = fLengths[node];
+            for (int i = 0; i < length; i++) {
+                if (fAttributeNames[start + i] == nameIndex) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    } // getAttributeIndex(int,String):int
+
+    /** Returns the value of the named attribute of the node or null. */
+    public String getAttribute(final int node, final String name) {
+        final int index = getAttributeIndex(node, name);
+        return index != -1 ? getAttributeValue(node, index) : null;
+    } // getAttribute(int,String):String
+
+    /**
+     * Returns the next element with the given code following the given
+     * node in document order and before the end index, or {@link #NONE}.
+     * This allows all the elements of a kind to be visited with a loop
+     * like:
+     * <pre>
+     *  for (int n = doc.nextElement(CompactDocument.DOCUMENT, HTMLElements.A, doc.getNodeCount());
+     *       n != CompactDocument.NONE;
+     *       n = doc.nextElement(n, HTMLElements.A, doc.getNodeCount())) {
+     *      ...
+     *  }
+     * </pre>
+     */
+    public int nextElement(final int node, final short code, final int end) {
+        for (int n = node + 1; n < end; n++) {
+            if (fTypes[n] == Node.ELEMENT_NODE && fNameCodes[fNames[n]] == code) {
+                return n;
+            }
+        }
+        return NONE;
+    } // nextElement(int,short,int):int
+
+    /** Returns the document URI. */
+    public String getDocumentURI() {
+        return fDocumentURI;
+    } // getDocumentURI():String
+
+    /** Returns the encoding of the input. */
+    public String getInputEncoding() {
+        return fEncoding;
+    } // getInputEncoding():String
+
+    /** Returns the document type root element name or null. */
+    public String getDoctypeName() {
+        return fDoctypeName;
+    } // getDoctypeName():String
+
+    /** Returns the document type public identifier or null. */
+    public String getDoctypePublicId() {
+        return fDoctypePublicId;
+    } // getDoctypePublicId():String
+
+    /** Returns the document type system identifier or null. */
+    public String getDoctypeSystemId() {
+        return fDoctypeSystemId;
+    } // getDoctypeSystemId():String
+
+    /**
+     * Returns an estimation of the heap used by the arrays of this
+     * document, in bytes.
+     */
+    public long getFootprint() {
+        long size = 0;
+        size += fTypes.length;
+        size += 7L * 4 * fParents.length;
+        size += 3L * 4 * fAttributeNames.length;
+        size += 2L * fChars.length;
+        size += 6L * fNameTable.length;
+        for (int i = 0; i < fNameCount; i++) {
+            size += 40 + 2L * fNameTable[i].length();
+        }
+        return size;
+    } // getFootprint():long
+
+    /**
+     * Returns a read-only <code>org.w3c.dom</code> view of this document.
+     * The nodes of the view are created as they are navigated to; any
+     * attempt to modify the view throws a <code>DOMException</code> with
+     * the <code>NO_MODIFICATION_ALLOWED_ERR</code> code.
+     */
+    public Document getDOMDocument() {
+        if (fDOMDocument == null) {
+            fDOMDocument = new CompactDOM.DocumentImpl(this);
+        }
+        return fDOMDocument;
+    } // getDOMDocument():Document
+
+    //
+    // Package methods
+    //
+
+    /** Returns true if the node holds character data. */
+    boolean isCharacterData(final int node) {
+        final byte type = fTypes[node];
+        return type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE || type == Node.COMMENT_NODE
+                || type == Node.PROCESSING_INSTRUCTION_NODE;
+    } // isCharacterData(int):boolean
+
+    /** Returns the global index of the attribute at the given index. */
+    int attributeIndex(final int node, final int index) {
+        if (index < 0 || index >= getAttributeCount(node)) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return fStarts[node] + index;
+    } // attributeIndex(int,int):int
+
+    /** Returns the total number of attributes. */
+    int getTotalAttributeCount() {
+        return fAttributeCount;
+    } // getTotalAttributeCount():int
+
+    /** Returns the name table index of the name or -1. */
+    int lookupName(final String name) {
+        final Integer index = fNameIndices.get(name);
+        return index != null ? index : -1;
+    } // lookupName(String):int
+
+    /** Returns the name table index of the node name. */
+    int getNameIndex(final int node) {
+        return fNames[node];
+    } // getNameIndex(int):int
+
+    // building
+
+    /** Sets the document information. */
+    void setDocumentInfo(final String documentURI, final String encoding) {
+        fDocumentURI = documentURI;
+        fEncoding = encoding;
+    } // setDocumentInfo(String,String)
+
+    /** Sets the document type information. */
+    void setDoctype(final String name, final String publicId, final String systemId) {
+        fDoctypeName = name;
+        fDoctypePublicId = publicId;
+        fDoctypeSystemId = systemId;
+    } // setDoctype(String,String,String)
+
+    /** Appends an element with no attributes yet to the parent. */
+    int appendElement(final int parent, final String name) {
+        return appendNode(Node.ELEMENT_NODE, parent, addName(name), fAttributeCount, 0);
+    } // appendElement(int,String):int
+
+    /** Adds an attribute to the last appended element. */
+    void appendAttribute(final int element, final String name, final String value) {
+        if (fAttributeCount == fAttributeNames.length) {
+            final int capacity = fAttributeCount * 2;
+            fAttributeNames = Arrays.copyOf(fAttributeNames, capacity);
+            fAttributeOffsets = Arrays.copyOf(fAttributeOffsets, capacity);
+            fAttributeLengths = Arrays.copyOf(fAttributeLengths, capacity);
+        }
+        final int length = value.length();
+        ensureCharCapacity(length);
+        value.getChars(0, length, fChars, fCharCount);
+        fAttributeNames[fAttributeCount] = addName(name);
+        fAttributeOffsets[fAttributeCount] = fCharCount;
+        fAttributeLengths[fAttributeCount] = length;
+        fAttributeCount++;
+        fCharCount += length;
+        fLengths[element]++;
+    } // appendAttribute(int,String,String)
+
+    /**
+     * Appends character data to the parent. Text and CDATA sections are
+     * merged into the last child of the parent when it has the same type
+     * and its characters are at the end of the arena, so consecutive
+     * character events never copy what has already been stored.
+     */
+    int appendCharacterData(final int parent, final short type, final char[] ch, final int offset, final int length) {
+        final int last = fLastChildren[parent];
+        if ((type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) && last != NONE && fTypes[last] == type
+                && fStarts[last] + fLengths[last] == fCharCount) {
+            appendChars(ch, offset, length);
+            fLengths[last] += length;
+            return last;
+        }
+        final int start = fCharCount;
+        appendChars(ch, offset, length);
+        return appendNode(type, parent, -1, start, length);
+    } // appendCharacterData(int,short,char[],int,int):int
+
+    /** Appends a processing instruction to the parent. */
+    int appendProcessingInstruction(final int parent, final String target, final char[] ch, final int offset, final int length) {
+        final int start = fCharCount;
+        appendChars(ch, offset, length);
+        return appendNode(Node.PROCESSING_INSTRUCTION_NODE, parent, addName(target), start, length);
+    } // appendProcessingInstruction(int,String,char[],int,int):int
+
+    /** Releases the unused capacity of the arrays. */
+    void trimToSize() {
+        final int nodes = fNodeCount;
+        fTypes = Arrays.copyOf(fTypes, nodes);
+        fParents = Arrays.copyOf(fParents, nodes);
+        fFirstChildren = Arrays.copyOf(fFirstChildren, nodes);
+        fLastChildren = Arrays.copyOf(fLastChildren, nodes);
+        fNextSiblings = Arrays.copyOf(fNextSiblings, nodes);
+        fNames = Arrays.copyOf(fNames, nodes);
+        fStarts = Arrays.copyOf(fStarts, nodes);
+        fLengths = Arrays.copyOf(fLengths, nodes);
+        fAttributeNames = Arrays.copyOf(fAttributeNames, fAttributeCount);
+        fAttributeOffsets = Arrays.copyOf(fAttributeOffsets, fAttributeCount);
+        fAttributeLengths = Arrays.copyOf(fAttributeLengths, fAttributeCount);
+        fChars = Arrays.copyOf(fChars, fCharCount);
+        fNameTable = Arrays.copyOf(fNameTable, fNameCount);
+        fNameCodes = Arrays.copyOf(fNameCodes, fNameCount);
+    } // trimToSize()
+
+    //
+    // Private methods
+    //
+
+    /** Appends a node as the last child of the parent. */
+    private int appendNode(final short type, final int parent, final int name, final int start, final int length) {
+        if (fNodeCount == fTypes.length) {
+            final int capacity = fNodeCount * 2;
+            fTypes = Arrays.copyOf(fTypes, capacity);
+            fParents = Arrays.copyOf(fParents, capacity);
+            fFirstChildren = Arrays.copyOf(fFirstChildren, capacity);
+            fLastChildren = Arrays.copyOf(fLastChildren, capacity);
+            fNextSiblings = Arrays.copyOf(fNextSiblings, capacity);
+            fNames = Arrays.copyOf(fNames, capacity);
+            fStarts = Arrays.copyOf(fStarts, capacity);
+            fLengths = Arrays.copyOf(fLengths, capacity);
+        }
+        final int node = fNodeCount++;
+        fTypes[node] = (byte) type;
+        fParents[node] = parent;
+        fFirstChildren[node] = NONE;
+        fLastChildren[node] = NONE;
+        fNextSiblings[node] = NONE;
+        fNames[node] = name;
+        fStarts[node] = start;
+        fLengths[node] = length;
+        if (parent != NONE) {
+            final int last = fLastChildren[parent];
+            if (last == NONE) {
+                fFirstChildren[parent] = node;
+            } else {
+                fNextSiblings[last] = node;
+            }
+            fLastChildren[parent] = node;
+        }
+        return node;
+    } // appendNode(short,int,int,int,int):int
+
+    /** Adds a name to the name table and returns its index. */
+    private int addName(final String name) {
+        final Integer index = fNameIndices.get(name);
+        if (index != null) {
+            return index;
+        }
+        if (fNameCount == fNameTable.length) {
+            fNameTable = Arrays.copyOf(fNameTable, fNameCount * 2);
+            fNameCodes = Arrays.copyOf(fNameCodes, fNameCount * 2);
+        }
+        fNameTable[fNameCount] = name;
+        fNameCodes[fNameCount] = HTMLElements.getElement(name, HTMLElements.NO_SUCH_ELEMENT).code;
+        fNameIndices.put(name, fNameCount);
+        return fNameCount++;
+    } // addName(String):int
+
+    /** Appends characters to the arena. */
+    private void appendChars(final char[] ch, final int offset, final int length) {
+        ensureCharCapacity(length);
+        System.arraycopy(ch, offset, fChars, fCharCount, length);
+        fCharCount += length;
+    } // appendChars(char[],int,int)
+
+    /** Makes room for the given number of characters in the arena. */
+    private void ensureCharCapacity(final int length) {
+        if (fCharCount + length > fChars.length) {
+            fChars = Arrays.copyOf(fChars, Math.max(fChars.length * 2, fCharCount + length));
+        }
+    } // ensureCharCapacity(int)
+
+    // view support
+
+    /** Returns the attribute name of a global attribute index. */
+    String getAttributeNameAt(final int attribute) {
+        return fNameTable[fAttributeNames[attribute]];
+    } // getAttributeNameAt(int):String
+
+    /** Returns the attribute value of a global attribute index. */
+    String getAttributeValueAt(final int attribute) {
+        return new String(fChars, fAttributeOffsets[attribute], fAttributeLengths[attribute]);
+    } // getAttributeValueAt(int):String
+
+} // class CompactDocument
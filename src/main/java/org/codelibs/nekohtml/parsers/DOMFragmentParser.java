@@ -26,6 +26,7 @@ import java.io.Reader;
 import org.apache.xerces.impl.Constants;
 import org.apache.xerces.util.ErrorHandlerWrapper;
 import org.apache.xerces.util.XMLChar;
+import org.apache.xerces.util.XMLStringBuffer;
 import org.apache.xerces.xni.Augmentations;
 import org.apache.xerces.xni.NamespaceContext;
 import org.apache.xerces.xni.QName;
@@ -111,6 +112,13 @@ public class DOMFragmentParser implements XMLDocumentHandler {
     /** True if within a CDATA section. */
     protected boolean fInCDATASection;
 
+    /**
+     * Character content not yet added to the tree. Consecutive character
+     * events are collected here and added as a single node by
+     * {@link #flushCharacters()} at the next non-text event.
+     */
+    protected final XMLStringBuffer fPendingCharacters = new XMLStringBuffer();
+
     //
     // Constructors
     //
@@ -138,6 +146,7 @@ public class DOMFragmentParser implements XMLDocumentHandler {
 
         fCurrentNode = fDocumentFragment = fragment;
         fDocument = fDocumentFragment.getOwnerDocument();
+        fPendingCharacters.clear();
 
         try {
             final String pubid = source.getPublicId();
@@ -365,6 +374,7 @@ public class DOMFragmentParser implements XMLDocumentHandler {
     /** Processing instruction. */
     @Override
     public void processingInstruction(final String target, final XMLString data, final Augmentations augs) {
+        flushCharacters();
 
         final String s = data.toString();
         if (XMLChar.isValidName(s)) {
@@ -376,6 +386,7 @@ public class DOMFragmentParser implements XMLDocumentHandler {
     /** Comment. */
     @Override
     public void comment(final XMLString text, final Augmentations augs) {
+        flushCharacters();
         final Comment comment = fDocument.createComment(text.toString());
         fCurrentNode.appendChild(comment);
     } // comment(XMLString,Augmentations)
@@ -391,6 +402,7 @@ public class DOMFragmentParser implements XMLDocumentHandler {
     /** Start element. */
     @Override
     public void startElement(final QName element, final XMLAttributes attrs, final Augmentations augs) {
+        flushCharacters();
         final Element elementNode = fDocument.createElement(element.rawname);
         final int count = attrs != null ? attrs.getLength() : 0;
         for (int i = 0; i < count; i++) {
@@ -414,27 +426,7 @@ public class DOMFragmentParser implements XMLDocumentHandler {
     /** Characters. */
     @Override
     public void characters(final XMLString text, final Augmentations augs) {
-
-        if (fInCDATASection) {
-            final Node node = fCurrentNode.getLastChild();
-            if (node != null && node.getNodeType() == Node.CDATA_SECTION_NODE) {
-                final CDATASection cdata = (CDATASection) node;
-                cdata.appendData(text.toString());
-            } else {
-                final CDATASection cdata = fDocument.createCDATASection(text.toString());
-                fCurrentNode.appendChild(cdata);
-            }
-        } else {
-            final Node node = fCurrentNode.getLastChild();
-            if (node != null && node.getNodeType() == Node.TEXT_NODE) {
-                final Text textNode = (Text) node;
-                textNode.appendData(text.toString());
-            } else {
-                final Text textNode = fDocument.createTextNode(text.toString());
-                fCurrentNode.appendChild(textNode);
-            }
-        }
-
+        fPendingCharacters.append(text);
     } // characters(XMLString,Augmentations)
 
     /** Ignorable whitespace. */
@@ -446,6 +438,7 @@ public class DOMFragmentParser implements XMLDocumentHandler {
     /** Start general entity. */
     @Override
     public void startGeneralEntity(final String name, final XMLResourceIdentifier id, final String encoding, final Augmentations augs) {
+        flushCharacters();
         final EntityReference entityRef = fDocument.createEntityReference(name);
         fCurrentNode.appendChild(entityRef);
         fCurrentNode = entityRef;
@@ -459,30 +452,69 @@ public class DOMFragmentParser implements XMLDocumentHandler {
     /** End general entity. */
     @Override
     public void endGeneralEntity(final String name, final Augmentations augs) {
+        flushCharacters();
         fCurrentNode = fCurrentNode.getParentNode();
     } // endGeneralEntity(String,Augmentations)
 
     /** Start CDATA section. */
     @Override
     public void startCDATA(final Augmentations augs) {
+        flushCharacters();
         fInCDATASection = true;
     } // startCDATA(Augmentations)
 
     /** End CDATA section. */
     @Override
     public void endCDATA(final Augmentations augs) {
+        flushCharacters();
         fInCDATASection = false;
     } // endCDATA(Augmentations)
 
     /** End element. */
     @Override
     public void endElement(final QName element, final Augmentations augs) {
+        flushCharacters();
         fCurrentNode = fCurrentNode.getParentNode();
     } // endElement(QName,Augmentations)
 
     /** End document. */
     @Override
     public void endDocument(final Augmentations augs) {
+        flushCharacters();
     } // endDocument(Augmentations)
 
+    //
+    // Protected methods
+    //
+
+    /** Adds the pending character content to the current node. */
+    protected void flushCharacters() {
+
+        if (fPendingCharacters.length == 0) {
+            return;
+        }
+        final String data = fPendingCharacters.toString();
+        fPendingCharacters.clear();
+        if (fInCDATASection) {
+            final Node node = fCurrentNode.getLastChild();
+            if (node != null && node.getNodeType() == Node.CDATA_SECTION_NODE) {
+                final CDATASection cdata = (CDATASection) node;
+                cdata.appendData(data);
+            } else {
+                final CDATASection cdata = fDocument.createCDATASection(data);
+                fCurrentNode.appendChild(cdata);
+            }
+        } else {
+            final Node node = fCurrentNode.getLastChild();
+            if (node != null && node.getNodeType() == Node.TEXT_NODE) {
+                final Text textNode = (Text) node;
+                textNode.appendData(data);
+            } else {
+                final Text textNode = fDocument.createTextNode(data);
+                fCurrentNode.appendChild(textNode);
+            }
+        }
+
+    } // flushCharacters()
+
 } // class DOMFragmentParser
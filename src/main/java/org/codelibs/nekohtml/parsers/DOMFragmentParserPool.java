@@ -0,0 +1,239 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml.parsers;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.apache.xerces.xni.parser.XMLConfigurationException;
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.codelibs.nekohtml.HTMLConfiguration;
+import org.codelibs.nekohtml.HTMLConfigurationPool;
+import org.codelibs.nekohtml.HTMLObjectPool;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+
+/**
+ * A thread-safe service for parsing many HTML fragments. Configured
+ * {@link DOMFragmentParser} instances are kept in a pool and reused, so
+ * features and properties are only applied once per instance and the
+ * scanner keeps its buffers between fragments. The configuration of a
+ * reused parser only skips reading its settings again, and resets just the
+ * per-fragment state of its components, since the changes of
+ * {@link HTMLConfiguration} made for {@link HTMLConfigurationPool}; the
+ * pool itself does not track which state changed.
+ * <p>
+ * Each parser gets its own filters from the factory given to
+ * {@link #setFilters}; the filters property is not supported since the
+ * parsers parse concurrently.
+ * <p>
+ * The pool itself may be used from any number of threads, but the
+ * target <code>Document</code> is modified by each parse: threads that
+ * parse concurrently should use their own documents.
+ */
+public class DOMFragmentParserPool {
+
+    //
+    // Constants
+    //
+
+    /** Default maximum number of idle parsers. */
+    public static final int DEFAULT_MAX_IDLE = 16;
+
+    /** Pipeline filters. */
+    protected static final String FILTERS = "http://cyberneko.org/html/properties/filters";
+
+    //
+    // Data
+    //
+
+    /** Idle parsers and settings. */
+    protected final HTMLObjectPool<PooledParser> fPool;
+
+    //
+    // Constructors
+    //
+
+    /** Default constructor. */
+    public DOMFragmentParserPool() {
+        this(DEFAULT_MAX_IDLE);
+    } // <init>()
+
+    /** Constructs a pool keeping at most the given number of idle parsers. */
+    public DOMFragmentParserPool(final int maxIdle) {
+        fPool =
+                new HTMLObjectPool<>(maxIdle, parser -> parser.fGeneration, DOMFragmentParser.RECOGNIZED_FEATURES,
+                        DOMFragmentParser.RECOGNIZED_PROPERTIES);
+    } // <init>(int)
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Sets a feature on all the parsers of the pool. Idle parsers are
+     * discarded and parsers in use are not returned to the pool.
+     */
+    public void setFeature(final String featureId, final boolean state) throws SAXNotRecognizedException, SAXNotSupportedException {
+        try {
+            fPool.setFeature(featureId, state);
+        } catch (final XMLConfigurationException e) {
+            final String message = e.getMessage();
+            if (e.getType() == XMLConfigurationException.NOT_RECOGNIZED) {
+                throw new SAXNotRecognizedException(message);
+            }
+            throw new SAXNotSupportedException(message);
+        }
+    } // setFeature(String,boolean)
+
+    /**
+     * Sets a property on all the parsers of the pool. Idle parsers are
+     * discarded and parsers in use are not returned to the pool.
+     */
+    public void setProperty(final String propertyId, final Object value) throws SAXNotRecognizedException, SAXNotSupportedException {
+        try {
+            fPool.setProperty(propertyId, value);
+        } catch (final XMLConfigurationException e) {
+            final String message = e.getMessage();
+            if (e.getType() == XMLConfigurationException.NOT_RECOGNIZED) {
+                throw new SAXNotRecognizedException(message);
+            }
+            throw new SAXNotSupportedException(message);
+        }
+    } // setProperty(String,Object)
+
+    /**
+     * Sets the factory of the filters of the parsers, which must return new
+     * filter instances on each call. Idle parsers are discarded and parsers
+     * in use are not returned to the pool.
+     */
+    public void setFilters(final Supplier<XMLDocumentFilter[]> filters) {
+        fPool.setFilters(filters);
+    } // setFilters(Supplier<XMLDocumentFilter[]>)
+
+    /** Parses a fragment into a new document fragment of the given document. */
+    public DocumentFragment parse(final String html, final Document document) throws SAXException, IOException {
+        return parse(new InputSource(new StringReader(html)), document);
+    } // parse(String,Document):DocumentFragment
+
+    /** Parses a fragment into a new document fragment of the given document. */
+    public DocumentFragment parse(final InputSource source, final Document document) throws SAXException, IOException {
+        final DocumentFragment fragment = document.createDocumentFragment();
+        parse(source, fragment);
+        return fragment;
+    } // parse(InputSource,Document):DocumentFragment
+
+    /** Parses a fragment into the given document fragment. */
+    public void parse(final InputSource source, final DocumentFragment fragment) throws SAXException, IOException {
+        final PooledParser parser = borrow();
+        try {
+            parser.parse(source, fragment);
+        } finally {
+            release(parser);
+        }
+    } // parse(InputSource,DocumentFragment)
+
+    /** Returns the number of idle parsers. */
+    public int getIdleCount() {
+        return fPool.getIdleCount();
+    } // getIdleCount():int
+
+    //
+    // Protected methods
+    //
+
+    /** Returns an idle parser or a new one. */
+    protected PooledParser borrow() throws SAXNotRecognizedException, SAXNotSupportedException {
+        final PooledParser parser = fPool.poll();
+        return parser != null ? parser : createParser();
+    } // borrow():PooledParser
+
+    /** Returns a parser to the pool. */
+    protected void release(final PooledParser parser) {
+        fPool.offer(parser);
+    } // release(PooledParser)
+
+    /**
+     * Creates a parser with the current settings and new filters. The
+     * properties and filters are set first, so that the features of the
+     * filters are recognized.
+     */
+    protected PooledParser createParser() throws SAXNotRecognizedException, SAXNotSupportedException {
+        synchronized (fPool) {
+            final PooledParser parser = new PooledParser(fPool.getGeneration());
+            for (final Map.Entry<String, Object> entry : fPool.getProperties().entrySet()) {
+                parser.setProperty(entry.getKey(), entry.getValue());
+            }
+            final XMLDocumentFilter[] filters = fPool.newFilters();
+            if (filters != null) {
+                parser.setProperty(FILTERS, filters);
+            }
+            for (final Map.Entry<String, Boolean> entry : fPool.getFeatures().entrySet()) {
+                parser.setFeature(entry.getKey(), entry.getValue());
+            }
+            return parser;
+        }
+    } // createParser():PooledParser
+
+    //
+    // Classes
+    //
+
+    /** A fragment parser tagged with the settings generation it was built for. */
+    protected static class PooledParser extends DOMFragmentParser {
+
+        //
+        // Data
+        //
+
+        /** Settings generation. */
+        protected final int fGeneration;
+
+        //
+        // Constructors
+        //
+
+        /** Constructs a parser for the given settings generation. */
+        protected PooledParser(final int generation) {
+            fGeneration = generation;
+        } // <init>(int)
+
+        //
+        // Public methods
+        //
+
+        /** Parses a fragment and drops the references to the target afterwards. */
+        @Override
+        public void parse(final InputSource source, final DocumentFragment fragment) throws SAXException, IOException {
+            try {
+                super.parse(source, fragment);
+            } finally {
+                fCurrentNode = null;
+                fDocumentFragment = null;
+                fDocument = null;
+            }
+        } // parse(InputSource,DocumentFragment)
+
+    } // class PooledParser
+
+} // class DOMFragmentParserPool
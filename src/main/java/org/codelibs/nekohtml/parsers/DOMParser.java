@@ -16,9 +16,15 @@
 
 package org.codelibs.nekohtml.parsers;
 
+import java.util.Locale;
+
 import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
 import org.codelibs.nekohtml.HTMLConfiguration;
 import org.codelibs.nekohtml.xercesbridge.XercesBridge;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
 
 /**
  * A DOM parser for HTML documents.
@@ -39,6 +45,61 @@ extends org.apache.xerces.parsers.DOMParser {
     extends org.apache.xerces.parsers.AbstractDOMParser {
     /***/
 
+    //
+    // Constants
+    //
+
+    // features
+
+    /**
+     * Feature identifier: defer node expansion. When set, the document
+     * is recorded in the compact deferred form of the Xerces core DOM
+     * and nodes are only created when they are navigated to. The
+     * document is then a core document, not an HTML DOM document, but
+     * element names without a namespace are upper cased as the HTML DOM
+     * document does, whatever the names/elems setting.
+     */
+    public static final String DEFER_NODE_EXPANSION = "http://cyberneko.org/html/features/dom/defer-node-expansion";
+
+    /**
+     * Feature identifier: generic elements. When set, elements are
+     * created as generic core DOM elements by {@link HTMLCoreDocumentImpl}
+     * instead of the specific HTML DOM element classes.
+     */
+    public static final String GENERIC_ELEMENTS = "http://cyberneko.org/html/features/dom/generic-elements";
+
+    /** Xerces feature identifier: defer node expansion. */
+    protected static final String XERCES_DEFER_NODE_EXPANSION = "http://apache.org/xml/features/dom/defer-node-expansion";
+
+    // properties
+
+    /** Property identifier: document class name. */
+    protected static final String DOCUMENT_CLASS_NAME = "http://apache.org/xml/properties/dom/document-class-name";
+
+    // document classes
+
+    /** The HTML DOM document class. */
+    protected static final String HTML_DOCUMENT_CLASS_NAME = "org.apache.html.dom.HTMLDocumentImpl";
+
+    /** The core DOM document class, the only one Xerces can defer. */
+    protected static final String CORE_DOCUMENT_CLASS_NAME = "org.apache.xerces.dom.DocumentImpl";
+
+    /** The core DOM document class with generic HTML elements. */
+    protected static final String HTML_CORE_DOCUMENT_CLASS_NAME = "org.codelibs.nekohtml.parsers.HTMLCoreDocumentImpl";
+
+    //
+    // Data
+    //
+
+    /** Defer node expansion. */
+    protected boolean fDeferHTMLNodeExpansion;
+
+    /** Generic elements. */
+    protected boolean fGenericElements;
+
+    /** The upper case element name passed to the deferred document. */
+    private final QName fUpperCaseName = new QName();
+
     //
     // Constructors
     //
@@ -48,7 +109,7 @@ extends org.apache.xerces.parsers.DOMParser {
         super(new HTMLConfiguration());
         /*** extending DOMParser ***/
         try {
-            setProperty("http://apache.org/xml/properties/dom/document-class-name", "org.apache.html.dom.HTMLDocumentImpl");
+            setProperty(DOCUMENT_CLASS_NAME, HTML_DOCUMENT_CLASS_NAME);
         } catch (final org.xml.sax.SAXNotRecognizedException e) {
             throw new RuntimeException("http://apache.org/xml/properties/dom/document-class-name property not recognized");
         } catch (final org.xml.sax.SAXNotSupportedException e) {
@@ -60,6 +121,39 @@ extends org.apache.xerces.parsers.DOMParser {
         /***/
     } // <init>()
 
+    //
+    // Public methods
+    //
+
+    /** Sets the state of a feature. */
+    @Override
+    public void setFeature(final String featureId, final boolean state) throws SAXNotRecognizedException, SAXNotSupportedException {
+        if (DEFER_NODE_EXPANSION.equals(featureId)) {
+            super.setFeature(XERCES_DEFER_NODE_EXPANSION, state);
+            fDeferHTMLNodeExpansion = state;
+            setDocumentClassName();
+            return;
+        }
+        if (GENERIC_ELEMENTS.equals(featureId)) {
+            fGenericElements = state;
+            setDocumentClassName();
+            return;
+        }
+        super.setFeature(featureId, state);
+    } // setFeature(String,boolean)
+
+    /** Returns the state of a feature. */
+    @Override
+    public boolean getFeature(final String featureId) throws SAXNotRecognizedException, SAXNotSupportedException {
+        if (DEFER_NODE_EXPANSION.equals(featureId)) {
+            return fDeferHTMLNodeExpansion;
+        }
+        if (GENERIC_ELEMENTS.equals(featureId)) {
+            return fGenericElements;
+        }
+        return super.getFeature(featureId);
+    } // getFeature(String):boolean
+
     //
     // XMLDocumentHandler methods
     //
@@ -93,6 +187,52 @@ extends org.apache.xerces.parsers.DOMParser {
 
     } // doctypeDecl(String,String,String,Augmentations)
 
+    /** Start element. */
+    @Override
+    public void startElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+        super.startElement(toDocumentName(element), attributes, augs);
+    } // startElement(QName,XMLAttributes,Augmentations)
+
+    /** End element. */
+    @Override
+    public void endElement(final QName element, final Augmentations augs) {
+        super.endElement(toDocumentName(element), augs);
+    } // endElement(QName,Augmentations)
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Returns the element name to record in the document: the core
+     * document used for deferred node expansion keeps names as given, so
+     * names without a namespace are upper cased there the way the HTML
+     * DOM document does.
+     */
+    private QName toDocumentName(final QName element) {
+        if (!fDeferHTMLNodeExpansion || element.uri != null && element.uri.length() > 0) {
+            return element;
+        }
+        final String localpart = element.localpart != null ? element.localpart.toUpperCase(Locale.ENGLISH) : null;
+        fUpperCaseName.setValues(element.prefix, localpart, element.rawname.toUpperCase(Locale.ENGLISH), element.uri);
+        return fUpperCaseName;
+    } // toDocumentName(QName):QName
+
+    /**
+     * Sets the document class according to the DOM features. Deferred
+     * node expansion takes precedence because Xerces only defers its
+     * core document class.
+     */
+    private void setDocumentClassName() throws SAXNotRecognizedException, SAXNotSupportedException {
+        String documentClassName = HTML_DOCUMENT_CLASS_NAME;
+        if (fDeferHTMLNodeExpansion) {
+            documentClassName = CORE_DOCUMENT_CLASS_NAME;
+        } else if (fGenericElements) {
+            documentClassName = HTML_CORE_DOCUMENT_CLASS_NAME;
+        }
+        super.setProperty(DOCUMENT_CLASS_NAME, documentClassName);
+    } // setDocumentClassName()
+
     //
     // Private static methods
     //
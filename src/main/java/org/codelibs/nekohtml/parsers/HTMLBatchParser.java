@@ -0,0 +1,693 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml.parsers;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.apache.xerces.xni.XMLDocumentHandler;
+import org.apache.xerces.xni.parser.XMLConfigurationException;
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.codelibs.nekohtml.HTMLConfiguration;
+import org.codelibs.nekohtml.HTMLParseStatistics;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+
+/**
+ * Parses many documents in parallel. The inputs may be
+ * {@link XMLInputSource}s, byte arrays, {@link Path}s, {@link File}s or
+ * {@link URL}s. Each document is either sent to a document handler
+ * created by a {@link HandlerFactory} or parsed into a DOM document.
+ * <p>
+ * The documents are parsed by workers, each with its own configuration
+ * that is reused for the following documents. At most
+ * {@link #setMaxInFlight max in flight} documents are parsed or waiting
+ * to be parsed at any time: the inputs are only taken from the stream
+ * when a slot is free. An error in a document is kept in its
+ * {@link Result} and does not stop the batch; the worker that parsed it
+ * is discarded.
+ * <p>
+ * The methods returning a list keep every result until the batch ends.
+ * To release the DOM documents of a large batch as it runs, pass a
+ * consumer of the results instead: each result is passed once its
+ * document is parsed, and its slot is only freed when the consumer
+ * returns. If the consumer throws, no more documents are started and the
+ * exception is rethrown by the batch once the documents in flight are
+ * done.
+ * <p>
+ * Each worker gets its own filters from the factory given to
+ * {@link #setFilters}; the filters property is not supported since the
+ * workers parse concurrently.
+ * <p>
+ * The streams of the parsed inputs are closed, except those of the
+ * {@link XMLInputSource}s given by the application, which remain
+ * theirs to close.
+ * <p>
+ * By default a batch runs on its own fork/join pool. On JDK 21 and
+ * later, {@link #setVirtualThreads} runs each document on a virtual
+ * thread instead. The statistics of all the parsed documents are added
+ * to {@link #getStatistics}.
+ * <p>
+ * Settings must not be changed while a batch is running; batches may
+ * otherwise run concurrently.
+ */
+public class HTMLBatchParser {
+
+    //
+    // Constants
+    //
+
+    /** Pipeline filters. */
+    protected static final String FILTERS = "http://cyberneko.org/html/properties/filters";
+
+    //
+    // Data
+    //
+
+    /** Number of threads of the default executor. */
+    protected int fParallelism = Runtime.getRuntime().availableProcessors();
+
+    /** Maximum number of documents in flight. */
+    protected int fMaxInFlight = fParallelism * 2;
+
+    /** True to run each document on a virtual thread. */
+    protected boolean fVirtualThreads;
+
+    /** Executor given by the application, or null. */
+    protected Executor fExecutor;
+
+    /** Features applied to new workers. */
+    protected final Map<String, Boolean> fFeatures = new LinkedHashMap<>();
+
+    /** Properties applied to new workers. */
+    protected final Map<String, Object> fProperties = new LinkedHashMap<>();
+
+    /** Creates the filters of each worker, or null. */
+    protected Supplier<XMLDocumentFilter[]> fFilters;
+
+    /** Idle workers. */
+    protected final ConcurrentLinkedQueue<Worker> fIdleWorkers = new ConcurrentLinkedQueue<>();
+
+    /** Settings generation; workers of older generations are discarded. */
+    protected volatile int fGeneration;
+
+    /** Statistics of all the parsed documents. */
+    private final HTMLParseStatistics fStatistics = new HTMLParseStatistics();
+
+    /** Number of documents parsed. */
+    private long fDocumentsParsed;
+
+    /** Number of documents that failed. */
+    private long fDocumentsFailed;
+
+    //
+    // Public methods
+    //
+
+    /** Sets the number of threads of the default executor. */
+    public void setParallelism(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism " + parallelism);
+        }
+        fParallelism = parallelism;
+    } // setParallelism(int)
+
+    /** Sets the maximum number of documents parsed or waiting to be parsed. */
+    public void setMaxInFlight(final int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("max in flight " + maxInFlight);
+        }
+        fMaxInFlight = maxInFlight;
+    } // setMaxInFlight(int)
+
+    /**
+     * Runs each document on a virtual thread, if they are available.
+     *
+     * @see #isVirtualThreadsAvailable
+     */
+    public void setVirtualThreads(final boolean virtualThreads) {
+        fVirtualThreads = virtualThreads;
+    } // setVirtualThreads(boolean)
+
+    /**
+     * Sets the executor running the documents, or null for the default
+     * one. The executor is not shut down by the parser.
+     */
+    public void setExecutor(final Executor executor) {
+        fExecutor = executor;
+    } // setExecutor(Executor)
+
+    /** Sets a feature of the workers. */
+    public synchronized void setFeature(final String featureId, final boolean state) throws SAXNotRecognizedException,
+            SAXNotSupportedException {
+        new DOMParser().setFeature(featureId, state);
+        fFeatures.put(featureId, state);
+        fGeneration++;
+        fIdleWorkers.clear();
+    } // setFeature(String,boolean)
+
+    /**
+     * Sets a property of the workers.
+     *
+     * @exception SAXNotSupportedException Thrown for the filters property;
+     *                                     see {@link #setFilters}.
+     */
+    public synchronized void setProperty(final String propertyId, final Object value) throws SAXNotRecognizedException,
+            SAXNotSupportedException {
+        if (FILTERS.equals(propertyId)) {
+            throw new SAXNotSupportedException(propertyId + ": filters cannot be shared by the workers, set a filter factory instead");
+        }
+        new DOMParser().setProperty(propertyId, value);
+        fProperties.put(propertyId, value);
+        fGeneration++;
+        fIdleWorkers.clear();
+    } // setProperty(String,Object)
+
+    /**
+     * Sets the factory of the filters of the workers, or null for no
+     * filters. The factory must return new filter instances on each call.
+     */
+    public synchronized void setFilters(final Supplier<XMLDocumentFilter[]> filters) {
+        fFilters = filters;
+        fGeneration++;
+        fIdleWorkers.clear();
+    } // setFilters(Supplier<XMLDocumentFilter[]>)
+
+    /**
+     * Parses documents, sending the events of each one to a new handler.
+     *
+     * @param inputs  The inputs of the documents.
+     * @param factory The factory of the document handlers.
+     *
+     * @return The results, in the order of the inputs.
+     *
+     * @exception InterruptedException Thrown if the thread is interrupted
+     *                                 while waiting for a slot.
+     */
+    public List<Result> parse(final Stream<?> inputs, final HandlerFactory factory) throws InterruptedException {
+        if (factory == null) {
+            throw new IllegalArgumentException("factory");
+        }
+        return collect(inputs.iterator(), factory);
+    } // parse(Stream<?>,HandlerFactory):List<Result>
+
+    /**
+     * Parses documents, sending the events of each one to a new handler
+     * and passing the results to a consumer as the documents are parsed.
+     *
+     * @param inputs   The inputs of the documents.
+     * @param factory  The factory of the document handlers.
+     * @param consumer The consumer of the results, called by the thread
+     *                 that parsed each document.
+     *
+     * @exception InterruptedException Thrown if the thread is interrupted
+     *                                 while waiting for a slot.
+     * @exception RuntimeException     Thrown if the consumer threw it.
+     */
+    public void parse(final Stream<?> inputs, final HandlerFactory factory, final Consumer<? super Result> consumer)
+            throws InterruptedException {
+        if (factory == null) {
+            throw new IllegalArgumentException("factory");
+        }
+        run(inputs.iterator(), factory, consumer);
+    } // parse(Stream<?>,HandlerFactory,Consumer)
+
+    /**
+     * Parses documents into DOM documents.
+     *
+     * @param inputs The inputs of the documents.
+     *
+     * @return The results, in the order of the inputs.
+     *
+     * @exception InterruptedException Thrown if the thread is interrupted
+     *                                 while waiting for a slot.
+     */
+    public List<Result> parseDocuments(final Stream<?> inputs) throws InterruptedException {
+        return collect(inputs.iterator(), null);
+    } // parseDocuments(Stream<?>):List<Result>
+
+    /**
+     * Parses documents into DOM documents, passing the results to a
+     * consumer as the documents are parsed.
+     *
+     * @param inputs   The inputs of the documents.
+     * @param consumer The consumer of the results, called by the thread
+     *                 that parsed each document.
+     *
+     * @exception InterruptedException Thrown if the thread is interrupted
+     *                                 while waiting for a slot.
+     * @exception RuntimeException     Thrown if the consumer threw it.
+     */
+    public void parseDocuments(final Stream<?> inputs, final Consumer<? super Result> consumer) throws InterruptedException {
+        run(inputs.iterator(), null, consumer);
+    } // parseDocuments(Stream<?>,Consumer)
+
+    /** Returns a copy of the statistics of all the parsed documents. */
+    public HTMLParseStatistics getStatistics() {
+        final HTMLParseStatistics stats = new HTMLParseStatistics();
+        synchronized (fStatistics) {
+            stats.add(fStatistics);
+        }
+        return stats;
+    } // getStatistics():HTMLParseStatistics
+
+    /** Returns the number of documents parsed, including the failed ones. */
+    public long getDocumentsParsed() {
+        synchronized (fStatistics) {
+            return fDocumentsParsed;
+        }
+    } // getDocumentsParsed():long
+
+    /** Returns the number of documents that failed. */
+    public long getDocumentsFailed() {
+        synchronized (fStatistics) {
+            return fDocumentsFailed;
+        }
+    } // getDocumentsFailed():long
+
+    /** Returns true if virtual threads are available, i.e. on JDK 21 and later. */
+    public static boolean isVirtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (final NoSuchMethodException e) {
+            return false;
+        }
+    } // isVirtualThreadsAvailable():boolean
+
+    //
+    // Protected methods
+    //
+
+    /** Parses the documents of a batch, returning the results in the order of the inputs. */
+    protected List<Result> collect(final Iterator<?> inputs, final HandlerFactory factory) throws InterruptedException {
+        final List<Result> results = Collections.synchronizedList(new ArrayList<Result>());
+        run(inputs, factory, results::add);
+        results.sort(Comparator.comparingInt(Result::getIndex));
+        return results;
+    } // collect(Iterator<?>,HandlerFactory):List<Result>
+
+    /**
+     * Parses the documents of a batch, passing each result to the
+     * consumer. The first exception thrown by the consumer stops the batch
+     * and is rethrown once the documents in flight are done.
+     */
+    protected void run(final Iterator<?> inputs, final HandlerFactory factory, final Consumer<? super Result> consumer)
+            throws InterruptedException {
+        ExecutorService owned = null;
+        Executor executor = fExecutor;
+        if (executor == null) {
+            owned = fVirtualThreads ? newVirtualThreadExecutor() : null;
+            if (owned == null) {
+                owned = new ForkJoinPool(fParallelism);
+            }
+            executor = owned;
+        }
+        final int maxInFlight = fMaxInFlight;
+        final Semaphore window = new Semaphore(maxInFlight);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        int index = 0;
+        boolean done = false;
+        try {
+            while (failure.get() == null && inputs.hasNext()) {
+                final Result result = new Result(index++, inputs.next());
+                window.acquire();
+                try {
+                    executor.execute(() -> {
+                        try {
+                            parse(result, factory);
+                            consumer.accept(result);
+                        } catch (final Throwable e) {
+                            if (!failure.compareAndSet(null, e)) {
+                                failure.get().addSuppressed(e);
+                            }
+                        } finally {
+                            window.release();
+                        }
+                    });
+                } catch (final RejectedExecutionException e) {
+                    window.release();
+                    throw e;
+                }
+            }
+            // wait for the documents in flight
+            window.acquire(maxInFlight);
+            window.release(maxInFlight);
+            done = true;
+            final Throwable e = failure.get();
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+        } finally {
+            if (owned != null) {
+                if (done) {
+                    owned.shutdown();
+                } else {
+                    owned.shutdownNow();
+                }
+            }
+        }
+    } // run(Iterator<?>,HandlerFactory,Consumer)
+
+    /** Parses a document with an idle or new worker. */
+    protected void parse(final Result result, final HandlerFactory factory) {
+        Worker worker = fIdleWorkers.poll();
+        boolean parsed = false;
+        InputStream stream = null;
+        try {
+            if (worker == null) {
+                worker = createWorker();
+            }
+            worker.fStatistics.reset();
+            final XMLInputSource source = toInputSource(result.fInput);
+            if (!(result.fInput instanceof XMLInputSource)) {
+                // only the streams opened by the parser are closed
+                stream = source.getByteStream();
+            }
+            if (factory != null) {
+                final XMLDocumentHandler handler = factory.createHandler(result.fIndex, source);
+                result.fHandler = handler;
+                final HTMLConfiguration config = worker.getConfiguration();
+                config.setDocumentHandler(handler);
+                try {
+                    config.parse(source);
+                } finally {
+                    config.setDocumentHandler(null);
+                }
+            } else {
+                final DOMParser parser = worker.getDOMParser();
+                try {
+                    parser.parse(source);
+                    result.fDocument = parser.getDocument();
+                } finally {
+                    parser.dropDocumentReferences();
+                }
+            }
+            parsed = true;
+        } catch (final Exception e) {
+            result.fError = e;
+        } finally {
+            closeQuietly(stream);
+            if (worker != null) {
+                result.fStatistics = new HTMLParseStatistics();
+                result.fStatistics.add(worker.fStatistics);
+            }
+            synchronized (fStatistics) {
+                fDocumentsParsed++;
+                if (!parsed) {
+                    fDocumentsFailed++;
+                }
+                if (result.fStatistics != null) {
+                    fStatistics.add(result.fStatistics);
+                }
+            }
+            // a worker that failed may be left in any state
+            if (parsed && worker.fGeneration == fGeneration) {
+                fIdleWorkers.offer(worker);
+            }
+        }
+    } // parse(Result,HandlerFactory)
+
+    /** Creates a worker with the current settings. */
+    protected synchronized Worker createWorker() {
+        return new Worker(fGeneration, new LinkedHashMap<>(fFeatures), new LinkedHashMap<>(fProperties), fFilters);
+    } // createWorker():Worker
+
+    /** Returns the input source of an input. */
+    protected XMLInputSource toInputSource(final Object input) throws IOException {
+        if (input instanceof XMLInputSource) {
+            return (XMLInputSource) input;
+        }
+        if (input instanceof byte[]) {
+            return new XMLInputSource(null, null, null, new ByteArrayInputStream((byte[]) input), null);
+        }
+        if (input instanceof File) {
+            return toInputSource(((File) input).toPath());
+        }
+        if (input instanceof Path) {
+            final Path path = (Path) input;
+            return new XMLInputSource(null, path.toUri().toString(), null, Files.newInputStream(path), null);
+        }
+        if (input instanceof URL) {
+            return new XMLInputSource(null, input.toString(), null);
+        }
+        throw new IllegalArgumentException("unsupported input: " + (input != null ? input.getClass().getName() : null));
+    } // toInputSource(Object):XMLInputSource
+
+    //
+    // Private static methods
+    //
+
+    /** Returns a virtual thread per task executor, or null if not available. */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException e) {
+            return null;
+        }
+    } // newVirtualThreadExecutor():ExecutorService
+
+    /** Closes a stream, ignoring errors. */
+    private static void closeQuietly(final InputStream stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (final IOException e) {
+                // nothing to do
+            }
+        }
+    } // closeQuietly(InputStream)
+
+    //
+    // Interfaces
+    //
+
+    /** Creates the document handler of each document. */
+    public interface HandlerFactory {
+
+        /**
+         * Creates the handler of a document. It is called by the thread
+         * parsing the document.
+         *
+         * @param index  The index of the document in the inputs.
+         * @param source The input source of the document.
+         */
+        XMLDocumentHandler createHandler(int index, XMLInputSource source);
+
+    } // interface HandlerFactory
+
+    //
+    // Classes
+    //
+
+    /** The result of the parse of a document. */
+    public static class Result {
+
+        //
+        // Data
+        //
+
+        /** Index of the document in the inputs. */
+        final int fIndex;
+
+        /** The input. */
+        final Object fInput;
+
+        /** The document handler, or null. */
+        XMLDocumentHandler fHandler;
+
+        /** The DOM document, or null. */
+        Document fDocument;
+
+        /** The error, or null. */
+        Exception fError;
+
+        /** The statistics of the document, or null. */
+        HTMLParseStatistics fStatistics;
+
+        //
+        // Constructors
+        //
+
+        /** Constructs a result. */
+        Result(final int index, final Object input) {
+            fIndex = index;
+            fInput = input;
+        } // <init>(int,Object)
+
+        //
+        // Public methods
+        //
+
+        /** Returns the index of the document in the inputs. */
+        public int getIndex() {
+            return fIndex;
+        } // getIndex():int
+
+        /** Returns the input. */
+        public Object getInput() {
+            return fInput;
+        } // getInput():Object
+
+        /** Returns the document handler, or null for DOM documents. */
+        public XMLDocumentHandler getHandler() {
+            return fHandler;
+        } // getHandler():XMLDocumentHandler
+
+        /** Returns the DOM document, or null. */
+        public Document getDocument() {
+            return fDocument;
+        } // getDocument():Document
+
+        /** Returns the error that stopped the parse, or null. */
+        public Exception getError() {
+            return fError;
+        } // getError():Exception
+
+        /** Returns true if the parse failed. */
+        public boolean isFailed() {
+            return fError != null;
+        } // isFailed():boolean
+
+        /** Returns the statistics of the document, or null. */
+        public HTMLParseStatistics getStatistics() {
+            return fStatistics;
+        } // getStatistics():HTMLParseStatistics
+
+    } // class Result
+
+    /** A worker: the reusable configurations of a thread. */
+    protected static class Worker {
+
+        //
+        // Data
+        //
+
+        /** Settings generation. */
+        final int fGeneration;
+
+        /** Features. */
+        private final Map<String, Boolean> fFeatures;
+
+        /** Properties. */
+        private final Map<String, Object> fProperties;
+
+        /** Creates the filters of each configuration, or null. */
+        private final Supplier<XMLDocumentFilter[]> fFilters;
+
+        /** Statistics of the last document. */
+        final HTMLParseStatistics fStatistics = new HTMLParseStatistics();
+
+        /** Configuration for the handlers, or null. */
+        private HTMLConfiguration fConfiguration;
+
+        /** DOM parser, or null. */
+        private DOMParser fDOMParser;
+
+        //
+        // Constructors
+        //
+
+        /** Constructs a worker with the given settings. */
+        Worker(final int generation, final Map<String, Boolean> features, final Map<String, Object> properties,
+                final Supplier<XMLDocumentFilter[]> filters) {
+            fGeneration = generation;
+            fFeatures = features;
+            fProperties = properties;
+            fFilters = filters;
+        } // <init>(int,Map,Map,Supplier)
+
+        //
+        // Package methods
+        //
+
+        /**
+         * Returns the configuration for the handlers.
+         *
+         * @exception XMLConfigurationException Thrown if a setting is
+         *                                      not recognized by the
+         *                                      configuration, e.g. a
+         *                                      feature of DOM parsers.
+         */
+        HTMLConfiguration getConfiguration() {
+            if (fConfiguration == null) {
+                final HTMLConfiguration config = new HTMLConfiguration();
+                if (fFilters != null) {
+                    config.setProperty(FILTERS, fFilters.get());
+                }
+                for (final Map.Entry<String, Boolean> entry : fFeatures.entrySet()) {
+                    config.setFeature(entry.getKey(), entry.getValue());
+                }
+                for (final Map.Entry<String, Object> entry : fProperties.entrySet()) {
+                    config.setProperty(entry.getKey(), entry.getValue());
+                }
+                config.setProperty(HTMLConfiguration.STATISTICS, fStatistics);
+                fConfiguration = config;
+            }
+            return fConfiguration;
+        } // getConfiguration():HTMLConfiguration
+
+        /** Returns the DOM parser. */
+        DOMParser getDOMParser() throws SAXNotRecognizedException, SAXNotSupportedException {
+            if (fDOMParser == null) {
+                final DOMParser parser = new DOMParser();
+                if (fFilters != null) {
+                    parser.setProperty(FILTERS, fFilters.get());
+                }
+                for (final Map.Entry<String, Boolean> entry : fFeatures.entrySet()) {
+                    parser.setFeature(entry.getKey(), entry.getValue());
+                }
+                for (final Map.Entry<String, Object> entry : fProperties.entrySet()) {
+                    parser.setProperty(entry.getKey(), entry.getValue());
+                }
+                parser.setProperty(HTMLConfiguration.STATISTICS, fStatistics);
+                fDOMParser = parser;
+            }
+            return fDOMParser;
+        } // getDOMParser():DOMParser
+
+    } // class Worker
+
+} // class HTMLBatchParser
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml.parsers;
+
+import java.util.Locale;
+
+import org.apache.xerces.dom.DocumentImpl;
+import org.apache.xerces.dom.ElementImpl;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Element;
+
+/**
+ * A core DOM document for HTML. Elements without a namespace are
+ * created directly as generic elements with upper case names, the
+ * same names <code>HTMLDocumentImpl</code> gives them, but without
+ * looking up and reflectively instantiating an element class for
+ * each tag.
+ */
+public class HTMLCoreDocumentImpl extends DocumentImpl {
+
+    //
+    // Constants
+    //
+
+    /** Serialization version. */
+    private static final long serialVersionUID = 1L;
+
+    //
+    // Constructors
+    //
+
+    /** Default constructor. */
+    public HTMLCoreDocumentImpl() {
+    } // <init>()
+
+    //
+    // Document methods
+    //
+
+    /** Creates a generic element with an upper case name. */
+    @Override
+    public Element createElement(final String tagName) throws DOMException {
+        return new ElementImpl(this, tagName.toUpperCase(Locale.ENGLISH));
+    } // createElement(String):Element
+
+    /** Creates an element; elements without a namespace are generic HTML elements. */
+    @Override
+    public Element createElementNS(final String namespaceURI, final String qualifiedName) throws DOMException {
+        if (namespaceURI == null || namespaceURI.length() == 0) {
+            return createElement(qualifiedName);
+        }
+        return super.createElementNS(namespaceURI, qualifiedName);
+    } // createElementNS(String,String):Element
+
+    /** Creates an element; elements without a namespace are generic HTML elements. */
+    @Override
+    public Element createElementNS(final String namespaceURI, final String qualifiedName, final String localpart) throws DOMException {
+        if (namespaceURI == null || namespaceURI.length() == 0) {
+            return createElement(qualifiedName);
+        }
+        return super.createElementNS(namespaceURI, qualifiedName, localpart);
+    } // createElementNS(String,String,String):Element
+
+} // class HTMLCoreDocumentImpl
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml.parsers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParserConfiguration;
+import org.codelibs.nekohtml.HTMLConfiguration;
+import org.codelibs.nekohtml.HTMLElements;
+import org.codelibs.nekohtml.HTMLScanner;
+import org.codelibs.nekohtml.filters.DefaultFilter;
+import org.xml.sax.InputSource;
+
+/**
+ * Extracts the visible text of HTML documents. Whitespace is
+ * normalized and element boundaries are marked with line and
+ * paragraph breaks, chosen from the {@link HTMLElements} information.
+ * <p>
+ * The parser is configured with {@link #setTextExtractionFeatures}:
+ * attribute values are skipped at scan time and the content of
+ * script, style and noscript elements is discarded without being
+ * buffered.
+ */
+public class TextExtractor extends DefaultFilter {
+
+    //
+    // Constants
+    //
+
+    /** No break. */
+    public static final int NO_BREAK = 0;
+
+    /** Word break. */
+    public static final int WORD_BREAK = 1;
+
+    /** Line break. */
+    public static final int LINE_BREAK = 2;
+
+    /** Paragraph break. */
+    public static final int PARAGRAPH_BREAK = 3;
+
+    /** Parse noscript content. */
+    protected static final String PARSE_NOSCRIPT_CONTENT = "http://cyberneko.org/html/features/parse-noscript-content";
+
+    //
+    // Data
+    //
+
+    /** Parser configuration. */
+    protected final XMLParserConfiguration fConfiguration;
+
+    /** Line break marker. */
+    protected String fLineBreak = "\n";
+
+    /** Paragraph break marker. */
+    protected String fParagraphBreak = "\n\n";
+
+    /** The output. */
+    protected Appendable fOut;
+
+    /** True once some text has been written. */
+    protected boolean fWritten;
+
+    /** The pending break. */
+    protected int fPendingBreak;
+
+    /** Depth of elements whose text is ignored. */
+    protected int fIgnoreDepth;
+
+    /** Depth of elements whose whitespace is preserved. */
+    protected int fPreDepth;
+
+    //
+    // Constructors
+    //
+
+    /** Default constructor. */
+    public TextExtractor() {
+        this(new HTMLConfiguration());
+    } // <init>()
+
+    /** Constructs a text extractor using the given configuration. */
+    public TextExtractor(final XMLParserConfiguration config) {
+        fConfiguration = config;
+        setTextExtractionFeatures(fConfiguration);
+        fConfiguration.setDocumentHandler(this);
+    } // <init>(XMLParserConfiguration)
+
+    //
+    // Public static methods
+    //
+
+    /** Sets the features that only keep what text extraction needs. */
+    public static void setTextExtractionFeatures(final XMLParserConfiguration config) {
+        config.setFeature(HTMLScanner.SKIP_ATTRIBUTES, true);
+        config.setFeature(HTMLScanner.SKIP_SCRIPT_CONTENT, true);
+        config.setFeature(PARSE_NOSCRIPT_CONTENT, false);
+    } // setTextExtractionFeatures(XMLParserConfiguration)
+
+    //
+    // Public methods
+    //
+
+    /** Returns the parser configuration. */
+    public XMLParserConfiguration getConfiguration() {
+        return fConfiguration;
+    } // getConfiguration():XMLParserConfiguration
+
+    /** Sets the line and paragraph break markers. */
+    public void setBreakMarkers(final String lineBreak, final String paragraphBreak) {
+        fLineBreak = lineBreak;
+        fParagraphBreak = paragraphBreak;
+    } // setBreakMarkers(String,String)
+
+    /** Returns the text of a document. */
+    public String extract(final InputSource source) throws IOException {
+        final StringBuilder out = new StringBuilder();
+        extract(source, out);
+        return out.toString();
+    } // extract(InputSource):String
+
+    /** Appends the text of a document to the output. */
+    public void extract(final InputSource source, final Appendable out) throws IOException {
+        final String pubid = source.getPublicId();
+        final String sysid = source.getSystemId();
+        final String encoding = source.getEncoding();
+        final InputStream stream = source.getByteStream();
+        final Reader reader = source.getCharacterStream();
+
+        final XMLInputSource inputSource = new XMLInputSource(pubid, sysid, sysid);
+        inputSource.setEncoding(encoding);
+        inputSource.setByteStream(stream);
+        inputSource.setCharacterStream(reader);
+
+        fOut = out;
+        try {
+            fConfiguration.parse(inputSource);
+        } catch (final XNIException e) {
+            if (e.getException() instanceof IOException) {
+                throw (IOException) e.getException();
+            }
+            throw e;
+        } finally {
+            fOut = null;
+        }
+    } // extract(InputSource,Appendable)
+
+    //
+    // XMLDocumentHandler methods
+    //
+
+    /** Start document. */
+    @Override
+    public void startDocument(final XMLLocator locator, final String encoding, final NamespaceContext nscontext, final Augmentations augs) {
+        fWritten = false;
+        fPendingBreak = NO_BREAK;
+        fIgnoreDepth = 0;
+        fPreDepth = 0;
+    } // startDocument(XMLLocator,String,NamespaceContext,Augmentations)
+
+    /** Start element. */
+    @Override
+    public void startElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+        final HTMLElements.Element elem = HTMLElements.getElement(augs, element.rawname);
+        if (isIgnored(elem)) {
+            fIgnoreDepth++;
+        } else if (isPreformatted(elem)) {
+            fPreDepth++;
+        }
+        addBreak(getBreak(elem));
+    } // startElement(QName,XMLAttributes,Augmentations)
+
+    /** Empty element. */
+    @Override
+    public void emptyElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+        addBreak(getBreak(HTMLElements.getElement(augs, element.rawname)));
+    } // emptyElement(QName,XMLAttributes,Augmentations)
+
+    /** Characters. */
+    @Override
+    public void characters(final XMLString text, final Augmentations augs) {
+        if (fIgnoreDepth > 0) {
+            return;
+        }
+        try {
+            final int end = text.offset + text.length;
+            for (int i = text.offset; i < end; i++) {
+                final char c = text.ch[i];
+                if (fPreDepth == 0 && (Character.isWhitespace(c) || c == '\u00A0')) {
+                    addBreak(WORD_BREAK);
+                } else {
+                    writeBreak();
+                    fOut.append(c);
+                    fWritten = true;
+                }
+            }
+        } catch (final IOException e) {
+            throw new XNIException(e);
+        }
+    } // characters(XMLString,Augmentations)
+
+    /** Ignorable whitespace. */
+    @Override
+    public void ignorableWhitespace(final XMLString text, final Augmentations augs) {
+        characters(text, augs);
+    } // ignorableWhitespace(XMLString,Augmentations)
+
+    /** End element. */
+    @Override
+    public void endElement(final QName element, final Augmentations augs) {
+        final HTMLElements.Element elem = HTMLElements.getElement(augs, element.rawname);
+        if (isIgnored(elem)) {
+            fIgnoreDepth--;
+        } else if (isPreformatted(elem)) {
+            fPreDepth--;
+        }
+        addBreak(getBreak(elem));
+    } // endElement(QName,Augmentations)
+
+    //
+    // Protected methods
+    //
+
+    /**
+     * Returns the break at the boundaries of an element. Inline elements
+     * don't break words; table cells break words; paragraphs and headings
+     * break paragraphs; other block elements, i.e. the ones flagged as
+     * blocks or that close paragraphs, break lines.
+     */
+    protected int getBreak(final HTMLElements.Element element) {
+        switch (element.code) {
+        case HTMLElements.P:
+        case HTMLElements.H1:
+        case HTMLElements.H2:
+        case HTMLElements.H3:
+        case HTMLElements.H4:
+        case HTMLElements.H5:
+        case HTMLElements.H6:
+            return PARAGRAPH_BREAK;
+        case HTMLElements.BR:
+        case HTMLElements.LI:
+        case HTMLElements.DT:
+        case HTMLElements.DD:
+        case HTMLElements.TR:
+            return LINE_BREAK;
+        case HTMLElements.TD:
+        case HTMLElements.TH:
+            return WORD_BREAK;
+        default:
+            return element.isBlock() || element.closes(HTMLElements.P) ? LINE_BREAK : NO_BREAK;
+        }
+    } // getBreak(HTMLElements.Element):int
+
+    /** Returns true if the text of the element is not visible. */
+    protected boolean isIgnored(final HTMLElements.Element element) {
+        final short code = element.code;
+        return code == HTMLElements.TITLE || code == HTMLElements.SCRIPT || code == HTMLElements.STYLE || code == HTMLElements.NOSCRIPT
+                || code == HTMLElements.TEMPLATE;
+    } // isIgnored(HTMLElements.Element):boolean
+
+    /** Returns true if the whitespace of the element is preserved. */
+    protected boolean isPreformatted(final HTMLElements.Element element) {
+        final short code = element.code;
+        return code == HTMLElements.PRE || code == HTMLElements.LISTING || code == HTMLElements.TEXTAREA;
+    } // isPreformatted(HTMLElements.Element):boolean
+
+    //
+    // Private methods
+    //
+
+    /** Adds a break before the next text. */
+    private void addBreak(final int level) {
+        if (level > fPendingBreak) {
+            fPendingBreak = level;
+        }
+    } // addBreak(int)
+
+    /** Writes the pending break, if any text precedes it. */
+    private void writeBreak() throws IOException {
+        if (fWritten) {
+            switch (fPendingBreak) {
+            case WORD_BREAK:
+                fOut.append(' ');
+                break;
+            case LINE_BREAK:
+                fOut.append(fLineBreak);
+                break;
+            case PARAGRAPH_BREAK:
+                fOut.append(fParagraphBreak);
+                break;
+            default:
+                break;
+            }
+        }
+        fPendingBreak = NO_BREAK;
+    } // writeBreak()
+
+} // class TextExtractor
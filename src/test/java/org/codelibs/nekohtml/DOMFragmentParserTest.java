@@ -41,6 +41,18 @@ public class DOMFragmentParserTest extends TestCase {
         doTest("<html 9='id'></html>", "<HTML/>");
     }
 
+    public void testSplitTextIsOneNode() throws Exception {
+        doTest("<p>a&amp;b\n\nc&lt;d</p>x", "<P>a&amp;b\n\nc&lt;d</P>x");
+
+        final DOMFragmentParser parser = new DOMFragmentParser();
+        final DocumentFragment fragment = new HTMLDocumentImpl().createDocumentFragment();
+        parser.parse(new InputSource(new StringReader("<p>a&amp;b\n\nc&lt;d<b>e</b></p>")), fragment);
+        final Node p = fragment.getFirstChild();
+        assertEquals(Node.TEXT_NODE, p.getFirstChild().getNodeType());
+        assertEquals("a&b\n\nc<d", p.getFirstChild().getNodeValue());
+        assertEquals("B", p.getFirstChild().getNextSibling().getNodeName());
+    }
+
     private void doTest(final String html, final String expected) throws Exception {
         DOMFragmentParser parser = new DOMFragmentParser();
         HTMLDocument document = new HTMLDocumentImpl();
@@ -0,0 +1,124 @@
+package org.codelibs.nekohtml;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.codelibs.nekohtml.filters.DefaultFilter;
+import org.codelibs.nekohtml.filters.ElementRemover;
+import org.codelibs.nekohtml.filters.Writer;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the element information passed along with element events.
+ */
+public class ElementAugmentationTest extends TestCase {
+
+    public void testElementInformation() throws Exception {
+        final String string = "<title>foo</title><p><b>bar<p>baz<foo></foo><br/>";
+        final ElementCollector collector = new ElementCollector();
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setFeature("http://cyberneko.org/html/features/augmentations", true);
+        parser.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { collector });
+        parser.parse(new XMLInputSource(null, "foo", null, new StringReader(string), null));
+
+        assertEquals("[(HTML, (HEAD, (TITLE, )TITLE, )HEAD, (BODY, (P, (B, )B, )P, (P, (FOO, )FOO, (BR, )BR, )P, )BODY, )HTML]",
+                collector.events.toString());
+    }
+
+    public void testNoElementInformationWithoutAugmentations() throws Exception {
+        final ElementCollector collector = new ElementCollector();
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { collector });
+        parser.parse(new XMLInputSource(null, "foo", null, new StringReader("<p>foo"), null));
+
+        assertTrue(collector.events.isEmpty());
+    }
+
+    public void testElementRemover() throws Exception {
+        final String string = "<html><body><div id='a'>foo<script>bar</script><b id='b'>baz</b></div></body></html>";
+        assertEquals(removeElements(string, false), removeElements(string, true));
+        assertEquals("<html><body>foo<b>baz</b></body></html>", removeElements(string, true));
+    }
+
+    public void testOverriddenHooks() throws Exception {
+        final String string = "<html><body><div id='a'>foo<script>bar</script><b id='b'>baz</b></div></body></html>";
+        final ElementRemover remover = new ElementRemover() {
+            @Override
+            protected boolean elementAccepted(final String element) {
+                return "div".equals(element) || super.elementAccepted(element);
+            }
+        };
+        final StringWriter out = new StringWriter();
+        final Writer writer = new Writer(out, "UTF-8") {
+            @Override
+            protected void printStartElement(final QName element, final XMLAttributes attributes) {
+                fPrinter.print("<" + element.rawname.toUpperCase() + ">");
+            }
+        };
+        assertEquals("<HTML><BODY><DIV>foo<B>baz</b></div></body></html>", removeElements(string, remover, writer, out));
+    }
+
+    private static String removeElements(final String string, final boolean augmentations) throws Exception {
+        final StringWriter out = new StringWriter();
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setFeature("http://cyberneko.org/html/features/augmentations", augmentations);
+        return removeElements(string, parser, new ElementRemover(), new Writer(out, "UTF-8"), out);
+    }
+
+    private static String removeElements(final String string, final ElementRemover remover, final Writer writer, final StringWriter out)
+            throws Exception {
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setFeature("http://cyberneko.org/html/features/augmentations", true);
+        return removeElements(string, parser, remover, writer, out);
+    }
+
+    private static String removeElements(final String string, final HTMLConfiguration parser, final ElementRemover remover,
+            final Writer writer, final StringWriter out) throws Exception {
+        remover.acceptElement("html", null);
+        remover.acceptElement("BODY", null);
+        remover.acceptElement("b", null);
+        remover.removeElement("script");
+        parser.setProperty("http://cyberneko.org/html/properties/names/elems", "lower");
+        parser.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { remover, writer });
+        parser.parse(new XMLInputSource(null, "foo", null, new StringReader(string), null));
+        return out.toString();
+    }
+
+    private static class ElementCollector extends DefaultFilter {
+
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void startElement(final QName element, final XMLAttributes attrs, final Augmentations augs) throws XNIException {
+            add("(", element, augs);
+        }
+
+        @Override
+        public void emptyElement(final QName element, final XMLAttributes attrs, final Augmentations augs) throws XNIException {
+            add("(", element, augs);
+            add(")", element, augs);
+        }
+
+        @Override
+        public void endElement(final QName element, final Augmentations augs) throws XNIException {
+            add(")", element, augs);
+        }
+
+        private void add(final String prefix, final QName element, final Augmentations augs) {
+            if (augs != null) {
+                final HTMLElements.Element elem = (HTMLElements.Element) augs.getItem(HTMLElements.ELEMENT_AUGMENTATION);
+                assertEquals(element.rawname, elem.name);
+                events.add(prefix + elem.name);
+            }
+        }
+    }
+}
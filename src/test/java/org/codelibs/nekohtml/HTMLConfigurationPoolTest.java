@@ -0,0 +1,202 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.parser.XMLConfigurationException;
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.codelibs.nekohtml.filters.DefaultFilter;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link HTMLConfigurationPool}.
+ */
+public class HTMLConfigurationPoolTest extends TestCase {
+
+    private static final String[] DOCUMENTS = { "<html><body><p>a<form><form>b</div></body></html>text<!-- after -->",
+            "<svg xmlns='http://www.w3.org/2000/svg'><g/></svg><p>b</p>", "<!DOCTYPE html><table><td>x<tr><td>y</table>",
+            "<p>a</p></body></html><b>outside</b>", "<html xmlns:o='urn:o'><o:p>c</o:p></html>", };
+
+    public void testSameOutputAsNewConfigurations() throws Exception {
+        final HTMLConfigurationPool pool = new HTMLConfigurationPool(1);
+        pool.setFeature("http://cyberneko.org/html/features/balance-tags/ignore-outside-content", true);
+        pool.setFeature("http://xml.org/sax/features/namespaces", true);
+        for (int n = 0; n < 3; n++) {
+            for (final String html : DOCUMENTS) {
+                final HTMLConfiguration config = new HTMLConfiguration();
+                config.setFeature("http://cyberneko.org/html/features/balance-tags/ignore-outside-content", true);
+                config.setFeature("http://xml.org/sax/features/namespaces", true);
+                final StringWriter expected = new StringWriter();
+                config.setDocumentHandler(new Writer(expected));
+                config.parse(source(html));
+
+                final StringWriter actual = new StringWriter();
+                pool.parse(source(html), new Writer(actual));
+                assertEquals(html, expected.toString(), actual.toString());
+            }
+        }
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    public void testSettingsInvalidateIdleConfigurations() throws Exception {
+        final HTMLConfigurationPool pool = new HTMLConfigurationPool();
+        final HTMLConfiguration first = pool.borrow();
+        pool.release(first);
+        assertSame(first, pool.borrow());
+        pool.release(first);
+
+        pool.setProperty("http://cyberneko.org/html/properties/names/elems", "lower");
+        assertEquals(0, pool.getIdleCount());
+        final StringWriter out = new StringWriter();
+        pool.parse(source("<B>x</B>"), new Writer(out));
+        assertTrue(out.toString(), out.toString().contains("(b"));
+        assertNotSame(first, pool.borrow());
+    }
+
+    public void testReusedConfigurationFollowsSettingChanges() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        final StringWriter upper = new StringWriter();
+        config.setDocumentHandler(new Writer(upper));
+        config.parse(source("<b>x</b>"));
+        config.setProperty("http://cyberneko.org/html/properties/names/elems", "lower");
+        final StringWriter lower = new StringWriter();
+        config.setDocumentHandler(new Writer(lower));
+        config.parse(source("<b>x</b>"));
+        assertTrue(upper.toString(), upper.toString().contains("(B"));
+        assertTrue(lower.toString(), lower.toString().contains("(b"));
+    }
+
+    public void testUnrecognizedSettingsAreRejected() throws Exception {
+        final HTMLConfigurationPool pool = new HTMLConfigurationPool();
+        try {
+            pool.setFeature("http://example.org/unknown", true);
+            fail("feature accepted");
+        } catch (final XMLConfigurationException e) {
+            assertEquals(XMLConfigurationException.NOT_RECOGNIZED, e.getType());
+        }
+        try {
+            pool.setProperty("http://example.org/unknown", "x");
+            fail("property accepted");
+        } catch (final XMLConfigurationException e) {
+            assertEquals(XMLConfigurationException.NOT_RECOGNIZED, e.getType());
+        }
+    }
+
+    public void testFilterSettingsAreRecognized() throws Exception {
+        final String feature = "http://example.org/filter/feature";
+        final boolean[] state = new boolean[1];
+        final HTMLConfigurationPool pool = new HTMLConfigurationPool();
+        pool.setFilters(() -> new XMLDocumentFilter[] { new DefaultFilter() {
+            @Override
+            public String[] getRecognizedFeatures() {
+                return new String[] { feature };
+            }
+
+            @Override
+            public void setFeature(final String featureId, final boolean value) {
+                if (feature.equals(featureId)) {
+                    state[0] = value;
+                }
+            }
+        } });
+        pool.setFeature(feature, true);
+        pool.parse(source("<p>x</p>"), new Writer(new StringWriter()));
+        assertTrue(state[0]);
+    }
+
+    public void testFiltersPropertyIsRejected() throws Exception {
+        final HTMLConfigurationPool pool = new HTMLConfigurationPool();
+        try {
+            pool.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new DefaultFilter() });
+            fail("filters accepted");
+        } catch (final XMLConfigurationException e) {
+            assertEquals(XMLConfigurationException.NOT_SUPPORTED, e.getType());
+        }
+    }
+
+    public void testConcurrentParsesWithStatefulFilter() throws Exception {
+        final HTMLConfigurationPool pool = new HTMLConfigurationPool();
+        pool.setFilters(() -> new XMLDocumentFilter[] { new ElementCounter() });
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final String html = document(i);
+                results.add(executor.submit(() -> {
+                    final StringWriter out = new StringWriter();
+                    pool.parse(source(html), new Writer(out));
+                    return out.toString();
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                final HTMLConfiguration config = new HTMLConfiguration();
+                config.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new ElementCounter() });
+                final StringWriter expected = new StringWriter();
+                config.setDocumentHandler(new Writer(expected));
+                config.parse(source(document(i)));
+                assertEquals(expected.toString(), results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static String document(final int n) {
+        final StringBuilder html = new StringBuilder();
+        for (int i = 0; i <= n % 7; i++) {
+            html.append("<p>").append(n).append("<b>").append(i).append("</b></p>");
+        }
+        return html.toString();
+    }
+
+    private static XMLInputSource source(final String html) {
+        return new XMLInputSource(null, "test", null, new StringReader(html), "UTF-8");
+    }
+
+    /** Numbers the elements of each document. */
+    private static class ElementCounter extends DefaultFilter {
+
+        private int fCount;
+
+        @Override
+        public void startDocument(final XMLLocator locator, final String encoding, final NamespaceContext nscontext,
+                final Augmentations augs) {
+            fCount = 0;
+            super.startDocument(locator, encoding, nscontext, augs);
+        }
+
+        @Override
+        public void startElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+            attributes.addAttribute(new QName(null, "n", "n", null), "CDATA", String.valueOf(++fCount));
+            super.startElement(element, attributes, augs);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.StringReader;
+
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link HTMLErrorBuffer}.
+ */
+public class HTMLErrorBufferTest extends TestCase {
+
+    public void testErrorsAreBuffered() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setFeature("http://cyberneko.org/html/features/report-errors", true);
+        config.setErrorHandler(new XMLErrorHandler() {
+            @Override
+            public void warning(final String domain, final String key, final XMLParseException exception) {
+                fail(key);
+            }
+
+            @Override
+            public void error(final String domain, final String key, final XMLParseException exception) {
+                fail(key);
+            }
+
+            @Override
+            public void fatalError(final String domain, final String key, final XMLParseException exception) {
+                fail(key);
+            }
+        });
+        final HTMLErrorBuffer buffer = new HTMLErrorBuffer();
+        config.setProperty(HTMLConfiguration.ERROR_BUFFER, buffer);
+        config.parse(new XMLInputSource(null, "a", null, new StringReader("<p>a</div>\n<td>b"), "UTF-8"));
+
+        assertTrue(buffer.size() > 0);
+        int index = -1;
+        for (int i = 0; i < buffer.size(); i++) {
+            if (buffer.getCode(i) == 2004 && index == -1) {
+                index = i;
+            }
+        }
+        assertTrue(index >= 0);
+        assertEquals("HTML2004", buffer.getKey(index));
+        assertTrue(buffer.isWarning(index));
+        assertEquals(2, buffer.getLineNumber(index));
+        assertEquals(15, buffer.getCharacterOffset(index));
+        assertEquals("TD", buffer.getArguments(index)[0]);
+        assertEquals(config.fErrorReporter.formatMessage("HTML2004", new Object[] { "TD", "TR" }), buffer.getMessage(index));
+
+        // cleared for the next document
+        config.parse(new XMLInputSource(null, "b", null, new StringReader("<html><head></head><body></body></html>"), "UTF-8"));
+        int errors = 0;
+        for (int i = 0; i < buffer.size(); i++) {
+            errors += buffer.isWarning(i) ? 0 : 1;
+        }
+        assertEquals(0, errors);
+    }
+
+    public void testCapacity() throws Exception {
+        final HTMLErrorBuffer buffer = new HTMLErrorBuffer(2);
+        buffer.add("HTML1000", null, true, 1, 1, 0);
+        buffer.add("custom", new Object[] { "x" }, false, 2, 3, 4);
+        buffer.add("HTML2000", null, false, 1, 1, 0);
+        assertEquals(2, buffer.size());
+        assertEquals(1, buffer.getDropped());
+        assertEquals(1000, buffer.getCode(0));
+        assertEquals(-1, buffer.getCode(1));
+        assertEquals("custom", buffer.getKey(1));
+        assertFalse(buffer.isWarning(1));
+        assertEquals(3, buffer.getColumnNumber(1));
+        try {
+            buffer.getKey(2);
+            fail();
+        } catch (final IndexOutOfBoundsException e) {
+            // expected
+        }
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.getDropped());
+    }
+}
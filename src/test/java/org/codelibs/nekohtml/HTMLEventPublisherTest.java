@@ -0,0 +1,203 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link HTMLEventPublisher}.
+ */
+public class HTMLEventPublisherTest extends TestCase {
+
+    private static final String DOCUMENT = "<html><head><title>t</title></head><body><!-- c --><p class=a>one<b>two</p>three</body></html>";
+
+    public void testSameEventsAsParse() throws Exception {
+        final HTMLEventBuffer expected = new HTMLEventBuffer();
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setDocumentHandler(expected);
+        config.parse(source(new StringReader(DOCUMENT)));
+
+        final Collector collector = new Collector(1);
+        new HTMLEventPublisher(source(new StringReader(DOCUMENT))).subscribe(collector);
+
+        assertTrue(collector.fCompleted);
+        assertNull(collector.fError);
+        final List<String> expectedEvents = new ArrayList<>();
+        for (int i = 0; i < expected.size(); i++) {
+            expectedEvents.add(expected.get(i).toString());
+        }
+        assertEquals(expectedEvents, collector.fEvents);
+    }
+
+    public void testScansOnlyAsRequested() throws Exception {
+        final StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < 10000; i++) {
+            html.append("<p>").append(i).append("</p>");
+        }
+        final CountingReader reader = new CountingReader(html.toString());
+        final Collector collector = new Collector(0);
+        new HTMLEventPublisher(source(reader)).subscribe(collector);
+        assertEquals(0, reader.fRead);
+
+        collector.fSubscription.request(5);
+        assertEquals(5, collector.fEvents.size());
+        assertTrue(reader.fRead < html.length() / 2);
+
+        final int read = reader.fRead;
+        collector.fSubscription.cancel();
+        collector.fSubscription.request(5);
+        assertEquals(5, collector.fEvents.size());
+        assertEquals(read, reader.fRead);
+        assertFalse(collector.fCompleted);
+        assertNull(collector.fError);
+    }
+
+    public void testRequestFromOnNextDoesNotRecurse() throws Exception {
+        final StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            html.append("<b>").append(i).append("</b>");
+        }
+        final Collector collector = new Collector(1);
+        new HTMLEventPublisher(source(new StringReader(html.toString()))).subscribe(collector);
+        assertTrue(collector.fCompleted);
+        assertTrue(collector.fEvents.size() > 60000);
+    }
+
+    public void testErrors() throws Exception {
+        final HTMLEventPublisher publisher = new HTMLEventPublisher(source(new StringReader(DOCUMENT)));
+        final Collector first = new Collector(0);
+        publisher.subscribe(first);
+        first.fSubscription.request(0);
+        assertTrue(first.fError instanceof IllegalArgumentException);
+
+        final Collector second = new Collector(1);
+        publisher.subscribe(second);
+        assertTrue(second.fError instanceof IllegalStateException);
+
+        final Collector failing = new Collector(1);
+        new HTMLEventPublisher(source(new Reader() {
+            @Override
+            public int read(final char[] cbuf, final int off, final int len) throws IOException {
+                throw new IOException("broken");
+            }
+
+            @Override
+            public void close() {
+                // nothing to close
+            }
+        })).subscribe(failing);
+        assertTrue(failing.fError instanceof IOException);
+        assertFalse(failing.fCompleted);
+    }
+
+    public void testThrowingSubscriberIsCancelled() throws Exception {
+        final Collector collector = new Collector(0) {
+            @Override
+            public void onNext(final HTMLEvent event) {
+                super.onNext(event);
+                if (fEvents.size() == 3) {
+                    throw new IllegalStateException("broken");
+                }
+            }
+        };
+        new HTMLEventPublisher(source(new StringReader(DOCUMENT))).subscribe(collector);
+        collector.fSubscription.request(Long.MAX_VALUE);
+        assertEquals(3, collector.fEvents.size());
+        collector.fSubscription.request(1);
+        assertEquals(3, collector.fEvents.size());
+        assertFalse(collector.fCompleted);
+        assertNull(collector.fError);
+    }
+
+    private static XMLInputSource source(final Reader reader) {
+        final XMLInputSource source = new XMLInputSource(null, "test.html", null);
+        source.setCharacterStream(reader);
+        return source;
+    }
+
+    /** Subscriber recording the events, requesting more from onNext when the batch is not zero. */
+    private static class Collector implements Flow.Subscriber<HTMLEvent> {
+
+        private final int fBatch;
+
+        final List<String> fEvents = new ArrayList<>();
+
+        Flow.Subscription fSubscription;
+
+        boolean fCompleted;
+
+        Throwable fError;
+
+        Collector(final int batch) {
+            fBatch = batch;
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            fSubscription = subscription;
+            if (fBatch > 0) {
+                subscription.request(fBatch);
+            }
+        }
+
+        @Override
+        public void onNext(final HTMLEvent event) {
+            fEvents.add(event.toString());
+            if (fBatch > 0) {
+                fSubscription.request(fBatch);
+            }
+        }
+
+        @Override
+        public void onError(final Throwable error) {
+            fError = error;
+        }
+
+        @Override
+        public void onComplete() {
+            fCompleted = true;
+        }
+    }
+
+    /** Reader counting the characters read. */
+    private static class CountingReader extends StringReader {
+
+        int fRead;
+
+        CountingReader(final String text) {
+            super(text);
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len) throws IOException {
+            final int count = super.read(cbuf, off, Math.min(len, 256));
+            if (count > 0) {
+                fRead += count;
+            }
+            return count;
+        }
+    }
+}
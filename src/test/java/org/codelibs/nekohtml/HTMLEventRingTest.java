@@ -0,0 +1,223 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.codelibs.nekohtml.filters.DefaultFilter;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link HTMLConfiguration#PIPELINED}.
+ */
+public class HTMLEventRingTest extends TestCase {
+
+    private static final String[] PARTS = { "<div class='a'>text &amp; more &#65;</div>\n",
+            "<script>if (a < b) { s = '</p>'; }</script>\n", "<!-- comment -->\n", "<p>unclosed <b>bold <i>italic</p>\n",
+            "<table><tr><td>cell<td>cell</table>\n", "<![CDATA[ cdata ]]>\n", "<?pi data?>\n", "</unknown><br/><img src=x>\n", };
+
+    public void testSameOutputAsSequentialParse() throws Exception {
+        final StringBuilder html = new StringBuilder("<html><head><title>t</title></head><body>\n");
+        for (int i = 0; i < 300; i++) {
+            html.append(PARTS[i % PARTS.length]);
+        }
+        final HTMLErrorBuffer expectedErrors = new HTMLErrorBuffer();
+        final String expected = parse(html.toString(), null, 0, expectedErrors);
+        for (final String strategy : new String[] { "spin", "yield", "park" }) {
+            for (final int size : new int[] { 2, 1024 }) {
+                final HTMLErrorBuffer errors = new HTMLErrorBuffer();
+                assertEquals(strategy, expected, parse(html.toString(), strategy, size, errors));
+                assertEquals(expectedErrors.size(), errors.size());
+                for (int i = 0; i < errors.size(); i++) {
+                    assertEquals(expectedErrors.getKey(i), errors.getKey(i));
+                    assertEquals(expectedErrors.getLineNumber(i), errors.getLineNumber(i));
+                    assertEquals(expectedErrors.getColumnNumber(i), errors.getColumnNumber(i));
+                    assertEquals(expectedErrors.getCharacterOffset(i), errors.getCharacterOffset(i));
+                }
+            }
+        }
+    }
+
+    public void testConfigurationIsReused() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setFeature(HTMLConfiguration.PIPELINED, true);
+        for (int i = 0; i < 20; i++) {
+            final StringWriter out = new StringWriter();
+            config.setDocumentHandler(new Writer(out));
+            config.parse(source("<p>" + i + "</p>"));
+            assertEquals("(HTML\n(HEAD\n)HEAD\n(BODY\n(P\n\"" + i + "\n)P\n)BODY\n)HTML\n", out.toString());
+        }
+    }
+
+    public void testHandlerException() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setFeature(HTMLConfiguration.PIPELINED, true);
+        config.setProperty(HTMLConfiguration.PIPELINE_BUFFER_SIZE, 4);
+        config.setDocumentHandler(new DefaultFilter() {
+            @Override
+            public void startElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+                if ("B".equals(element.rawname)) {
+                    throw new IllegalStateException("B");
+                }
+            }
+        });
+        final StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            html.append(i == 10 ? "<b>" : "<p>x</p>");
+        }
+        try {
+            config.parse(source(html.toString()));
+            fail();
+        } catch (final IllegalStateException e) {
+            assertEquals("B", e.getMessage());
+        }
+
+        final StringWriter out = new StringWriter();
+        config.setDocumentHandler(new Writer(out));
+        config.parse(source("<i>x</i>"));
+        assertTrue(out.toString(), out.toString().contains("(I\n\"x\n)I"));
+    }
+
+    public void testReaderException() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setFeature(HTMLConfiguration.PIPELINED, true);
+        config.setDocumentHandler(new DefaultFilter());
+        final Reader reader = new Reader() {
+            @Override
+            public int read(final char[] cbuf, final int off, final int len) throws IOException {
+                throw new IOException("broken");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try {
+            config.parse(new XMLInputSource(null, "test.html", null, reader, null));
+            fail();
+        } catch (final IOException e) {
+            assertEquals("broken", e.getMessage());
+        }
+    }
+
+    public void testStopFromHandler() throws Exception {
+        final StringBuilder html = new StringBuilder("<p>a<b>b</b>c</p>");
+        for (int i = 0; i < 1000; i++) {
+            html.append("<p>after</p>");
+        }
+        final String[] outputs = new String[2];
+        for (int i = 0; i < 2; i++) {
+            final HTMLConfiguration config = new HTMLConfiguration();
+            config.setFeature(HTMLConfiguration.PIPELINED, i == 1);
+            final StringWriter out = new StringWriter();
+            config.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new DefaultFilter() {
+                @Override
+                public void endElement(final QName element, final Augmentations augs) {
+                    super.endElement(element, augs);
+                    if ("B".equals(element.rawname)) {
+                        config.stopParsing();
+                    }
+                }
+            } });
+            config.setDocumentHandler(new Writer(out));
+            config.parse(source(html.toString()));
+            outputs[i] = out.toString();
+        }
+        assertEquals("(HTML\n(HEAD\n)HEAD\n(BODY\n(P\n\"a\n(B\n\"b\n)B\n)P\n)BODY\n)HTML\n", outputs[0]);
+        assertEquals(outputs[0], outputs[1]);
+    }
+
+    public void testAugmentations() throws Exception {
+        final StringBuilder html = new StringBuilder("<html><body>\n");
+        for (int i = 0; i < 100; i++) {
+            html.append(PARTS[i % PARTS.length]);
+        }
+        final String[] outputs = new String[2];
+        for (int i = 0; i < 2; i++) {
+            final HTMLConfiguration config = new HTMLConfiguration();
+            config.setFeature(HTMLConfiguration.PIPELINED, i == 1);
+            config.setProperty(HTMLConfiguration.PIPELINE_BUFFER_SIZE, 8);
+            config.setFeature("http://cyberneko.org/html/features/augmentations", true);
+            final StringBuilder out = new StringBuilder();
+            config.setDocumentHandler(new DefaultFilter() {
+                @Override
+                public void startElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+                    out.append('(').append(element.rawname).append(' ')
+                            .append(augs.getItem("http://cyberneko.org/html/features/augmentations")).append(' ')
+                            .append(augs.getItem(HTMLElements.ELEMENT_AUGMENTATION)).append('\n');
+                }
+
+                @Override
+                public void endElement(final QName element, final Augmentations augs) {
+                    out.append(')').append(element.rawname).append(' ')
+                            .append(augs.getItem("http://cyberneko.org/html/features/augmentations")).append('\n');
+                }
+            });
+            config.parse(source(html.toString()));
+            outputs[i] = out.toString();
+        }
+        assertTrue(outputs[0], outputs[0].contains("(DIV 2:1:"));
+        assertEquals(outputs[0], outputs[1]);
+    }
+
+    public void testEvaluateInputSourceIsRejected() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setFeature(HTMLConfiguration.PIPELINED, true);
+        config.setDocumentHandler(new DefaultFilter() {
+            @Override
+            public void startElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+                if ("B".equals(element.rawname)) {
+                    config.evaluateInputSource(source("<i>written</i>"));
+                }
+            }
+        });
+        try {
+            config.parse(source("<p>a<b>b</b></p>"));
+            fail();
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private static String parse(final String html, final String strategy, final int size, final HTMLErrorBuffer errors) throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        if (strategy != null) {
+            config.setFeature(HTMLConfiguration.PIPELINED, true);
+            config.setProperty(HTMLConfiguration.PIPELINE_WAIT_STRATEGY, strategy);
+            config.setProperty(HTMLConfiguration.PIPELINE_BUFFER_SIZE, size);
+        }
+        config.setFeature("http://cyberneko.org/html/features/report-errors", true);
+        config.setProperty(HTMLConfiguration.ERROR_BUFFER, errors);
+        final StringWriter out = new StringWriter();
+        config.setDocumentHandler(new Writer(out));
+        config.parse(source(html));
+        return out.toString();
+    }
+
+    private static XMLInputSource source(final String html) {
+        return new XMLInputSource(null, "test.html", null, new StringReader(html), null);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.codelibs.nekohtml.filters.DefaultFilter;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link HTMLFlightRecorder}.
+ */
+public class HTMLFlightRecorderTest extends TestCase {
+
+    public void testEvents() throws Exception {
+        final StringBuilder script = new StringBuilder("<script>");
+        for (int i = 0; i < HTMLFlightRecorder.RAW_TEXT_THRESHOLD; i++) {
+            script.append('x');
+        }
+        script.append("</script>");
+        // the unclosed elements are all closed at the end of the document
+        final StringBuilder broken = new StringBuilder();
+        for (int i = 0; i < HTMLFlightRecorder.FIXUP_THRESHOLD; i++) {
+            broken.append("<div>");
+        }
+        final byte[] meta = "<meta charset='ISO-8859-1'><p>a".getBytes(StandardCharsets.UTF_8);
+
+        final List<RecordedEvent> events = new ArrayList<>();
+        final Path file = Files.createTempFile("nekohtml", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("org.codelibs.nekohtml.Parse").withoutThreshold();
+            recording.enable("org.codelibs.nekohtml.EncodingChange");
+            recording.enable("org.codelibs.nekohtml.BalancerFixup").withoutThreshold();
+            recording.enable("org.codelibs.nekohtml.RawText").withoutThreshold();
+            recording.start();
+            assertTrue(HTMLFlightRecorder.isRecording());
+
+            final HTMLConfiguration config = new HTMLConfiguration();
+            config.setDocumentHandler(new DefaultFilter());
+            config.parse(new XMLInputSource(null, "script", null, new StringReader(script.toString()), "UTF-8"));
+            config.parse(new XMLInputSource(null, "broken", null, new StringReader(broken.toString()), "UTF-8"));
+            config.parse(new XMLInputSource(null, "meta", null, new ByteArrayInputStream(meta), null));
+
+            recording.stop();
+            recording.dump(file);
+            events.addAll(RecordingFile.readAllEvents(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        assertFalse(HTMLFlightRecorder.isRecording());
+
+        int parses = 0;
+        boolean rawText = false, fixup = false, encoding = false;
+        for (final RecordedEvent event : events) {
+            final String name = event.getEventType().getName();
+            if (name.equals("org.codelibs.nekohtml.Parse")) {
+                parses++;
+            } else if (name.equals("org.codelibs.nekohtml.RawText")) {
+                assertEquals("SCRIPT", event.getString("element"));
+                assertEquals(HTMLFlightRecorder.RAW_TEXT_THRESHOLD, event.getInt("characters"));
+                rawText = true;
+            } else if (name.equals("org.codelibs.nekohtml.BalancerFixup")) {
+                assertTrue(event.getString("systemId").endsWith("broken"));
+                assertTrue(event.getInt("synthesizedEvents") >= HTMLFlightRecorder.FIXUP_THRESHOLD);
+                fixup = true;
+            } else if (name.equals("org.codelibs.nekohtml.EncodingChange")) {
+                assertEquals("ISO8859_1", event.getString("to"));
+                encoding = true;
+            }
+        }
+        assertEquals(3, parses);
+        assertTrue(rawText);
+        assertTrue(fixup);
+        assertTrue(encoding);
+    }
+}
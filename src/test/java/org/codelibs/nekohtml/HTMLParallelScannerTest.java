@@ -0,0 +1,162 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link HTMLScanner#PARALLEL_SCANNING}.
+ */
+public class HTMLParallelScannerTest extends TestCase {
+
+    private static final String[] PARTS = { "<div class='a<b'>text &amp; more &lt;p&gt; &#65; &nbsp;</div>\n",
+            "<script>var s = '<p>not a tag</p>'; if (a < b) { s += '</div>'; }</script>\n", "<!-- <p>commented</p> -->\n",
+            "<p>unclosed <b>bold <i>italic</p>\n", "<table><tr><td>cell<td>cell</table>\n", "<textarea><b>raw</b></textarea>\n",
+            "<style>p > b { color: red }</style>\n", "<![CDATA[ <p>cdata</p> ]]>\n", "<a href=\"x?a=1&b=2\" title=\"<p\">link</a>\n",
+            "<? processing <p> ?>\n", "</unknown><br/><img src=x>\n", };
+
+    public void testSameOutputAsSequentialScan() throws Exception {
+        final StringBuilder html = new StringBuilder("<html><head><title>t</title></head><body>\n");
+        for (int i = 0; i < 200; i++) {
+            html.append(PARTS[i % PARTS.length]);
+            if (i % 7 == 0) {
+                // shift the parts against the chunk boundaries
+                html.append("x".repeat(i % 13));
+            }
+        }
+        html.append("</body></html>");
+        assertSameOutput(html.toString(), 64);
+        assertSameOutput(html.toString(), 256);
+        assertSameOutput(html.toString(), 1024 * 1024);
+    }
+
+    public void testErrorLocations() throws Exception {
+        final String html =
+                "<html>\n<head><title>t</title></head>\n<body>\n<p>first paragraph</b> text</p>\r\n"
+                        + "<div><span>nested\r<table><tr><td>cell</div>\n<p>more &bogus; text\n"
+                        + "<foo:bar>unknown</foo:bar> <i>end</i>\n</body></html>trailing";
+        final HTMLErrorBuffer errors = new HTMLErrorBuffer();
+        parse(source(html), 0, false, errors);
+        assertTrue(errors.size() > 2);
+        assertTrue(errors.getLineNumber(errors.size() - 1) > 1);
+        assertSameOutput(html, 16);
+        assertSameOutput(html, 24);
+    }
+
+    public void testCommentsAndScriptsSpanningChunks() throws Exception {
+        final StringBuilder html = new StringBuilder("<body>");
+        for (int i = 0; i < 20; i++) {
+            html.append("<p>before</p><!--");
+            for (int j = 0; j < 30; j++) {
+                html.append("<p>in comment ").append(j).append("</p>");
+            }
+            html.append("--><script>");
+            for (int j = 0; j < 30; j++) {
+                html.append("document.write('<p>").append(j).append("</p>');");
+            }
+            html.append("</script>");
+        }
+        assertSameOutput(html.toString(), 100);
+    }
+
+    public void testPlaintext() throws Exception {
+        final StringBuilder html = new StringBuilder("<body>");
+        for (int i = 0; i < 50; i++) {
+            html.append("<p>para ").append(i).append("</p>");
+        }
+        html.append("<plaintext>");
+        for (int i = 0; i < 50; i++) {
+            html.append("<p>plain ").append(i).append("</p>");
+        }
+        assertSameOutput(html.toString(), 64);
+    }
+
+    public void testByteStream() throws Exception {
+        final StringBuilder html = new StringBuilder("<html><head><meta charset='ISO-8859-1'></head><body>");
+        for (int i = 0; i < 100; i++) {
+            html.append("<p>café ").append(i).append("</p>");
+        }
+        final byte[] bytes = html.toString().getBytes(StandardCharsets.UTF_8);
+        final String expected = parse(new XMLInputSource(null, "test.html", null, new ByteArrayInputStream(bytes), "UTF-8"), 0, true);
+        final String actual = parse(new XMLInputSource(null, "test.html", null, new ByteArrayInputStream(bytes), "UTF-8"), 64, true);
+        assertEquals(expected, actual);
+    }
+
+    public void testAugmentationsScanSequentially() throws Exception {
+        final StringBuilder html = new StringBuilder("<body>");
+        for (int i = 0; i < 100; i++) {
+            html.append("<p>para ").append(i).append("</p>");
+        }
+        final String[] outputs = new String[2];
+        for (int i = 0; i < 2; i++) {
+            final HTMLConfiguration config = new HTMLConfiguration();
+            config.setFeature(HTMLScanner.PARALLEL_SCANNING, i == 1);
+            config.setProperty(HTMLScanner.PARALLEL_CHUNK_SIZE, 64);
+            config.setFeature("http://cyberneko.org/html/features/augmentations", true);
+            final StringWriter out = new StringWriter();
+            config.setDocumentHandler(new Writer(out));
+            config.parse(source(html.toString()));
+            outputs[i] = out.toString();
+        }
+        assertEquals(outputs[0], outputs[1]);
+    }
+
+    private static void assertSameOutput(final String html, final int chunkSize) throws Exception {
+        final HTMLErrorBuffer expectedErrors = new HTMLErrorBuffer();
+        final HTMLErrorBuffer actualErrors = new HTMLErrorBuffer();
+        final String expected = parse(source(html), 0, false, expectedErrors);
+        final String actual = parse(source(html), chunkSize, false, actualErrors);
+        assertEquals(expected, actual);
+        assertEquals(expectedErrors.size(), actualErrors.size());
+        for (int i = 0; i < expectedErrors.size(); i++) {
+            final String error = expectedErrors.getKey(i) + " #" + i;
+            assertEquals(error, expectedErrors.getKey(i), actualErrors.getKey(i));
+            assertEquals(error, expectedErrors.getLineNumber(i), actualErrors.getLineNumber(i));
+            assertEquals(error, expectedErrors.getColumnNumber(i), actualErrors.getColumnNumber(i));
+            assertEquals(error, expectedErrors.getCharacterOffset(i), actualErrors.getCharacterOffset(i));
+        }
+    }
+
+    private static String parse(final XMLInputSource source, final int chunkSize, final boolean ignoreCharset) throws Exception {
+        return parse(source, chunkSize, ignoreCharset, new HTMLErrorBuffer());
+    }
+
+    private static String parse(final XMLInputSource source, final int chunkSize, final boolean ignoreCharset, final HTMLErrorBuffer errors)
+            throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setFeature(HTMLScanner.PARALLEL_SCANNING, chunkSize > 0);
+        config.setProperty(HTMLScanner.PARALLEL_CHUNK_SIZE, chunkSize);
+        config.setFeature(HTMLScanner.IGNORE_SPECIFIED_CHARSET, ignoreCharset);
+        config.setFeature("http://cyberneko.org/html/features/report-errors", true);
+        config.setProperty(HTMLConfiguration.ERROR_BUFFER, errors);
+        final StringWriter out = new StringWriter();
+        config.setDocumentHandler(new Writer(out));
+        config.parse(source);
+        return out.toString();
+    }
+
+    private static XMLInputSource source(final String html) {
+        return new XMLInputSource(null, "test.html", null, new StringReader(html), null);
+    }
+}
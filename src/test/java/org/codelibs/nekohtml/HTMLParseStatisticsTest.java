@@ -0,0 +1,114 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.codelibs.nekohtml.filters.DefaultFilter;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link HTMLParseStatistics}.
+ */
+public class HTMLParseStatisticsTest extends TestCase {
+
+    public void testCounters() throws Exception {
+        final String html =
+                "<html><head><meta http-equiv='content-type' content='text/html; charset=UTF-8'></head>"
+                        + "<body><p>café &amp; &lt;bar&gt;</div><td>x</td></body></html>";
+        final byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+
+        final HTMLConfiguration config = new HTMLConfiguration();
+        final HTMLParseStatistics stats = new HTMLParseStatistics();
+        config.setProperty(HTMLConfiguration.STATISTICS, stats);
+        config.setFeature("http://cyberneko.org/html/features/report-errors", true);
+        config.parse(new XMLInputSource(null, "test", null, new ByteArrayInputStream(bytes), null));
+
+        assertEquals(bytes.length, stats.getBytesRead());
+        assertEquals(1, stats.getEncodingChanges());
+        assertTrue(stats.getBytesRecorded() > 0);
+        assertTrue(stats.getCharactersDecoded() >= html.length());
+        // html, head and meta are scanned again after the charset change
+        assertEquals(9, stats.getElementsScanned());
+        assertEquals(3, stats.getEntityReferences());
+        assertTrue(stats.getElementsSynthesized() > 0);
+        assertTrue(stats.getElementsDiscarded() > 0);
+        assertTrue(stats.getErrorCounts().containsKey("HTML2004"));
+        assertTrue(stats.getParseTime() > 0);
+        assertTrue(stats.getScanTime() > 0);
+    }
+
+    public void testHandlerTime() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        final HTMLParseStatistics stats = new HTMLParseStatistics();
+        config.setProperty(HTMLConfiguration.STATISTICS, stats);
+        config.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new DefaultFilter() {
+            @Override
+            public void endDocument(final Augmentations augs) {
+                try {
+                    Thread.sleep(20);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } });
+        config.parse(new XMLInputSource(null, "test", null, new StringReader("<p>a</p>"), "UTF-8"));
+        assertTrue(stats.getHandlerTime() >= 20000000L);
+        assertTrue(stats.getParseTime() >= stats.getHandlerTime());
+        assertEquals(0, stats.getBytesRead());
+    }
+
+    public void testCountersAreResetPerDocument() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        final HTMLParseStatistics stats = new HTMLParseStatistics();
+        config.setProperty(HTMLConfiguration.STATISTICS, stats);
+        config.parse(new XMLInputSource(null, "a", null, new StringReader("<p>a</p><p>b</p>"), "UTF-8"));
+        assertEquals(2, stats.getElementsScanned());
+        config.parse(new XMLInputSource(null, "b", null, new StringReader("<p>a</p>"), "UTF-8"));
+        assertEquals(1, stats.getElementsScanned());
+
+        final HTMLParseStatistics total = new HTMLParseStatistics();
+        total.add(stats);
+        total.add(stats);
+        assertEquals(2, total.getElementsScanned());
+    }
+
+    public void testDisabled() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        final HTMLParseStatistics stats = new HTMLParseStatistics();
+        config.setProperty(HTMLConfiguration.STATISTICS, stats);
+        config.setProperty(HTMLConfiguration.STATISTICS, null);
+        final StringBuilder names = new StringBuilder();
+        config.setDocumentHandler(new DefaultFilter() {
+            @Override
+            public void startElement(final QName element, final XMLAttributes attrs, final Augmentations augs) {
+                names.append(element.rawname).append(' ');
+            }
+        });
+        config.parse(new XMLInputSource(null, "a", null, new StringReader("<p>a</p>"), "UTF-8"));
+        assertEquals("HTML HEAD BODY P ", names.toString());
+        assertEquals(0, stats.getElementsScanned());
+    }
+}
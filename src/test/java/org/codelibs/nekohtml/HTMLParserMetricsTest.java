@@ -0,0 +1,119 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.ByteArrayInputStream;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.xerces.util.DefaultErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link HTMLParserMetrics}.
+ */
+public class HTMLParserMetricsTest extends TestCase {
+
+    @Override
+    protected void tearDown() throws Exception {
+        HTMLParserMetrics.unregister();
+        HTMLParserMetrics.getInstance().resetCounters();
+    }
+
+    public void testNotCollectedUnlessRegistered() throws Exception {
+        final HTMLParserMetrics metrics = HTMLParserMetrics.getInstance();
+        metrics.resetCounters();
+        new HTMLConfiguration().parse(new XMLInputSource(null, "a", null, new StringReader("<p>a</p>"), "UTF-8"));
+        assertEquals(0, metrics.getDocumentsParsed());
+    }
+
+    public void testMetrics() throws Exception {
+        HTMLParserMetrics.register();
+        HTMLParserMetrics.register();
+        final HTMLParserMetrics metrics = HTMLParserMetrics.getInstance();
+        metrics.resetCounters();
+
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setFeature("http://cyberneko.org/html/features/report-errors", true);
+        config.setErrorHandler(new DefaultErrorHandler(new PrintWriter(new StringWriter())));
+        final byte[] bytes = "<meta charset='ISO-8859-1'><p>a</div>".getBytes(StandardCharsets.UTF_8);
+        config.parse(new XMLInputSource(null, "a", null, new ByteArrayInputStream(bytes), null));
+        config.setProperty(HTMLScanner.MAX_EVENTS, 1);
+        config.parse(new XMLInputSource(null, "b", null, new StringReader("<p>a</p><p>b</p>"), "UTF-8"));
+        config.setFeature(HTMLScanner.LIMITS_FAIL, true);
+        try {
+            config.parse(new XMLInputSource(null, "c", null, new StringReader("<p>a</p><p>b</p>"), "UTF-8"));
+            fail();
+        } catch (final HTMLLimitException e) {
+            // expected
+        }
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(HTMLParserMetrics.OBJECT_NAME);
+        assertEquals(3L, server.getAttribute(name, "DocumentsParsed"));
+        assertEquals(1L, server.getAttribute(name, "DocumentsFailed"));
+        assertEquals((long) bytes.length, server.getAttribute(name, "BytesRead"));
+        assertEquals(1L, server.getAttribute(name, "EncodingChanges"));
+        assertEquals(2L, server.getAttribute(name, "LimitsExceeded"));
+        assertTrue(metrics.getCharactersDecoded() > 0);
+
+        long documents = 0;
+        for (final long count : metrics.getLatencyHistogram()) {
+            documents += count;
+        }
+        assertEquals(3, documents);
+        assertEquals(metrics.getLatencyBucketBounds().length + 1, metrics.getLatencyHistogram().length);
+
+        final String[] errors = (String[]) server.getAttribute(name, "TopErrors");
+        assertTrue(errors.length > 0);
+        boolean limit = false;
+        for (final String error : errors) {
+            limit |= error.equals("HTML1016=1");
+        }
+        assertTrue(limit);
+
+        server.invoke(name, "resetCounters", null, null);
+        assertEquals(0, metrics.getDocumentsParsed());
+
+        HTMLParserMetrics.unregister();
+        assertFalse(server.isRegistered(name));
+        config.setProperty(HTMLScanner.MAX_EVENTS, 0);
+        config.parse(new XMLInputSource(null, "d", null, new StringReader("<p>a</p>"), "UTF-8"));
+        assertEquals(0, metrics.getDocumentsParsed());
+    }
+
+    public void testUserStatisticsAreUsed() throws Exception {
+        HTMLParserMetrics.register();
+        final HTMLParserMetrics metrics = HTMLParserMetrics.getInstance();
+        metrics.resetCounters();
+        final HTMLConfiguration config = new HTMLConfiguration();
+        final HTMLParseStatistics stats = new HTMLParseStatistics();
+        config.setProperty(HTMLConfiguration.STATISTICS, stats);
+        final byte[] bytes = "<p>a</p>".getBytes(StandardCharsets.UTF_8);
+        config.parse(new XMLInputSource(null, "a", null, new ByteArrayInputStream(bytes), "UTF-8"));
+        assertEquals(1, metrics.getDocumentsParsed());
+        assertEquals(stats.getBytesRead(), metrics.getBytesRead());
+    }
+}
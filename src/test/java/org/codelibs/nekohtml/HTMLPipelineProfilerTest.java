@@ -0,0 +1,117 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.codelibs.nekohtml.filters.DefaultFilter;
+import org.codelibs.nekohtml.filters.NamespaceBinder;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link HTMLPipelineProfiler}.
+ */
+public class HTMLPipelineProfilerTest extends TestCase {
+
+    public void testStages() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        final HTMLPipelineProfiler profiler = new HTMLPipelineProfiler();
+        config.setProperty(HTMLConfiguration.PROFILER, profiler);
+        config.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new SlowFilter() });
+        final StringBuilder names = new StringBuilder();
+        config.setDocumentHandler(new DefaultFilter() {
+            @Override
+            public void startElement(final QName element, final XMLAttributes attrs, final Augmentations augs) {
+                names.append(element.rawname).append(' ');
+            }
+        });
+        config.parse(new XMLInputSource(null, "a", null, new StringReader("<p>a</p><p>b</p>"), "UTF-8"));
+        assertEquals("HTML HEAD BODY P P ", names.toString());
+
+        final List<HTMLPipelineProfiler.Stage> stages = profiler.getStages();
+        assertEquals(4, stages.size());
+        assertEquals(NamespaceBinder.class.getName(), stages.get(0).getName());
+        assertEquals(HTMLTagBalancer.class.getName(), stages.get(1).getName());
+        assertEquals(SlowFilter.class.getName(), stages.get(2).getName());
+
+        // the balancer adds html, head and body
+        assertEquals(2, stages.get(0).getEventCount(HTMLPipelineProfiler.START_ELEMENT));
+        assertEquals(5, stages.get(2).getEventCount(HTMLPipelineProfiler.START_ELEMENT));
+        assertEquals(5, stages.get(3).getEventCount(HTMLPipelineProfiler.START_ELEMENT));
+        assertEquals(1, stages.get(3).getEventCount(HTMLPipelineProfiler.END_DOCUMENT));
+
+        // the time of the slow filter is not charged to the stages before it
+        assertTrue(stages.get(2).getTime() >= 50000000L);
+        assertTrue(stages.get(1).getTime() < stages.get(2).getTime());
+        assertTrue(stages.get(0).getTime() < stages.get(2).getTime());
+
+        config.parse(new XMLInputSource(null, "b", null, new StringReader("<p>a</p>"), "UTF-8"));
+        assertEquals(2, profiler.getDocumentsProfiled());
+        assertEquals(9, stages.get(3).getEventCount(HTMLPipelineProfiler.START_ELEMENT));
+        assertTrue(profiler.toString().startsWith("2 document(s) profiled\n"));
+    }
+
+    public void testSampling() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        final HTMLPipelineProfiler profiler = new HTMLPipelineProfiler(3);
+        final StringWriter report = new StringWriter();
+        profiler.setReportWriter(new PrintWriter(report));
+        config.setProperty(HTMLConfiguration.PROFILER, profiler);
+        config.setDocumentHandler(new DefaultFilter());
+        for (int i = 0; i < 7; i++) {
+            config.parse(new XMLInputSource(null, "a", null, new StringReader("<p>a</p>"), "UTF-8"));
+        }
+        assertEquals(3, profiler.getDocumentsProfiled());
+        assertEquals(12, profiler.getStages().get(2).getEventCount(HTMLPipelineProfiler.START_ELEMENT));
+        assertTrue(report.toString().contains(DefaultFilter.class.getName() + ": "));
+        assertTrue(report.toString().contains(" startElement=4 "));
+    }
+
+    public void testPipelineChange() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        final HTMLPipelineProfiler profiler = new HTMLPipelineProfiler();
+        config.setProperty(HTMLConfiguration.PROFILER, profiler);
+        config.parse(new XMLInputSource(null, "a", null, new StringReader("<p>a</p>"), "UTF-8"));
+        assertEquals(2, profiler.getStages().size());
+        config.setDocumentHandler(new DefaultFilter());
+        config.parse(new XMLInputSource(null, "a", null, new StringReader("<p>a</p>"), "UTF-8"));
+        assertEquals(3, profiler.getStages().size());
+        assertEquals(2, profiler.getStages().get(1).getEventCount(HTMLPipelineProfiler.END_DOCUMENT));
+        assertEquals(1, profiler.getStages().get(2).getEventCount(HTMLPipelineProfiler.END_DOCUMENT));
+    }
+
+    static class SlowFilter extends DefaultFilter {
+        @Override
+        public void endDocument(final Augmentations augs) {
+            try {
+                Thread.sleep(50);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.endDocument(augs);
+        }
+    }
+}
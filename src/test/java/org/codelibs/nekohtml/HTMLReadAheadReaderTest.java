@@ -0,0 +1,203 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link HTMLReadAheadReader} and {@link HTMLScanner#READ_AHEAD}.
+ */
+public class HTMLReadAheadReaderTest extends TestCase {
+
+    public void testReadsEverything() throws Exception {
+        final String text = document("x");
+        try (Reader reader = HTMLReadAheadReader.start(new StringReader(text))) {
+            assertTrue(reader instanceof HTMLReadAheadReader);
+            final StringBuilder str = new StringBuilder();
+            final char[] buffer = new char[777];
+            int count;
+            while ((count = reader.read(buffer, 0, buffer.length)) != -1) {
+                str.append(buffer, 0, count);
+            }
+            assertEquals(text, str.toString());
+            assertEquals(-1, reader.read(buffer, 0, buffer.length));
+        }
+    }
+
+    public void testCharacterStream() throws Exception {
+        final String html = document("x");
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        final Reader reader = new FilterReader(new StringReader(html)) {
+            @Override
+            public int read(final char[] cbuf, final int off, final int len) throws IOException {
+                threads.add(Thread.currentThread().getName());
+                return super.read(cbuf, off, len);
+            }
+        };
+        assertEquals(parse(new XMLInputSource(null, "test.html", null, new StringReader(html), null), false),
+                parse(new XMLInputSource(null, "test.html", null, reader, null), true));
+        assertTrue(threads.toString(), threads.contains("nekohtml-read-ahead"));
+    }
+
+    public void testCharsetChange() throws Exception {
+        final String html = "<html><head><meta http-equiv='content-type' content='text/html; charset=UTF-8'></head>" + document("été");
+        final byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        final InputStream stream = new FilterInputStream(new ByteArrayInputStream(bytes)) {
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                threads.add(Thread.currentThread().getName());
+                return super.read(b, off, len);
+            }
+        };
+        final String expected = parse(new XMLInputSource(null, "test.html", null, new ByteArrayInputStream(bytes), null), false);
+        assertTrue(expected.contains("été"));
+        assertEquals(expected, parse(new XMLInputSource(null, "test.html", null, stream, null), true));
+        assertTrue(threads.toString(), threads.contains("nekohtml-read-ahead"));
+    }
+
+    public void testException() throws Exception {
+        final Reader reader = new Reader() {
+            private int fCount;
+
+            @Override
+            public int read(final char[] cbuf, final int off, final int len) throws IOException {
+                if (fCount++ > 0) {
+                    throw new IOException("broken");
+                }
+                "<p>text".getChars(0, 7, cbuf, off);
+                return 7;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try {
+            parse(new XMLInputSource(null, "test.html", null, reader, null), true);
+            fail();
+        } catch (final IOException e) {
+            assertEquals("broken", e.getMessage());
+        }
+    }
+
+    public void testErrorIsHandedToReader() throws Exception {
+        final Reader reader = HTMLReadAheadReader.start(new Reader() {
+            @Override
+            public int read(final char[] cbuf, final int off, final int len) {
+                throw new StackOverflowError("deep");
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        try {
+            reader.read(new char[16], 0, 16);
+            fail();
+        } catch (final StackOverflowError e) {
+            assertEquals("deep", e.getMessage());
+        }
+        assertEquals(-1, reader.read(new char[16], 0, 16));
+    }
+
+    public void testDetachWaitsForReadWithoutInterrupting() throws Exception {
+        final CountDownLatch reading = new CountDownLatch(1);
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final Reader in = new Reader() {
+            @Override
+            public int read(final char[] cbuf, final int off, final int len) {
+                reads.incrementAndGet();
+                reading.countDown();
+                final long end = System.nanoTime() + 100000000L;
+                while (System.nanoTime() < end) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        interrupted.set(true);
+                    }
+                }
+                cbuf[off] = 'x';
+                return 1;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        final HTMLReadAheadReader reader = (HTMLReadAheadReader) HTMLReadAheadReader.start(in);
+        assertTrue(reading.await(10, TimeUnit.SECONDS));
+        reader.detach();
+        final int count = reads.get();
+        Thread.sleep(150);
+        assertEquals(count, reads.get());
+        assertFalse(interrupted.get());
+    }
+
+    public void testApplicationStreamIsNotClosed() throws Exception {
+        final boolean[] closed = new boolean[1];
+        final Reader reader = new FilterReader(new StringReader(document("x"))) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        };
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setFeature(HTMLScanner.READ_AHEAD, true);
+        config.setDocumentHandler(new Writer(new StringWriter()));
+        config.setInputSource(new XMLInputSource(null, "test.html", null, reader, null));
+        config.parse(false);
+        config.stopParsing();
+        config.parse(true);
+        assertFalse(closed[0]);
+    }
+
+    private static String document(final String text) {
+        final StringBuilder html = new StringBuilder("<body>");
+        for (int i = 0; i < 3000; i++) {
+            html.append("<p class='c").append(i).append("'>").append(text).append(' ').append(i).append("</p>\n");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    private static String parse(final XMLInputSource source, final boolean readAhead) throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setFeature(HTMLScanner.READ_AHEAD, readAhead);
+        final StringWriter out = new StringWriter();
+        config.setDocumentHandler(new Writer(out));
+        config.parse(source);
+        return out.toString();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import org.apache.xerces.util.ParserConfigurationSettings;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link HTMLSettings}.
+ */
+public class HTMLSettingsTest extends TestCase {
+
+    public void testSnapshotIsKeptUntilASettingChanges() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        final HTMLSettings settings = HTMLSettings.get(config);
+        assertSame(settings, HTMLSettings.get(config));
+        assertEquals(HTMLScanner.NAMES_UPPERCASE, settings.namesElems);
+        assertEquals(HTMLScanner.NAMES_LOWERCASE, settings.namesAttrs);
+        assertEquals("Windows-1252", settings.defaultEncoding);
+        assertFalse(settings.headOnly);
+
+        config.setFeature(HTMLTagBalancer.HEAD_ONLY, true);
+        config.setProperty(HTMLScanner.MAX_EVENTS, "10");
+        final HTMLSettings changed = HTMLSettings.get(config);
+        assertNotSame(settings, changed);
+        assertTrue(changed.headOnly);
+        assertEquals(10, changed.maxEvents);
+        assertFalse(settings.headOnly);
+    }
+
+    public void testUnrecognizedSettings() throws Exception {
+        final ParserConfigurationSettings manager = new ParserConfigurationSettings();
+        manager.addRecognizedFeatures(new String[] { HTMLTagBalancer.HEAD_ONLY });
+        manager.setFeature(HTMLTagBalancer.HEAD_ONLY, true);
+        final HTMLSettings settings = HTMLSettings.get(manager);
+        assertTrue(settings.headOnly);
+        assertFalse(settings.augmentations);
+        assertNull(settings.errorReporter);
+        assertEquals(HTMLScanner.NAMES_NO_CHANGE, settings.namesElems);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.codelibs.nekohtml.filters.DefaultFilter;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link HTMLSlowParseRecorder}.
+ */
+public class HTMLSlowParseRecorderTest extends TestCase {
+
+    private File fDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        fDirectory = Files.createTempDirectory("slow").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        final File[] files = fDirectory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        fDirectory.delete();
+    }
+
+    public void testSlowDocumentIsRecorded() throws Exception {
+        final HTMLSlowParseRecorder recorder = new HTMLSlowParseRecorder(fDirectory, 30);
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setProperty(HTMLConfiguration.SLOW_PARSE_RECORDER, recorder);
+        config.setProperty("http://cyberneko.org/html/properties/names/elems", "lower");
+        config.setFeature(HTMLScanner.NOTIFY_HTML_BUILTIN_REFS, true);
+        final StringBuilder names = new StringBuilder();
+        config.setDocumentHandler(new DefaultFilter() {
+            @Override
+            public void startElement(final QName element, final XMLAttributes attrs, final Augmentations augs) {
+                names.append(element.rawname).append(' ');
+                if ("b".equals(element.rawname)) {
+                    sleep();
+                }
+            }
+        });
+
+        config.parse(new XMLInputSource(null, "fast", null, new StringReader("<p>fast</p>"), "UTF-8"));
+        assertEquals(0, recorder.getDocumentsRecorded());
+
+        final byte[] html = "<p>café <b>slow</b></p>".getBytes(StandardCharsets.UTF_8);
+        config.parse(new XMLInputSource(null, "slow", null, new ByteArrayInputStream(html), "UTF-8"));
+        assertEquals("html head body p html head body p b ", names.toString());
+        assertEquals(1, recorder.getDocumentsRecorded());
+
+        final File[] files = fDirectory.listFiles((dir, name) -> name.endsWith(".html"));
+        assertEquals(1, files.length);
+        assertTrue(Arrays.equals(html, Files.readAllBytes(files[0].toPath())));
+        final List<String> settings = Files.readAllLines(new File(files[0].getPath() + ".settings").toPath());
+        assertTrue(settings.contains("property http://cyberneko.org/html/properties/names/elems lower"));
+        assertTrue(settings.contains("property http://cyberneko.org/html/properties/default-encoding UTF-8"));
+        assertTrue(settings.contains("feature " + HTMLScanner.NOTIFY_HTML_BUILTIN_REFS + " true"));
+
+        // the recorded document parses the same with the recorded settings
+        final HTMLConfiguration replay = new HTMLConfiguration();
+        HTMLSlowParseRecorder.readSettings(new File(files[0].getPath() + ".settings"), replay);
+        assertTrue(replay.getFeature(HTMLScanner.NOTIFY_HTML_BUILTIN_REFS));
+        assertEquals("lower", replay.getProperty("http://cyberneko.org/html/properties/names/elems"));
+    }
+
+    public void testCharacterStreamIsTruncated() throws Exception {
+        final HTMLSlowParseRecorder recorder = new HTMLSlowParseRecorder(fDirectory, 0, 8);
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setProperty(HTMLConfiguration.SLOW_PARSE_RECORDER, recorder);
+        config.parse(new XMLInputSource(null, "a", null, new StringReader("<p>café and more</p>"), null));
+        final File[] files = fDirectory.listFiles((dir, name) -> name.endsWith(".html"));
+        assertEquals(1, files.length);
+        assertEquals("<p>café", new String(Files.readAllBytes(files[0].toPath()), StandardCharsets.UTF_8));
+        final List<String> settings = Files.readAllLines(new File(files[0].getPath() + ".settings").toPath());
+        assertTrue(settings.contains("feature " + HTMLScanner.IGNORE_SPECIFIED_CHARSET + " true"));
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(50);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.codelibs.nekohtml.filters.DefaultFilter;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the {@link HTMLTagBalancer#HEAD_ONLY} feature.
+ */
+public class HeadOnlyTest extends TestCase {
+
+    public void testStopsAtBody() throws Exception {
+        assertEquals("[(HTML, (HEAD, (TITLE, \"t, )TITLE, (META, )META, )HEAD, )HTML, end]",
+                parse("<html><head><title>t</title><meta name='a' content='b'></head><body><p>text</p></body></html>").toString());
+    }
+
+    public void testStopsAtFrameset() throws Exception {
+        assertEquals("[(HTML, (HEAD, (TITLE, \"t, )TITLE, )HEAD, )HTML, end]",
+                parse("<html><head><title>t</title></head><frameset><frame src='a'></frameset></html>").toString());
+    }
+
+    public void testStopsAtForcedBody() throws Exception {
+        assertEquals("[(HTML, (HEAD, (TITLE, \"t, )TITLE, )HEAD, )HTML, end]", parse("<title>t</title>some text<p>more</p>").toString());
+        assertEquals("[(HTML, (HEAD, (TITLE, \"t, )TITLE, )HEAD, )HTML, end]", parse("<title>t</title><div>x</div>").toString());
+        assertEquals("[(HTML, (HEAD, (TITLE, \"t, )TITLE, )HEAD, )HTML, end]", parse("<title>t</title>&amp;").toString());
+    }
+
+    public void testStopsReading() throws Exception {
+        final StringBuilder html = new StringBuilder("<html><head><title>t</title></head><body>");
+        for (int i = 0; i < 100000; i++) {
+            html.append("<p>paragraph ").append(i).append("</p>");
+        }
+        html.append("</body></html>");
+        final CountingReader reader = new CountingReader(new StringReader(html.toString()));
+
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setFeature(HTMLTagBalancer.HEAD_ONLY, true);
+        final EventCollector collector = new EventCollector();
+        config.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { collector });
+        config.parse(new XMLInputSource(null, "test", null, reader, "UTF-8"));
+
+        assertEquals("[(HTML, (HEAD, (TITLE, \"t, )TITLE, )HEAD, )HTML, end]", collector.fEvents.toString());
+        assertTrue("read " + reader.fCount, reader.fCount < html.length() / 10);
+        // streams passed by the caller are left open, as for a complete parse
+        assertFalse(reader.fClosed);
+    }
+
+    public void testParserIsReusable() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setFeature(HTMLTagBalancer.HEAD_ONLY, true);
+        final EventCollector collector = new EventCollector();
+        config.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { collector });
+        config.parse(new XMLInputSource(null, "a", null, new StringReader("<title>a</title><body>x"), "UTF-8"));
+        collector.fEvents.clear();
+        config.setFeature(HTMLTagBalancer.HEAD_ONLY, false);
+        config.parse(new XMLInputSource(null, "b", null, new StringReader("<title>b</title><body>x"), "UTF-8"));
+        assertEquals("[(HTML, (HEAD, (TITLE, \"b, )TITLE, )HEAD, (BODY, \"x, )BODY, )HTML, end]", collector.fEvents.toString());
+    }
+
+    private static List<String> parse(final String html) throws IOException {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setFeature(HTMLTagBalancer.HEAD_ONLY, true);
+        final EventCollector collector = new EventCollector();
+        config.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { collector });
+        config.parse(new XMLInputSource(null, "test", null, new StringReader(html), "UTF-8"));
+        return collector.fEvents;
+    }
+
+    private static class EventCollector extends DefaultFilter {
+
+        final List<String> fEvents = new ArrayList<>();
+
+        @Override
+        public void startElement(final QName element, final XMLAttributes attrs, final Augmentations augs) {
+            fEvents.add("(" + element.rawname);
+        }
+
+        @Override
+        public void emptyElement(final QName element, final XMLAttributes attrs, final Augmentations augs) {
+            startElement(element, attrs, augs);
+            endElement(element, augs);
+        }
+
+        @Override
+        public void characters(final XMLString text, final Augmentations augs) {
+            fEvents.add("\"" + text);
+        }
+
+        @Override
+        public void endElement(final QName element, final Augmentations augs) {
+            fEvents.add(")" + element.rawname);
+        }
+
+        @Override
+        public void endDocument(final Augmentations augs) {
+            fEvents.add("end");
+        }
+    }
+
+    private static class CountingReader extends Reader {
+
+        private final Reader fReader;
+
+        int fCount;
+
+        boolean fClosed;
+
+        CountingReader(final Reader reader) {
+            fReader = reader;
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len) throws IOException {
+            final int n = fReader.read(cbuf, off, len);
+            if (n > 0) {
+                fCount += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            fClosed = true;
+            fReader.close();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+import org.codelibs.nekohtml.filters.DefaultFilter;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the scanner limits.
+ */
+public class LimitsTest extends TestCase {
+
+    public void testMaxEventsTruncates() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setProperty(HTMLScanner.MAX_EVENTS, 4);
+        final List<String> events = parse(config, "<p>a<b>b</b>c</p><p>d</p>");
+        assertEquals("[(HTML, (HEAD, )HEAD, (BODY, (P, \"a, (B, \"b, )B, )P, )BODY, )HTML, end]", events.toString());
+    }
+
+    public void testMaxCharactersTruncates() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setProperty(HTMLScanner.MAX_CHARACTERS, "9");
+        // the input ends after exactly 9 characters, within the first token after them
+        final List<String> events = parse(config, "<p>abcdef</p><p>ghi</p><p>jkl</p>");
+        assertEquals("[(HTML, (HEAD, )HEAD, (BODY, (P, \"abcdef, )P, )BODY, )HTML, end]", events.toString());
+        assertEquals(HTMLScanner.MAX_CHARACTERS, config.getLimitExceeded());
+        parse(config, "<p>ab</p>");
+        assertNull(config.getLimitExceeded());
+    }
+
+    public void testMaxCharactersBoundsOneToken() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setProperty(HTMLScanner.MAX_CHARACTERS, 100000);
+        final EndlessReader reader = new EndlessReader("<p>text<!-- ", 'x', 0);
+        final EventCollector collector = new EventCollector();
+        config.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { collector });
+        config.parse(new XMLInputSource(null, "test", null, reader, "UTF-8"));
+        assertEquals("end", collector.fEvents.get(collector.fEvents.size() - 1));
+        assertEquals(HTMLScanner.MAX_CHARACTERS, config.getLimitExceeded());
+        assertTrue(String.valueOf(reader.fRead), reader.fRead < 200000);
+    }
+
+    public void testMaxTimeBoundsOneToken() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setProperty(HTMLScanner.MAX_TIME, 20);
+        final EndlessReader reader = new EndlessReader("<p title='", 'x', 1);
+        final EventCollector collector = new EventCollector();
+        config.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { collector });
+        config.parse(new XMLInputSource(null, "test", null, reader, "UTF-8"));
+        assertEquals("end", collector.fEvents.get(collector.fEvents.size() - 1));
+        assertEquals(HTMLScanner.MAX_TIME, config.getLimitExceeded());
+    }
+
+    public void testLimitIsReported() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setFeature("http://cyberneko.org/html/features/report-errors", true);
+        config.setProperty(HTMLScanner.MAX_EVENTS, 1L);
+        final List<String> keys = new ArrayList<>();
+        config.setErrorHandler(new XMLErrorHandler() {
+            @Override
+            public void warning(final String domain, final String key, final XMLParseException exception) {
+            }
+
+            @Override
+            public void error(final String domain, final String key, final XMLParseException exception) {
+                keys.add(key + ": " + exception.getMessage());
+            }
+
+            @Override
+            public void fatalError(final String domain, final String key, final XMLParseException exception) {
+            }
+        });
+        parse(config, "<p>a</p>");
+        assertEquals("[HTML1016: Limit \"max-events\" of 1 exceeded.]", keys.toString());
+    }
+
+    public void testLimitFails() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setFeature(HTMLScanner.LIMITS_FAIL, true);
+        config.setProperty(HTMLScanner.MAX_CHARACTERS, 10);
+        try {
+            parse(config, "<p>abcdef</p><p>ghi</p><p>jkl</p>");
+            fail();
+        } catch (final HTMLLimitException e) {
+            assertEquals(HTMLScanner.MAX_CHARACTERS, e.getLimit());
+            assertEquals(10, e.getValue());
+        }
+        // next document starts with fresh counters
+        config.setProperty(HTMLScanner.MAX_CHARACTERS, 0);
+        assertEquals("[(HTML, (HEAD, )HEAD, (BODY, (P, \"a, )P, )BODY, )HTML, end]", parse(config, "<p>a</p>").toString());
+    }
+
+    public void testMaxTime() throws Exception {
+        final StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            html.append("<b>x</b>");
+        }
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setProperty(HTMLScanner.MAX_TIME, 20);
+        final Reader reader = new FilterReader(new StringReader(html.toString())) {
+            @Override
+            public int read(final char[] cbuf, final int off, final int len) throws IOException {
+                try {
+                    Thread.sleep(1);
+                } catch (final InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return super.read(cbuf, off, Math.min(len, 16));
+            }
+        };
+        final EventCollector collector = new EventCollector();
+        config.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { collector });
+        config.parse(new XMLInputSource(null, "test", null, reader, "UTF-8"));
+        final List<String> events = collector.fEvents;
+        assertEquals("end", events.get(events.size() - 1));
+        assertTrue(events.size() < 30000);
+    }
+
+    private static List<String> parse(final HTMLConfiguration config, final String html) throws IOException {
+        final EventCollector collector = new EventCollector();
+        config.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { collector });
+        config.parse(new XMLInputSource(null, "test", null, new StringReader(html), "UTF-8"));
+        return collector.fEvents;
+    }
+
+    /** Returns a prefix followed by the same character forever. */
+    private static class EndlessReader extends Reader {
+
+        private final String fPrefix;
+
+        private final char fFill;
+
+        private final long fSleep;
+
+        long fRead;
+
+        EndlessReader(final String prefix, final char fill, final long sleep) {
+            fPrefix = prefix;
+            fFill = fill;
+            fSleep = sleep;
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len) throws IOException {
+            if (fSleep > 0) {
+                try {
+                    Thread.sleep(fSleep);
+                } catch (final InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            for (int i = 0; i < len; i++) {
+                cbuf[off + i] = fRead < fPrefix.length() ? fPrefix.charAt((int) fRead) : fFill;
+                fRead++;
+            }
+            return len;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class EventCollector extends DefaultFilter {
+
+        final List<String> fEvents = new ArrayList<>();
+
+        @Override
+        public void startElement(final QName element, final XMLAttributes attrs, final Augmentations augs) {
+            fEvents.add("(" + element.rawname);
+        }
+
+        @Override
+        public void characters(final XMLString text, final Augmentations augs) {
+            fEvents.add("\"" + text);
+        }
+
+        @Override
+        public void endElement(final QName element, final Augmentations augs) {
+            fEvents.add(")" + element.rawname);
+        }
+
+        @Override
+        public void endDocument(final Augmentations augs) {
+            fEvents.add("end");
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.codelibs.nekohtml;
+
+import java.io.File;
+
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.codelibs.nekohtml.filters.DefaultFilter;
+
+/**
+ * Parses a document written by {@link HTMLSlowParseRecorder} with its
+ * settings and prints the mean parse time after a warm-up. Usage:
+ * <code>SlowParseReplay file.html [iterations]</code>
+ */
+public class SlowParseReplay {
+
+    public static void main(final String[] argv) throws Exception {
+        final File file = new File(argv[0]);
+        final int iterations = argv.length > 1 ? Integer.parseInt(argv[1]) : 100;
+        final HTMLConfiguration config = new HTMLConfiguration();
+        final File settings = new File(file.getPath() + ".settings");
+        if (settings.exists()) {
+            HTMLSlowParseRecorder.readSettings(settings, config);
+        }
+        config.setDocumentHandler(new DefaultFilter());
+        final HTMLParseStatistics stats = new HTMLParseStatistics();
+        config.setProperty(HTMLConfiguration.STATISTICS, stats);
+        final String systemId = file.toURI().toString();
+        for (int round = 0; round < 2; round++) {
+            final HTMLParseStatistics total = new HTMLParseStatistics();
+            for (int i = 0; i < iterations; i++) {
+                config.parse(new XMLInputSource(null, systemId, null));
+                total.add(stats);
+            }
+            System.out.println((round == 0 ? "warm-up: " : "measure: ") + total.getParseTime() / iterations / 1000 + "us/parse");
+        }
+        System.out.println(stats);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.codelibs.nekohtml.filters.DefaultFilter;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link HTMLConfiguration#stopParsing()}.
+ */
+public class StopParsingTest extends TestCase {
+
+    public void testStopFromHandler() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        final StoppingFilter filter = new StoppingFilter(config, "B");
+        config.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { filter });
+        config.parse(source("<html><body><p>a<b>b</b>c</p><p>d</p></body></html>"));
+        assertEquals("[(HTML, (HEAD, )HEAD, (BODY, (P, \"a, (B, \"b, )B, )P, )BODY, )HTML, end]", filter.fEvents.toString());
+    }
+
+    public void testStopWithoutBalancing() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setFeature("http://cyberneko.org/html/features/balance-tags", false);
+        final StoppingFilter filter = new StoppingFilter(config, "B");
+        config.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { filter });
+        config.parse(source("<p>a<b>b</b>c</p>"));
+        assertEquals("[(P, \"a, (B, \"b, )B, end]", filter.fEvents.toString());
+    }
+
+    public void testStopInScript() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        final StoppingFilter filter = new StoppingFilter(config, "SCRIPT") {
+            @Override
+            public void startElement(final QName element, final XMLAttributes attrs, final Augmentations augs) {
+                super.startElement(element, attrs, augs);
+                if ("SCRIPT".equals(element.rawname)) {
+                    fConfiguration.stopParsing();
+                }
+            }
+        };
+        config.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { filter });
+        config.parse(source("<html><head><script>var a = '<p>';</script></head><body>x</body></html>"));
+        assertEquals("[(HTML, (HEAD, (SCRIPT, \"var a = '<p>';, )SCRIPT, )HEAD, )HTML, end]", filter.fEvents.toString());
+    }
+
+    public void testStopPullParse() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        final StoppingFilter filter = new StoppingFilter(config, "B");
+        config.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { filter });
+        config.setInputSource(source("<p>a<b>b</b>c</p><p>d</p>"));
+        int count = 0;
+        while (config.parse(false)) {
+            count++;
+            assertTrue(count < 100);
+        }
+        assertEquals("[(HTML, (HEAD, )HEAD, (BODY, (P, \"a, (B, \"b, )B, )P, )BODY, )HTML, end]", filter.fEvents.toString());
+    }
+
+    public void testParserIsReusable() throws Exception {
+        final HTMLConfiguration config = new HTMLConfiguration();
+        final StoppingFilter filter = new StoppingFilter(config, "B");
+        config.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { filter });
+        config.parse(source("<p>a<b>b</b>c</p>"));
+        filter.fEvents.clear();
+        config.parse(source("<p>c</p>"));
+        assertEquals("[(HTML, (HEAD, )HEAD, (BODY, (P, \"c, )P, )BODY, )HTML, end]", filter.fEvents.toString());
+    }
+
+    private static XMLInputSource source(final String html) {
+        return new XMLInputSource(null, "test", null, new StringReader(html), "UTF-8");
+    }
+
+    private static class StoppingFilter extends DefaultFilter {
+
+        final HTMLConfiguration fConfiguration;
+
+        final String fStopElement;
+
+        final List<String> fEvents = new ArrayList<>();
+
+        StoppingFilter(final HTMLConfiguration config, final String stopElement) {
+            fConfiguration = config;
+            fStopElement = stopElement;
+        }
+
+        @Override
+        public void startElement(final QName element, final XMLAttributes attrs, final Augmentations augs) {
+            fEvents.add("(" + element.rawname);
+        }
+
+        @Override
+        public void characters(final XMLString text, final Augmentations augs) {
+            fEvents.add("\"" + text);
+        }
+
+        @Override
+        public void endElement(final QName element, final Augmentations augs) {
+            fEvents.add(")" + element.rawname);
+            if (element.rawname.equals(fStopElement)) {
+                fConfiguration.stopParsing();
+            }
+        }
+
+        @Override
+        public void endDocument(final Augmentations augs) {
+            fEvents.add("end");
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.codelibs.nekohtml.filters.ElementRemover;
+import org.codelibs.nekohtml.parsers.HTMLBatchParser;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+
+/**
+ * Checks that parsing on virtual threads, with a reader and a writer
+ * that block, does not pin the threads to their carriers.
+ */
+public class VirtualThreadParseTest extends TestCase {
+
+    private static final String DOCUMENT =
+            "<html><head><title>t</title><script>x()</script></head><body><p class=a>one<b>two</b><p>three</body></html>";
+
+    private static final String EXPECTED =
+            "<html><head><title>t</title></head><body><p class=\"a\">one<b>two</b></p><p>three</p></body></html>";
+
+    public void testPlatformThreads() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertParses(executor, 200);
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    public void testVirtualThreadsAreNotPinned() throws Exception {
+        if (!HTMLBatchParser.isVirtualThreadsAvailable()) {
+            return;
+        }
+        final ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        final File file = File.createTempFile("pinned", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(java.time.Duration.ZERO).withStackTrace();
+            recording.start();
+            try {
+                assertParses(executor, 2000);
+            } finally {
+                executor.shutdown();
+                assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+            }
+            recording.stop();
+            recording.dump(file.toPath());
+            final List<String> pinned = new ArrayList<>();
+            RecordingFile.readAllEvents(file.toPath()).forEach(event -> {
+                if ("jdk.VirtualThreadPinned".equals(event.getEventType().getName())) {
+                    pinned.add(String.valueOf(event.getStackTrace()));
+                }
+            });
+            assertEquals(pinned.toString(), 0, pinned.size());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void assertParses(final ExecutorService executor, final int count) throws Exception {
+        final List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            results.add(executor.submit(VirtualThreadParseTest::parse));
+        }
+        for (final Future<String> result : results) {
+            assertEquals(EXPECTED, result.get(30, TimeUnit.SECONDS));
+        }
+    }
+
+    private static String parse() throws IOException {
+        final ElementRemover remover = new ElementRemover();
+        remover.acceptElement("html", null);
+        remover.acceptElement("head", null);
+        remover.acceptElement("title", null);
+        remover.acceptElement("body", null);
+        remover.acceptElement("p", new String[] { "class" });
+        remover.acceptElement("b", null);
+        remover.removeElement("script");
+        final ParkingWriter out = new ParkingWriter();
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setFeature("http://cyberneko.org/html/features/augmentations", true);
+        config.setProperty("http://cyberneko.org/html/properties/names/elems", "lower");
+        config.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { remover,
+                new org.codelibs.nekohtml.filters.Writer(out, "UTF-8") });
+        final XMLInputSource source = new XMLInputSource(null, "test.html", null);
+        source.setCharacterStream(new ParkingReader(DOCUMENT));
+        config.parse(source);
+        return out.toString();
+    }
+
+    /** Reader returning a few characters per call, parking before each. */
+    private static final class ParkingReader extends Reader {
+
+        private final String fText;
+
+        private int fPosition;
+
+        ParkingReader(final String text) {
+            fText = text;
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len) {
+            LockSupport.parkNanos(10000);
+            if (fPosition == fText.length()) {
+                return -1;
+            }
+            final int count = Math.min(Math.min(len, 16), fText.length() - fPosition);
+            fText.getChars(fPosition, fPosition + count, cbuf, off);
+            fPosition += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+
+    /** Writer collecting the characters, parking before each write. */
+    private static final class ParkingWriter extends Writer {
+
+        private final StringBuilder fText = new StringBuilder();
+
+        @Override
+        public void write(final int c) {
+            LockSupport.parkNanos(1000);
+            fText.append((char) c);
+        }
+
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) {
+            LockSupport.parkNanos(1000);
+            fText.append(cbuf, off, len);
+        }
+
+        @Override
+        public void write(final String str, final int off, final int len) {
+            LockSupport.parkNanos(1000);
+            fText.append(str, off, off + len);
+        }
+
+        @Override
+        public void flush() {
+            // nothing to flush
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+
+        @Override
+        public String toString() {
+            return fText.toString();
+        }
+    }
+}
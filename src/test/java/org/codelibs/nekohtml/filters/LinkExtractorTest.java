@@ -0,0 +1,81 @@
+package org.codelibs.nekohtml.filters;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.codelibs.nekohtml.HTMLConfiguration;
+import org.codelibs.nekohtml.HTMLElements;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link LinkExtractor}.
+ */
+public class LinkExtractorTest extends TestCase {
+
+    public void testLinks() throws Exception {
+        final String html =
+                "<html><head><base href='/root/'><link rel=stylesheet href=s.css></head>"
+                        + "<body><a href=' a.html '>a</a><a name=x>no</a><img src=\"http://other/i.png\">"
+                        + "<form action=post><iframe src=../f.html></iframe></form><base href=ignored/></body></html>";
+        final List<String> links = extract(html, false);
+        assertEquals("[BASE href=http://host/root/, LINK href=http://host/root/s.css, A href=http://host/root/a.html,"
+                + " IMG src=http://other/i.png, FORM action=http://host/root/post, IFRAME src=http://host/f.html,"
+                + " BASE href=http://host/dir/ignored/]", links.toString());
+    }
+
+    public void testLocations() throws Exception {
+        final List<String> links = extract("<p>\n<a  href=x>x</a>", true);
+        assertEquals("[A href=http://host/dir/x@2:5-2:11]", links.toString());
+    }
+
+    public void testSeveralLinkAttributes() throws Exception {
+        final String html = "<img srcset=i2.png alt=i SRC=i.png><img src=j.png>";
+        for (final String names : new String[] { "lower", "upper", "match" }) {
+            final List<String> links = extract(html, false, names);
+            assertEquals(names, "[IMG srcset=http://host/dir/i2.png, IMG src=http://host/dir/i.png, IMG src=http://host/dir/j.png]", links
+                    .toString().toLowerCase().replace("img", "IMG"));
+        }
+    }
+
+    public void testRelativeBaseWithoutDocumentURI() throws Exception {
+        final String html = "<base href='sub/'><a href='x.html'>x</a><a href='http://other/y.html'>y</a>";
+        assertEquals("[BASE href=sub/, A href=x.html, A href=http://other/y.html]", extract(html, false, "lower", null).toString());
+        assertEquals("[BASE href=http://host/dir/sub/, A href=http://host/dir/sub/x.html, A href=http://other/y.html]",
+                extract(html, false).toString());
+    }
+
+    private static List<String> extract(final String html, final boolean augmentations) throws Exception {
+        return extract(html, augmentations, "lower");
+    }
+
+    private static List<String> extract(final String html, final boolean augmentations, final String names) throws Exception {
+        return extract(html, augmentations, names, "http://host/dir/page.html");
+    }
+
+    private static List<String> extract(final String html, final boolean augmentations, final String names, final String systemId)
+            throws Exception {
+        final List<String> links = new ArrayList<>();
+        final LinkExtractor extractor =
+                new LinkExtractor((element, attribute, value, uri, location) -> {
+                    String link = element.name + " " + attribute + "=" + uri;
+                    if (location != null) {
+                        link +=
+                                "@" + location.getBeginLineNumber() + ":" + location.getBeginColumnNumber() + "-"
+                                        + location.getEndLineNumber() + ":" + location.getEndColumnNumber();
+                    }
+                    links.add(link);
+                });
+        extractor.addLink(HTMLElements.IMG, "srcSet");
+        extractor.addLink(HTMLElements.IMG, "src");
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setProperty("http://cyberneko.org/html/properties/names/attrs", names);
+        parser.setFeature("http://cyberneko.org/html/features/augmentations", augmentations);
+        parser.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { extractor });
+        parser.parse(new XMLInputSource(null, systemId, null, new StringReader(html), null));
+        return links;
+    }
+}
@@ -0,0 +1,104 @@
+package org.codelibs.nekohtml.parsers;
+
+import java.io.File;
+import java.io.StringReader;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link CompactDOMParser}.
+ */
+public class CompactDOMParserTest extends TestCase {
+
+    public void testNativeTraversal() throws Exception {
+        final CompactDocument document = parse("<title>foo</title><p class=a>bar &amp; baz<!--c--><br><![CDATA[x]]>");
+        final int html = document.getDocumentElement();
+        assertEquals("HTML", document.getName(html));
+        final int p = document.nextElement(html, org.codelibs.nekohtml.HTMLElements.P, document.getSubtreeEnd(html));
+        assertEquals("P", document.getName(p));
+        assertEquals("a", document.getAttribute(p, "class"));
+        assertNull(document.getAttribute(p, "id"));
+        final int text = document.getFirstChild(p);
+        assertEquals(Node.TEXT_NODE, document.getNodeType(text));
+        assertEquals("bar & baz", document.getData(text));
+        assertEquals(Node.COMMENT_NODE, document.getNodeType(document.getNextSibling(text)));
+        assertEquals("foo", document.getTextContent(document.getFirstChild(html)));
+        assertTrue(document.getFootprint() > 0);
+    }
+
+    public void testReadOnlyView() throws Exception {
+        final Document document = parse("<div id=d><span>a</span><span>b</span></div>").getDOMDocument();
+        final Element div = document.getElementById("d");
+        assertSame(div, document.getElementsByTagName("DIV").item(0));
+        final NodeList spans = div.getElementsByTagName("SPAN");
+        assertEquals(2, spans.getLength());
+        assertSame(spans.item(1), spans.item(0).getNextSibling());
+        assertEquals("ab", div.getTextContent());
+        assertTrue((div.compareDocumentPosition(spans.item(0)) & Node.DOCUMENT_POSITION_CONTAINED_BY) != 0);
+        try {
+            div.setAttribute("id", "e");
+            fail();
+        } catch (final DOMException e) {
+            assertEquals(DOMException.NO_MODIFICATION_ALLOWED_ERR, e.code);
+        }
+    }
+
+    public void testSameTreeAsDOMParser() throws Exception {
+        final File dir = new File("src/test/resources/data/canonical");
+        final File[] files = dir.listFiles((d, name) -> name.endsWith(".html"));
+        assertNotNull(files);
+        for (final File file : files) {
+            final DOMParser domParser = new DOMParser();
+            domParser.parse(file.toURI().toString());
+            final CompactDOMParser compactParser = new CompactDOMParser();
+            compactParser.parse(file.toURI().toString());
+            assertEquals(file.getName(), dump(domParser.getDocument()), dump(compactParser.getDocument().getDOMDocument()));
+        }
+    }
+
+    private static CompactDocument parse(final String html) throws Exception {
+        final CompactDOMParser parser = new CompactDOMParser();
+        parser.parse(new InputSource(new StringReader(html)));
+        return parser.getDocument();
+    }
+
+    private static String dump(final Node node) {
+        final StringBuilder out = new StringBuilder();
+        dump(node, out);
+        return out.toString();
+    }
+
+    private static void dump(final Node node, final StringBuilder out) {
+        switch (node.getNodeType()) {
+        case Node.DOCUMENT_TYPE_NODE:
+            return;
+        case Node.ELEMENT_NODE:
+            out.append('(').append(node.getNodeName());
+            final NamedNodeMap attrs = node.getAttributes();
+            for (int i = 0; i < attrs.getLength(); i++) {
+                out.append(' ').append(attrs.item(i).getNodeName()).append('=').append(attrs.item(i).getNodeValue());
+            }
+            out.append('\n');
+            break;
+        case Node.DOCUMENT_NODE:
+            break;
+        default:
+            out.append(node.getNodeType()).append(node.getNodeValue()).append('\n');
+            break;
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            dump(child, out);
+        }
+        if (node.getNodeType() == Node.ELEMENT_NODE) {
+            out.append(')').append(node.getNodeName()).append('\n');
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.codelibs.nekohtml.parsers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the build time and the retained heap of {@link CompactDOMParser}
+ * and {@link DOMParser}. Usage: <code>CompactDocumentBenchmark file.html [iterations]</code>
+ */
+public class CompactDocumentBenchmark {
+
+    public static void main(final String[] argv) throws Exception {
+        final String systemId = new File(argv[0]).toURI().toString();
+        final int iterations = argv.length > 1 ? Integer.parseInt(argv[1]) : 200;
+        for (int round = 0; round < 3; round++) {
+            System.out.println("xerces:  " + run(systemId, iterations, false));
+            System.out.println("compact: " + run(systemId, iterations, true));
+        }
+    }
+
+    private static String run(final String systemId, final int iterations, final boolean compact) throws Exception {
+        final List<Object> documents = new ArrayList<>(iterations);
+        final long heap = usedHeap();
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            if (compact) {
+                final CompactDOMParser parser = new CompactDOMParser();
+                parser.parse(systemId);
+                documents.add(parser.getDocument());
+            } else {
+                final DOMParser parser = new DOMParser();
+                parser.parse(systemId);
+                documents.add(parser.getDocument());
+            }
+        }
+        final long time = System.nanoTime() - start;
+        final long retained = (usedHeap() - heap) / iterations;
+        documents.clear();
+        return (time / iterations / 1000) + " us/doc, " + retained + " bytes/doc";
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,55 @@
+package org.codelibs.nekohtml.parsers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.html.dom.HTMLDocumentImpl;
+import org.xml.sax.InputSource;
+
+/**
+ * Measures fragments per second with a new {@link DOMFragmentParser} per
+ * fragment and with a {@link DOMFragmentParserPool}, on one thread and on
+ * several. Usage: <code>DOMFragmentParserPoolBenchmark [threads] [seconds]</code>
+ */
+public class DOMFragmentParserPoolBenchmark {
+
+    private static final String FRAGMENT = "<p>A <b>short</b> product description with a <a href='/x'>link</a>"
+            + " &amp; an entity.</p><ul><li>one<li>two</ul>";
+
+    public static void main(final String[] argv) throws Exception {
+        final int threads = argv.length > 0 ? Integer.parseInt(argv[0]) : Runtime.getRuntime().availableProcessors();
+        final int seconds = argv.length > 1 ? Integer.parseInt(argv[1]) : 5;
+        for (int round = 0; round < 2; round++) {
+            for (final int n : new int[] { 1, threads }) {
+                System.out.println(n + " thread(s), new parser: " + run(n, seconds, null) + " fragments/s");
+                System.out.println(n + " thread(s), pool:       " + run(n, seconds, new DOMFragmentParserPool()) + " fragments/s");
+            }
+        }
+    }
+
+    private static long run(final int threads, final int seconds, final DOMFragmentParserPool pool) throws Exception {
+        final AtomicLong count = new AtomicLong();
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.submit(() -> {
+                final HTMLDocumentImpl document = new HTMLDocumentImpl();
+                while (System.nanoTime() < end) {
+                    if (pool != null) {
+                        pool.parse(FRAGMENT, document);
+                    } else {
+                        new DOMFragmentParser().parse(new InputSource(new java.io.StringReader(FRAGMENT)),
+                                document.createDocumentFragment());
+                    }
+                    count.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+        return count.get() / seconds;
+    }
+}
@@ -0,0 +1,136 @@
+package org.codelibs.nekohtml.parsers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.html.dom.HTMLDocumentImpl;
+import org.apache.xerces.dom.DocumentImpl;
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.codelibs.nekohtml.filters.DefaultFilter;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link DOMFragmentParserPool}.
+ */
+public class DOMFragmentParserPoolTest extends TestCase {
+
+    public void testReuse() throws Exception {
+        final DOMFragmentParserPool pool = new DOMFragmentParserPool(2);
+        final Document document = new HTMLDocumentImpl();
+        assertEquals("B", pool.parse("<b>foo</b>", document).getFirstChild().getNodeName());
+        assertEquals(1, pool.getIdleCount());
+        assertEquals("I", pool.parse("<i>bar</i>", document).getFirstChild().getNodeName());
+        assertEquals(1, pool.getIdleCount());
+
+        pool.setProperty("http://cyberneko.org/html/properties/names/elems", "lower");
+        assertEquals(0, pool.getIdleCount());
+        assertEquals("b", pool.parse("<b>foo</b>", new DocumentImpl()).getFirstChild().getNodeName());
+    }
+
+    public void testSettingsAreChecked() throws Exception {
+        final DOMFragmentParserPool pool = new DOMFragmentParserPool();
+        pool.setFeature("http://cyberneko.org/html/features/document-fragment", true);
+        pool.setProperty("http://cyberneko.org/html/properties/names/elems", "lower");
+        try {
+            pool.setFeature("http://example.org/unknown", true);
+            fail("feature accepted");
+        } catch (final SAXNotRecognizedException e) {
+            // expected
+        }
+        assertEquals("b", pool.parse("<b>foo</b>", new DocumentImpl()).getFirstChild().getNodeName());
+    }
+
+    public void testConcurrentParsing() throws Exception {
+        final DOMFragmentParserPool pool = new DOMFragmentParserPool();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final int n = i;
+                results.add(executor.submit(() -> {
+                    final DocumentFragment fragment = pool.parse("<p class=c" + n + ">text " + n + "<br>more", new HTMLDocumentImpl());
+                    final Node p = fragment.getFirstChild();
+                    return p.getAttributes().getNamedItem("class").getNodeValue() + ":" + p.getTextContent();
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals("c" + i + ":text " + i + "more", results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(pool.getIdleCount() <= DOMFragmentParserPool.DEFAULT_MAX_IDLE);
+    }
+
+    public void testConcurrentParsingWithStatefulFilter() throws Exception {
+        final DOMFragmentParserPool pool = new DOMFragmentParserPool();
+        pool.setFilters(() -> new XMLDocumentFilter[] { new ElementCounter() });
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final int n = i % 5 + 1;
+                results.add(executor.submit(() -> {
+                    final StringBuilder html = new StringBuilder();
+                    for (int j = 0; j < n; j++) {
+                        html.append("<b>x</b>");
+                    }
+                    final StringBuilder numbers = new StringBuilder();
+                    for (Node b = pool.parse(html.toString(), new HTMLDocumentImpl()).getFirstChild(); b != null; b = b.getNextSibling()) {
+                        numbers.append(((Element) b).getAttribute("n"));
+                    }
+                    return numbers.toString();
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals("12345".substring(0, i % 5 + 1), results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testFiltersPropertyIsNotSupported() throws Exception {
+        final DOMFragmentParserPool pool = new DOMFragmentParserPool();
+        try {
+            pool.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new DefaultFilter() });
+            fail("filters accepted");
+        } catch (final SAXNotSupportedException e) {
+            // expected
+        }
+    }
+
+    /** Numbers the elements of each fragment. */
+    private static class ElementCounter extends DefaultFilter {
+
+        private int fCount;
+
+        @Override
+        public void startDocument(final XMLLocator locator, final String encoding, final NamespaceContext nscontext,
+                final Augmentations augs) {
+            fCount = 0;
+            super.startDocument(locator, encoding, nscontext, augs);
+        }
+
+        @Override
+        public void startElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+            attributes.addAttribute(new QName(null, "n", "n", null), "CDATA", String.valueOf(++fCount));
+            super.startElement(element, attributes, augs);
+        }
+    }
+}
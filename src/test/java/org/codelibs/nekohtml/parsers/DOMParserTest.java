@@ -0,0 +1,106 @@
+package org.codelibs.nekohtml.parsers;
+
+import java.io.File;
+
+import org.apache.xerces.dom.DeferredDocumentImpl;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link DOMParser}.
+ */
+public class DOMParserTest extends TestCase {
+
+    public void testDeferNodeExpansion() throws Exception {
+        final DOMParser parser = new DOMParser();
+        assertFalse(parser.getFeature(DOMParser.DEFER_NODE_EXPANSION));
+        parser.setFeature(DOMParser.DEFER_NODE_EXPANSION, true);
+        assertTrue(parser.getFeature(DOMParser.DEFER_NODE_EXPANSION));
+
+        final File[] files = new File("src/test/resources/data/canonical").listFiles((d, name) -> name.endsWith(".html"));
+        assertNotNull(files);
+        for (final File file : files) {
+            parser.parse(file.toURI().toString());
+            final Document deferred = parser.getDocument();
+            assertTrue(deferred instanceof DeferredDocumentImpl);
+            assertEquals(file.getName(), dump(parse(file, false)), dump(deferred));
+        }
+
+        parser.setFeature(DOMParser.DEFER_NODE_EXPANSION, false);
+        parser.parse(files[0].toURI().toString());
+        assertTrue(parser.getDocument() instanceof org.apache.html.dom.HTMLDocumentImpl);
+    }
+
+    public void testDeferNodeExpansionWithLowerCaseNames() throws Exception {
+        final File[] files = new File("src/test/resources/data/canonical").listFiles((d, name) -> name.endsWith(".html"));
+        assertNotNull(files);
+        for (final File file : files) {
+            final DOMParser parser = new DOMParser();
+            parser.setFeature(DOMParser.DEFER_NODE_EXPANSION, true);
+            parser.setProperty("http://cyberneko.org/html/properties/names/elems", "lower");
+            parser.parse(file.toURI().toString());
+            assertEquals(file.getName(), dump(parse(file, false, "lower")), dump(parser.getDocument()));
+        }
+
+        final DOMParser parser = new DOMParser();
+        parser.setFeature(DOMParser.DEFER_NODE_EXPANSION, true);
+        parser.setProperty("http://cyberneko.org/html/properties/names/elems", "lower");
+        parser.parse(files[0].toURI().toString());
+        assertEquals("HTML", parser.getDocument().getDocumentElement().getTagName());
+    }
+
+    public void testGenericElements() throws Exception {
+        final DOMParser parser = new DOMParser();
+        parser.setFeature(DOMParser.GENERIC_ELEMENTS, true);
+        assertTrue(parser.getFeature(DOMParser.GENERIC_ELEMENTS));
+
+        final File[] files = new File("src/test/resources/data/canonical").listFiles((d, name) -> name.endsWith(".html"));
+        assertNotNull(files);
+        for (final File file : files) {
+            parser.parse(file.toURI().toString());
+            final Document document = parser.getDocument();
+            assertTrue(document instanceof HTMLCoreDocumentImpl);
+            assertEquals(file.getName(), dump(parse(file, false)), dump(document));
+        }
+
+        parser.setProperty("http://cyberneko.org/html/properties/names/elems", "lower");
+        parser.parse(files[0].toURI().toString());
+        assertEquals("HTML", parser.getDocument().getDocumentElement().getTagName());
+    }
+
+    static Document parse(final File file, final boolean defer) throws Exception {
+        return parse(file, defer, "upper");
+    }
+
+    static Document parse(final File file, final boolean defer, final String elementNames) throws Exception {
+        final DOMParser parser = new DOMParser();
+        parser.setFeature(DOMParser.DEFER_NODE_EXPANSION, defer);
+        parser.setProperty("http://cyberneko.org/html/properties/names/elems", elementNames);
+        parser.parse(file.toURI().toString());
+        return parser.getDocument();
+    }
+
+    static String dump(final Node node) {
+        final StringBuilder out = new StringBuilder();
+        dump(node, out);
+        return out.toString();
+    }
+
+    private static void dump(final Node node, final StringBuilder out) {
+        out.append(node.getNodeType()).append(' ').append(node.getNodeName());
+        if (node.getNodeValue() != null) {
+            out.append('=').append(node.getNodeValue());
+        }
+        final NamedNodeMap attrs = node.getAttributes();
+        for (int i = 0; attrs != null && i < attrs.getLength(); i++) {
+            out.append(' ').append(attrs.item(i).getNodeName()).append('=').append(attrs.item(i).getNodeValue());
+        }
+        out.append('\n');
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            dump(child, out);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codelibs.nekohtml.parsers;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.parser.XMLConfigurationException;
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.codelibs.nekohtml.filters.DefaultFilter;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXNotSupportedException;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link HTMLBatchParser}.
+ */
+public class HTMLBatchParserTest extends TestCase {
+
+    public void testParseDocuments() throws Exception {
+        final File file = File.createTempFile("batch", ".html");
+        try {
+            Files.write(file.toPath(), "<title>file</title>".getBytes(StandardCharsets.UTF_8));
+            final HTMLBatchParser parser = new HTMLBatchParser();
+            final List<HTMLBatchParser.Result> results =
+                    parser.parseDocuments(Stream.of("<p>a</p>".getBytes(StandardCharsets.UTF_8), Integer.valueOf(1), file,
+                            "<p>b<p>c".getBytes(StandardCharsets.UTF_8)));
+
+            assertEquals(4, results.size());
+            assertEquals("P", results.get(0).getDocument().getElementsByTagName("P").item(0).getNodeName());
+            assertTrue(results.get(1).isFailed());
+            assertTrue(results.get(1).getError() instanceof IllegalArgumentException);
+            assertEquals("file", results.get(2).getDocument().getElementsByTagName("TITLE").item(0).getTextContent());
+            assertEquals(2, results.get(3).getDocument().getElementsByTagName("P").getLength());
+            assertEquals(2, results.get(3).getStatistics().getElementsScanned());
+
+            assertEquals(4, parser.getDocumentsParsed());
+            assertEquals(1, parser.getDocumentsFailed());
+            assertEquals(4, parser.getStatistics().getElementsScanned());
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testHandlerFactoryWithBoundedWindow() throws Exception {
+        final HTMLBatchParser parser = new HTMLBatchParser();
+        parser.setParallelism(3);
+        parser.setMaxInFlight(2);
+        parser.setProperty("http://cyberneko.org/html/properties/names/elems", "lower");
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final Stream<byte[]> inputs = IntStream.range(0, 50).mapToObj(i -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return ("<b>" + i + "</b>").getBytes(StandardCharsets.UTF_8);
+        });
+        final List<HTMLBatchParser.Result> results = parser.parse(inputs, (index, source) -> new DefaultFilter() {
+            final StringBuilder names = new StringBuilder();
+
+            @Override
+            public void startElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+                names.append(element.rawname).append(' ');
+            }
+
+            @Override
+            public void endDocument(final Augmentations augs) {
+                inFlight.decrementAndGet();
+            }
+
+            @Override
+            public String toString() {
+                return names.toString();
+            }
+        });
+
+        assertEquals(50, results.size());
+        for (final HTMLBatchParser.Result result : results) {
+            assertNull(result.getError());
+            assertEquals("html head body b ", result.getHandler().toString());
+        }
+        assertTrue(String.valueOf(maxInFlight.get()), maxInFlight.get() <= 3);
+    }
+
+    public void testResultConsumer() throws Exception {
+        final HTMLBatchParser parser = new HTMLBatchParser();
+        parser.setMaxInFlight(2);
+        final AtomicInteger held = new AtomicInteger();
+        final AtomicInteger maxHeld = new AtomicInteger();
+        final List<String> texts = Collections.synchronizedList(new ArrayList<String>());
+        parser.parseDocuments(IntStream.range(0, 30).mapToObj(i -> ("<p>" + i).getBytes(StandardCharsets.UTF_8)), result -> {
+            maxHeld.accumulateAndGet(held.incrementAndGet(), Math::max);
+            texts.add(result.getDocument().getElementsByTagName("P").item(0).getTextContent());
+            held.decrementAndGet();
+        });
+        assertEquals(30, texts.size());
+        for (int i = 0; i < 30; i++) {
+            assertTrue(texts.contains(String.valueOf(i)));
+        }
+        assertTrue(String.valueOf(maxHeld.get()), maxHeld.get() <= 2);
+    }
+
+    public void testApplicationStreamsAreNotClosed() throws Exception {
+        final AtomicInteger closed = new AtomicInteger();
+        final Stream<XMLInputSource> inputs = IntStream.range(0, 5).mapToObj(i -> {
+            final InputStream stream = new ByteArrayInputStream(("<p>" + i).getBytes(StandardCharsets.UTF_8)) {
+                @Override
+                public void close() {
+                    closed.incrementAndGet();
+                }
+            };
+            return new XMLInputSource(null, "test.html", null, stream, "UTF-8");
+        });
+        final List<HTMLBatchParser.Result> results = new HTMLBatchParser().parseDocuments(inputs);
+        assertEquals(5, results.size());
+        assertNull(results.get(4).getError());
+        assertEquals(0, closed.get());
+    }
+
+    public void testUnrecognizedSettingIsReported() throws Exception {
+        final HTMLBatchParser parser = new HTMLBatchParser();
+        // a feature of DOM parsers, not of the configuration given to handlers
+        parser.setFeature("http://apache.org/xml/features/include-comments", false);
+        final List<HTMLBatchParser.Result> results =
+                parser.parse(Stream.of("<p>a".getBytes(StandardCharsets.UTF_8)), (index, source) -> new DefaultFilter());
+        assertTrue(results.get(0).isFailed());
+        assertTrue(String.valueOf(results.get(0).getError()), results.get(0).getError() instanceof XMLConfigurationException);
+    }
+
+    public void testWorkersHaveTheirOwnFilters() throws Exception {
+        final HTMLBatchParser parser = new HTMLBatchParser();
+        parser.setParallelism(4);
+        parser.setFilters(() -> new XMLDocumentFilter[] { new ElementCounter() });
+        final List<HTMLBatchParser.Result> results = parser.parseDocuments(IntStream.range(0, 200).mapToObj(i -> {
+            final StringBuilder html = new StringBuilder();
+            for (int j = 0; j <= i % 5; j++) {
+                html.append("<b>x</b>");
+            }
+            return html.toString().getBytes(StandardCharsets.UTF_8);
+        }));
+        for (int i = 0; i < results.size(); i++) {
+            final NodeList bs = results.get(i).getDocument().getElementsByTagName("B");
+            final StringBuilder numbers = new StringBuilder();
+            for (int j = 0; j < bs.getLength(); j++) {
+                numbers.append(((Element) bs.item(j)).getAttribute("n"));
+            }
+            // HTML, HEAD and BODY come first
+            assertEquals("45678".substring(0, i % 5 + 1), numbers.toString());
+        }
+    }
+
+    public void testFiltersPropertyIsNotSupported() throws Exception {
+        try {
+            new HTMLBatchParser().setProperty("http://cyberneko.org/html/properties/filters",
+                    new XMLDocumentFilter[] { new DefaultFilter() });
+            fail("filters accepted");
+        } catch (final SAXNotSupportedException e) {
+            // expected
+        }
+    }
+
+    public void testConsumerExceptionIsRethrown() throws Exception {
+        final HTMLBatchParser parser = new HTMLBatchParser();
+        parser.setMaxInFlight(2);
+        final IllegalStateException failure = new IllegalStateException("consumer");
+        final AtomicInteger consumed = new AtomicInteger();
+        try {
+            parser.parseDocuments(IntStream.range(0, 100).mapToObj(i -> ("<p>" + i).getBytes(StandardCharsets.UTF_8)), result -> {
+                if (consumed.incrementAndGet() == 3) {
+                    throw failure;
+                }
+            });
+            fail("exception lost");
+        } catch (final IllegalStateException e) {
+            assertSame(failure, e);
+        }
+        assertTrue(String.valueOf(consumed.get()), consumed.get() < 100);
+    }
+
+    public void testVirtualThreads() throws Exception {
+        if (!HTMLBatchParser.isVirtualThreadsAvailable()) {
+            return;
+        }
+        final HTMLBatchParser parser = new HTMLBatchParser();
+        parser.setVirtualThreads(true);
+        final List<HTMLBatchParser.Result> results =
+                parser.parseDocuments(IntStream.range(0, 20).mapToObj(i -> ("<p>" + i).getBytes(StandardCharsets.UTF_8)));
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(String.valueOf(i), results.get(i).getDocument().getElementsByTagName("P").item(0).getTextContent());
+        }
+    }
+
+    /** Numbers the elements of each document. */
+    private static class ElementCounter extends DefaultFilter {
+
+        private int fCount;
+
+        @Override
+        public void startDocument(final XMLLocator locator, final String encoding, final NamespaceContext nscontext,
+                final Augmentations augs) {
+            fCount = 0;
+            super.startDocument(locator, encoding, nscontext, augs);
+        }
+
+        @Override
+        public void startElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+            attributes.addAttribute(new QName(null, "n", "n", null), "CDATA", String.valueOf(++fCount));
+            super.startElement(element, attributes, augs);
+        }
+    }
+}
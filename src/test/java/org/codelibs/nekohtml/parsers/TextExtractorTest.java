@@ -0,0 +1,73 @@
+package org.codelibs.nekohtml.parsers;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.codelibs.nekohtml.HTMLConfiguration;
+import org.codelibs.nekohtml.HTMLScanner;
+import org.codelibs.nekohtml.filters.DefaultFilter;
+import org.xml.sax.InputSource;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link TextExtractor} and the scanner features it uses.
+ */
+public class TextExtractorTest extends TestCase {
+
+    public void testExtract() throws Exception {
+        final String html =
+                "<html><head><title>T</title><style>p { color: red }</style>" + "<script>if (a < b) document.write('</p>')</script></head>"
+                        + "<body><h1>Head  line</h1><p class=\"a > b\" id='x'>One\n <b>two</b>&nbsp;three<br>four</p>"
+                        + "<ul><li>a<li>b</ul><table><tr><td>c<td>d</table><pre>x\n  y</pre><noscript>no</noscript>end</body></html>";
+        assertEquals("Head line\n\nOne two three\nfour\n\na\nb\nc d\nx\n  y\nend", extract(html));
+    }
+
+    public void testSkipAttributesKeepsStructure() throws Exception {
+        final File[] files = new File("src/test/resources/data/canonical").listFiles((d, name) -> name.endsWith(".html"));
+        assertNotNull(files);
+        for (final File file : files) {
+            assertEquals(file.getName(), elements(file, false), elements(file, true));
+        }
+    }
+
+    public void testSkipAttributes() throws Exception {
+        final String html = "<a href=\"x>y\" title='<b>' c=d<e>f</a><img src=a/><meta charset=utf-8>";
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setFeature(HTMLScanner.SKIP_ATTRIBUTES, true);
+        final StringWriter out = new StringWriter();
+        config.setProperty("http://cyberneko.org/html/properties/filters",
+                new XMLDocumentFilter[] { new org.codelibs.nekohtml.filters.Writer(out, "UTF-8") });
+        config.parse(new XMLInputSource(null, "foo", null, new StringReader(html), null));
+        assertEquals("<HTML><HEAD></HEAD><BODY><A>f</A><IMG><META charset=\"utf-8\"></BODY></HTML>", out.toString());
+    }
+
+    private static String extract(final String html) throws Exception {
+        return new TextExtractor().extract(new InputSource(new StringReader(html)));
+    }
+
+    private static String elements(final File file, final boolean skipAttributes) throws Exception {
+        final StringBuilder elements = new StringBuilder();
+        final HTMLConfiguration config = new HTMLConfiguration();
+        config.setFeature(HTMLScanner.SKIP_ATTRIBUTES, skipAttributes);
+        config.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new DefaultFilter() {
+            @Override
+            public void startElement(final QName element, final XMLAttributes attributes, final Augmentations augs) {
+                elements.append('(').append(element.rawname);
+            }
+
+            @Override
+            public void endElement(final QName element, final Augmentations augs) {
+                elements.append(')');
+            }
+        } });
+        config.parse(new XMLInputSource(null, file.toURI().toString(), null));
+        return elements.toString();
+    }
+}